@@ -0,0 +1,219 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.decoder;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import waveview.wavedata.BitVector;
+import waveview.wavedata.NetDataModel;
+import waveview.wavedata.Transition;
+import waveview.wavedata.TransitionVector;
+
+///
+/// Measures how fast the protocol decoders are, since they run every time
+/// a waveform is reloaded. Each benchmark decodes a synthetic capture of
+/// BYTE_COUNT random bytes, so the score is in bytes per second. Run with
+/// -prof gc (as the jmh Gradle task does) to also see the allocation rate.
+///
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DecoderBenchmark {
+    private static final int BYTE_COUNT = 1000000;
+    private static final BitVector ZERO = new BitVector("0", 2);
+    private static final BitVector ONE = new BitVector("1", 2);
+
+    private Decoder spiDecoder;
+    private Decoder uartDecoder;
+    private Decoder i2cDecoder;
+
+    /// Appends transitions to a 1 bit net, skipping ones that don't change
+    /// its value, as a simulator would.
+    private static final class SignalBuilder {
+        private final TransitionVector.Builder builder =
+            TransitionVector.Builder.createBuilder(1);
+        private boolean value;
+
+        SignalBuilder(boolean initialValue) {
+            value = initialValue;
+            builder.appendTransition(0, initialValue ? ONE : ZERO);
+        }
+
+        void set(long timestamp, boolean newValue) {
+            if (newValue != value) {
+                builder.appendTransition(timestamp, newValue ? ONE : ZERO);
+                value = newValue;
+            }
+        }
+
+        NetDataModel getNet(String name) {
+            return new NetDataModel(name, name, builder.getTransitionVector());
+        }
+    }
+
+    @Setup
+    public void makeCaptures() {
+        Random random = new Random(1);
+        spiDecoder = makeSpiDecoder(random);
+        uartDecoder = makeUartDecoder(random);
+        i2cDecoder = makeI2cDecoder(random);
+
+        // Make sure the captures are valid. Otherwise a benchmark that
+        // doesn't decode anything would look fast.
+        checkByteCount(spiDecoder.decode());
+        checkByteCount(uartDecoder.decode());
+        checkByteCount(i2cDecoder.decode());
+    }
+
+    /// Mode 0, with transfers of 1 to 64 bytes separated by deasserting SS.
+    private static Decoder makeSpiDecoder(Random random) {
+        SignalBuilder ss = new SignalBuilder(true);
+        SignalBuilder sclk = new SignalBuilder(false);
+        SignalBuilder data = new SignalBuilder(false);
+        long time = 10;
+        int byteIndex = 0;
+        while (byteIndex < BYTE_COUNT) {
+            ss.set(time, false);
+            time += 10;
+            int transferLength = Math.min(1 + random.nextInt(64), BYTE_COUNT - byteIndex);
+            for (int i = 0; i < transferLength; i++) {
+                int value = random.nextInt(256);
+                for (int bit = 7; bit >= 0; bit--) {
+                    data.set(time, ((value >> bit) & 1) != 0);
+                    sclk.set(time + 5, true);
+                    sclk.set(time + 10, false);
+                    time += 10;
+                }
+            }
+
+            ss.set(time + 5, true);
+            time += 20;
+            byteIndex += transferLength;
+        }
+
+        Decoder decoder = Decoder.createDecoder("SPI");
+        decoder.setParam(0, "0");
+        decoder.setInput(0, ss.getNet("ss"));
+        decoder.setInput(1, sclk.getNet("sclk"));
+        decoder.setInput(2, data.getNet("data"));
+        return decoder;
+    }
+
+    /// 115200 baud with a nanosecond timescale. Bytes are usually back to
+    /// back, with occasional idle periods.
+    private static Decoder makeUartDecoder(Random random) {
+        final long bitTime = 8681;
+        SignalBuilder data = new SignalBuilder(true);
+        long time = 100000;
+        for (int i = 0; i < BYTE_COUNT; i++) {
+            // Start bit, data bits (lsb first), stop bit
+            int frame = (random.nextInt(256) << 1) | 0x200;
+            for (int bit = 0; bit < 10; bit++) {
+                data.set(time, ((frame >> bit) & 1) != 0);
+                time += bitTime;
+            }
+
+            if (random.nextInt(16) == 0) {
+                time += random.nextInt(1000000);
+            }
+        }
+
+        Decoder decoder = Decoder.createDecoder("UART");
+        decoder.setTimescale(-9);
+        decoder.setParam(0, "115200");
+        decoder.setInput(0, data.getNet("data"));
+        return decoder;
+    }
+
+    /// One byte per message, each with a start and stop condition.
+    private static Decoder makeI2cDecoder(Random random) {
+        SignalBuilder sda = new SignalBuilder(true);
+        SignalBuilder scl = new SignalBuilder(true);
+        long time = 10;
+        for (int i = 0; i < BYTE_COUNT; i++) {
+            sda.set(time, false); // Start
+            scl.set(time + 5, false);
+            time += 10;
+            int value = random.nextInt(256);
+            for (int bit = 7; bit >= 0; bit--) {
+                sda.set(time, ((value >> bit) & 1) != 0);
+                scl.set(time + 5, true);
+                scl.set(time + 15, false);
+                time += 20;
+            }
+
+            sda.set(time, false);
+            scl.set(time + 5, true);
+            sda.set(time + 10, true); // Stop
+            time += 20;
+        }
+
+        Decoder decoder = Decoder.createDecoder("I2C");
+        decoder.setParam(0, "8");
+        decoder.setInput(0, sda.getNet("sda"));
+        decoder.setInput(1, scl.getNet("scl"));
+        return decoder;
+    }
+
+    private static void checkByteCount(TransitionVector decoded) {
+        int byteCount = 0;
+        Iterator<Transition> iterator = decoded.findTransition(0);
+        while (iterator.hasNext()) {
+            if (!iterator.next().isZ()) {
+                byteCount++;
+            }
+        }
+
+        if (byteCount != BYTE_COUNT) {
+            throw new IllegalStateException("decoded " + byteCount + " bytes, expected "
+                + BYTE_COUNT);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BYTE_COUNT)
+    public TransitionVector decodeSpi() {
+        return spiDecoder.decode();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BYTE_COUNT)
+    public TransitionVector decodeUart() {
+        return uartDecoder.decode();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BYTE_COUNT)
+    public TransitionVector decodeI2c() {
+        return i2cDecoder.decode();
+    }
+}
@@ -0,0 +1,140 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package waveview;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import waveview.decoder.Decoder;
+import waveview.wavedata.LazyTransitionVector;
+import waveview.wavedata.NetDataModel;
+
+///
+/// Runs decoders on background threads, so decoding a long capture doesn't
+/// freeze the UI. Decoders only read their inputs, which don't change once
+/// they are loaded, so several can run in parallel. A decoded net has no
+/// transition vector until its decoder finishes, and the views show it as
+/// "decoding" until then. Decoders that can decode part of a waveform at a
+/// time skip this and decode the parts that are displayed on demand.
+///
+/// Except where noted, methods must be called on the event dispatch thread.
+///
+final class BackgroundDecoder {
+    /// Shown in place of the values of a net that is being decoded.
+    static final String DECODING_LABEL = "decoding\u2026";
+
+    private static final ExecutorService DECODE_EXECUTOR = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "Decoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private final WaveformPresentationModel waveformPresentationModel;
+    private final Map<NetDataModel, CompletableFuture<Void>> pending = new IdentityHashMap<>();
+
+    BackgroundDecoder(WaveformPresentationModel waveformPresentationModel) {
+        this.waveformPresentationModel = waveformPresentationModel;
+    }
+
+    /// Start decoding a net. When finished, this sets the net's transition
+    /// vector and notifies the presentation model. If the inputs are
+    /// available and the decoder supports it, the net is instead set up to
+    /// be decoded lazily, which finishes immediately.
+    /// @param net Net that receives the output. Its transition vector should
+    ///   be null.
+    /// @param inputs Nets the decoder reads. If any of them are themselves
+    ///   still being decoded, this waits for those to finish first.
+    /// @param decoderSupplier Returns a decoder with its inputs and parameters
+    ///   set. This is called once the inputs are available, on this thread
+    ///   if they already are, otherwise on a background thread. It may throw
+    ///   IllegalArgumentException if the configuration is invalid.
+    void decode(NetDataModel net, List<NetDataModel> inputs, Supplier<Decoder> decoderSupplier) {
+        List<CompletableFuture<Void>> inputFutures = new ArrayList<>();
+        for (NetDataModel input : inputs) {
+            CompletableFuture<Void> inputFuture = pending.get(input);
+            if (inputFuture != null) {
+                inputFutures.add(inputFuture);
+            }
+        }
+
+        if (inputFutures.isEmpty()) {
+            Decoder decoder;
+            try {
+                decoder = decoderSupplier.get();
+            } catch (IllegalArgumentException exc) {
+                showError(net, exc);
+                return;
+            }
+
+            LazyTransitionVector lazyTransitionVector = decoder.decodeLazily();
+            if (lazyTransitionVector != null) {
+                net.setLazyTransitionVector(lazyTransitionVector);
+                waveformPresentationModel.netDataChanged(net);
+                return;
+            }
+
+            decoderSupplier = () -> decoder;
+        }
+
+        Supplier<Decoder> configuredDecoder = decoderSupplier;
+
+        // The transition vector is set on the background thread, so decoders
+        // that depend on this one can read it as soon as they start.
+        CompletableFuture<Void> future =
+            CompletableFuture.allOf(inputFutures.toArray(new CompletableFuture<?>[0]))
+                .thenRunAsync(() -> net.setTransitionVector(configuredDecoder.get().decode()),
+                    DECODE_EXECUTOR);
+        pending.put(net, future);
+        future.whenComplete((result, exc) -> SwingUtilities.invokeLater(() -> {
+            if (pending.get(net) != future) {
+                return; // Cancelled
+            }
+
+            pending.remove(net);
+            if (exc == null) {
+                waveformPresentationModel.netDataChanged(net);
+            } else {
+                showError(net, exc instanceof CompletionException ? exc.getCause() : exc);
+            }
+        }));
+    }
+
+    private static void showError(NetDataModel net, Throwable exc) {
+        JOptionPane.showMessageDialog(null, exc.getMessage(),
+            "Error decoding " + net.getFullName(), JOptionPane.ERROR_MESSAGE);
+    }
+
+    /// Stop all decodes that haven't started yet and ignore the results of
+    /// the ones that are running. Called when a new waveform is loaded.
+    void cancelAll() {
+        for (CompletableFuture<Void> future : pending.values()) {
+            future.cancel(false);
+        }
+
+        pending.clear();
+    }
+}
@@ -0,0 +1,43 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package waveview;
+
+import waveview.wavedata.TransitionVector;
+
+///
+/// Reusable arrays for TransitionVector.getColumns, so painters don't
+/// allocate them every time they draw. These grow as needed and are
+/// never shrunk.
+///
+final class ColumnBuffer {
+    int[] valueIndices = new int[0];
+    int[] transitionCounts = new int[0];
+    byte[] flags = new byte[0];
+
+    void query(TransitionVector transitionVector, int firstColumn, int columnCount,
+        double horizontalScale) {
+        if (valueIndices.length < columnCount) {
+            valueIndices = new int[columnCount];
+            transitionCounts = new int[columnCount];
+            flags = new byte[columnCount];
+        }
+
+        transitionVector.getColumns(firstColumn, columnCount, horizontalScale, valueIndices,
+            transitionCounts, flags);
+    }
+}
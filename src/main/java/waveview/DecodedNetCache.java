@@ -0,0 +1,360 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import waveview.wavedata.NetDataModel;
+import waveview.wavedata.TransitionVector;
+import waveview.wavedata.WaveformDataModel;
+
+///
+/// Saves the values of decoded nets in a binary file next to the waveform,
+/// so reopening it doesn't need to run the decoders again. Each entry is
+/// keyed by a hash of everything the decoded values depend on: the decoder
+/// name, its parameters, the timescale, and the contents of its input nets.
+/// If the simulation is rerun and an input changes, the key no longer matches
+/// and the net is decoded again. An input that is itself a decoded net is
+/// represented by its own key, so a chain of decoders can be restored
+/// without having the values of the first one.
+///
+/// The settings file is still what determines which decoded nets exist. This
+/// file is only a cache: if it is missing or unreadable, the nets are decoded
+/// as usual.
+///
+/// Hashing the inputs of a large capture and reading or writing the file
+/// are slow, so the UI uses restoreInBackground and writeInBackground. These
+/// copy the decoder configuration on the calling thread, which must be the
+/// event dispatch thread, then do the rest on a background thread.
+///
+public final class DecodedNetCache {
+    private static final int MAGIC = 0x57564443; // "WVDC"
+    private static final int VERSION = 1;
+    private static final int KEY_LENGTH = 32;
+
+    // A single thread, so a write and a later read of the same file don't
+    // overlap. It isn't a daemon, so a write started when the window closes
+    // finishes before the program exits. It exits when idle.
+    private static final ThreadPoolExecutor IO_EXECUTOR = new ThreadPoolExecutor(1, 1,
+        1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "Decoded net cache");
+            thread.setDaemon(false);
+            return thread;
+        });
+
+    static {
+        IO_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final File cacheFile;
+    private final WaveformDataModel waveformDataModel;
+
+    // Hashing a net reads all of its transitions, so only do it once.
+    // Guarded by this.
+    private final Map<TransitionVector, byte[]> contentHashes = new IdentityHashMap<>();
+
+    private interface IoTask {
+        void run() throws IOException;
+    }
+
+    /// The configuration keys are computed from, copied from the waveform
+    /// data model so they can be computed on another thread.
+    private static final class Snapshot {
+        final int timescale;
+
+        // Every net that the keys refer to by name. The value is null if
+        // there is no net with that name.
+        final Map<String, NetDataModel> netsByName = new HashMap<>();
+
+        Snapshot(int timescale) {
+            this.timescale = timescale;
+        }
+    }
+
+    /// @param waveformFile Name of a waveform file
+    /// @returns cache file for this (a .dotfile in the same directory)
+    public static File cacheFileName(File waveformFile) {
+        String parent = waveformFile.getParent();
+        String name = "." + waveformFile.getName() + ".decodecache";
+        return parent == null ? new File(name) : new File(parent, name);
+    }
+
+    public DecodedNetCache(File cacheFile, WaveformDataModel waveformDataModel) {
+        this.cacheFile = cacheFile;
+        this.waveformDataModel = waveformDataModel;
+    }
+
+    /// Set the values of any of these nets that are in the cache file.
+    /// Nets that are restored are no longer isDecoding().
+    /// @param nets Decoded nets that don't have values yet
+    public void restore(List<NetDataModel> nets) throws IOException {
+        prepareRestore(nets).run();
+    }
+
+    /// Same as restore, but the slow part runs on a background thread.
+    /// This must be called on the event dispatch thread.
+    /// @returns Completes when the nets that were found have been set. It
+    ///   completes exceptionally with an UncheckedIOException if the file
+    ///   couldn't be read.
+    public CompletableFuture<Void> restoreInBackground(List<NetDataModel> nets) {
+        return runInBackground(prepareRestore(nets));
+    }
+
+    /// Save the values of all decoded nets that have finished decoding,
+    /// replacing the previous contents of the file.
+    public void write() throws IOException {
+        prepareWrite().run();
+    }
+
+    /// Same as write, but the slow part runs on a background thread. This
+    /// must be called on the event dispatch thread.
+    /// @returns Completes when the file has been written. It completes
+    ///   exceptionally with an UncheckedIOException if that failed.
+    public CompletableFuture<Void> writeInBackground() {
+        return runInBackground(prepareWrite());
+    }
+
+    private static CompletableFuture<Void> runInBackground(IoTask task) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                task.run();
+            } catch (IOException exc) {
+                throw new UncheckedIOException(exc);
+            }
+        }, IO_EXECUTOR);
+    }
+
+    private IoTask prepareRestore(List<NetDataModel> nets) {
+        List<NetDataModel> netsCopy = new ArrayList<>(nets);
+        Snapshot snapshot = takeSnapshot(netsCopy);
+        return () -> restore(netsCopy, snapshot);
+    }
+
+    private synchronized void restore(List<NetDataModel> nets, Snapshot snapshot)
+        throws IOException {
+        if (!cacheFile.exists()) {
+            return;
+        }
+
+        // Several nets may have the same configuration.
+        Map<ByteBuffer, List<NetDataModel>> wanted = new HashMap<>();
+        for (NetDataModel net : nets) {
+            byte[] key = computeKey(net, snapshot, new HashSet<>());
+            if (key != null) {
+                wanted.computeIfAbsent(ByteBuffer.wrap(key), k -> new ArrayList<>()).add(net);
+            }
+        }
+
+        if (wanted.isEmpty()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                // Written by a different version, which may have used
+                // different keys. It will be replaced when this is written.
+                return;
+            }
+
+            int entryCount = in.readInt();
+            byte[] key = new byte[KEY_LENGTH];
+            for (int i = 0; i < entryCount && !wanted.isEmpty(); i++) {
+                in.readFully(key);
+                List<NetDataModel> matchingNets = wanted.remove(ByteBuffer.wrap(key));
+                if (matchingNets == null) {
+                    TransitionVector.skip(in);
+                } else {
+                    TransitionVector vector = TransitionVector.read(in);
+                    for (NetDataModel net : matchingNets) {
+                        net.setTransitionVector(vector);
+                    }
+                }
+            }
+        }
+    }
+
+    private IoTask prepareWrite() {
+        // A decoder may finish while this is writing, so take the values
+        // that are finished now.
+        Map<NetDataModel, TransitionVector> finishedNets = new LinkedHashMap<>();
+        for (NetDataModel net : waveformDataModel.getDecodedNets()) {
+            // Nets that are decoded lazily only have values for the parts
+            // that have been displayed, and are cheap to recreate anyway.
+            if (!net.isDecoding() && net.getLazyTransitionVector() == null) {
+                finishedNets.put(net, net.getTransitionVector());
+            }
+        }
+
+        Snapshot snapshot = takeSnapshot(finishedNets.keySet());
+        return () -> write(finishedNets, snapshot);
+    }
+
+    private synchronized void write(Map<NetDataModel, TransitionVector> finishedNets,
+        Snapshot snapshot) throws IOException {
+        Map<ByteBuffer, TransitionVector> entries = new LinkedHashMap<>();
+        for (Map.Entry<NetDataModel, TransitionVector> net : finishedNets.entrySet()) {
+            byte[] key = computeKey(net.getKey(), snapshot, new HashSet<>());
+            if (key != null) {
+                entries.putIfAbsent(ByteBuffer.wrap(key), net.getValue());
+            }
+        }
+
+        if (entries.isEmpty()) {
+            Files.deleteIfExists(cacheFile.toPath());
+            return;
+        }
+
+        // Write to a temporary file first, so if this is interrupted, the
+        // old file is left rather than a truncated one.
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<ByteBuffer, TransitionVector> entry : entries.entrySet()) {
+                out.write(entry.getKey().array());
+                entry.getValue().write(out);
+            }
+        }
+
+        Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /// Look up the nets that the keys for these nets depend on, directly or
+    /// through other decoded nets.
+    private Snapshot takeSnapshot(Collection<NetDataModel> nets) {
+        Snapshot snapshot = new Snapshot(waveformDataModel.getTimescale());
+        Deque<NetDataModel> toVisit = new ArrayDeque<>(nets);
+        while (!toVisit.isEmpty()) {
+            for (String inputName : toVisit.pop().getDecoderInputNets()) {
+                if (!snapshot.netsByName.containsKey(inputName)) {
+                    NetDataModel input = waveformDataModel.findNet(inputName);
+                    snapshot.netsByName.put(inputName, input);
+                    if (input != null) {
+                        toVisit.push(input);
+                    }
+                }
+            }
+        }
+
+        return snapshot;
+    }
+
+    /// @param visiting Full names of decoded nets whose keys are being
+    ///   computed, to detect nets that are (indirectly) their own inputs.
+    /// @returns Hash of the decoder configuration and inputs, or null if
+    ///   an input net doesn't exist.
+    private byte[] computeKey(NetDataModel net, Snapshot snapshot, Set<String> visiting)
+        throws IOException {
+        if (!visiting.add(net.getFullName())) {
+            return null;
+        }
+
+        MessageDigest digest = createDigest();
+        try (DataOutputStream out = new DataOutputStream(
+            new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            out.writeUTF(net.getDecoderName());
+            out.writeInt(snapshot.timescale);
+            String[] params = net.getDecoderParams();
+            out.writeInt(params.length);
+            for (String param : params) {
+                out.writeUTF(param);
+            }
+
+            String[] inputNames = net.getDecoderInputNets();
+            out.writeInt(inputNames.length);
+            for (String inputName : inputNames) {
+                NetDataModel input = snapshot.netsByName.get(inputName);
+                if (input == null) {
+                    return null;
+                }
+
+                byte[] inputHash;
+                if (input.getDecoderName().equals("")) {
+                    inputHash = computeContentHash(input.getTransitionVector());
+                } else {
+                    inputHash = computeKey(input, snapshot, visiting);
+                    if (inputHash == null) {
+                        return null;
+                    }
+                }
+
+                out.write(inputHash);
+            }
+        }
+
+        visiting.remove(net.getFullName());
+        return digest.digest();
+    }
+
+    // Called with this locked
+    private byte[] computeContentHash(TransitionVector vector) throws IOException {
+        byte[] hash = contentHashes.get(vector);
+        if (hash == null) {
+            MessageDigest digest = createDigest();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new DigestOutputStream(OutputStream.nullOutputStream(), digest)))) {
+                vector.write(out);
+            }
+
+            hash = digest.digest();
+            contentHashes.put(vector, hash);
+        }
+
+        return hash;
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exc) {
+            // Every Java implementation is required to support SHA-256.
+            throw new IllegalStateException(exc);
+        }
+    }
+}
@@ -18,6 +18,8 @@ package waveview;
 
 import java.awt.Container;
 import java.awt.FlowLayout;
+import java.util.ArrayList;
+import java.util.List;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JComboBox;
@@ -28,7 +30,6 @@ import javax.swing.JOptionPane;
 import javax.swing.JTextField;
 import waveview.decoder.Decoder;
 import waveview.wavedata.NetDataModel;
-import waveview.wavedata.TransitionVector;
 import waveview.wavedata.WaveformDataModel;
 
 final class DecoderConfigWindow extends JDialog {
@@ -39,11 +40,13 @@ final class DecoderConfigWindow extends JDialog {
     private final Decoder decoder;
     private final WaveformPresentationModel presentationModel;
     private final WaveformDataModel dataModel;
+    private final BackgroundDecoder backgroundDecoder;
     private final int insertionIndex;
 
     DecoderConfigWindow(JFrame parent, String decoderName,
             Decoder decoder, WaveformPresentationModel presentationModel,
-            WaveformDataModel dataModel, int[] selectedIndices) {
+            WaveformDataModel dataModel, BackgroundDecoder backgroundDecoder,
+            int[] selectedIndices) {
         super(parent, "Decoder Config", true);
 
         NetDataModel[] inputModels = new NetDataModel[selectedIndices.length];
@@ -64,6 +67,7 @@ final class DecoderConfigWindow extends JDialog {
         this.inputModels = inputModels;
         this.presentationModel = presentationModel;
         this.dataModel = dataModel;
+        this.backgroundDecoder = backgroundDecoder;
 
         String[] parameterNames = decoder.getParamNames();
         textFields = new JTextField[parameterNames.length];
@@ -113,9 +117,17 @@ final class DecoderConfigWindow extends JDialog {
     private void ok() {
         try {
             String[] inputNames = new String[comboBoxes.length];
+            List<NetDataModel> inputs = new ArrayList<>();
             for (int i = 0; i < comboBoxes.length; i++) {
-                inputNames[i] = inputModels[comboBoxes[i].getSelectedIndex()].getFullName();
-                decoder.setInput(i, inputModels[comboBoxes[i].getSelectedIndex()]);
+                NetDataModel input = inputModels[comboBoxes[i].getSelectedIndex()];
+                if (input.isDecoding()) {
+                    throw new IllegalArgumentException(
+                        input.getFullName() + " is still being decoded");
+                }
+
+                inputNames[i] = input.getFullName();
+                inputs.add(input);
+                decoder.setInput(i, input);
             }
 
             String[] paramVals = new String[textFields.length];
@@ -124,13 +136,13 @@ final class DecoderConfigWindow extends JDialog {
                 decoder.setParam(i, paramVals[i]);
             }
 
-            TransitionVector transitionVector = decoder.decode();
             String shortName = dataModel.generateDecodedName(decoderName);
             String fullName = "decoded." + shortName;
             NetDataModel model = new NetDataModel(shortName, fullName,
-                decoderName, inputNames, paramVals, transitionVector);
+                decoderName, inputNames, paramVals, null);
             dataModel.addDecodedNet(model);
             presentationModel.addNet(insertionIndex, model);
+            backgroundDecoder.decode(model, inputs, () -> decoder);
             dispose();
         } catch (IllegalArgumentException exc) {
             JOptionPane.showMessageDialog(this, exc.getMessage());
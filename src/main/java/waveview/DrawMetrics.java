@@ -25,6 +25,7 @@ class DrawMetrics {
     public static final int WAVEFORM_V_SPACING = WAVEFORM_HEIGHT + (WAVEFORM_V_GAP * 2);
     public static final int WAVEFORM_TRANSITION_WIDTH = 3;
     public static final int TIMESCALE_HEIGHT = 25;
+    public static final int OVERVIEW_HEIGHT = 24;
     public static final int MAX_TIMESTAMP_LABEL_WIDTH = 65;
     public static final int TIMESTAMP_H_GAP = 2;
     public static final int MAX_MARKER_LABEL_WIDTH = 15;
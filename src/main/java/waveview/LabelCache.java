@@ -0,0 +1,116 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import waveview.wavedata.Transition;
+import waveview.wavedata.TransitionVector;
+
+///
+/// Remembers the formatted value and text width of recently drawn
+/// transitions, so MultiBitPainter doesn't need to reformat them every
+/// time a tile is rendered. Some formatters (for example, decimal on wide
+/// buses) are slow. This is shared by all of the render threads.
+///
+final class LabelCache {
+    private final LinkedHashMap<Key, Label> labels;
+
+    static final class Label {
+        final String text;
+        final int width;
+        private final Font font;
+
+        private Label(String text, int width, Font font) {
+            this.text = text;
+            this.width = width;
+            this.font = font;
+        }
+    }
+
+    private static final class Key {
+        private final TransitionVector transitionVector;
+        private final int index;
+        private final ValueFormatter formatter;
+
+        Key(TransitionVector transitionVector, int index, ValueFormatter formatter) {
+            this.transitionVector = transitionVector;
+            this.index = index;
+            this.formatter = formatter;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+            return transitionVector == other.transitionVector && index == other.index
+                && formatter == other.formatter;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(transitionVector), index,
+                System.identityHashCode(formatter));
+        }
+    }
+
+    /// @param maxEntries When there are more labels than this, the least
+    ///   recently used one is discarded.
+    LabelCache(int maxEntries) {
+        labels = new LinkedHashMap<Key, Label>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Label> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /// @param index Index of transition in transitionVector
+    /// @param metrics Used to measure the width of the label
+    Label get(TransitionVector transitionVector, int index, ValueFormatter formatter,
+        FontMetrics metrics) {
+        Key key = new Key(transitionVector, index, formatter);
+        Label label;
+        synchronized (this) {
+            label = labels.get(key);
+        }
+
+        if (label != null && label.font.equals(metrics.getFont())) {
+            return label;
+        }
+
+        // Don't hold the lock while formatting, since that may be slow.
+        Transition transition = transitionVector.iteratorAt(index).next();
+        String text = formatter.format(transition);
+        label = new Label(text, metrics.stringWidth(text), metrics.getFont());
+        synchronized (this) {
+            labels.put(key, label);
+        }
+
+        return label;
+    }
+
+    synchronized void clear() {
+        labels.clear();
+    }
+}
@@ -25,6 +25,11 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JDialog;
@@ -38,26 +43,40 @@ import javax.swing.JPanel;
 import javax.swing.JToolBar;
 import javax.swing.KeyStroke;
 import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+import waveview.search.MatchList;
 import waveview.search.Search;
 import waveview.search.SearchFormatException;
+import waveview.search.SearchResultCache;
 import waveview.decoder.Decoder;
 import waveview.wavedata.NetDataModel;
 import waveview.wavedata.WaveformDataModel;
 
 /// @todo Add menu item to jump to specific timestamp
 public final class MainWindow extends JPanel implements ActionListener {
+    private static final long SEARCH_CACHE_BYTES = 16 * 1024 * 1024;
+
     private final WaveformContainerView waveformContainer;
     private final WaveformPresentationModel waveformPresentationModel =
         new WaveformPresentationModel();
     private final WaveformDataModel waveformDataModel = new WaveformDataModel();
     private Search currentSearch;
+    private String currentSearchString;
+    private SearchWorker<Long> searchWorker;
+    private SearchWorker<MatchList> cacheFillWorker;
+    private final SearchResultCache searchResultCache =
+        new SearchResultCache(SEARCH_CACHE_BYTES);
     private JMenu netMenu;
     private JFrame frame;
     private JMenu recentFilesMenu;
     private WaveformSettingsFile waveformSettingsFile;
+    private DecodedNetCache decodedNetCache;
+    private CompletableFuture<Void> cacheRestore;
     private File currentWaveformFile;
     private NetSearchView netSearchPane;
     private final RecentFiles recentFiles = new RecentFiles();
+    private final BackgroundDecoder backgroundDecoder =
+        new BackgroundDecoder(waveformPresentationModel);
 
     public MainWindow() {
         super(new BorderLayout());
@@ -71,7 +90,8 @@ public final class MainWindow extends JPanel implements ActionListener {
         toolBar.add(createButton("add-marker.png", "Insert Marker", "insertMarker"));
         toolBar.add(createButton("remove-marker.png", "Remove Marker", "removeMarker"));
 
-        waveformContainer = new WaveformContainerView(waveformPresentationModel, waveformDataModel);
+        waveformContainer = new WaveformContainerView(waveformPresentationModel,
+            waveformDataModel, backgroundDecoder);
         add(waveformContainer, BorderLayout.CENTER);
 
         recentFiles.unpack(AppPreferences.getInstance().getRecentList());
@@ -251,11 +271,12 @@ public final class MainWindow extends JPanel implements ActionListener {
     private void loadWaveformFile(File file) {
         saveWaveformSettings();
         ProgressMonitor monitor = new ProgressMonitor(this, "Loading...", "", 0, 100);
+        List<NetDataModel> decodedNets = readDecodedNets(file);
         WaveformLoadWorker.LoadFinishedHandler handler =
             new WaveformLoadWorker.LoadFinishedHandler() {
                 @Override
                 public void handleLoadSuccess(WaveformDataModel newModel) {
-                    MainWindow.this.handleLoadSuccess(file, newModel);
+                    MainWindow.this.handleLoadSuccess(file, newModel, decodedNets);
                 }
 
                 @Override
@@ -265,11 +286,35 @@ public final class MainWindow extends JPanel implements ActionListener {
                 }
             };
 
-        new WaveformLoadWorker(file, monitor, handler).execute();
+        new WaveformLoadWorker(file, monitor, handler, decodedNets).execute();
+    }
+
+    /// Decoded nets from the settings file are computed while the waveform
+    /// loads, so they are ready when it finishes.
+    private static List<NetDataModel> readDecodedNets(File file) {
+        try {
+            File settingsFile = WaveformSettingsFile.settingsFileName(file);
+            if (settingsFile.exists()) {
+                return WaveformSettingsFile.readDecodedNets(settingsFile);
+            }
+        } catch (IOException exc) {
+            // This is reported after the load, when the settings file is
+            // read again.
+        }
+
+        return Collections.emptyList();
     }
 
-    private void handleLoadSuccess(File file, WaveformDataModel newModel) {
+    /// @param streamedNets Decoded nets that were computed while loading.
+    private void handleLoadSuccess(File file, WaveformDataModel newModel,
+        List<NetDataModel> streamedNets) {
+        cancelSearch();
+        cancelCacheFill();
+        backgroundDecoder.cancelAll();
+        cancelCacheRestore();
         currentSearch = null;
+        currentSearchString = null;
+        searchResultCache.clear();
         waveformPresentationModel.clear();
 
         // XXX hack
@@ -290,29 +335,25 @@ public final class MainWindow extends JPanel implements ActionListener {
             File settingsFile = WaveformSettingsFile.settingsFileName(file);
             waveformSettingsFile = new WaveformSettingsFile(
                 settingsFile, waveformDataModel, waveformPresentationModel);
+            decodedNetCache = new DecodedNetCache(
+                DecodedNetCache.cacheFileName(file), waveformDataModel);
             if (settingsFile.exists()) {
                 waveformSettingsFile.read();
             }
 
-            // Generate decoded net values
+            // Generate decoded net values. Ones that weren't computed while
+            // loading are restored from the last session or decoded in the
+            // background, so the waveform is usable immediately.
+            List<NetDataModel> undecodedNets = new ArrayList<>();
             for (int i = 0; i < waveformPresentationModel.getVisibleNetCount(); i++) {
                 NetDataModel model = waveformPresentationModel.getVisibleNet(i);
-                if (!model.getDecoderName().equals("")) {
-                    Decoder decoder = Decoder.createDecoder(model.getDecoderName());
-                    decoder.setTimescale(waveformDataModel.getTimescale());
-                    int inputNum = 0;
-                    for (String inputNet : model.getDecoderInputNets()) {
-                        decoder.setInput(inputNum++, waveformDataModel.findNet(inputNet));
-                    }
-
-                    int paramNum = 0;
-                    for (String decoderParam : model.getDecoderParams()) {
-                        decoder.setParam(paramNum++, decoderParam);
-                    }
-
-                    model.setTransitionVector(decoder.decode());
+                if (!model.getDecoderName().equals("")
+                    && !copyStreamedNet(model, streamedNets)) {
+                    undecodedNets.add(model);
                 }
             }
+
+            restoreDecodedNets(undecodedNets);
         } catch (IOException exc) {
             JOptionPane.showMessageDialog(null, exc.getMessage(),
                 "Error reading waveform settings. The waveform has loaded, but previous view configuration was not restored",
@@ -325,6 +366,85 @@ public final class MainWindow extends JPanel implements ActionListener {
         currentWaveformFile = file;
     }
 
+    /// @returns true if one of streamedNets has the same configuration as
+    ///   model and was decoded, in which case its values are copied into
+    ///   model.
+    private static boolean copyStreamedNet(NetDataModel model, List<NetDataModel> streamedNets) {
+        for (NetDataModel streamedNet : streamedNets) {
+            if (streamedNet.getFullName().equals(model.getFullName())
+                && streamedNet.getDecoderName().equals(model.getDecoderName())
+                && Arrays.equals(streamedNet.getDecoderInputNets(), model.getDecoderInputNets())
+                && Arrays.equals(streamedNet.getDecoderParams(), model.getDecoderParams())
+                && !streamedNet.isDecoding()) {
+                model.setTransitionVector(streamedNet.getTransitionVector());
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /// Restore these nets from the cache, then start decoding the ones that
+    /// weren't in it. Reading the cache hashes the inputs, which is slow for
+    /// a large capture, so this runs in the background.
+    private void restoreDecodedNets(List<NetDataModel> nets) {
+        if (nets.isEmpty()) {
+            return;
+        }
+
+        CompletableFuture<Void> restore = decodedNetCache.restoreInBackground(nets);
+        cacheRestore = restore;
+        restore.whenComplete((result, exc) -> SwingUtilities.invokeLater(() -> {
+            if (cacheRestore != restore) {
+                return; // Cancelled
+            }
+
+            cacheRestore = null;
+            if (exc != null) {
+                // The nets that weren't restored will be decoded again.
+                System.out.println("Error reading decoded net cache: " + exc.getCause());
+            }
+
+            for (NetDataModel model : nets) {
+                if (model.isDecoding()) {
+                    startDecoding(model);
+                } else {
+                    waveformPresentationModel.netDataChanged(model);
+                }
+            }
+        }));
+    }
+
+    private void cancelCacheRestore() {
+        if (cacheRestore != null) {
+            cacheRestore.cancel(false);
+            cacheRestore = null;
+        }
+    }
+
+    private void startDecoding(NetDataModel model) {
+        List<NetDataModel> inputs = new ArrayList<>();
+        for (String inputNet : model.getDecoderInputNets()) {
+            inputs.add(waveformDataModel.findNet(inputNet));
+        }
+
+        int timescale = waveformDataModel.getTimescale();
+        backgroundDecoder.decode(model, inputs, () -> {
+            Decoder decoder = Decoder.createDecoder(model.getDecoderName());
+            decoder.setTimescale(timescale);
+            for (int i = 0; i < inputs.size(); i++) {
+                decoder.setInput(i, inputs.get(i));
+            }
+
+            int paramNum = 0;
+            for (String decoderParam : model.getDecoderParams()) {
+                decoder.setParam(paramNum++, decoderParam);
+            }
+
+            return decoder;
+        });
+    }
+
     // XXX hack
     // The net search pane holds onto the old tree model, which has been
     // replaced. Delete it so it will be re-created attached to the new one.
@@ -366,25 +486,106 @@ public final class MainWindow extends JPanel implements ActionListener {
 
     void setSearch(String searchString) throws SearchFormatException {
         currentSearch = new Search(waveformDataModel, searchString);
+        currentSearchString = searchString;
+        if (searchResultCache.get(currentSearch) == null) {
+            fillSearchCache(searchString);
+        }
+    }
+
+    /// Find all matches for the search in the background so subsequent
+    /// next/prev operations don't need to scan. This uses its own Search
+    /// object so it doesn't share state with the one used by findNext/Prev,
+    /// which may run concurrently.
+    private void fillSearchCache(String searchString) throws SearchFormatException {
+        cancelCacheFill();
+        Search search = new Search(waveformDataModel, searchString);
+        cacheFillWorker = new SearchWorker<>(search::getAllMatches, 0,
+            waveformDataModel.getMaxTimestamp(), null, matches -> {
+                cacheFillWorker = null;
+                if (matches != null) {
+                    searchResultCache.put(search, matches);
+                }
+            });
+        cacheFillWorker.execute();
+    }
+
+    private void cancelCacheFill() {
+        if (cacheFillWorker != null) {
+            cacheFillWorker.cancel(false);
+            cacheFillWorker = null;
+        }
     }
 
     void findNext(boolean extendSelection) {
         if (currentSearch != null) {
-            long newTimestamp =
-                currentSearch.getNextMatch(waveformPresentationModel.getCursorPosition());
-            if (newTimestamp >= 0) {
-                waveformPresentationModel.setCursorPosition(newTimestamp, extendSelection);
+            long startTimestamp = waveformPresentationModel.getCursorPosition();
+            MatchList matches = searchResultCache.get(currentSearch);
+            if (matches != null) {
+                moveCursorToMatch(matches.findNext(startTimestamp), extendSelection);
+                return;
             }
+
+            Search search = newScanSearch();
+            startSearch(listener -> search.getNextMatch(startTimestamp, listener),
+                startTimestamp, waveformDataModel.getMaxTimestamp(), extendSelection);
         }
     }
 
     void findPrev(boolean extendSelection) {
         if (currentSearch != null) {
-            long newTimestamp =
-                currentSearch.getPreviousMatch(waveformPresentationModel.getCursorPosition());
-            if (newTimestamp >= 0) {
-                waveformPresentationModel.setCursorPosition(newTimestamp, extendSelection);
+            long startTimestamp = waveformPresentationModel.getCursorPosition();
+            MatchList matches = searchResultCache.get(currentSearch);
+            if (matches != null) {
+                moveCursorToMatch(matches.findPrevious(startTimestamp), extendSelection);
+                return;
             }
+
+            Search search = newScanSearch();
+            startSearch(listener -> search.getPreviousMatch(startTimestamp, listener),
+                startTimestamp, 0, extendSelection);
+        }
+    }
+
+    /// The expression nodes in a Search cache state between steps, so each
+    /// background scan needs its own. Cancelling a scan doesn't stop it
+    /// immediately, so the previous one may still be running when the next
+    /// one starts.
+    private Search newScanSearch() {
+        try {
+            return new Search(waveformDataModel, currentSearchString);
+        } catch (SearchFormatException exc) {
+            // This already parsed successfully in setSearch.
+            throw new IllegalStateException(exc);
+        }
+    }
+
+    /// Run the search in the background. When it completes, move the cursor
+    /// to the match (unless the user has moved it in the meantime).
+    private void startSearch(SearchWorker.SearchTask<Long> task, long startTimestamp,
+        long endTimestamp, boolean extendSelection) {
+        cancelSearch();
+        ProgressMonitor monitor = new ProgressMonitor(this, "Searching...", "", 0, 100);
+        searchWorker = new SearchWorker<>(task, startTimestamp, endTimestamp, monitor,
+            newTimestamp -> {
+                searchWorker = null;
+                if (waveformPresentationModel.getCursorPosition() == startTimestamp) {
+                    moveCursorToMatch(newTimestamp, extendSelection);
+                }
+            });
+        searchWorker.execute();
+    }
+
+    /// @param timestamp Location of match, or -1 if there wasn't one.
+    private void moveCursorToMatch(long timestamp, boolean extendSelection) {
+        if (timestamp >= 0) {
+            waveformPresentationModel.setCursorPosition(timestamp, extendSelection);
+        }
+    }
+
+    private void cancelSearch() {
+        if (searchWorker != null) {
+            searchWorker.cancel(false);
+            searchWorker = null;
         }
     }
 
@@ -398,6 +599,17 @@ public final class MainWindow extends JPanel implements ActionListener {
                 "Error writing waveform settings. The view configuration will not be restored the next time this is loaded",
                 JOptionPane.ERROR_MESSAGE);
         }
+
+        // If the cache is still being read, nets it is restoring look like
+        // they haven't been decoded, and writing now would drop them.
+        if (decodedNetCache != null && cacheRestore == null) {
+            decodedNetCache.writeInBackground().whenComplete((result, exc) -> {
+                if (exc != null) {
+                    // Not fatal: the nets will be decoded again next time.
+                    System.out.println("Error writing decoded net cache: " + exc.getCause());
+                }
+            });
+        }
     }
 
     private void buildNetMenu() {
@@ -19,8 +19,6 @@ package waveview;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Rectangle;
-import java.util.Iterator;
-import waveview.wavedata.Transition;
 import waveview.wavedata.TransitionVector;
 
 ///
@@ -28,9 +26,17 @@ import waveview.wavedata.TransitionVector;
 /// bit in it.
 ///
 final class MultiBitPainter implements WaveformPainter {
-    private final int[] polygonXPoints = new int[3];
-    private final int[] polygonYPoints = new int[3];
+    private final PrimitiveBatch batch = new PrimitiveBatch();
+    private final ColumnBuffer columns = new ColumnBuffer();
     private final static String ELLIPSIS = "\u2026";
+    private static final int MAX_CACHED_LABELS = 16384;
+    private static final LabelCache LABEL_CACHE = new LabelCache(MAX_CACHED_LABELS);
+
+    /// Labels keep references to transition vectors, so this should be
+    /// called when nets are removed.
+    static void clearLabelCache() {
+        LABEL_CACHE.clear();
+    }
 
     @Override
     public void paint(Graphics g, TransitionVector transitionVector, int topOffset,
@@ -39,127 +45,155 @@ final class MultiBitPainter implements WaveformPainter {
         int fontBaseline = topOffset + (DrawMetrics.WAVEFORM_HEIGHT + metrics.getHeight()) / 2
             - metrics.getDescent();
 
+        // Include columns just outside the view, because the twiddles of
+        // transitions there extend into it.
+        int firstColumn = visibleRect.x - DrawMetrics.WAVEFORM_TRANSITION_WIDTH;
+        int columnCount = visibleRect.width + DrawMetrics.WAVEFORM_TRANSITION_WIDTH * 2 + 1;
+        columns.query(transitionVector, firstColumn, columnCount, horizontalScale);
+
         boolean lastValueWasZ = false;
         boolean lastValueWasX = false;
-        int lastX = visibleRect.x + visibleRect.width; // Don't draw before the first segment
-        String previousValue = "";
-        long firstTimestamp = (long) (visibleRect.x / horizontalScale);
-
-        g.setColor(AppPreferences.getInstance().waveformColor);
-
-        Iterator<Transition> i = transitionVector.findTransition(firstTimestamp);
-        while (true) {
-            // Draw the segment to the left of this transition
-            Transition transition = i.next();
+        int lastX = firstColumn + columnCount; // Don't draw before the first segment
+        int previousIndex = columns.valueIndices[0] - columns.transitionCounts[0];
+        if (previousIndex >= 0) {
+            // The span that is at the left edge of the view. Its label is
+            // centered using the actual start of the span.
+            byte valueFlags = transitionVector.getValueFlags(previousIndex);
+            lastValueWasZ = (valueFlags & TransitionVector.VALUE_Z) != 0;
+            lastValueWasX = (valueFlags & TransitionVector.VALUE_X) != 0;
+            lastX = (int) (transitionVector.getTimestamp(previousIndex) * horizontalScale);
+        }
 
-            boolean isZ = transition.isZ();
-            boolean isX = !isZ && transition.isX();
+        for (int column = 0; column < columnCount; column++) {
+            if (columns.transitionCounts[column] == 0) {
+                continue;
+            }
 
-            // Compute the boundaries of this segment
-            int x = (int) (transition.getTimestamp() * horizontalScale);
+            int x = firstColumn + column;
+            byte valueFlags = columns.flags[column];
+            boolean isZ = (valueFlags & TransitionVector.VALUE_Z) != 0;
+            boolean isX = (valueFlags & TransitionVector.VALUE_X) != 0;
 
             // Draw transition
             if (x - lastX > DrawMetrics.WAVEFORM_TRANSITION_WIDTH * 2) {
                 // Draw left part of twiddle >
                 if (!lastValueWasZ) {
                     drawTwiddleHalf(
-                        g, topOffset, x, x - DrawMetrics.WAVEFORM_TRANSITION_WIDTH, lastValueWasX);
+                        topOffset, x, x - DrawMetrics.WAVEFORM_TRANSITION_WIDTH, lastValueWasX);
                 }
 
                 // Draw right part of twiddle: <
                 if (!isZ) {
-                    drawTwiddleHalf(
-                        g, topOffset, x, x + DrawMetrics.WAVEFORM_TRANSITION_WIDTH, isX);
+                    drawTwiddleHalf(topOffset, x, x + DrawMetrics.WAVEFORM_TRANSITION_WIDTH, isX);
                 }
             } else if (x > lastX) {
                 // Draw squished net values
-                g.fillRect(x - DrawMetrics.WAVEFORM_TRANSITION_WIDTH, topOffset,
+                batch.addFilledRect(false, x - DrawMetrics.WAVEFORM_TRANSITION_WIDTH, topOffset,
                     DrawMetrics.WAVEFORM_TRANSITION_WIDTH * 2, DrawMetrics.WAVEFORM_HEIGHT);
             }
 
-            drawSpan(g, Math.max(visibleRect.x, lastX + DrawMetrics.WAVEFORM_TRANSITION_WIDTH),
-                Math.min(
-                    visibleRect.x + visibleRect.width, x - DrawMetrics.WAVEFORM_TRANSITION_WIDTH),
-                topOffset, previousValue, lastValueWasZ, lastValueWasX, fontBaseline, metrics);
-
-            // Stop drawing when we've gone past the edge of the viewport
-            // (waveform is no longer visible).
-            if (x > visibleRect.x + visibleRect.width) {
-                break;
+            if ((valueFlags & TransitionVector.COLUMN_CONFLICT) != 0) {
+                // Some of the collapsed transitions are X
+                batch.addLine(true, x, topOffset, x, topOffset + DrawMetrics.WAVEFORM_HEIGHT);
             }
 
-            previousValue = formatter.format(transition);
+            // Draw the segment to the left of this transition
+            drawSpan(lastX + DrawMetrics.WAVEFORM_TRANSITION_WIDTH,
+                x - DrawMetrics.WAVEFORM_TRANSITION_WIDTH, visibleRect, topOffset,
+                transitionVector, previousIndex, formatter, lastValueWasZ, lastValueWasX,
+                fontBaseline, metrics);
+
+            previousIndex = columns.valueIndices[column];
             lastValueWasZ = isZ;
             lastValueWasX = isX;
             lastX = x;
-            if (!i.hasNext()) {
-                // End of the waveform. Draw remaining span running off to the
-                // right...
-                drawSpan(g, Math.max(visibleRect.x, lastX + DrawMetrics.WAVEFORM_TRANSITION_WIDTH),
-                    visibleRect.x + visibleRect.width, topOffset, previousValue, lastValueWasZ,
-                    lastValueWasX, fontBaseline, metrics);
-                break;
-            }
         }
+
+        if (previousIndex >= 0) {
+            // Draw the segment running off the right edge of the view. It
+            // ends at the next transition, or continues indefinitely if
+            // this is the end of the waveform. The twiddle for the next
+            // transition is not visible.
+            int nextIndex = previousIndex + 1;
+            int right = nextIndex < transitionVector.getTransitionCount()
+                ? (int) (transitionVector.getTimestamp(nextIndex) * horizontalScale)
+                    - DrawMetrics.WAVEFORM_TRANSITION_WIDTH
+                : Integer.MAX_VALUE / 2;
+            drawSpan(lastX + DrawMetrics.WAVEFORM_TRANSITION_WIDTH, right, visibleRect, topOffset,
+                transitionVector, previousIndex, formatter, lastValueWasZ, lastValueWasX,
+                fontBaseline, metrics);
+        }
+
+        batch.flush(g);
     }
 
-    private void drawTwiddleHalf(
-        Graphics g, int topOffset, int transitionX, int baseX, boolean conflict) {
+    private void drawTwiddleHalf(int topOffset, int transitionX, int baseX, boolean conflict) {
         if (conflict) {
-            polygonXPoints[0] = baseX;
-            polygonYPoints[0] = topOffset;
-            polygonXPoints[1] = transitionX;
-            polygonYPoints[1] = topOffset + DrawMetrics.WAVEFORM_HEIGHT / 2;
-            polygonXPoints[2] = baseX;
-            polygonYPoints[2] = topOffset + DrawMetrics.WAVEFORM_HEIGHT;
-            g.setColor(AppPreferences.getInstance().conflictColor);
-            g.fillPolygon(polygonXPoints, polygonYPoints, 3);
+            batch.addConflictTriangle(baseX, topOffset, transitionX,
+                topOffset + DrawMetrics.WAVEFORM_HEIGHT / 2, baseX,
+                topOffset + DrawMetrics.WAVEFORM_HEIGHT);
         }
 
-        g.setColor(AppPreferences.getInstance().waveformColor);
-        g.drawLine(baseX, topOffset, transitionX, topOffset + DrawMetrics.WAVEFORM_HEIGHT / 2);
-        g.drawLine(baseX, topOffset + DrawMetrics.WAVEFORM_HEIGHT, transitionX,
+        batch.addLine(false, baseX, topOffset, transitionX,
+            topOffset + DrawMetrics.WAVEFORM_HEIGHT / 2);
+        batch.addLine(false, baseX, topOffset + DrawMetrics.WAVEFORM_HEIGHT, transitionX,
             topOffset + DrawMetrics.WAVEFORM_HEIGHT / 2);
     }
 
-    private void drawSpan(Graphics g, int left, int right, int top, String label, boolean isZ,
+    /// @param left Left edge of the span, which may be outside visibleRect
+    /// @param right Right edge of the span, which may be outside visibleRect
+    /// @param index Index of the transition at the start of the span. The
+    ///   label is only formatted if there is room to draw it.
+    private void drawSpan(int left, int right, Rectangle visibleRect, int top,
+        TransitionVector transitionVector, int index, ValueFormatter formatter, boolean isZ,
         boolean isX, int fontBaseline, FontMetrics metrics) {
-        if (right <= left) {
+        int visibleLeft = Math.max(left, visibleRect.x);
+        int visibleRight = Math.min(right, visibleRect.x + visibleRect.width);
+        if (visibleRight <= visibleLeft) {
             return; // Will end up with single pixel boogers in some cases
                     // otherwise
         }
 
         if (isZ) {
-            g.drawLine(left, top + DrawMetrics.WAVEFORM_HEIGHT / 2, right,
+            batch.addLine(false, visibleLeft, top + DrawMetrics.WAVEFORM_HEIGHT / 2, visibleRight,
                 top + DrawMetrics.WAVEFORM_HEIGHT / 2);
         } else {
             if (isX) {
-                g.setColor(AppPreferences.getInstance().conflictColor);
-                g.fillRect(left, top, right - left, DrawMetrics.WAVEFORM_HEIGHT);
-                g.setColor(AppPreferences.getInstance().waveformColor);
+                batch.addFilledRect(true, visibleLeft, top, visibleRight - visibleLeft,
+                    DrawMetrics.WAVEFORM_HEIGHT);
             }
 
-            g.drawLine(left, top, right, top);
-            g.drawLine(
-                left, top + DrawMetrics.WAVEFORM_HEIGHT, right, top + DrawMetrics.WAVEFORM_HEIGHT);
+            batch.addLine(false, visibleLeft, top, visibleRight, top);
+            batch.addLine(false, visibleLeft, top + DrawMetrics.WAVEFORM_HEIGHT, visibleRight,
+                top + DrawMetrics.WAVEFORM_HEIGHT);
+
+            // The waveform is rendered in tiles, and the label position
+            // must not depend on which tile is being drawn, otherwise
+            // labels that cross tile boundaries would be drawn twice. If the
+            // whole span fits in a tile, center the label in it (each tile
+            // draws the part of the label that overlaps it). Otherwise,
+            // center a label in the part of the span in each tile.
+            if (right - left <= visibleRect.width) {
+                visibleLeft = left;
+                visibleRight = right;
+            }
 
             // Draw text label with values
-            int stringWidth = metrics.stringWidth(label);
-            int visibleWidth = right - left;
-            if (stringWidth < visibleWidth) {
+            int visibleWidth = visibleRight - visibleLeft;
+            int ellipsisWidth = metrics.stringWidth(ELLIPSIS);
+            if (ellipsisWidth >= visibleWidth) {
+                return; // Nothing will fit, don't bother formatting
+            }
+
+            LabelCache.Label label = LABEL_CACHE.get(transitionVector, index, formatter, metrics);
+            if (label.width < visibleWidth) {
                 // Fits, draw it.
-                int fontX = (visibleWidth - stringWidth) / 2 + left;
-                g.drawString(label, fontX, fontBaseline);
+                int fontX = (visibleWidth - label.width) / 2 + visibleLeft;
+                batch.addLabel(label.text, fontX, fontBaseline);
             } else {
-                // Try to squeeze in an ellipsis
-                stringWidth = metrics.stringWidth(ELLIPSIS);
-                if (stringWidth < visibleWidth) {
-                    // At least this fits
-                    int fontX = (visibleWidth - stringWidth) / 2 + left;
-                    g.drawString("\u2026", fontX, fontBaseline);
-                }
-
-                // else we draw no label (it won't fit)
+                // Squeeze in an ellipsis
+                int fontX = (visibleWidth - ellipsisWidth) / 2 + visibleLeft;
+                batch.addLabel(ELLIPSIS, fontX, fontBaseline);
             }
         }
     }
@@ -47,6 +47,8 @@ import javax.swing.ListModel;
 import javax.swing.TransferHandler;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
 import javax.swing.SwingUtilities;
 import waveview.decoder.Decoder;
 import waveview.wavedata.NetDataModel;
@@ -60,6 +62,7 @@ final class NetNameView
     extends JList<Integer> implements WaveformPresentationModel.Listener, ActionListener {
     private final WaveformPresentationModel waveformPresentationModel;
     private final WaveformDataModel waveformDataModel;
+    private final BackgroundDecoder backgroundDecoder;
     private final JPopupMenu popupMenu;
     private static final String DECODE_PREFIX = "decode.";
 
@@ -116,10 +119,14 @@ final class NetNameView
             g.setColor(currentNetIsSelected ? prefs.listSelectionFgColor : prefs.valueColor);
             g.setFont(valueFont);
 
-            Transition t =
-                netDataModel.findTransition(waveformPresentationModel.getCursorPosition()).next();
-            g.drawString(waveformPresentationModel.getValueFormatter(currentNet).format(t), 1,
-                valueBaseline);
+            if (netDataModel.isDecoding()) {
+                g.drawString(BackgroundDecoder.DECODING_LABEL, 1, valueBaseline);
+            } else {
+                Transition t = netDataModel.findTransition(
+                    waveformPresentationModel.getCursorPosition()).next();
+                g.drawString(waveformPresentationModel.getValueFormatter(currentNet).format(t), 1,
+                    valueBaseline);
+            }
         }
 
         @Override
@@ -256,10 +263,11 @@ final class NetNameView
         }
     }
 
-    NetNameView(
-        WaveformPresentationModel waveformPresentationModel, WaveformDataModel waveformDataModel) {
+    NetNameView(WaveformPresentationModel waveformPresentationModel,
+        WaveformDataModel waveformDataModel, BackgroundDecoder backgroundDecoder) {
         this.waveformPresentationModel = waveformPresentationModel;
         this.waveformDataModel = waveformDataModel;
+        this.backgroundDecoder = backgroundDecoder;
         waveformPresentationModel.addListener(this);
         setModel(new ListModelAdapter());
         setCellRenderer(new NetNameRenderer());
@@ -284,15 +292,34 @@ final class NetNameView
             subItem.addActionListener(this);
         }
 
-        JMenuItem decodeMenu = new JMenu("Decode");
+        // The decoder list is filled in the first time this is opened, so
+        // decoder plugins aren't loaded at startup.
+        JMenu decodeMenu = new JMenu("Decode");
+        decodeMenu.addMenuListener(new MenuListener() {
+            @Override
+            public void menuSelected(MenuEvent event) {
+                if (decodeMenu.getItemCount() == 0) {
+                    addDecoderItems(decodeMenu);
+                }
+            }
+
+            @Override
+            public void menuDeselected(MenuEvent event) {}
+
+            @Override
+            public void menuCanceled(MenuEvent event) {}
+        });
+
+        popupMenu.add(decodeMenu);
+    }
+
+    private void addDecoderItems(JMenu decodeMenu) {
         for (String decoderName : Decoder.getDecoderList()) {
             JMenuItem subItem = new JMenuItem(decoderName);
             decodeMenu.add(subItem);
             subItem.addActionListener(this);
             subItem.setActionCommand(DECODE_PREFIX + decoderName);
         }
-
-        popupMenu.add(decodeMenu);
     }
 
     @Override
@@ -399,7 +426,7 @@ final class NetNameView
         JFrame parentWindow = (JFrame) SwingUtilities.getWindowAncestor(this);
         DecoderConfigWindow configWindow = new DecoderConfigWindow(
             parentWindow, decoderName, decoder, waveformPresentationModel,
-            waveformDataModel, getSelectedIndices());
+            waveformDataModel, backgroundDecoder, getSelectedIndices());
         configWindow.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         configWindow.setLocationRelativeTo(parentWindow);
         configWindow.setVisible(true);
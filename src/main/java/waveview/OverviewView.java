@@ -0,0 +1,165 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package waveview;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import javax.swing.JPanel;
+import waveview.wavedata.ActivityHistogram;
+import waveview.wavedata.WaveformDataModel;
+
+///
+/// Strip above the timescale that shows the entire waveform compressed to
+/// the width of the window. Bar heights show how many transitions occur
+/// at each point in time (using the precomputed ActivityHistogram), and
+/// a box shows which part is currently visible in the waveform view.
+/// Clicking or dragging in it scrolls the waveform view to that time.
+///
+final class OverviewView extends JPanel implements WaveformPresentationModel.Listener {
+    private final WaveformPresentationModel waveformPresentationModel;
+    private final WaveformDataModel waveformDataModel;
+    private final WaveformView waveformView;
+
+    OverviewView(WaveformPresentationModel waveformPresentationModel,
+        WaveformDataModel waveformDataModel, WaveformView waveformView) {
+        this.waveformPresentationModel = waveformPresentationModel;
+        this.waveformDataModel = waveformDataModel;
+        this.waveformView = waveformView;
+        waveformPresentationModel.addListener(this);
+        setPreferredSize(new Dimension(200, DrawMetrics.OVERVIEW_HEIGHT));
+
+        MouseAdapter mouseHandler = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                scrollTo(e.getX());
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                scrollTo(e.getX());
+            }
+        };
+
+        addMouseListener(mouseHandler);
+        addMouseMotionListener(mouseHandler);
+    }
+
+    /// Center the waveform view on the time at this x coordinate.
+    private void scrollTo(int x) {
+        double horizontalScale = waveformPresentationModel.getHorizontalScale();
+        Rectangle visibleRect = waveformView.getVisibleRect();
+        visibleRect.x = (int) (xCoordinateToTimestamp(x) * horizontalScale)
+            - visibleRect.width / 2;
+        waveformView.scrollRectToVisible(visibleRect);
+    }
+
+    @Override
+    public void cursorChanged(long oldTimestamp, long newTimestamp) {
+        repaint();
+    }
+
+    @Override
+    public void netsAdded(int firstIndex, int lastIndex) {
+        repaint();
+    }
+
+    @Override
+    public void netsRemoved(int firstIndex, int lastIndex) {
+        repaint();
+    }
+
+    @Override
+    public void markerChanged(long timestamp) {}
+
+    @Override
+    public void scaleChanged(double newScale) {
+        repaint();
+    }
+
+    @Override
+    public void formatChanged(int index) {}
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        AppPreferences prefs = AppPreferences.getInstance();
+        setBackground(prefs.backgroundColor);
+        super.paintComponent(g);
+
+        if (waveformDataModel.getMaxTimestamp() == 0) {
+            return;
+        }
+
+        drawActivity(g, prefs);
+
+        // Outline the part that is visible in the waveform view
+        double horizontalScale = waveformPresentationModel.getHorizontalScale();
+        Rectangle visibleRect = waveformView.getVisibleRect();
+        int left = timestampToXCoordinate((long) (visibleRect.x / horizontalScale));
+        int right = timestampToXCoordinate(
+            (long) ((visibleRect.x + visibleRect.width) / horizontalScale));
+        g.setColor(prefs.waveformColor);
+        g.drawRect(left, 0, Math.max(1, right - left), getHeight() - 1);
+
+        g.setColor(prefs.cursorColor);
+        int cursorX = timestampToXCoordinate(waveformPresentationModel.getCursorPosition());
+        g.drawLine(cursorX, 0, cursorX, getHeight());
+    }
+
+    /// Draw a bar for each pixel column. Each may cover several histogram
+    /// buckets, in which case use the busiest one, so short bursts of
+    /// activity are still visible. Heights are logarithmic, because
+    /// activity in different parts of a simulation often varies by
+    /// orders of magnitude.
+    private void drawActivity(Graphics g, AppPreferences prefs) {
+        ActivityHistogram histogram = waveformDataModel.getActivityHistogram();
+        if (histogram.getMaxCount() == 0) {
+            return;
+        }
+
+        g.setColor(prefs.timingMarkerColor);
+        int height = getHeight();
+        double logMaxCount = Math.log1p(histogram.getMaxCount());
+        int width = getWidth();
+        for (int x = 0; x < width; x++) {
+            int firstBucket = histogram.getBucket(xCoordinateToTimestamp(x));
+            int lastBucket = Math.max(firstBucket,
+                histogram.getBucket(xCoordinateToTimestamp(x + 1)) - 1);
+            long count = 0;
+            for (int bucket = firstBucket; bucket <= lastBucket; bucket++) {
+                count = Math.max(count, histogram.getCount(bucket));
+            }
+
+            if (count > 0) {
+                int barHeight = (int) Math.max(1,
+                    Math.log1p(count) / logMaxCount * (height - 2));
+                g.drawLine(x, height - barHeight, x, height);
+            }
+        }
+    }
+
+    private long xCoordinateToTimestamp(int x) {
+        return (long) ((double) x * waveformDataModel.getMaxTimestamp() / getWidth());
+    }
+
+    private int timestampToXCoordinate(long timestamp) {
+        return (int) ((double) timestamp * getWidth() / waveformDataModel.getMaxTimestamp());
+    }
+}
@@ -0,0 +1,231 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package waveview;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+///
+/// Writes a PNG file a few rows at a time, so the whole image never needs
+/// to be in memory. ImageIO requires a complete image. Each group of rows
+/// is started with startRows, then filled in with strips from left to
+/// right. Groups must be written top to bottom. A group of a single row is
+/// compressed as its strips arrive, so even a full row doesn't need to be
+/// held in memory.
+///
+final class PngStreamWriter implements Closeable {
+    private static final byte[] SIGNATURE = {
+        (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'
+    };
+    private static final int MAX_CHUNK_SIZE = 0x10000;
+    private static final int BIT_DEPTH = 8;
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int FILTER_NONE = 0;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    private final DeflaterOutputStream imageData;
+    private int rowsWritten;
+
+    // The group of rows being filled in
+    private int groupRows;
+    private int groupX;
+
+    // Scanlines for the group, each starting with its filter byte. This is
+    // only used when a group has more than one row.
+    private byte[] groupBuffer;
+
+    PngStreamWriter(OutputStream out, int width, int height) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+
+        this.out.write(SIGNATURE);
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(width);
+        header.writeInt(height);
+        header.writeByte(BIT_DEPTH);
+        header.writeByte(COLOR_TYPE_RGB);
+        header.writeByte(0); // Compression method
+        header.writeByte(0); // Filter method
+        header.writeByte(0); // Interlace method
+        writeChunk("IHDR", headerBytes.toByteArray(), headerBytes.size());
+
+        imageData = new DeflaterOutputStream(new ImageDataStream(), new Deflater(), MAX_CHUNK_SIZE);
+    }
+
+    /// Start a group of rows. The previous group must be complete.
+    /// @throws IllegalArgumentException if this goes past the bottom of the
+    ///   image, or there are several rows and they are too wide to buffer.
+    void startRows(int rowCount) {
+        if (groupRows != 0) {
+            throw new IllegalStateException("previous rows are incomplete");
+        }
+
+        if (rowCount <= 0 || rowsWritten + rowCount > height) {
+            throw new IllegalArgumentException("too many rows");
+        }
+
+        if (rowCount > 1) {
+            long bufferSize = rowCount * (width * 3L + 1);
+            if (bufferSize > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("rows are too wide to buffer");
+            }
+
+            if (groupBuffer == null || groupBuffer.length != bufferSize) {
+                groupBuffer = new byte[(int) bufferSize];
+            }
+        }
+
+        groupRows = rowCount;
+        groupX = 0;
+    }
+
+    /// Write the next part of the current group of rows, to the right of
+    /// the previous one. When it reaches the right edge of the image, the
+    /// group is complete.
+    /// @param strip Must be as tall as the group. The alpha channel, if any,
+    ///   is ignored.
+    void writeStrip(BufferedImage strip) throws IOException {
+        if (groupRows == 0) {
+            throw new IllegalStateException("no rows started");
+        }
+
+        if (strip.getHeight() != groupRows) {
+            throw new IllegalArgumentException("strip is " + strip.getHeight()
+                + " rows tall, expected " + groupRows);
+        }
+
+        int stripWidth = strip.getWidth();
+        if (stripWidth > width - groupX) {
+            throw new IllegalArgumentException("strip extends past the right edge");
+        }
+
+        int[] pixels = new int[stripWidth];
+        byte[] pixelBytes = new byte[stripWidth * 3];
+        int scanlineLength = width * 3 + 1;
+        for (int y = 0; y < groupRows; y++) {
+            strip.getRGB(0, y, stripWidth, 1, pixels, 0, stripWidth);
+            int offset = 0;
+            for (int pixel : pixels) {
+                pixelBytes[offset++] = (byte) (pixel >> 16);
+                pixelBytes[offset++] = (byte) (pixel >> 8);
+                pixelBytes[offset++] = (byte) pixel;
+            }
+
+            if (groupRows == 1) {
+                if (groupX == 0) {
+                    imageData.write(FILTER_NONE);
+                }
+
+                imageData.write(pixelBytes);
+            } else {
+                int rowStart = y * scanlineLength;
+                groupBuffer[rowStart] = FILTER_NONE;
+                System.arraycopy(pixelBytes, 0, groupBuffer, rowStart + 1 + groupX * 3,
+                    pixelBytes.length);
+            }
+        }
+
+        groupX += stripWidth;
+        if (groupX == width) {
+            if (groupRows > 1) {
+                imageData.write(groupBuffer, 0, groupRows * scanlineLength);
+            }
+
+            rowsWritten += groupRows;
+            groupRows = 0;
+        }
+    }
+
+    /// Writes the end of the file. This does not close the underlying
+    /// stream.
+    @Override
+    public void close() throws IOException {
+        if (rowsWritten != height) {
+            throw new IOException("only " + rowsWritten + " of " + height + " rows written");
+        }
+
+        imageData.close();
+        writeChunk("IEND", new byte[0], 0);
+        out.flush();
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /// Splits the compressed data into IDAT chunks.
+    private final class ImageDataStream extends OutputStream {
+        private final byte[] buffer = new byte[MAX_CHUNK_SIZE];
+        private int length;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == buffer.length) {
+                flushChunk();
+            }
+
+            buffer[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int offset, int count) throws IOException {
+            while (count > 0) {
+                if (length == buffer.length) {
+                    flushChunk();
+                }
+
+                int copyLength = Math.min(count, buffer.length - length);
+                System.arraycopy(b, offset, buffer, length, copyLength);
+                length += copyLength;
+                offset += copyLength;
+                count -= copyLength;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flushChunk();
+        }
+
+        private void flushChunk() throws IOException {
+            if (length > 0) {
+                writeChunk("IDAT", buffer, length);
+                length = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package waveview;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+
+///
+/// Collects the lines, filled shapes, and labels for a waveform row so
+/// they can be drawn with one call per color rather than one call per
+/// primitive. Java2D has a fairly high fixed cost per call, which
+/// otherwise dominates when there are many short spans. Painters reuse an
+/// instance between rows, and flush it at the end of each.
+///
+/// Lines are collected into a Path2D. Filled rectangles are not, because
+/// filling a path made of many overlapping subpaths is very slow. When
+/// zoomed out, adjacent columns produce overlapping rectangles, so those
+/// are merged into runs and drawn with fillRect.
+///
+final class PrimitiveBatch {
+    private final Path2D.Float waveformLines = new Path2D.Float();
+    private final Path2D.Float conflictLines = new Path2D.Float();
+    private final Path2D.Float conflictTriangles = new Path2D.Float();
+    private final RectList waveformRects = new RectList();
+    private final RectList conflictRects = new RectList();
+    private String[] labelText = new String[16];
+    private int[] labelX = new int[16];
+    private int[] labelY = new int[16];
+    private int labelCount;
+
+    /// @param conflict If true, draw in the conflict color, otherwise the
+    ///   waveform color.
+    void addLine(boolean conflict, int x1, int y1, int x2, int y2) {
+        Path2D.Float path = conflict ? conflictLines : waveformLines;
+        path.moveTo(x1, y1);
+        path.lineTo(x2, y2);
+    }
+
+    void addFilledRect(boolean conflict, int x, int y, int width, int height) {
+        (conflict ? conflictRects : waveformRects).add(x, y, width, height);
+    }
+
+    /// Triangles are only drawn in the conflict color.
+    void addConflictTriangle(int x1, int y1, int x2, int y2, int x3, int y3) {
+        Path2D.Float path = conflictTriangles;
+        path.moveTo(x1, y1);
+        path.lineTo(x2, y2);
+        path.lineTo(x3, y3);
+        path.closePath();
+    }
+
+    /// Labels are drawn in the waveform color, on top of everything else.
+    /// @param x Left edge of the text
+    /// @param y Baseline of the text
+    void addLabel(String text, int x, int y) {
+        if (labelCount == labelText.length) {
+            labelText = Arrays.copyOf(labelText, labelCount * 2);
+            labelX = Arrays.copyOf(labelX, labelCount * 2);
+            labelY = Arrays.copyOf(labelY, labelCount * 2);
+        }
+
+        labelText[labelCount] = text;
+        labelX[labelCount] = x;
+        labelY[labelCount] = y;
+        labelCount++;
+    }
+
+    /// Draw everything that has been added and reset this for the next row.
+    /// Filled areas are drawn first, so lines and labels are visible on
+    /// top of them.
+    void flush(Graphics g) {
+        Graphics2D g2d = (Graphics2D) g;
+        AppPreferences prefs = AppPreferences.getInstance();
+        g.setColor(prefs.conflictColor);
+        conflictRects.fill(g);
+        g2d.fill(conflictTriangles);
+        g.setColor(prefs.waveformColor);
+        waveformRects.fill(g);
+        g2d.draw(waveformLines);
+        for (int i = 0; i < labelCount; i++) {
+            g.drawString(labelText[i], labelX[i], labelY[i]);
+        }
+
+        g.setColor(prefs.conflictColor);
+        g2d.draw(conflictLines);
+
+        conflictRects.clear();
+        conflictTriangles.reset();
+        waveformRects.clear();
+        waveformLines.reset();
+        conflictLines.reset();
+        Arrays.fill(labelText, 0, labelCount, null);
+        labelCount = 0;
+    }
+
+    private static final class RectList {
+        private int[] coords = new int[64]; // x, y, width, height
+        private int count;
+
+        void add(int x, int y, int width, int height) {
+            if (count > 0) {
+                // Extend the previous rectangle if this overlaps or touches it
+                int last = (count - 1) * 4;
+                if (coords[last + 1] == y && coords[last + 3] == height
+                    && x >= coords[last] && x <= coords[last] + coords[last + 2]) {
+                    coords[last + 2] = Math.max(coords[last + 2], x + width - coords[last]);
+                    return;
+                }
+            }
+
+            if (count * 4 == coords.length) {
+                coords = Arrays.copyOf(coords, coords.length * 2);
+            }
+
+            int offset = count * 4;
+            coords[offset] = x;
+            coords[offset + 1] = y;
+            coords[offset + 2] = width;
+            coords[offset + 3] = height;
+            count++;
+        }
+
+        void fill(Graphics g) {
+            for (int i = 0; i < count * 4; i += 4) {
+                g.fillRect(coords[i], coords[i + 1], coords[i + 2], coords[i + 3]);
+            }
+        }
+
+        void clear() {
+            count = 0;
+        }
+    }
+}
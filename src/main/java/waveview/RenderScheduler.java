@@ -0,0 +1,62 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package waveview;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import javax.swing.Timer;
+
+///
+/// Defers expensive view updates, like recomputing the layout after the
+/// scale changes, so they run at most once per display frame. If the same
+/// update is requested several times before the frame timer fires, for
+/// example while a zoom key is auto-repeating, only the last one runs and
+/// the intermediate states are never laid out or painted. Updates run on
+/// the event dispatch thread in the order they were first requested.
+///
+final class RenderScheduler {
+    private static final int FRAME_INTERVAL_MS = 16;
+
+    // Keyed by the object that requested the update.
+    private final LinkedHashMap<Object, Runnable> pendingUpdates = new LinkedHashMap<>();
+    private final Timer frameTimer;
+
+    RenderScheduler() {
+        frameTimer = new Timer(FRAME_INTERVAL_MS, e -> runPendingUpdates());
+        frameTimer.setRepeats(false);
+    }
+
+    /// @param key If there is already a pending update with this key, it is
+    ///   replaced, but keeps its original position in the order.
+    void schedule(Object key, Runnable update) {
+        pendingUpdates.put(key, update);
+        if (!frameTimer.isRunning()) {
+            frameTimer.start();
+        }
+    }
+
+    private void runPendingUpdates() {
+        // Updates may schedule more, which will run in the next frame.
+        List<Runnable> updates = new ArrayList<>(pendingUpdates.values());
+        pendingUpdates.clear();
+        for (Runnable update : updates) {
+            update.run();
+        }
+    }
+}
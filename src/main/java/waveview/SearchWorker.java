@@ -0,0 +1,116 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview;
+
+import java.util.concurrent.ExecutionException;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import waveview.search.Search;
+
+///
+/// Runs a search in a separate background thread so the UI doesn't freeze
+/// while scanning a large waveform. Progress is reported as the fraction of
+/// the time range between the start and end timestamps the scan has covered.
+/// When the search completes, it will call into a handler on the main
+/// thread. If the search is cancelled, the handler is not called.
+///
+public final class SearchWorker<T> extends SwingWorker<T, Void> {
+    private final SearchTask<T> task;
+    private final long startTimestamp;
+    private final long endTimestamp;
+    private final ProgressMonitor progressMonitor;
+    private final SearchFinishedHandler<T> finishHandler;
+
+    public interface SearchTask<T> {
+        /// Called on the background thread.
+        /// @param listener Must be passed to the Search so it can report
+        ///   progress and check for cancellation.
+        T run(Search.ProgressListener listener);
+    }
+
+    public interface SearchFinishedHandler<T> {
+        void handleSearchFinished(T result);
+    }
+
+    /// @param startTimestamp Timestamp the scan begins at
+    /// @param endTimestamp Timestamp the scan will end at if no match is
+    ///   found. This is smaller than startTimestamp for backward searches.
+    /// @param progressMonitor May be null if progress shouldn't be displayed.
+    public SearchWorker(SearchTask<T> task, long startTimestamp, long endTimestamp,
+        ProgressMonitor progressMonitor, SearchFinishedHandler<T> finishHandler) {
+        this.task = task;
+        this.startTimestamp = startTimestamp;
+        this.endTimestamp = endTimestamp;
+        this.progressMonitor = progressMonitor;
+        this.finishHandler = finishHandler;
+    }
+
+    @Override
+    public T doInBackground() {
+        return task.run(new Search.ProgressListener() {
+            @Override
+            public boolean updateProgress(long timestamp) {
+                // Accessing the component from a different thread,
+                // technically a no no, but probably okay.
+                if (isCancelled()
+                    || (progressMonitor != null && progressMonitor.isCanceled())) {
+                    return false;
+                }
+
+                if (progressMonitor != null) {
+                    int percent = computePercent(timestamp);
+                    SwingUtilities.invokeLater(() -> progressMonitor.setProgress(percent));
+                }
+
+                return true;
+            }
+        });
+    }
+
+    private int computePercent(long timestamp) {
+        if (startTimestamp == endTimestamp) {
+            return 100;
+        }
+
+        double fraction = (double) (timestamp - startTimestamp)
+            / (double) (endTimestamp - startTimestamp);
+        return (int) Math.max(0, Math.min(100, fraction * 100));
+    }
+
+    // Executed on main thread
+    @Override
+    protected void done() {
+        if (progressMonitor != null) {
+            progressMonitor.close();
+            if (progressMonitor.isCanceled()) {
+                return;
+            }
+        }
+
+        if (isCancelled()) {
+            return;
+        }
+
+        try {
+            finishHandler.handleSearchFinished(get());
+        } catch (InterruptedException | ExecutionException exc) {
+            // This shouldn't happen unless there is a logic bug.
+            System.out.println("SearchWorker: exception " + exc);
+        }
+    }
+}
@@ -18,9 +18,7 @@ package waveview;
 
 import java.awt.Graphics;
 import java.awt.Rectangle;
-import java.util.Iterator;
 import waveview.wavedata.BitValue;
-import waveview.wavedata.Transition;
 import waveview.wavedata.TransitionVector;
 
 ///
@@ -28,87 +26,98 @@ import waveview.wavedata.TransitionVector;
 /// bit in it.
 ///
 final class SingleBitPainter implements WaveformPainter {
+    private final PrimitiveBatch batch = new PrimitiveBatch();
+    private final ColumnBuffer columns = new ColumnBuffer();
+
     @Override
     public void paint(Graphics g, TransitionVector transitionVector, int topOffset,
         Rectangle visibleRect, double horizontalScale, ValueFormatter formatter) {
-        g.setColor(AppPreferences.getInstance().waveformColor);
+        int columnCount = visibleRect.width + 1;
+        columns.query(transitionVector, visibleRect.x, columnCount, horizontalScale);
 
+        // Value at the left edge of the view
         BitValue lastValue = BitValue.ZERO;
-        int lastX = visibleRect.x + visibleRect.width;
-        long firstTimestamp = (long) (visibleRect.x / horizontalScale);
-        Iterator<Transition> i = transitionVector.findTransition(firstTimestamp);
-        while (true) {
-            Transition transition = i.next();
-
-            // Compute the boundaries of this segment
-            int x = (int) (transition.getTimestamp() * horizontalScale);
-            BitValue value = transition.getBit(0);
-
-            drawSpan(g, lastValue, lastX, x, topOffset);
+        int lastX = visibleRect.x + columnCount; // Don't draw before the first transition
+        int startIndex = columns.valueIndices[0] - columns.transitionCounts[0];
+        if (startIndex >= 0) {
+            lastValue = transitionVector.getBit(startIndex, 0);
+            lastX = visibleRect.x;
+        }
 
-            // Draw transition line at beginning of interval
-            drawTransition(g, value, lastValue, x, topOffset);
+        for (int column = 0; column < columnCount; column++) {
+            int transitionCount = columns.transitionCounts[column];
+            if (transitionCount == 0) {
+                continue;
+            }
 
-            if (x > visibleRect.x + visibleRect.width) {
-                break;
+            int x = visibleRect.x + column;
+            BitValue value = transitionVector.getBit(columns.valueIndices[column], 0);
+            drawSpan(lastValue, lastX, x, topOffset);
+            if (transitionCount > 1) {
+                // Draw a single vertical line for all transitions in this
+                // pixel column. It's in the conflict color if any of them
+                // are X.
+                boolean conflict = (columns.flags[column] & TransitionVector.COLUMN_CONFLICT) != 0;
+                batch.addLine(conflict, x, topOffset, x, topOffset + DrawMetrics.WAVEFORM_HEIGHT);
+            } else {
+                // Draw transition line at beginning of interval
+                drawTransition(value, lastValue, x, topOffset);
             }
 
             lastValue = value;
             lastX = x;
-            if (!i.hasNext()) {
-                drawSpan(g, lastValue, x, visibleRect.x + visibleRect.width, topOffset);
-                break;
-            }
         }
+
+        drawSpan(lastValue, lastX, visibleRect.x + columnCount, topOffset);
+        batch.flush(g);
     }
 
-    private void drawTransition(
-        Graphics g, BitValue value, BitValue lastValue, int x, int topOffset) {
+    private void drawTransition(BitValue value, BitValue lastValue, int x, int topOffset) {
         if (lastValue != value) {
             if (lastValue == BitValue.Z && value != BitValue.X) {
                 if (value == BitValue.ZERO) {
-                    g.drawLine(x, topOffset + DrawMetrics.WAVEFORM_HEIGHT / 2, x,
+                    batch.addLine(false, x, topOffset + DrawMetrics.WAVEFORM_HEIGHT / 2, x,
                         topOffset + DrawMetrics.WAVEFORM_HEIGHT);
                 } else {
-                    g.drawLine(x, topOffset + DrawMetrics.WAVEFORM_HEIGHT / 2, x, topOffset);
+                    batch.addLine(
+                        false, x, topOffset + DrawMetrics.WAVEFORM_HEIGHT / 2, x, topOffset);
                 }
             } else if (value == BitValue.Z && lastValue != BitValue.X) {
                 if (lastValue == BitValue.ZERO) {
-                    g.drawLine(x, topOffset + DrawMetrics.WAVEFORM_HEIGHT, x,
+                    batch.addLine(false, x, topOffset + DrawMetrics.WAVEFORM_HEIGHT, x,
                         topOffset + DrawMetrics.WAVEFORM_HEIGHT / 2);
                 } else {
-                    g.drawLine(x, topOffset, x, topOffset + DrawMetrics.WAVEFORM_HEIGHT / 2);
+                    batch.addLine(
+                        false, x, topOffset, x, topOffset + DrawMetrics.WAVEFORM_HEIGHT / 2);
                 }
             } else {
-                g.drawLine(x, topOffset, x, topOffset + DrawMetrics.WAVEFORM_HEIGHT);
+                batch.addLine(false, x, topOffset, x, topOffset + DrawMetrics.WAVEFORM_HEIGHT);
             }
         }
     }
 
-    private void drawSpan(Graphics g, BitValue value, int left, int right, int top) {
+    private void drawSpan(BitValue value, int left, int right, int top) {
         if (left >= right) {
             return;
         }
 
         switch (value) {
             case ONE:
-                g.drawLine(left, top, right, top);
+                batch.addLine(false, left, top, right, top);
                 break;
             case ZERO:
-                g.drawLine(left, top + DrawMetrics.WAVEFORM_HEIGHT, right,
+                batch.addLine(false, left, top + DrawMetrics.WAVEFORM_HEIGHT, right,
                     top + DrawMetrics.WAVEFORM_HEIGHT);
                 break;
             case Z:
-                g.drawLine(left, top + DrawMetrics.WAVEFORM_HEIGHT / 2, right,
+                batch.addLine(false, left, top + DrawMetrics.WAVEFORM_HEIGHT / 2, right,
                     top + DrawMetrics.WAVEFORM_HEIGHT / 2);
                 break;
             case X:
             default:
-                g.setColor(AppPreferences.getInstance().conflictColor);
-                g.fillRect(left, top, right - left, DrawMetrics.WAVEFORM_HEIGHT);
-                g.setColor(AppPreferences.getInstance().waveformColor);
-                g.drawLine(left, top, right, top);
-                g.drawLine(left, top + DrawMetrics.WAVEFORM_HEIGHT, right,
+                batch.addFilledRect(true, left, top, right - left, DrawMetrics.WAVEFORM_HEIGHT);
+                batch.addLine(false, left, top, right, top);
+                batch.addLine(false, left, top + DrawMetrics.WAVEFORM_HEIGHT, right,
                     top + DrawMetrics.WAVEFORM_HEIGHT);
                 break;
         }
@@ -37,16 +37,18 @@ final class TimescaleView extends JPanel implements WaveformPresentationModel.Li
     private final WaveformPresentationModel waveformPresentationModel;
     private final WaveformDataModel waveformDataModel;
     private final Timer timestampDisplayTimer;
+    private final RenderScheduler renderScheduler;
 
-    TimescaleView(
-        WaveformPresentationModel waveformPresentationModel, WaveformDataModel waveformDataModel) {
+    TimescaleView(WaveformPresentationModel waveformPresentationModel,
+        WaveformDataModel waveformDataModel, RenderScheduler renderScheduler) {
         this.waveformPresentationModel = waveformPresentationModel;
         this.waveformDataModel = waveformDataModel;
+        this.renderScheduler = renderScheduler;
         waveformPresentationModel.addListener(this);
         setBackground(AppPreferences.getInstance().backgroundColor);
         setPreferredSize(new Dimension(200, DrawMetrics.TIMESCALE_HEIGHT));
         setFont(new Font("SansSerif", Font.PLAIN, 9));
-        scaleChanged(waveformPresentationModel.getHorizontalScale());
+        adjustCanvasSize();
 
         // The timestamp is shown when the user clicks to set the cursor
         // position. This timer makes it disappear after a bit.
@@ -58,10 +60,6 @@ final class TimescaleView extends JPanel implements WaveformPresentationModel.Li
         timestampDisplayTimer.setRepeats(false);
     }
 
-    private void adjustCanvasSize() {
-        scaleChanged(waveformPresentationModel.getHorizontalScale());
-    }
-
     @Override
     public void cursorChanged(long oldTimestamp, long newTimestamp) {
         int oldX = (int) (oldTimestamp * waveformPresentationModel.getHorizontalScale());
@@ -103,6 +101,10 @@ final class TimescaleView extends JPanel implements WaveformPresentationModel.Li
 
     @Override
     public void scaleChanged(double newScale) {
+        renderScheduler.schedule(this, this::adjustCanvasSize);
+    }
+
+    private void adjustCanvasSize() {
         // Make sure minor ticks are large enough
 
         // Convert to femto seconds, compute unit, then convert back to
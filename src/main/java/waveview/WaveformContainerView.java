@@ -22,6 +22,7 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
+import javax.swing.JLayer;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
@@ -35,16 +36,23 @@ final class WaveformContainerView extends JPanel {
     private final WaveformView waveformPanel;
     private final NetNameView netNameView;
     private final WaveformPresentationModel waveformPresentationModel;
+    private final RenderScheduler renderScheduler = new RenderScheduler();
 
-    WaveformContainerView(
-        WaveformPresentationModel waveformPresentationModel, WaveformDataModel waveformDataModel) {
+    // Timestamp to keep in the center of the view after the pending scale
+    // change is laid out, or -1 if there is none.
+    private long pendingCenterTimestamp = -1;
+
+    WaveformContainerView(WaveformPresentationModel waveformPresentationModel,
+        WaveformDataModel waveformDataModel, BackgroundDecoder backgroundDecoder) {
         super(new BorderLayout());
 
         this.waveformPresentationModel = waveformPresentationModel;
-        waveformPanel = new WaveformView(waveformPresentationModel, waveformDataModel);
+        waveformPanel =
+            new WaveformView(waveformPresentationModel, waveformDataModel, renderScheduler);
         TimescaleView timescaleView =
-            new TimescaleView(waveformPresentationModel, waveformDataModel);
-        JScrollPane scrollPane = new JScrollPane(waveformPanel);
+            new TimescaleView(waveformPresentationModel, waveformDataModel, renderScheduler);
+        JScrollPane scrollPane = new JScrollPane(
+            new JLayer<>(waveformPanel, new WaveformOverlay(waveformPresentationModel)));
         scrollPane.setColumnHeaderView(timescaleView);
         scrollPane.getVerticalScrollBar().setUnitIncrement(DrawMetrics.WAVEFORM_HEIGHT);
         scrollPane.getHorizontalScrollBar().setUnitIncrement(DrawMetrics.MIN_MINOR_TICK_H_SPACE);
@@ -53,7 +61,16 @@ final class WaveformContainerView extends JPanel {
         // and it simplifies the net name layout if we don't need to worry about
         // the wave view changing size.
         scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_ALWAYS);
-        netNameView = new NetNameView(waveformPresentationModel, waveformDataModel);
+
+        // The overview isn't part of the scroll pane, because it always
+        // shows the whole waveform.
+        OverviewView overviewView =
+            new OverviewView(waveformPresentationModel, waveformDataModel, waveformPanel);
+        JPanel waveformContainer = new JPanel(new BorderLayout());
+        waveformContainer.add(overviewView, BorderLayout.NORTH);
+        waveformContainer.add(scrollPane, BorderLayout.CENTER);
+        netNameView =
+            new NetNameView(waveformPresentationModel, waveformDataModel, backgroundDecoder);
 
         JViewport netNameViewport = new JViewport();
         netNameViewport.setView(netNameView);
@@ -65,8 +82,8 @@ final class WaveformContainerView extends JPanel {
         // view so scrolling will work correctly (otherwise they will be out of
         // sync).
         JPanel netNameContainer = new JPanel(new BorderLayout());
-        netNameContainer.add(
-            Box.createVerticalStrut(timescaleView.getPreferredSize().height), BorderLayout.NORTH);
+        netNameContainer.add(Box.createVerticalStrut(overviewView.getPreferredSize().height
+            + timescaleView.getPreferredSize().height), BorderLayout.NORTH);
         netNameContainer.add(netNameBorder, BorderLayout.CENTER);
         netNameContainer.add(
             Box.createVerticalStrut(scrollPane.getHorizontalScrollBar().getPreferredSize().height),
@@ -77,14 +94,18 @@ final class WaveformContainerView extends JPanel {
         // Add a listener for the vertical scrollbar that also controls the net
         // name view.
         JSplitPane splitPane =
-            new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, netNameContainer, scrollPane);
+            new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, netNameContainer, waveformContainer);
         add(splitPane, BorderLayout.CENTER);
         scrollPane.getVerticalScrollBar().addAdjustmentListener(
             (ae) -> netNameViewport.setViewPosition(new Point(0, ae.getValue())));
 
         // Need to repaint when scrolling because values on partially visible
-        // nets will be centered.
-        scrollPane.getHorizontalScrollBar().addAdjustmentListener((ae) -> waveformPanel.repaint());
+        // nets will be centered. The overview shows the visible range, so
+        // also needs to be updated.
+        scrollPane.getHorizontalScrollBar().addAdjustmentListener((ae) -> {
+            waveformPanel.repaint();
+            overviewView.repaint();
+        });
     }
 
     void zoomIn() {
@@ -96,16 +117,25 @@ final class WaveformContainerView extends JPanel {
     }
 
     void setScaleKeepCentered(double newScale) {
-        Rectangle oldVisibleRect = waveformPanel.getVisibleRect();
-        long centerTimestamp = (long) ((oldVisibleRect.x + oldVisibleRect.width / 2)
-            / waveformPresentationModel.getHorizontalScale());
+        // If the previous zoom hasn't been laid out yet, the view is still
+        // scrolled for the old scale, so keep the center it computed.
+        if (pendingCenterTimestamp < 0) {
+            Rectangle oldVisibleRect = waveformPanel.getVisibleRect();
+            pendingCenterTimestamp = (long) ((oldVisibleRect.x + oldVisibleRect.width / 2)
+                / waveformPresentationModel.getHorizontalScale());
+        }
 
         waveformPresentationModel.setHorizontalScale(newScale);
 
-        int centerX = (int) (centerTimestamp * newScale);
-        Rectangle newVisibleRect = waveformPanel.getVisibleRect();
-        newVisibleRect.x = centerX - newVisibleRect.width / 2;
-        waveformPanel.scrollRectToVisible(newVisibleRect);
+        // The views resize in the scheduler, so scroll after they have.
+        renderScheduler.schedule(this, () -> {
+            int centerX =
+                (int) (pendingCenterTimestamp * waveformPresentationModel.getHorizontalScale());
+            pendingCenterTimestamp = -1;
+            Rectangle newVisibleRect = waveformPanel.getVisibleRect();
+            newVisibleRect.x = centerX - newVisibleRect.width / 2;
+            waveformPanel.scrollRectToVisible(newVisibleRect);
+        });
     }
 
     void zoomToSelection() {
@@ -129,10 +159,13 @@ final class WaveformContainerView extends JPanel {
         double newScale = oldScale * ((double) windowWidth / selectionWidth);
         waveformPresentationModel.setHorizontalScale(newScale);
 
-        Rectangle newRect = waveformPanel.getVisibleRect();
-        newRect.x = (int) (lowTimestamp * newScale);
-        newRect.width = (int) (highTimestamp * newScale) - newRect.x;
-        waveformPanel.scrollRectToVisible(newRect);
+        pendingCenterTimestamp = -1;
+        renderScheduler.schedule(this, () -> {
+            Rectangle newRect = waveformPanel.getVisibleRect();
+            newRect.x = (int) (lowTimestamp * newScale);
+            newRect.width = (int) (highTimestamp * newScale) - newRect.x;
+            waveformPanel.scrollRectToVisible(newRect);
+        });
     }
 
     int[] getSelectedNets() {
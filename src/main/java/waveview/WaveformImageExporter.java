@@ -0,0 +1,414 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package waveview;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import waveview.wavedata.NetDataModel;
+import waveview.wavedata.VcdLoader;
+import waveview.wavedata.WaveformDataModel;
+
+///
+/// Renders waveforms for a set of nets over a time range to a PNG image,
+/// without a display. This uses the same painters and formatters as the
+/// waveform view, so the image looks like a screenshot of it, with the
+/// net names on the left. Each net is a horizontal band, which is split
+/// into strips of limited width. The strips are rendered on a pool of
+/// threads and written to the file in order as they finish, so the memory
+/// used doesn't depend on the size of the image. If the image is so wide
+/// that even the rows of one band don't fit in the memory limit, each band
+/// is rendered several times, a few rows at a time.
+///
+/// It can be run from the command line, e.g. to attach images to failure
+/// reports from regression tests:
+///
+///     java -cp WaveView.jar waveview.WaveformImageExporter -o out.png \
+///         -start 1000 -end 2000 -width 4000 trace.vcd top.clk top.data:bin
+///
+public final class WaveformImageExporter {
+    private static final int DEFAULT_WIDTH = 2000;
+    private static final int NAME_MARGIN = 4;
+    private static final int STRIP_WIDTH = 2048;
+    private static final long DEFAULT_MAX_BUFFERED_BYTES = 256L * 1024 * 1024;
+
+    private final List<NetDataModel> nets = new ArrayList<>();
+    private final List<ValueFormatter> formatters = new ArrayList<>();
+    private final Font font = new Font("SansSerif", Font.PLAIN, 9);
+    private long startTimestamp;
+    private long endTimestamp;
+    private int width = DEFAULT_WIDTH;
+
+    // Upper bound on the memory used by strips that have been rendered but
+    // not written yet, and rows that are waiting to be written.
+    private long maxBufferedBytes = DEFAULT_MAX_BUFFERED_BYTES;
+
+    /// Part of a band, rendered as a unit. Coordinates are relative to the
+    /// top left corner of the band.
+    private static final class Strip {
+        final int band;
+        final int x;
+        final int width;
+        final int firstRow;
+        final int rowCount;
+
+        Strip(int band, int x, int width, int firstRow, int rowCount) {
+            this.band = band;
+            this.x = x;
+            this.width = width;
+            this.firstRow = firstRow;
+            this.rowCount = rowCount;
+        }
+    }
+
+    /// Visits strips in the order they are written to the file: groups of
+    /// rows from top to bottom, and the strips of each group left to right.
+    private static final class StripIterator implements Iterator<Strip> {
+        private final int bandCount;
+        private final int imageWidth;
+        private final int rowsPerGroup;
+        private int band;
+        private int x;
+        private int firstRow;
+
+        StripIterator(int bandCount, int imageWidth, int rowsPerGroup) {
+            this.bandCount = bandCount;
+            this.imageWidth = imageWidth;
+            this.rowsPerGroup = rowsPerGroup;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return band < bandCount;
+        }
+
+        @Override
+        public Strip next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            Strip strip = new Strip(band, x, Math.min(STRIP_WIDTH, imageWidth - x), firstRow,
+                Math.min(rowsPerGroup, DrawMetrics.WAVEFORM_V_SPACING - firstRow));
+            x += strip.width;
+            if (x == imageWidth) {
+                x = 0;
+                firstRow += strip.rowCount;
+                if (firstRow == DrawMetrics.WAVEFORM_V_SPACING) {
+                    firstRow = 0;
+                    band++;
+                }
+            }
+
+            return strip;
+        }
+    }
+
+    /// By default, the time range covers the entire waveform.
+    public WaveformImageExporter(WaveformDataModel waveformDataModel) {
+        endTimestamp = waveformDataModel.getMaxTimestamp();
+    }
+
+    public void addNet(NetDataModel netDataModel, ValueFormatter formatter) {
+        nets.add(netDataModel);
+        formatters.add(formatter);
+    }
+
+    public void setTimeRange(long startTimestamp, long endTimestamp) {
+        if (startTimestamp < 0 || endTimestamp <= startTimestamp) {
+            throw new IllegalArgumentException("invalid time range");
+        }
+
+        this.startTimestamp = startTimestamp;
+        this.endTimestamp = endTimestamp;
+    }
+
+    /// @param width Width of the waveform area in pixels, not including
+    ///   the net names.
+    public void setWidth(int width) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("invalid width");
+        }
+
+        this.width = width;
+    }
+
+    /// Mainly useful for unit testing
+    /// @param maxBufferedBytes Approximate limit on the memory used for
+    ///   image data while exporting.
+    public void setMaxBufferedBytes(long maxBufferedBytes) {
+        this.maxBufferedBytes = maxBufferedBytes;
+    }
+
+    /// Does not close the stream.
+    public void writePng(OutputStream out) throws IOException {
+        if (nets.isEmpty()) {
+            throw new IllegalStateException("no nets to export");
+        }
+
+        double horizontalScale = (double) width / (endTimestamp - startTimestamp);
+        int startX = (int) (startTimestamp * horizontalScale);
+        if (endTimestamp * horizontalScale > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("time range too large for image width");
+        }
+
+        int nameWidth = computeNameWidth();
+        if (width > Integer.MAX_VALUE - nameWidth) {
+            throw new IllegalArgumentException("image is too wide");
+        }
+
+        int imageWidth = nameWidth + width;
+
+        // Half of the memory is for the rows waiting to be written and half
+        // for rendered strips. Groups of a single row are written as their
+        // strips finish, so they aren't buffered.
+        long rowBytes = imageWidth * 3L;
+        int rowsPerGroup = (int) Math.max(1,
+            Math.min(DrawMetrics.WAVEFORM_V_SPACING, maxBufferedBytes / 2 / rowBytes));
+        long stripBytes = (long) STRIP_WIDTH * DrawMetrics.WAVEFORM_V_SPACING * 4;
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        int maxPendingStrips =
+            (int) Math.max(1, Math.min(threadCount * 2L, maxBufferedBytes / 2 / stripBytes));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "Image export renderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            PngStreamWriter writer = new PngStreamWriter(out, imageWidth,
+                nets.size() * DrawMetrics.WAVEFORM_V_SPACING);
+            Iterator<Strip> stripsToRender =
+                new StripIterator(nets.size(), imageWidth, rowsPerGroup);
+            Iterator<Strip> stripsToWrite =
+                new StripIterator(nets.size(), imageWidth, rowsPerGroup);
+            Deque<Future<BufferedImage>> pendingStrips = new ArrayDeque<>();
+            while (stripsToWrite.hasNext()) {
+                while (stripsToRender.hasNext() && pendingStrips.size() < maxPendingStrips) {
+                    Strip strip = stripsToRender.next();
+                    pendingStrips.add(executor.submit(() -> renderStrip(strip, nameWidth,
+                        startX, horizontalScale)));
+                }
+
+                Strip strip = stripsToWrite.next();
+                if (strip.x == 0) {
+                    writer.startRows(strip.rowCount);
+                }
+
+                writer.writeStrip(waitForStrip(pendingStrips.remove()));
+            }
+
+            writer.close();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static BufferedImage waitForStrip(Future<BufferedImage> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new IOException("export interrupted", exc);
+        } catch (ExecutionException exc) {
+            throw new IOException("error rendering waveform: " + exc.getCause(), exc.getCause());
+        }
+    }
+
+    private int computeNameWidth() {
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scratch.createGraphics();
+        FontMetrics metrics = g.getFontMetrics(font);
+        int maxWidth = 0;
+        for (NetDataModel net : nets) {
+            maxWidth = Math.max(maxWidth, metrics.stringWidth(net.getFullName()));
+        }
+
+        g.dispose();
+        return maxWidth + NAME_MARGIN * 2;
+    }
+
+    // Runs on a render thread
+    private BufferedImage renderStrip(Strip strip, int nameWidth, int startX,
+        double horizontalScale) {
+        AppPreferences prefs = AppPreferences.getInstance();
+        // This always renders the full height of the band. Clipping to
+        // fewer rows changes how the diagonal lines are rasterized.
+        BufferedImage image = new BufferedImage(strip.width, DrawMetrics.WAVEFORM_V_SPACING,
+            BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(
+            RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(font);
+        g.setColor(prefs.backgroundColor);
+        g.fillRect(0, 0, strip.width, DrawMetrics.WAVEFORM_V_SPACING);
+
+        // Draw in the coordinates of the whole band.
+        g.translate(-strip.x, 0);
+        NetDataModel net = nets.get(strip.band);
+        if (strip.x < nameWidth) {
+            FontMetrics metrics = g.getFontMetrics();
+            int labelBaseline = DrawMetrics.WAVEFORM_V_GAP
+                + (DrawMetrics.WAVEFORM_HEIGHT + metrics.getHeight()) / 2 - metrics.getDescent();
+            g.setColor(prefs.waveformColor);
+            g.drawString(net.getFullName(), NAME_MARGIN, labelBaseline);
+        }
+
+        // Like the tiles in the waveform view, the painters only draw the
+        // columns in the visible rectangle, which is this strip.
+        int waveformLeft = Math.max(strip.x, nameWidth);
+        int waveformWidth = strip.x + strip.width - waveformLeft;
+        if (waveformWidth > 0) {
+            // The painters use the same coordinates as the waveform view,
+            // so shift the origin to the start of the time range.
+            g.clipRect(waveformLeft, 0, waveformWidth, DrawMetrics.WAVEFORM_V_SPACING);
+            g.translate(nameWidth - startX, 0);
+            Rectangle visibleRect = new Rectangle(waveformLeft - nameWidth + startX, 0,
+                waveformWidth, DrawMetrics.WAVEFORM_V_SPACING);
+            WaveformPainter painter = net.getWidth() > 1 ? new MultiBitPainter()
+                : new SingleBitPainter();
+            painter.paint(g, net.getTransitionVector(), DrawMetrics.WAVEFORM_V_GAP, visibleRect,
+                horizontalScale, formatters.get(strip.band));
+        }
+
+        g.dispose();
+        return image.getSubimage(0, strip.firstRow, strip.width, strip.rowCount);
+    }
+
+    private static ValueFormatter parseFormat(String name) {
+        switch (name) {
+            case "bin":
+                return new BinaryValueFormatter();
+            case "oct":
+                return new OctalValueFormatter();
+            case "dec":
+                return new DecimalValueFormatter();
+            case "hex":
+                return new HexadecimalValueFormatter();
+            case "ascii":
+                return new AsciiValueFormatter();
+            default:
+                throw new IllegalArgumentException("unknown format \"" + name + "\"");
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("usage: WaveformImageExporter [options] <waveform file> "
+            + "<net>[:bin|oct|dec|hex|ascii]...");
+        System.err.println("  -o <file>      output file (default waveform.png)");
+        System.err.println("  -start <time>  first timestamp, in the file's time units");
+        System.err.println("  -end <time>    last timestamp, in the file's time units");
+        System.err.println("  -width <px>    width of the waveform area (default "
+            + DEFAULT_WIDTH + ")");
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        String outputPath = "waveform.png";
+        long startTimestamp = -1;
+        long endTimestamp = -1;
+        int width = DEFAULT_WIDTH;
+        int argIndex = 0;
+        try {
+            while (argIndex < args.length && args[argIndex].startsWith("-")) {
+                String option = args[argIndex++];
+                if (argIndex == args.length) {
+                    throw new IllegalArgumentException("missing value for " + option);
+                }
+
+                String value = args[argIndex++];
+                switch (option) {
+                    case "-o":
+                        outputPath = value;
+                        break;
+                    case "-start":
+                        startTimestamp = Long.parseLong(value);
+                        break;
+                    case "-end":
+                        endTimestamp = Long.parseLong(value);
+                        break;
+                    case "-width":
+                        width = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + option);
+                }
+            }
+
+            if (args.length - argIndex < 2) {
+                printUsage();
+                System.exit(1);
+            }
+
+            WaveformDataModel waveformDataModel = new WaveformDataModel();
+            new VcdLoader().load(new File(args[argIndex++]), waveformDataModel.startBuilding(),
+                null);
+
+            WaveformImageExporter exporter = new WaveformImageExporter(waveformDataModel);
+            exporter.setTimeRange(startTimestamp < 0 ? 0 : startTimestamp,
+                endTimestamp < 0 ? waveformDataModel.getMaxTimestamp() : endTimestamp);
+            exporter.setWidth(width);
+            while (argIndex < args.length) {
+                String netSpec = args[argIndex++];
+                ValueFormatter formatter = new HexadecimalValueFormatter();
+                int colon = netSpec.lastIndexOf(':');
+                if (colon >= 0) {
+                    formatter = parseFormat(netSpec.substring(colon + 1));
+                    netSpec = netSpec.substring(0, colon);
+                }
+
+                NetDataModel net = waveformDataModel.findNet(netSpec);
+                if (net == null) {
+                    net = waveformDataModel.fuzzyFindNet(netSpec);
+                }
+
+                exporter.addNet(net, formatter);
+            }
+
+            try (OutputStream out =
+                new BufferedOutputStream(Files.newOutputStream(Paths.get(outputPath)))) {
+                exporter.writePng(out);
+            }
+        } catch (IOException | IllegalArgumentException | NoSuchElementException
+            | WaveformDataModel.AmbiguousNetException exc) {
+            System.err.println("error: " + exc.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -18,9 +18,13 @@ package waveview;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import javax.swing.ProgressMonitor;
 import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
+import waveview.decoder.StreamingDecodeBuilder;
+import waveview.wavedata.NetDataModel;
 import waveview.wavedata.VcdLoader;
 import waveview.wavedata.WaveformDataModel;
 import waveview.wavedata.WaveformLoader;
@@ -36,6 +40,7 @@ public final class WaveformLoadWorker extends SwingWorker<Void, Void> {
     private final ProgressMonitor progressMonitor;
     private final WaveformDataModel newModel = new WaveformDataModel();
     private final LoadFinishedHandler finishHandler;
+    private final List<NetDataModel> decodedNets;
     private String errorMessage;
 
     public interface LoadFinishedHandler {
@@ -47,9 +52,18 @@ public final class WaveformLoadWorker extends SwingWorker<Void, Void> {
 
     public WaveformLoadWorker(
         File file, ProgressMonitor progressMonitor, LoadFinishedHandler finishHandler) {
+        this(file, progressMonitor, finishHandler, Collections.emptyList());
+    }
+
+    /// @param decodedNets Decoded nets to compute while the waveform loads.
+    ///   These have no transition vector. When loading finishes, the ones
+    ///   that could be decoded that way will have one.
+    public WaveformLoadWorker(File file, ProgressMonitor progressMonitor,
+        LoadFinishedHandler finishHandler, List<NetDataModel> decodedNets) {
         this.file = file;
         this.progressMonitor = progressMonitor;
         this.finishHandler = finishHandler;
+        this.decodedNets = decodedNets;
     }
 
     @Override
@@ -73,7 +87,13 @@ public final class WaveformLoadWorker extends SwingWorker<Void, Void> {
 
             Profiler profiler = new Profiler();
             profiler.start();
-            new VcdLoader().load(file, newModel.startBuilding(), progressListener);
+            new VcdLoader().load(file,
+                new StreamingDecodeBuilder(newModel.startBuilding(), decodedNets),
+                progressListener);
+
+            // Build this now, while still on the background thread, so the
+            // overview can be drawn as soon as the waveform is shown.
+            newModel.getActivityHistogram();
             profiler.finish();
             System.out.println("Loaded in " + profiler.getExecutionTime() + " ms");
             System.out.println("Allocated " + profiler.getMemoryAllocated() + " bytes of memory");
@@ -0,0 +1,105 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package waveview;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import javax.swing.JComponent;
+import javax.swing.plaf.LayerUI;
+
+///
+/// Draws the selection, markers, and cursor on top of a WaveformView. These
+/// change on every mouse drag, so they are kept out of the view itself,
+/// which can then repaint the affected strip by copying its cached image
+/// rather than re-running the waveform painters.
+///
+final class WaveformOverlay extends LayerUI<WaveformView> {
+    // The selection is now drawn over the waveforms rather than under
+    // them, so make it translucent so they still show through.
+    private static final float SELECTION_ALPHA = 0.5f;
+
+    private final WaveformPresentationModel waveformPresentationModel;
+
+    WaveformOverlay(WaveformPresentationModel waveformPresentationModel) {
+        this.waveformPresentationModel = waveformPresentationModel;
+    }
+
+    @Override
+    public void paint(Graphics g, JComponent c) {
+        super.paint(g, c);
+
+        Rectangle visibleRect = c.getVisibleRect();
+        drawSelection(g, visibleRect);
+        drawMarkers(g, visibleRect);
+        drawCursor(g, visibleRect);
+    }
+
+    private void drawSelection(Graphics g, Rectangle visibleRect) {
+        if (waveformPresentationModel.getCursorPosition()
+            == waveformPresentationModel.getSelectionStart()) {
+            return;
+        }
+
+        Graphics2D g2d = (Graphics2D) g;
+        Composite oldComposite = g2d.getComposite();
+        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, SELECTION_ALPHA));
+        g.setColor(AppPreferences.getInstance().selectionColor);
+        int selectionStart = timestampToXCoordinate(waveformPresentationModel.getSelectionStart());
+        int selectionEnd = timestampToXCoordinate(waveformPresentationModel.getCursorPosition());
+        int leftEdge = Math.min(selectionStart, selectionEnd);
+        int rightEdge = Math.max(selectionStart, selectionEnd);
+        g.fillRect(leftEdge, visibleRect.y, rightEdge - leftEdge, visibleRect.height);
+        g2d.setComposite(oldComposite);
+    }
+
+    private void drawMarkers(Graphics g, Rectangle visibleRect) {
+        g.setColor(AppPreferences.getInstance().markerColor);
+
+        long startTime = xCoordinateToTimestamp(visibleRect.x);
+        long endTime = xCoordinateToTimestamp(visibleRect.x + visibleRect.width);
+
+        int markerIndex = waveformPresentationModel.findMarkerAtOrBeforeTime(startTime);
+        while (markerIndex < waveformPresentationModel.getMarkerCount()) {
+            long timestamp = waveformPresentationModel.getTimestampForMarker(markerIndex);
+            if (timestamp > endTime) {
+                break;
+            }
+
+            int x = timestampToXCoordinate(timestamp);
+            g.drawLine(x, visibleRect.y, x, visibleRect.y + visibleRect.height);
+            markerIndex++;
+        }
+    }
+
+    private void drawCursor(Graphics g, Rectangle visibleRect) {
+        g.setColor(AppPreferences.getInstance().cursorColor);
+        int cursorX = timestampToXCoordinate(waveformPresentationModel.getCursorPosition());
+        g.drawLine(cursorX, visibleRect.y, cursorX, visibleRect.y + visibleRect.height);
+    }
+
+    private long xCoordinateToTimestamp(int coordinate) {
+        return (long) (coordinate / waveformPresentationModel.getHorizontalScale());
+    }
+
+    private int timestampToXCoordinate(long timestamp) {
+        return (int) (timestamp * waveformPresentationModel.getHorizontalScale());
+    }
+}
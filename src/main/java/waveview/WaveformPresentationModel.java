@@ -167,6 +167,19 @@ public final class WaveformPresentationModel {
         }
     }
 
+    /// Called when the transitions for a net have changed, which happens when
+    /// a decoder finishes. Every row that shows it needs to be redrawn, the
+    /// same as if its format had changed.
+    public void netDataChanged(NetDataModel net) {
+        for (int listIndex = 0; listIndex < visibleNets.size(); listIndex++) {
+            if (visibleNets.get(listIndex).getDataModel() == net) {
+                for (Listener listener : listeners) {
+                    listener.formatChanged(listIndex);
+                }
+            }
+        }
+    }
+
     public ValueFormatter getValueFormatter(int listIndex) {
         return visibleNets.get(listIndex).formatter;
     }
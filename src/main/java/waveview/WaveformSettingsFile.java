@@ -18,6 +18,8 @@ package waveview;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -31,6 +33,7 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 import org.w3c.dom.Text;
 import org.xml.sax.SAXException;
+import waveview.decoder.Decoder;
 import waveview.wavedata.NetDataModel;
 import waveview.wavedata.WaveformDataModel;
 
@@ -199,10 +202,49 @@ public final class WaveformSettingsFile {
         return netSetElement;
     }
 
-    private String getSubTag(Element parent, String tagName) {
+    private static String getSubTag(Element parent, String tagName) {
         return ((Text) parent.getElementsByTagName(tagName).item(0).getFirstChild()).getData();
     }
 
+    /// @returns A new decoded net with no transitions, or null if netElem
+    ///   is not a decoded net.
+    private static NetDataModel readDecodedNet(Element netElem) {
+        NodeList decoder = netElem.getElementsByTagName("decoder");
+        if (decoder.getLength() == 0) {
+            return null;
+        }
+
+        String fullName = getSubTag(netElem, "name");
+        String decoderName = ((Text) decoder.item(0).getFirstChild())
+            .getData();
+        Element inputSignalTag = (Element) netElem
+            .getElementsByTagName("inputs").item(0);
+        NodeList inputList = inputSignalTag.getElementsByTagName("input");
+        String[] inputs = new String[inputList.getLength()];
+        for (int j = 0; j < inputList.getLength(); j++) {
+            inputs[j] = ((Element) inputList.item(j)).getAttribute("name");
+        }
+
+        Element paramsTag = (Element) netElem
+            .getElementsByTagName("params").item(0);
+        NodeList paramList = paramsTag.getElementsByTagName("param");
+        String[] params = new String[paramList.getLength()];
+        for (int j = 0; j < paramList.getLength(); j++) {
+            params[j] = ((Element) paramList.item(j)).getAttribute("value");
+        }
+
+        // Shorten name
+        int dot = fullName.lastIndexOf('.');
+        String shortName;
+        if (dot == -1) {
+            shortName = fullName;
+        } else {
+            shortName = fullName.substring(dot + 1);
+        }
+
+        return new NetDataModel(shortName, fullName, decoderName, inputs, params, null);
+    }
+
     private void readNetSet(Element element) {
         waveformPresentationModel.removeAllNets();
 
@@ -236,42 +278,16 @@ public final class WaveformSettingsFile {
                 formatter = new BinaryValueFormatter();
             }
 
-            NetDataModel netDataModel;
-            NodeList decoder = netElem.getElementsByTagName("decoder");
-            if (decoder.getLength() == 0) {
+            NetDataModel netDataModel = readDecodedNet(netElem);
+            if (netDataModel == null) {
                 // Normal waveform
                 netDataModel = waveformDataModel.findNet(fullName);
+            } else if (!Decoder.isDecoderInstalled(netDataModel.getDecoderName())) {
+                // It may have come from a plugin that has been removed.
+                System.out.println("unknown decoder " + netDataModel.getDecoderName()
+                    + " for net " + fullName);
+                continue;
             } else {
-                // Decoded waveform.
-                String decoderName = ((Text) decoder.item(0).getFirstChild())
-                    .getData();
-                Element inputSignalTag = (Element) netElem
-                    .getElementsByTagName("inputs").item(0);
-                NodeList inputList = inputSignalTag.getElementsByTagName("input");
-                String[] inputs = new String[inputList.getLength()];
-                for (int j = 0; j < inputList.getLength(); j++) {
-                    inputs[j] = ((Element) inputList.item(j)).getAttribute("name");
-                }
-
-                Element paramsTag = (Element) netElem
-                    .getElementsByTagName("params").item(0);
-                NodeList paramList = paramsTag.getElementsByTagName("param");
-                String[] params = new String[paramList.getLength()];
-                for (int j = 0; j < paramList.getLength(); j++) {
-                    params[j] = ((Element) paramList.item(j)).getAttribute("value");
-                }
-
-                // Shorten name
-                int dot = fullName.lastIndexOf('.');
-                String shortName;
-                if (dot == -1) {
-                    shortName = fullName;
-                } else {
-                    shortName = fullName.substring(dot + 1);
-                }
-
-                netDataModel = new NetDataModel(shortName, fullName, decoderName, inputs,
-                    params, null);
                 waveformDataModel.addDecodedNet(netDataModel);
             }
 
@@ -285,6 +301,33 @@ public final class WaveformSettingsFile {
         }
     }
 
+    /// Read the decoders of the nets that are visible in the current net
+    /// set. This doesn't need the waveform, so it can be called before it
+    /// has loaded.
+    /// @returns New decoded nets with no transitions
+    public static List<NetDataModel> readDecodedNets(File settingsFile) throws IOException {
+        try {
+            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            Document document = builder.parse(settingsFile);
+            List<NetDataModel> decodedNets = new ArrayList<>();
+            NodeList netSets = document.getElementsByTagName("netset");
+            if (netSets.getLength() > 0) {
+                NodeList netElements = ((Element) netSets.item(0)).getElementsByTagName("net");
+                for (int i = 0; i < netElements.getLength(); i++) {
+                    NetDataModel netDataModel = readDecodedNet((Element) netElements.item(i));
+                    if (netDataModel != null
+                        && Decoder.isDecoderInstalled(netDataModel.getDecoderName())) {
+                        decodedNets.add(netDataModel);
+                    }
+                }
+            }
+
+            return decodedNets;
+        } catch (ParserConfigurationException | SAXException exc) {
+            throw new SettingsFileException(exc.getMessage());
+        }
+    }
+
     public void read() throws IOException {
         try {
             DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
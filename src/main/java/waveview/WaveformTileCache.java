@@ -0,0 +1,181 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Future;
+import waveview.wavedata.LazyTransitionVector;
+import waveview.wavedata.TransitionVector;
+
+///
+/// Holds rendered images of waveform rows, so repaints for cursor moves
+/// and scrolling can copy images rather than redrawing every transition.
+/// Each row is divided horizontally into fixed width tiles. A tile
+/// contains only the waveform itself, with a transparent background, so
+/// the timing lines are still drawn underneath it by WaveformView.
+///
+/// The least recently used tiles are discarded when the total size
+/// exceeds the limit.
+///
+/// Tiles are rendered on background threads. This also tracks the
+/// tiles that are being rendered, and a generation number that changes
+/// whenever the cache is cleared, so results that were started before
+/// then can be recognized as stale and dropped. This should only be
+/// accessed from the event dispatch thread.
+///
+final class WaveformTileCache {
+    static final int TILE_WIDTH = 256;
+    static final int TILE_HEIGHT = DrawMetrics.WAVEFORM_V_SPACING;
+    private static final long BYTES_PER_TILE = TILE_WIDTH * TILE_HEIGHT * 4;
+
+    private final long maxBytes;
+    private long totalBytes;
+    private Color waveformColor;
+    private Color conflictColor;
+    private int generation;
+    private final Map<TileKey, Future<?>> pendingTiles = new HashMap<>();
+
+    // Access ordered, so the first entry is the least recently used.
+    private final LinkedHashMap<TileKey, BufferedImage> tiles =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    static final class TileKey {
+        // Exactly one of these is set.
+        final TransitionVector transitionVector;
+        final LazyTransitionVector lazyTransitionVector;
+        final ValueFormatter formatter;
+        final int tileIndex;
+
+        TileKey(TransitionVector transitionVector, ValueFormatter formatter, int tileIndex) {
+            this.transitionVector = transitionVector;
+            this.lazyTransitionVector = null;
+            this.formatter = formatter;
+            this.tileIndex = tileIndex;
+        }
+
+        TileKey(LazyTransitionVector lazyTransitionVector, ValueFormatter formatter,
+            int tileIndex) {
+            this.transitionVector = null;
+            this.lazyTransitionVector = lazyTransitionVector;
+            this.formatter = formatter;
+            this.tileIndex = tileIndex;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+
+            TileKey other = (TileKey) obj;
+            return transitionVector == other.transitionVector
+                && lazyTransitionVector == other.lazyTransitionVector
+                && formatter == other.formatter && tileIndex == other.tileIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(transitionVector),
+                System.identityHashCode(lazyTransitionVector),
+                System.identityHashCode(formatter), tileIndex);
+        }
+    }
+
+    WaveformTileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /// @returns Cached image, or null if this tile hasn't been rendered.
+    BufferedImage get(TileKey key) {
+        return tiles.get(key);
+    }
+
+    void put(TileKey key, BufferedImage image) {
+        pendingTiles.remove(key);
+        if (tiles.put(key, image) == null) {
+            totalBytes += BYTES_PER_TILE;
+        }
+
+        Iterator<Map.Entry<TileKey, BufferedImage>> it = tiles.entrySet().iterator();
+        while (totalBytes > maxBytes && tiles.size() > 1) {
+            it.next();
+            it.remove();
+            totalBytes -= BYTES_PER_TILE;
+        }
+    }
+
+    boolean isPending(TileKey key) {
+        return pendingTiles.containsKey(key);
+    }
+
+    void setPending(TileKey key, Future<?> renderTask) {
+        pendingTiles.put(key, renderTask);
+    }
+
+    /// Cancel rendering tiles that are no longer needed, for example
+    /// because they have been scrolled out of view. Tasks that have already
+    /// started are allowed to finish, since their results are still valid.
+    void cancelPendingExcept(Set<TileKey> neededTiles) {
+        Iterator<Map.Entry<TileKey, Future<?>>> it = pendingTiles.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<TileKey, Future<?>> entry = it.next();
+            if (!neededTiles.contains(entry.getKey())) {
+                entry.getValue().cancel(false);
+                it.remove();
+            }
+        }
+    }
+
+    /// Rendering results must be discarded if this has changed since
+    /// the task was started.
+    int getGeneration() {
+        return generation;
+    }
+
+    /// Tiles have the waveform colors baked in, so discard them if the user
+    /// has changed the preferences.
+    /// @returns true if the tiles were discarded
+    boolean checkColors(AppPreferences prefs) {
+        if (!prefs.waveformColor.equals(waveformColor)
+            || !prefs.conflictColor.equals(conflictColor)) {
+            clear();
+            waveformColor = prefs.waveformColor;
+            conflictColor = prefs.conflictColor;
+            return true;
+        }
+
+        return false;
+    }
+
+    void clear() {
+        for (Future<?> renderTask : pendingTiles.values()) {
+            renderTask.cancel(false);
+        }
+
+        pendingTiles.clear();
+        tiles.clear();
+        totalBytes = 0;
+        generation++;
+    }
+}
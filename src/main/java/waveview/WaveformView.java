@@ -17,33 +17,73 @@
 package waveview;
 
 import java.awt.BasicStroke;
+import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.Stroke;
+import java.awt.Toolkit;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import waveview.wavedata.LazyTransitionVector;
 import waveview.wavedata.NetDataModel;
+import waveview.wavedata.TransitionVector;
 import waveview.wavedata.WaveformDataModel;
 
+///
+/// Draws the waveforms and timing lines. The cursor, selection, and markers
+/// are drawn on top of this by WaveformOverlay. The visible area is kept in
+/// an image, which is only redrawn when the waveforms, scroll position, or
+/// colors change, so repaints caused by moving the cursor just copy it.
+///
 final class WaveformView extends JPanel
     implements MouseListener, MouseMotionListener, WaveformPresentationModel.Listener {
     private static final float[] DOT_DESCRIPTION = {2.0f, 4.0f};
     private static final Stroke DOTTED_STROKE = new BasicStroke(1, 0, 0, 10, DOT_DESCRIPTION, 0);
     private static final Stroke SOLID_STROKE = new BasicStroke(1);
-    private final SingleBitPainter singleBitPainter = new SingleBitPainter();
-    private final MultiBitPainter multiBitPainter = new MultiBitPainter();
+    private static final long TILE_CACHE_BYTES = 32 * 1024 * 1024;
+    private static final String ERROR_LABEL = "render error";
+
+    // Tiles are rendered in parallel on these threads. The painters
+    // keep scratch state, so each thread has its own.
+    private static final ExecutorService TILE_RENDER_EXECUTOR = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "Tile renderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    private static final ThreadLocal<SingleBitPainter> SINGLE_BIT_PAINTER =
+        ThreadLocal.withInitial(SingleBitPainter::new);
+    private static final ThreadLocal<MultiBitPainter> MULTI_BIT_PAINTER =
+        ThreadLocal.withInitial(MultiBitPainter::new);
+
+    private final WaveformTileCache tileCache = new WaveformTileCache(TILE_CACHE_BYTES);
     private final WaveformPresentationModel waveformPresentationModel;
     private final WaveformDataModel waveformDataModel;
-
-    WaveformView(
-        WaveformPresentationModel waveformPresentationModel, WaveformDataModel waveformDataModel) {
+    private final RenderScheduler renderScheduler;
+    private BufferedImage contentImage;
+    private final Rectangle contentRect = new Rectangle();
+    private boolean contentValid;
+    private Color contentBackgroundColor;
+    private Color contentTimingMarkerColor;
+
+    WaveformView(WaveformPresentationModel waveformPresentationModel,
+        WaveformDataModel waveformDataModel, RenderScheduler renderScheduler) {
         this.waveformPresentationModel = waveformPresentationModel;
         this.waveformDataModel = waveformDataModel;
+        this.renderScheduler = renderScheduler;
         waveformPresentationModel.addListener(this);
 
         setBackground(AppPreferences.getInstance().backgroundColor);
@@ -81,18 +121,23 @@ final class WaveformView extends JPanel
             int x1 = timestampToXCoordinate(oldTimestamp);
             int left = Math.min(x1, x2);
             int right = Math.max(x1, x2);
-            repaint(left - 1, 0, right - left + 2, getHeight());
+            repaint(left - 1, visibleRect.y, right - left + 2, visibleRect.height);
         }
     }
 
     @Override
     public void netsAdded(int firstIndex, int lastIndex) {
         computeBounds();
-        repaint();
+        invalidateContent();
     }
 
     @Override
     public void netsRemoved(int firstIndex, int lastIndex) {
+        // Don't hold onto tiles and labels (and their transition vectors)
+        // for nets that may no longer exist.
+        tileCache.clear();
+        MultiBitPainter.clearLabelCache();
+        invalidateContent();
         computeBounds();
         Rectangle visibleRect = getVisibleRect();
         Dimension preferredSize = getPreferredSize();
@@ -110,8 +155,6 @@ final class WaveformView extends JPanel
             visibleRect.y = 0;
             scrollRectToVisible(visibleRect);
         }
-
-        repaint();
     }
 
     @Override
@@ -119,50 +162,79 @@ final class WaveformView extends JPanel
         if (timestamp < 0) {
             repaint();
         } else {
-            repaint(timestampToXCoordinate(timestamp) - 1, 0, 2, getVisibleRect().height);
+            Rectangle visibleRect = getVisibleRect();
+            repaint(timestampToXCoordinate(timestamp) - 1, visibleRect.y, 2, visibleRect.height);
         }
     }
 
     @Override
     public void scaleChanged(double newScale) {
-        // Adjust size of canvas
-        computeBounds();
-        repaint();
+        tileCache.clear();
+
+        // Resizing the canvas and redrawing are deferred, so if the scale
+        // changes several times in quick succession, only the last one is
+        // laid out and painted. Until then, the cached image of the old
+        // scale is still shown.
+        renderScheduler.schedule(this, () -> {
+            computeBounds();
+            invalidateContent();
+        });
     }
 
     @Override
     public void formatChanged(int index) {
+        tileCache.clear();
+        invalidateContent();
+    }
+
+    private void invalidateContent() {
+        contentValid = false;
         repaint();
     }
 
     @Override
     protected void paintComponent(Graphics g) {
+        Rectangle visibleRect = getVisibleRect();
+        if (visibleRect.isEmpty()) {
+            return;
+        }
+
         AppPreferences prefs = AppPreferences.getInstance();
-        setBackground(prefs.backgroundColor);
+        if (tileCache.checkColors(prefs)
+            || !prefs.backgroundColor.equals(contentBackgroundColor)
+            || !prefs.timingMarkerColor.equals(contentTimingMarkerColor)) {
+            contentBackgroundColor = prefs.backgroundColor;
+            contentTimingMarkerColor = prefs.timingMarkerColor;
+            setBackground(prefs.backgroundColor);
+            contentValid = false;
+        }
 
-        super.paintComponent(g);
+        if (!contentValid || !visibleRect.equals(contentRect)) {
+            if (contentImage == null || contentImage.getWidth() != visibleRect.width
+                || contentImage.getHeight() != visibleRect.height) {
+                contentImage = new BufferedImage(
+                    visibleRect.width, visibleRect.height, BufferedImage.TYPE_INT_RGB);
+            }
 
-        Rectangle visibleRect = getVisibleRect();
+            contentRect.setBounds(visibleRect);
+            drawContent(contentRect);
+            contentValid = true;
+        }
 
-        drawSelection(g);
-        drawTimingLines(g, visibleRect);
-        drawMarkers(g, visibleRect);
-        drawNets(g, visibleRect);
-        drawCursor(g, visibleRect);
+        g.drawImage(contentImage, visibleRect.x, visibleRect.y, null);
     }
 
-    private void drawSelection(Graphics g) {
-        if (waveformPresentationModel.getCursorPosition()
-            != waveformPresentationModel.getSelectionStart()) {
-            g.setColor(AppPreferences.getInstance().selectionColor);
-            int selectionStart =
-                timestampToXCoordinate(waveformPresentationModel.getSelectionStart());
-            int selectionEnd =
-                timestampToXCoordinate(waveformPresentationModel.getCursorPosition());
-            int leftEdge = Math.min(selectionStart, selectionEnd);
-            int rightEdge = Math.max(selectionStart, selectionEnd);
-            g.fillRect(leftEdge, 0, rightEdge - leftEdge, getHeight());
-        }
+    /// Redraw part of the cached image of the visible area.
+    /// @param region Area to redraw, in component coordinates
+    private void drawContent(Rectangle region) {
+        Graphics2D g = contentImage.createGraphics();
+        g.translate(-contentRect.x, -contentRect.y);
+        g.clip(region);
+        g.setColor(getBackground());
+        g.fillRect(region.x, region.y, region.width, region.height);
+        drawTimingLines(g, contentRect);
+        drawNets(g, contentRect);
+        g.dispose();
     }
 
     private void drawTimingLines(Graphics g, Rectangle visibleRect) {
@@ -185,54 +257,171 @@ final class WaveformView extends JPanel
         g2d.setStroke(SOLID_STROKE);
     }
 
-    private void drawMarkers(Graphics g, Rectangle visibleRect) {
-        g.setColor(AppPreferences.getInstance().markerColor);
-
-        long startTime = xCoordinateToTimestamp(visibleRect.x);
-        long endTime = xCoordinateToTimestamp(visibleRect.x + visibleRect.width);
-
-        int markerIndex = waveformPresentationModel.findMarkerAtOrBeforeTime(startTime);
-        while (markerIndex < waveformPresentationModel.getMarkerCount()) {
-            long timestamp = waveformPresentationModel.getTimestampForMarker(markerIndex);
-            if (timestamp > endTime) {
-                break;
-            }
-
-            int x = timestampToXCoordinate(timestamp);
-            g.drawLine(x, 0, x, visibleRect.y + visibleRect.height);
-            markerIndex++;
-        }
-    }
-
     private void drawNets(Graphics g, Rectangle visibleRect) {
         int waveformIndex = visibleRect.y / DrawMetrics.WAVEFORM_V_SPACING;
         if (waveformIndex > 0) {
             waveformIndex--;
         }
 
-        double horizontalScale = waveformPresentationModel.getHorizontalScale();
+        int firstTile = visibleRect.x / WaveformTileCache.TILE_WIDTH;
+        int lastTile = (visibleRect.x + visibleRect.width) / WaveformTileCache.TILE_WIDTH;
+        Set<WaveformTileCache.TileKey> visibleTiles = new HashSet<>();
         while (waveformIndex * DrawMetrics.WAVEFORM_V_SPACING < visibleRect.y + visibleRect.height
             && waveformIndex < waveformPresentationModel.getVisibleNetCount()) {
             ValueFormatter formatter = waveformPresentationModel.getValueFormatter(waveformIndex);
             NetDataModel netDataModel = waveformPresentationModel.getVisibleNet(waveformIndex);
-            if (netDataModel.getWidth() > 1) {
-                multiBitPainter.paint(g, netDataModel.getTransitionVector(),
-                    waveformIndex * DrawMetrics.WAVEFORM_V_SPACING + DrawMetrics.WAVEFORM_V_GAP,
-                    visibleRect, horizontalScale, formatter);
-            } else {
-                singleBitPainter.paint(g, netDataModel.getTransitionVector(),
-                    waveformIndex * DrawMetrics.WAVEFORM_V_SPACING + DrawMetrics.WAVEFORM_V_GAP,
-                    visibleRect, horizontalScale, formatter);
+            int tileY = waveformIndex * DrawMetrics.WAVEFORM_V_SPACING;
+            if (netDataModel.isDecoding()) {
+                drawDecodingLabel(g, visibleRect, tileY);
+                waveformIndex++;
+                continue;
+            }
+
+            // Lazily decoded nets are painted from only the part of the
+            // waveform in each tile, so invisible parts are never decoded.
+            LazyTransitionVector lazyTransitionVector = netDataModel.getLazyTransitionVector();
+            TransitionVector transitionVector =
+                lazyTransitionVector == null ? netDataModel.getTransitionVector() : null;
+            for (int tileIndex = firstTile; tileIndex <= lastTile; tileIndex++) {
+                WaveformTileCache.TileKey key = lazyTransitionVector == null
+                    ? new WaveformTileCache.TileKey(transitionVector, formatter, tileIndex)
+                    : new WaveformTileCache.TileKey(lazyTransitionVector, formatter, tileIndex);
+                visibleTiles.add(key);
+                int tileX = tileIndex * WaveformTileCache.TILE_WIDTH;
+                BufferedImage tile = tileCache.get(key);
+                if (tile != null) {
+                    g.drawImage(tile, tileX, tileY, null);
+                } else {
+                    if (!tileCache.isPending(key)) {
+                        startRenderingTile(key);
+                    }
+
+                    drawPlaceholder(g, tileX, tileY);
+                }
             }
 
             waveformIndex++;
         }
+
+        tileCache.cancelPendingExcept(visibleTiles);
+    }
+
+    /// Shown in place of a decoded net until its decoder finishes.
+    private void drawDecodingLabel(Graphics g, Rectangle visibleRect, int y) {
+        g.setColor(AppPreferences.getInstance().timingMarkerColor);
+        g.setFont(getFont());
+        FontMetrics metrics = g.getFontMetrics();
+        int baseline = y + DrawMetrics.WAVEFORM_V_GAP
+            + (DrawMetrics.WAVEFORM_HEIGHT + metrics.getAscent()) / 2;
+        g.drawString(BackgroundDecoder.DECODING_LABEL, visibleRect.x + 4, baseline);
+    }
+
+    /// Shown while a tile is being rendered.
+    private void drawPlaceholder(Graphics g, int tileX, int tileY) {
+        g.setColor(AppPreferences.getInstance().timingMarkerColor);
+        int y = tileY + DrawMetrics.WAVEFORM_V_GAP + DrawMetrics.WAVEFORM_HEIGHT / 2;
+        g.drawLine(tileX, y, tileX + WaveformTileCache.TILE_WIDTH, y);
+    }
+
+    private void startRenderingTile(WaveformTileCache.TileKey key) {
+        // Capture this state on the event dispatch thread
+        int generation = tileCache.getGeneration();
+        double horizontalScale = waveformPresentationModel.getHorizontalScale();
+        Font font = getFont();
+
+        tileCache.setPending(key, TILE_RENDER_EXECUTOR.submit(() -> {
+            BufferedImage renderedTile;
+            try {
+                renderedTile = renderTile(key, horizontalScale, font);
+            } catch (RuntimeException exc) {
+                // This includes decoder failures for lazily decoded nets.
+                // Cache the error tile so it isn't retried on every repaint.
+                System.out.println("WaveformView: error rendering tile " + exc);
+                renderedTile = renderErrorTile(font);
+            }
+
+            BufferedImage tile = renderedTile;
+            SwingUtilities.invokeLater(() -> {
+                // If the scale or format changed while this was rendering,
+                // it is out of date.
+                if (generation == tileCache.getGeneration()) {
+                    tileCache.put(key, tile);
+                    tileFinished(key.tileIndex);
+                }
+            });
+        }));
+    }
+
+    /// Replace the placeholders in the cached image with the new tile.
+    /// Only this column needs to be redrawn.
+    private void tileFinished(int tileIndex) {
+        Rectangle region = new Rectangle(tileIndex * WaveformTileCache.TILE_WIDTH,
+            contentRect.y, WaveformTileCache.TILE_WIDTH, contentRect.height)
+            .intersection(contentRect);
+        if (!contentValid || region.isEmpty()) {
+            return;
+        }
+
+        drawContent(region);
+        repaint(region);
+    }
+
+    // Runs on a render thread
+    private static BufferedImage renderTile(WaveformTileCache.TileKey key,
+        double horizontalScale, Font font) {
+        BufferedImage tile = new BufferedImage(WaveformTileCache.TILE_WIDTH,
+            WaveformTileCache.TILE_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = tile.createGraphics();
+
+        // Match the text rendering of drawing directly to the component.
+        Object desktopHints =
+            Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+        if (desktopHints instanceof Map) {
+            g.addRenderingHints((Map<?, ?>) desktopHints);
+        }
+
+        g.setFont(font);
+
+        // The painters use component coordinates, so shift the origin to
+        // the left edge of the tile.
+        int tileX = key.tileIndex * WaveformTileCache.TILE_WIDTH;
+        g.translate(-tileX, 0);
+        Rectangle tileRect = new Rectangle(tileX, 0, WaveformTileCache.TILE_WIDTH,
+            WaveformTileCache.TILE_HEIGHT);
+        TransitionVector transitionVector = key.transitionVector;
+        if (transitionVector == null) {
+            // The painters look slightly past the edges of the tile.
+            int margin = DrawMetrics.WAVEFORM_TRANSITION_WIDTH + 1;
+            transitionVector = key.lazyTransitionVector.getRange(
+                (long) ((tileX - margin) / horizontalScale),
+                (long) ((tileX + WaveformTileCache.TILE_WIDTH + margin) / horizontalScale));
+        }
+
+        WaveformPainter painter = transitionVector.getWidth() > 1 ? MULTI_BIT_PAINTER.get()
+            : SINGLE_BIT_PAINTER.get();
+        painter.paint(g, transitionVector, DrawMetrics.WAVEFORM_V_GAP, tileRect,
+            horizontalScale, key.formatter);
+        g.dispose();
+
+        return tile;
     }
 
-    private void drawCursor(Graphics g, Rectangle visibleRect) {
-        g.setColor(AppPreferences.getInstance().cursorColor);
-        int cursorX = timestampToXCoordinate(waveformPresentationModel.getCursorPosition());
-        g.drawLine(cursorX, visibleRect.y, cursorX, visibleRect.y + visibleRect.height);
+    /// Shown in place of a tile that couldn't be rendered.
+    private static BufferedImage renderErrorTile(Font font) {
+        BufferedImage tile = new BufferedImage(WaveformTileCache.TILE_WIDTH,
+            WaveformTileCache.TILE_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = tile.createGraphics();
+        g.setColor(AppPreferences.getInstance().conflictColor);
+        g.drawRect(0, DrawMetrics.WAVEFORM_V_GAP, WaveformTileCache.TILE_WIDTH - 1,
+            DrawMetrics.WAVEFORM_HEIGHT);
+        g.setFont(font);
+        FontMetrics metrics = g.getFontMetrics();
+        int baseline = DrawMetrics.WAVEFORM_V_GAP
+            + (DrawMetrics.WAVEFORM_HEIGHT + metrics.getAscent()) / 2;
+        g.drawString(ERROR_LABEL, 4, baseline);
+        g.dispose();
+
+        return tile;
     }
 
     @Override
@@ -0,0 +1,114 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.decoder;
+
+///
+/// AMBA AHB burst decoder. Transfers are pipelined: the address phase of
+/// one overlaps the data phase of the one before it, and both are
+/// extended while HREADY is low. A burst begins with a NONSEQ transfer
+/// and continues through the SEQ ones that follow it. Latency is the
+/// number of cycles from when the first address is accepted to the end of
+/// the last data phase.
+///
+class AhbDecoder extends BusDecoder {
+    private static final int HTRANS = 1;
+    private static final int HADDR = 2;
+    private static final int HREADY = 3;
+    private static final int HDATA = 4;
+
+    // HTRANS values
+    private static final long BUSY = 1;
+    private static final long NONSEQ = 2;
+    private static final long SEQ = 3;
+
+    private EdgeSampler htrans;
+    private EdgeSampler haddr;
+    private EdgeSampler hready;
+    private EdgeSampler hdata;
+    private Transaction currentBurst;
+
+    // True if a transfer of currentBurst is in its data phase.
+    private boolean dataPhasePending;
+
+    @Override
+    public String[] getInputNames() {
+        return new String[] {"hclk", "htrans", "haddr", "hready", "hdata"};
+    }
+
+    @Override
+    protected int getRequiredWidth(int input) {
+        switch (input) {
+            case HTRANS:
+                return 2;
+            case HADDR:
+            case HDATA:
+                return 0;
+            default:
+                return 1;
+        }
+    }
+
+    @Override
+    protected int getAddressInput() {
+        return HADDR;
+    }
+
+    @Override
+    protected int getDataInput() {
+        return HDATA;
+    }
+
+    @Override
+    protected void startDecode() {
+        htrans = getSampler(HTRANS);
+        haddr = getSampler(HADDR);
+        hready = getSampler(HREADY);
+        hdata = getSampler(HDATA);
+        currentBurst = null;
+        dataPhasePending = false;
+    }
+
+    @Override
+    protected void clockEdge(long timestamp, long cycle) {
+        if (!hready.isHigh(timestamp)) {
+            return; // Wait state
+        }
+
+        if (dataPhasePending) {
+            addBeat(currentBurst, timestamp, cycle, hdata);
+            dataPhasePending = false;
+        }
+
+        // X or Z is treated as IDLE.
+        long trans = htrans.isDefined(timestamp) ? htrans.getBits(timestamp) : 0;
+        if (trans == SEQ && currentBurst != null) {
+            dataPhasePending = true;
+        } else if (trans != BUSY) {
+            if (currentBurst != null && currentBurst.beatCount > 0) {
+                transactionComplete(currentBurst);
+            }
+
+            currentBurst = null;
+            if (trans == NONSEQ) {
+                currentBurst = new Transaction();
+                currentBurst.address = haddr.getBits(timestamp);
+                currentBurst.startCycle = cycle;
+                dataPhasePending = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.decoder;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+///
+/// AMBA AXI burst decoder. This decodes one direction: connect the AR and
+/// R channels to see reads, or the AW and W channels to see writes. IDs
+/// are ignored, so this assumes bursts complete in the order their
+/// addresses were issued. The length of a burst is the number of data
+/// beats up to and including the one with LAST set. Latency is the number
+/// of cycles from the first handshake of the burst on either channel to
+/// its last data beat.
+///
+class AxiDecoder extends BusDecoder {
+    private static final int AVALID = 1;
+    private static final int AREADY = 2;
+    private static final int ADDR = 3;
+    private static final int VALID = 4;
+    private static final int READY = 5;
+    private static final int LAST = 6;
+    private static final int DATA = 7;
+
+    private EdgeSampler avalid;
+    private EdgeSampler aready;
+    private EdgeSampler addr;
+    private EdgeSampler valid;
+    private EdgeSampler ready;
+    private EdgeSampler last;
+    private EdgeSampler data;
+
+    // Address handshakes that don't have a completed burst yet, and bursts
+    // whose address hasn't been seen yet (write data may come first).
+    private final Deque<Transaction> addressPhases = new ArrayDeque<>();
+    private final Deque<Transaction> dataPhases = new ArrayDeque<>();
+    private Transaction currentBurst;
+
+    @Override
+    public String[] getInputNames() {
+        return new String[] {"aclk", "axvalid", "axready", "axaddr", "valid", "ready",
+            "last", "data"};
+    }
+
+    @Override
+    protected int getRequiredWidth(int input) {
+        return input == ADDR || input == DATA ? 0 : 1;
+    }
+
+    @Override
+    protected int getAddressInput() {
+        return ADDR;
+    }
+
+    @Override
+    protected int getDataInput() {
+        return DATA;
+    }
+
+    @Override
+    protected void startDecode() {
+        avalid = getSampler(AVALID);
+        aready = getSampler(AREADY);
+        addr = getSampler(ADDR);
+        valid = getSampler(VALID);
+        ready = getSampler(READY);
+        last = getSampler(LAST);
+        data = getSampler(DATA);
+        addressPhases.clear();
+        dataPhases.clear();
+        currentBurst = null;
+    }
+
+    @Override
+    protected void clockEdge(long timestamp, long cycle) {
+        if (avalid.isHigh(timestamp) && aready.isHigh(timestamp)) {
+            Transaction addressPhase = new Transaction();
+            addressPhase.address = addr.getBits(timestamp);
+            addressPhase.startCycle = cycle;
+            addressPhases.addLast(addressPhase);
+        }
+
+        if (valid.isHigh(timestamp) && ready.isHigh(timestamp)) {
+            if (currentBurst == null) {
+                currentBurst = new Transaction();
+                currentBurst.startCycle = cycle;
+            }
+
+            addBeat(currentBurst, timestamp, cycle, data);
+            if (last.isHigh(timestamp)) {
+                dataPhases.addLast(currentBurst);
+                currentBurst = null;
+            }
+        }
+
+        while (!addressPhases.isEmpty() && !dataPhases.isEmpty()) {
+            Transaction addressPhase = addressPhases.removeFirst();
+            Transaction burst = dataPhases.removeFirst();
+            burst.address = addressPhase.address;
+            burst.startCycle = Math.min(burst.startCycle, addressPhase.startCycle);
+            transactionComplete(burst);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.decoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import waveview.wavedata.BitValue;
+import waveview.wavedata.BitVector;
+import waveview.wavedata.NetDataModel;
+import waveview.wavedata.TransitionVector;
+
+///
+/// Base class for decoders of synchronous buses, which transfer data when
+/// handshake signals are asserted at a rising clock edge. Subclasses look
+/// at the signals at each edge and report the transactions they find. The
+/// output shows one field of each transaction, chosen by a parameter,
+/// during its data phase: from the edge where its first data beat is
+/// transferred until the edge after the last one.
+///
+abstract class BusDecoder extends Decoder {
+    private static final String[] FIELD_NAMES = {"address", "data", "length", "latency"};
+    private static final int ADDRESS = 0;
+    private static final int DATA = 1;
+    private static final int LENGTH = 2;
+    private static final int LATENCY = 3;
+    private static final int COUNT_WIDTH = 32;
+
+    private final NetDataModel[] inputs = new NetDataModel[getInputNames().length];
+    private int field = ADDRESS;
+    private Output output;
+    private SignalCursor clockCursor;
+
+    /// One bus transaction (for example, a burst), built up by a subclass.
+    static final class Transaction {
+        long address;
+
+        // Clock cycles are numbered by counting rising edges.
+        long startCycle;
+        long firstBeatTime;
+        long lastBeatCycle;
+        long lastBeatTime;
+        int beatCount;
+
+        // Only recorded if the data field is shown
+        final List<Long> beatTimes = new ArrayList<>();
+        final List<BitVector> beatData = new ArrayList<>();
+    }
+
+    /// Appends to the output, and collapses several values at the same
+    /// timestamp into the last one, so a transaction that starts at the
+    /// edge where the previous one ends doesn't leave a zero width Z.
+    private static final class Output {
+        final TransitionVector.Builder builder;
+        final BitVector z;
+        final BitVector pendingValue = new BitVector();
+        long pendingTimestamp = -1;
+
+        Output(int width) {
+            builder = TransitionVector.Builder.createBuilder(width);
+            z = new BitVector(width);
+            for (int i = 0; i < width; i++) {
+                z.setBit(i, BitValue.Z);
+            }
+        }
+
+        void write(long timestamp, BitVector value) {
+            if (timestamp != pendingTimestamp) {
+                flush();
+                pendingTimestamp = timestamp;
+            }
+
+            pendingValue.assign(value);
+        }
+
+        void flush() {
+            if (pendingTimestamp >= 0) {
+                builder.appendTransition(pendingTimestamp, pendingValue);
+            }
+        }
+    }
+
+    @Override
+    public String[] getParamNames() {
+        return new String[] {"Field (address, data, length, or latency)"};
+    }
+
+    @Override
+    public void setParam(int param, String value) {
+        for (int i = 0; i < FIELD_NAMES.length; i++) {
+            if (FIELD_NAMES[i].equals(value)) {
+                field = i;
+                return;
+            }
+        }
+
+        throw new IllegalArgumentException(
+            "invalid field (must be address, data, length, or latency)");
+    }
+
+    @Override
+    public void setInput(int index, NetDataModel data) {
+        if (index < 0 || index >= inputs.length) {
+            throw new IllegalArgumentException("invalid input index");
+        }
+
+        int requiredWidth = getRequiredWidth(index);
+        if (requiredWidth != 0 && data.getWidth() != requiredWidth) {
+            throw new IllegalArgumentException("Invalid net " + data.getFullName()
+                + ": must be " + requiredWidth + (requiredWidth == 1 ? " bit" : " bits")
+                + " wide");
+        }
+
+        if (index == getAddressInput() && data.getWidth() > 64) {
+            throw new IllegalArgumentException("Invalid net " + data.getFullName()
+                + ": must be at most 64 bits wide");
+        }
+
+        inputs[index] = data;
+    }
+
+    @Override
+    public TransitionVector decode() {
+        TransitionVector clock = inputs[0].getTransitionVector();
+        clockCursor = new SignalCursor(clock);
+        output = new Output(getOutputWidth());
+        output.write(0, output.z);
+        startDecode();
+
+        // Walk the clock transitions directly rather than using
+        // SignalCursor.nextEdge: this visits every edge, so it is the
+        // innermost loop.
+        long cycle = 0;
+        boolean clockWasLow = false;
+        for (int i = 0; i < clock.getTransitionCount(); i++) {
+            BitValue clockValue = clock.getBit(i, 0);
+            if (clockValue == BitValue.ZERO) {
+                clockWasLow = true;
+            } else if (clockValue == BitValue.ONE && clockWasLow) {
+                clockWasLow = false;
+                clockEdge(clock.getTimestamp(i), cycle++);
+            }
+        }
+
+        // Transactions are written once they complete. The output of the
+        // last one ends at the edge after its last beat, if there is one.
+        output.flush();
+        TransitionVector result = output.builder.getTransitionVector();
+        output = null;
+        clockCursor = null;
+        return result;
+    }
+
+    private int getOutputWidth() {
+        switch (field) {
+            case ADDRESS:
+                return inputs[getAddressInput()].getWidth();
+            case DATA:
+                return inputs[getDataInput()].getWidth();
+            default:
+                return COUNT_WIDTH;
+        }
+    }
+
+    /// @returns Object that reads an input at clock edges
+    protected EdgeSampler getSampler(int input) {
+        return new EdgeSampler(inputs[input].getTransitionVector());
+    }
+
+    /// Record a transfer of data. Subclasses call this from clockEdge.
+    protected void addBeat(Transaction transaction, long timestamp, long cycle,
+        EdgeSampler data) {
+        if (transaction.beatCount++ == 0) {
+            transaction.firstBeatTime = timestamp;
+        }
+
+        transaction.lastBeatCycle = cycle;
+        transaction.lastBeatTime = timestamp;
+        if (field == DATA) {
+            BitVector value = new BitVector();
+            data.getValue(timestamp, value);
+            transaction.beatTimes.add(timestamp);
+            transaction.beatData.add(value);
+        }
+    }
+
+    /// Write a transaction to the output. Subclasses must call this in the
+    /// order of the transactions' data phases, after the last beat.
+    protected void transactionComplete(Transaction transaction) {
+        switch (field) {
+            case ADDRESS:
+                output.write(transaction.firstBeatTime,
+                    toBitVector(transaction.address, output.z.getWidth()));
+                break;
+            case DATA:
+                for (int i = 0; i < transaction.beatCount; i++) {
+                    output.write(transaction.beatTimes.get(i), transaction.beatData.get(i));
+                }
+                break;
+            case LENGTH:
+                output.write(transaction.firstBeatTime,
+                    toBitVector(transaction.beatCount, COUNT_WIDTH));
+                break;
+            default:
+                output.write(transaction.firstBeatTime, toBitVector(
+                    transaction.lastBeatCycle - transaction.startCycle, COUNT_WIDTH));
+                break;
+        }
+
+        long endTime = clockCursor.nextEdge(transaction.lastBeatTime, BitValue.ONE);
+        if (endTime >= 0) {
+            output.write(endTime, output.z);
+        }
+    }
+
+    private static BitVector toBitVector(long value, int width) {
+        BitVector vector = new BitVector(width);
+        for (int i = 0; i < Math.min(width, 64); i++) {
+            vector.setBit(i, BitValue.fromInt((int) (value >>> i) & 1));
+        }
+
+        return vector;
+    }
+
+    /// Reset decoding state and create samplers for the inputs.
+    protected abstract void startDecode();
+
+    /// Called for every rising edge of the clock (input 0).
+    /// @param cycle Number of rising edges before this one
+    protected abstract void clockEdge(long timestamp, long cycle);
+
+    protected abstract int getAddressInput();
+
+    protected abstract int getDataInput();
+
+    /// @returns Width the input must have, or 0 if it may be any width
+    protected abstract int getRequiredWidth(int input);
+}
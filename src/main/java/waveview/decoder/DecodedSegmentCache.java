@@ -0,0 +1,161 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package waveview.decoder;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import waveview.wavedata.LazyTransitionVector;
+import waveview.wavedata.Transition;
+import waveview.wavedata.TransitionVector;
+
+///
+/// Decodes a net one chunk at a time, when a chunk is first needed. The
+/// time range is divided into chunks of equal duration. Each one begins at
+/// the first resynchronization point at or after its nominal start time,
+/// and ends where the next one begins, so like the segments in
+/// SegmentedDecoder.decode, they can be decoded independently and give the
+/// same result as decoding the whole net.
+///
+final class DecodedSegmentCache implements LazyTransitionVector {
+    // Aim for this many transitions of the split input per chunk.
+    private static final int TRANSITIONS_PER_CHUNK = 16384;
+    private static final long UNKNOWN = -2;
+
+    private final SegmentedDecoder decoder;
+    private final long chunkDuration;
+    private final int chunkCount;
+
+    // Timestamp each chunk begins at, or Long.MAX_VALUE if there are no
+    // more resynchronization points. These are computed when needed.
+    private final long[] chunkStarts;
+
+    // Decoded chunks. Each begins with the initial value at timestamp 0,
+    // so a chunk can be returned as the range by itself.
+    private final AtomicReferenceArray<TransitionVector> chunks;
+    private volatile TransitionVector all;
+
+    DecodedSegmentCache(SegmentedDecoder decoder) {
+        this.decoder = decoder;
+        TransitionVector splitInput = decoder.getSplitInput();
+        int targetChunks = Math.max(1, splitInput.getTransitionCount() / TRANSITIONS_PER_CHUNK);
+        chunkDuration = Math.max(1, (splitInput.getMaxTimestamp() + targetChunks) / targetChunks);
+        chunkCount = (int) (splitInput.getMaxTimestamp() / chunkDuration) + 1;
+        chunkStarts = new long[chunkCount];
+        Arrays.fill(chunkStarts, UNKNOWN);
+        chunkStarts[0] = 0;
+        chunks = new AtomicReferenceArray<>(chunkCount);
+    }
+
+    @Override
+    public int getWidth() {
+        return decoder.getOutputWidth();
+    }
+
+    @Override
+    public TransitionVector getRange(long start, long end) {
+        if (all != null) {
+            return all;
+        }
+
+        // A chunk may begin after its nominal start time, so the one that
+        // contains the start timestamp may be earlier.
+        int firstChunk = (int) Math.min(chunkCount - 1, Math.max(0, start) / chunkDuration);
+        while (getChunkStart(firstChunk) > start) {
+            firstChunk--;
+        }
+
+        // Usually the range is inside one chunk. Returning the same vector
+        // each time avoids copying it for every tile, and lets caches that
+        // are keyed on the vector, like the label cache, work.
+        TransitionVector chunk = getChunk(firstChunk);
+        if (firstChunk == chunkCount - 1
+            || chunk.getTimestamp(chunk.getTransitionCount() - 1) > end) {
+            return chunk;
+        }
+
+        TransitionVector.Builder rangeBuilder =
+            TransitionVector.Builder.createBuilder(getWidth())
+            .appendTransition(0, decoder.getInitialValue());
+        boolean pastEnd = false;
+        for (int chunkIndex = firstChunk; chunkIndex < chunkCount && !pastEnd; chunkIndex++) {
+            // Skip the initial value
+            Iterator<Transition> iterator = getChunk(chunkIndex).iteratorAt(1);
+            while (iterator.hasNext()) {
+                Transition transition = iterator.next();
+                rangeBuilder.appendTransition(transition.getTimestamp(), transition);
+                pastEnd |= transition.getTimestamp() > end;
+            }
+        }
+
+        return rangeBuilder.getTransitionVector();
+    }
+
+    @Override
+    public TransitionVector getAll() {
+        if (all == null) {
+            synchronized (this) {
+                if (all == null) {
+                    all = decoder.decode();
+                }
+            }
+        }
+
+        return all;
+    }
+
+    private TransitionVector getChunk(int chunkIndex) {
+        TransitionVector chunk = chunks.get(chunkIndex);
+        if (chunk == null) {
+            // If two threads need the same chunk at once, both decode it,
+            // but the results are the same.
+            long start = getChunkStart(chunkIndex);
+            long end = chunkIndex + 1 < chunkCount ? getChunkStart(chunkIndex + 1)
+                : Long.MAX_VALUE;
+            TransitionVector.Builder chunkBuilder =
+                TransitionVector.Builder.createBuilder(getWidth())
+                .appendTransition(0, decoder.getInitialValue());
+            if (start < end) {
+                decoder.decodeSegment(start, end, chunkBuilder);
+            }
+
+            chunk = chunkBuilder.getTransitionVector();
+            chunks.set(chunkIndex, chunk);
+        }
+
+        return chunk;
+    }
+
+    private synchronized long getChunkStart(int chunkIndex) {
+        if (chunkStarts[chunkIndex] == UNKNOWN) {
+            long resyncPoint = decoder.findResyncPoint(chunkIndex * chunkDuration);
+            if (resyncPoint < 0) {
+                resyncPoint = Long.MAX_VALUE;
+            }
+
+            // There are no resynchronization points between the nominal
+            // start of this chunk and this one, so any later chunks that
+            // begin in that range will start at the same place.
+            for (int i = chunkIndex; i < chunkCount && i * chunkDuration <= resyncPoint; i++) {
+                chunkStarts[i] = resyncPoint;
+            }
+        }
+
+        return chunkStarts[chunkIndex];
+    }
+}
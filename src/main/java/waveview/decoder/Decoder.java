@@ -16,7 +16,9 @@
 
 package waveview.decoder;
 
+import waveview.wavedata.LazyTransitionVector;
 import waveview.wavedata.NetDataModel;
+import waveview.wavedata.TransitionSink;
 import waveview.wavedata.TransitionVector;
 
 ///
@@ -26,21 +28,20 @@ import waveview.wavedata.TransitionVector;
 public abstract class Decoder {
     private int timescale;
 
+    /// @param name One of the names returned by getDecoderList
+    /// @throws IllegalArgumentException if there is no decoder with this name
     public static Decoder createDecoder(String name) {
-        switch (name) {
-            case "SPI":
-                return new SpiDecoder();
-            case "UART":
-                return new UartDecoder();
-            case "I2C":
-                return new I2cDecoder();
-            default:
-                throw new IllegalArgumentException("unknown decoder name");
-        }
+        return DecoderRegistry.createDecoder(name);
     }
 
+    /// @returns Names of all installed decoders, including plugins, in
+    ///   alphabetical order.
     public static String[] getDecoderList() {
-        return new String[] {"SPI", "UART", "I2C"};
+        return DecoderRegistry.getDecoderNames();
+    }
+
+    public static boolean isDecoderInstalled(String name) {
+        return DecoderRegistry.isDecoderInstalled(name);
     }
 
     public abstract String[] getInputNames();
@@ -52,6 +53,25 @@ public abstract class Decoder {
         this.timescale = timescale;
     }
 
+    /// @returns Object that decodes parts of the waveform as they are
+    ///   requested, or null if this decoder can only decode all of it at
+    ///   once.
+    public LazyTransitionVector decodeLazily() {
+        return null;
+    }
+
+    /// Begin decoding values that are pushed to the returned object, rather
+    /// than read from the inputs. The timescale and parameters must be set
+    /// first. setInput may be called to validate the inputs, but their
+    /// transition vectors are not read.
+    /// @param output Receives the decoded values. The value at timestamp 0
+    ///   must be written before this returns.
+    /// @returns Object to push input values to, or null if this decoder
+    ///   can't decode that way.
+    public StreamingDecoder startStreaming(TransitionSink output) {
+        return null;
+    }
+
     protected int getTimescale() {
         return timescale;
     }
@@ -0,0 +1,314 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.decoder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import waveview.wavedata.BitVector;
+import waveview.wavedata.NetDataModel;
+import waveview.wavedata.TransitionSink;
+import waveview.wavedata.TransitionVector;
+
+///
+/// Runs several decoders as one, where each decodes the output of the one
+/// before it: for example, UART bytes grouped into frames. The stages
+/// stream, so each value a stage writes is passed directly to the next
+/// one. None of the intermediate values are stored, which would take
+/// as much memory as a decoded net for each stage.
+///
+/// The first input of each stage after the first is the output of the
+/// previous stage. Its other inputs are inputs of the pipeline (which are
+/// the inputs of the first stage). The parameters of the pipeline are the
+/// parameters of all of the stages, in order.
+///
+class DecoderPipeline extends Decoder {
+    private final Decoder first;
+    private final List<Stage> stages = new ArrayList<>();
+    private final NetDataModel[] inputs;
+
+    private static final class Stage {
+        final Decoder decoder;
+
+        // Pipeline input index for each input after the first.
+        final int[] inputMap;
+
+        Stage(Decoder decoder, int[] inputMap) {
+            this.decoder = decoder;
+            this.inputMap = inputMap;
+        }
+    }
+
+    DecoderPipeline(Decoder first) {
+        this.first = first;
+        inputs = new NetDataModel[first.getInputNames().length];
+    }
+
+    /// @param pipelineInputs For each input of the decoder after the first,
+    ///   the index of the pipeline input that is connected to it.
+    /// @returns this, so calls can be chained
+    DecoderPipeline addStage(Decoder decoder, int... pipelineInputs) {
+        assert pipelineInputs.length == decoder.getInputNames().length - 1;
+        stages.add(new Stage(decoder, pipelineInputs));
+        return this;
+    }
+
+    @Override
+    public String[] getInputNames() {
+        return first.getInputNames();
+    }
+
+    @Override
+    public void setInput(int index, NetDataModel data) {
+        first.setInput(index, data);
+        for (Stage stage : stages) {
+            for (int i = 0; i < stage.inputMap.length; i++) {
+                if (stage.inputMap[i] == index) {
+                    stage.decoder.setInput(i + 1, data);
+                }
+            }
+        }
+
+        inputs[index] = data;
+    }
+
+    @Override
+    public String[] getParamNames() {
+        List<String> names = new ArrayList<>();
+        for (Decoder decoder : getDecoders()) {
+            for (String name : decoder.getParamNames()) {
+                names.add(name);
+            }
+        }
+
+        return names.toArray(new String[0]);
+    }
+
+    @Override
+    public void setParam(int param, String value) {
+        int firstParam = 0;
+        for (Decoder decoder : getDecoders()) {
+            int paramCount = decoder.getParamNames().length;
+            if (param < firstParam + paramCount) {
+                decoder.setParam(param - firstParam, value);
+                return;
+            }
+
+            firstParam += paramCount;
+        }
+
+        throw new IllegalArgumentException("invalid parameter index");
+    }
+
+    @Override
+    public void setTimescale(int timescale) {
+        super.setTimescale(timescale);
+        for (Decoder decoder : getDecoders()) {
+            decoder.setTimescale(timescale);
+        }
+    }
+
+    private List<Decoder> getDecoders() {
+        List<Decoder> decoders = new ArrayList<>();
+        decoders.add(first);
+        for (Stage stage : stages) {
+            decoders.add(stage.decoder);
+        }
+
+        return decoders;
+    }
+
+    @Override
+    public TransitionVector decode() {
+        OutputSink output = new OutputSink();
+        StreamingDecoder streamingDecoder = startStreaming(output);
+        if (streamingDecoder != null) {
+            StreamingInputs.replay(inputs, streamingDecoder);
+            return output.getTransitionVector();
+        }
+
+        // A stage can't stream, so fall back to decoding each stage in full.
+        TransitionVector vector = first.decode();
+        for (Stage stage : stages) {
+            stage.decoder.setInput(0, new NetDataModel("", "", vector));
+            vector = stage.decoder.decode();
+        }
+
+        return vector;
+    }
+
+    @Override
+    public StreamingDecoder startStreaming(TransitionSink output) {
+        // Start from the end, so each stage's output has somewhere to go.
+        Link[] links = new Link[stages.size()];
+        TransitionSink stageOutput = output;
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            Stage stage = stages.get(i);
+            StreamingDecoder decoder = stage.decoder.startStreaming(stageOutput);
+            if (decoder == null) {
+                return null;
+            }
+
+            links[i] = new Link(decoder, stage.inputMap);
+            stageOutput = links[i];
+        }
+
+        StreamingDecoder firstDecoder = first.startStreaming(stageOutput);
+        if (firstDecoder == null) {
+            return null;
+        }
+
+        return new StreamingDecoder() {
+            @Override
+            public void inputsChanged(long timestamp, BitVector[] inputValues) {
+                for (Link link : links) {
+                    link.pipelineInputsChanged(timestamp, inputValues);
+                }
+
+                firstDecoder.inputsChanged(timestamp, inputValues);
+            }
+
+            @Override
+            public void finish() {
+                firstDecoder.finish();
+                for (Link link : links) {
+                    link.finish();
+                }
+            }
+        };
+    }
+
+    /// Passes the output of one stage to the next, combined with any other
+    /// inputs that stage has. A stage writes a value some time after the
+    /// inputs it was decoded from changed (for example, a UART byte is
+    /// written once its last bit has been received), so changes to the
+    /// other inputs are queued until the output catches up with them.
+    private static final class Link implements TransitionSink {
+        private final StreamingDecoder decoder;
+        private final int[] inputMap;
+        private final BitVector[] values;
+        private final Deque<InputChange> queuedChanges = new ArrayDeque<>();
+        private BitVector[] lastQueuedValues;
+        private int undefinedCount;
+        private long pendingTimestamp = -1;
+
+        private static final class InputChange {
+            final long timestamp;
+            final BitVector[] values;
+
+            InputChange(long timestamp, BitVector[] values) {
+                this.timestamp = timestamp;
+                this.values = values;
+            }
+        }
+
+        Link(StreamingDecoder decoder, int[] inputMap) {
+            this.decoder = decoder;
+            this.inputMap = inputMap;
+            values = new BitVector[inputMap.length + 1];
+            undefinedCount = values.length;
+        }
+
+        /// Called for each change to the pipeline inputs, before the first
+        /// stage sees it.
+        void pipelineInputsChanged(long timestamp, BitVector[] inputValues) {
+            if (inputMap.length == 0) {
+                return;
+            }
+
+            // Most changes are to inputs this stage doesn't use (like a
+            // clock), so only queue ones that matter.
+            if (lastQueuedValues != null && isSameValue(inputValues)) {
+                return;
+            }
+
+            lastQueuedValues = new BitVector[inputMap.length];
+            for (int i = 0; i < inputMap.length; i++) {
+                lastQueuedValues[i] = new BitVector(inputValues[inputMap[i]]);
+            }
+
+            queuedChanges.addLast(new InputChange(timestamp, lastQueuedValues));
+        }
+
+        private boolean isSameValue(BitVector[] inputValues) {
+            for (int i = 0; i < inputMap.length; i++) {
+                BitVector value = inputValues[inputMap[i]];
+                BitVector lastValue = lastQueuedValues[i];
+                if (value.getWidth() != lastValue.getWidth()) {
+                    return false;
+                }
+
+                for (int bit = 0; bit < value.getWidth(); bit++) {
+                    if (value.getBit(bit) != lastValue.getBit(bit)) {
+                        return false;
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public TransitionSink appendTransition(long timestamp, BitVector value) {
+            // A stage may write a value slightly earlier than the last one
+            // (UartDecoder may start the next byte before the previous
+            // one's Z). Inputs can't go back in time, so it is moved to the
+            // later timestamp.
+            timestamp = Math.max(timestamp, pendingTimestamp);
+            applyQueuedChanges(timestamp);
+            setValue(timestamp, 0, value);
+            return this;
+        }
+
+        void finish() {
+            applyQueuedChanges(Long.MAX_VALUE);
+            flush(Long.MAX_VALUE);
+            decoder.finish();
+        }
+
+        /// Apply queued changes at or before timestamp.
+        private void applyQueuedChanges(long timestamp) {
+            while (!queuedChanges.isEmpty() && queuedChanges.peekFirst().timestamp <= timestamp) {
+                InputChange change = queuedChanges.removeFirst();
+                for (int i = 0; i < change.values.length; i++) {
+                    setValue(change.timestamp, i + 1, change.values[i]);
+                }
+            }
+        }
+
+        private void setValue(long timestamp, int index, BitVector value) {
+            flush(timestamp);
+            if (values[index] == null) {
+                values[index] = new BitVector(value);
+                undefinedCount--;
+            } else {
+                values[index].assign(value);
+            }
+        }
+
+        /// Pass the values from the previous timestamp to the decoder if
+        /// this is a new timestamp.
+        private void flush(long timestamp) {
+            if (pendingTimestamp >= 0 && timestamp != pendingTimestamp && undefinedCount == 0) {
+                decoder.inputsChanged(pendingTimestamp, values);
+            }
+
+            pendingTimestamp = timestamp;
+        }
+    }
+}
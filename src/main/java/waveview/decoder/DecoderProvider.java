@@ -0,0 +1,34 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.decoder;
+
+///
+/// Creates decoders of one type. Decoders in other jars are installed by
+/// implementing this, listing the class in
+/// META-INF/services/waveview.decoder.DecoderProvider, and putting the jar
+/// on the class path. Implementations must have a public no-argument
+/// constructor, which should be cheap: all providers are created the first
+/// time any decoder is needed.
+///
+public interface DecoderProvider {
+    /// @returns Name shown in the decode menu and saved in settings files.
+    ///   If more than one provider has the same name, the first one found
+    ///   is used.
+    String getName();
+
+    Decoder createDecoder();
+}
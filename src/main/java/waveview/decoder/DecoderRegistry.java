@@ -0,0 +1,131 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.decoder;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+///
+/// Finds decoders by name: the built in ones, plus any that are installed
+/// with a DecoderProvider.
+///
+final class DecoderRegistry {
+    private DecoderRegistry() {}
+
+    // Plugins are loaded when this class is initialized, which is the first
+    // time a decoder is needed rather than at startup.
+    private static final class Holder {
+        static final Map<String, DecoderProvider> PROVIDERS = loadProviders();
+    }
+
+    private static final class BuiltinProvider implements DecoderProvider {
+        private final String name;
+        private final Supplier<Decoder> constructor;
+
+        BuiltinProvider(String name, Supplier<Decoder> constructor) {
+            this.name = name;
+            this.constructor = constructor;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Decoder createDecoder() {
+            return constructor.get();
+        }
+    }
+
+    static Decoder createDecoder(String name) {
+        DecoderProvider provider = Holder.PROVIDERS.get(name);
+        if (provider == null) {
+            throw new IllegalArgumentException("unknown decoder name " + name);
+        }
+
+        return provider.createDecoder();
+    }
+
+    static boolean isDecoderInstalled(String name) {
+        return Holder.PROVIDERS.containsKey(name);
+    }
+
+    /// @returns Names in alphabetical order
+    static String[] getDecoderNames() {
+        return Holder.PROVIDERS.keySet().toArray(new String[0]);
+    }
+
+    private static Map<String, DecoderProvider> loadProviders() {
+        Map<String, DecoderProvider> providers = new TreeMap<>();
+        addProvider(providers, new BuiltinProvider("SPI", SpiDecoder::new));
+        addProvider(providers, new BuiltinProvider("UART", UartDecoder::new));
+        addProvider(providers, new BuiltinProvider("I2C", I2cDecoder::new));
+        addProvider(providers, new BuiltinProvider("AXI", AxiDecoder::new));
+        addProvider(providers, new BuiltinProvider("AHB", AhbDecoder::new));
+        addProvider(providers, new BuiltinProvider("Wishbone", WishboneDecoder::new));
+        addProvider(providers, new BuiltinProvider("Frame", FrameDecoder::new));
+        addProvider(providers, new BuiltinProvider("Flash Command", FlashCommandDecoder::new));
+
+        // Stacks of decoders that stream into each other
+        addProvider(providers, new BuiltinProvider("UART > Frame",
+            () -> new DecoderPipeline(new UartDecoder()).addStage(new FrameDecoder())));
+        addProvider(providers, new BuiltinProvider("SPI > Flash Command",
+            () -> new DecoderPipeline(new SpiDecoder()).addStage(new FlashCommandDecoder(), 0)));
+
+        // A broken plugin shouldn't prevent the others from loading.
+        Iterator<DecoderProvider> iterator =
+            ServiceLoader.load(DecoderProvider.class).iterator();
+        while (true) {
+            try {
+                if (!iterator.hasNext()) {
+                    break;
+                }
+            } catch (ServiceConfigurationError exc) {
+                System.out.println("unable to find decoder plugins: " + exc.getMessage());
+                break;
+            }
+
+            try {
+                addProvider(providers, iterator.next());
+            } catch (ServiceConfigurationError | LinkageError exc) {
+                System.out.println("unable to load decoder plugin: " + exc.getMessage());
+            } catch (RuntimeException exc) {
+                // Thrown by the plugin's own code, for example getName().
+                System.out.println("unable to load decoder plugin: " + exc);
+            }
+        }
+
+        return Collections.unmodifiableMap(providers);
+    }
+
+    private static void addProvider(Map<String, DecoderProvider> providers,
+        DecoderProvider provider) {
+        String name = provider.getName();
+        if (providers.containsKey(name)) {
+            System.out.println("ignoring duplicate decoder " + name + " from "
+                + provider.getClass().getName());
+        } else {
+            providers.put(name, provider);
+        }
+    }
+}
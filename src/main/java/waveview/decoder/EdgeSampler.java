@@ -0,0 +1,62 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.decoder;
+
+import waveview.wavedata.BitValue;
+import waveview.wavedata.BitVector;
+import waveview.wavedata.TransitionVector;
+
+///
+/// Reads a net the way a register clocked by an edge at a timestamp sees
+/// it: the value just before that timestamp. In a simulation, signals
+/// driven from the same clock change at the edge, and this ignores that.
+/// This remembers where it last read, so reading at increasing timestamps
+/// is fast.
+///
+final class EdgeSampler {
+    private final TransitionVector vector;
+    private final int width;
+    private int index;
+
+    EdgeSampler(TransitionVector vector) {
+        this.vector = vector;
+        width = vector.getWidth();
+    }
+
+    boolean isHigh(long timestamp) {
+        return vector.getBit(seek(timestamp), 0) == BitValue.ONE;
+    }
+
+    /// @returns Low 64 bits of the value, with X and Z bits read as 0.
+    long getBits(long timestamp) {
+        return vector.getBits(seek(timestamp), 0, Math.min(width, 64));
+    }
+
+    /// @returns true if none of the low 64 bits are X or Z
+    boolean isDefined(long timestamp) {
+        return vector.getUndefinedBits(seek(timestamp), 0, Math.min(width, 64)) == 0;
+    }
+
+    void getValue(long timestamp, BitVector value) {
+        vector.getValue(seek(timestamp), value);
+    }
+
+    private int seek(long timestamp) {
+        index = vector.findIndex(timestamp - 1, index);
+        return index;
+    }
+}
@@ -0,0 +1,160 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.decoder;
+
+import waveview.wavedata.BitValue;
+import waveview.wavedata.BitVector;
+import waveview.wavedata.TransitionSink;
+
+///
+/// Decodes commands sent to a serial NOR flash from the bytes sent to it
+/// over SPI (the output of SpiDecoder for MOSI) and its chip select. A
+/// command is the bytes sent while chip select is asserted: an opcode,
+/// followed by a three byte address for commands that read, program, or
+/// erase. A parameter chooses whether the output is the opcode or the
+/// address, which is shown from the start of the opcode until chip select
+/// is deasserted. Commands with four byte addresses aren't supported.
+///
+class FlashCommandDecoder extends StackedDecoder {
+    private static final int BITS_PER_BYTE = 8;
+    private static final int ADDRESS_BYTES = 3;
+    private static final int ADDRESS_WIDTH = ADDRESS_BYTES * BITS_PER_BYTE;
+    private static final BitValue SS_ACTIVE = BitValue.ZERO;
+
+    // Opcodes that are followed by an address: page program, read, fast
+    // read, dual and quad output read, and 4k/32k/64k erase.
+    private static final int[] ADDRESS_OPCODES = {0x02, 0x03, 0x0b, 0x3b, 0x6b, 0x20,
+        0x52, 0xd8};
+
+    private boolean showAddress;
+
+    @Override
+    public String[] getInputNames() {
+        return new String[] {"bytes", "ss"};
+    }
+
+    @Override
+    public String[] getParamNames() {
+        return new String[] {"Field (command or address)"};
+    }
+
+    @Override
+    public void setParam(int param, String value) {
+        assert param == 0;
+        switch (value) {
+            case "command":
+                showAddress = false;
+                break;
+            case "address":
+                showAddress = true;
+                break;
+            default:
+                throw new IllegalArgumentException("invalid field (must be command or address)");
+        }
+    }
+
+    @Override
+    protected int getRequiredWidth(int index) {
+        return index == 0 ? BITS_PER_BYTE : 1;
+    }
+
+    @Override
+    public StreamingDecoder startStreaming(TransitionSink output) {
+        BitVector z = makeZ(showAddress ? ADDRESS_WIDTH : BITS_PER_BYTE);
+        output.appendTransition(0, z);
+        return new StreamingFlashDecoder(output, z);
+    }
+
+    private static boolean hasAddress(int opcode) {
+        for (int addressOpcode : ADDRESS_OPCODES) {
+            if (opcode == addressOpcode) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private final class StreamingFlashDecoder implements StreamingDecoder {
+        private final TransitionSink output;
+        private final BitVector z;
+        private boolean selected;
+        private boolean inByte;
+        private int byteCount;
+        private long commandStart;
+        private int opcode;
+        private int address;
+        private boolean wroteCommand;
+
+        StreamingFlashDecoder(TransitionSink output, BitVector z) {
+            this.output = output;
+            this.z = z;
+        }
+
+        @Override
+        public void inputsChanged(long timestamp, BitVector[] inputValues) {
+            boolean wasSelected = selected;
+            selected = inputValues[1].getBit(0) == SS_ACTIVE;
+            if (wasSelected && !selected) {
+                endCommand(timestamp);
+            } else if (!wasSelected && selected) {
+                byteCount = 0;
+            }
+
+            // SpiDecoder writes Z between bytes, so a byte starts when the
+            // input changes from Z to something else.
+            BitVector value = inputValues[0];
+            boolean byteStart = !inByte && !value.isZ();
+            inByte = !value.isZ();
+            if (byteStart && selected) {
+                receiveByte(timestamp, value);
+            }
+        }
+
+        private void receiveByte(long timestamp, BitVector value) {
+            if (byteCount == 0) {
+                commandStart = timestamp;
+                opcode = value.intValue();
+                address = 0;
+                if (!showAddress) {
+                    output.appendTransition(timestamp, value);
+                    wroteCommand = true;
+                }
+            } else if (byteCount <= ADDRESS_BYTES && hasAddress(opcode)) {
+                address = (address << BITS_PER_BYTE) | value.intValue();
+                if (byteCount == ADDRESS_BYTES && showAddress) {
+                    output.appendTransition(commandStart, toBitVector(address, ADDRESS_WIDTH));
+                    wroteCommand = true;
+                }
+            }
+
+            byteCount++;
+        }
+
+        private void endCommand(long timestamp) {
+            if (wroteCommand) {
+                output.appendTransition(timestamp, z);
+                wroteCommand = false;
+            }
+        }
+
+        @Override
+        public void finish() {
+            // A command that is still selected at the end keeps its value.
+        }
+    }
+}
@@ -0,0 +1,129 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.decoder;
+
+import waveview.wavedata.BitVector;
+import waveview.wavedata.TransitionSink;
+
+///
+/// Groups a stream of bytes, such as the output of a UART or SPI decoder,
+/// into frames that end with a delimiter byte (for example, lines of text
+/// that end with a newline). The output is the number of bytes in each frame,
+/// not counting the delimiter (up to 65535), from the start of its first byte until the end
+/// of the delimiter. Each non-Z input value is one byte.
+///
+class FrameDecoder extends StackedDecoder {
+    private static final int BITS_PER_BYTE = 8;
+    private static final int LENGTH_WIDTH = 16;
+    private static final int MAX_LENGTH = (1 << LENGTH_WIDTH) - 1;
+    private static final BitVector Z = makeZ(LENGTH_WIDTH);
+    private int delimiter;
+
+    @Override
+    public String[] getInputNames() {
+        return new String[] {"bytes"};
+    }
+
+    @Override
+    public String[] getParamNames() {
+        return new String[] {"Delimiter byte (hex)"};
+    }
+
+    @Override
+    public void setParam(int param, String value) {
+        assert param == 0;
+        try {
+            delimiter = Integer.parseInt(value, 16);
+        } catch (NumberFormatException exc) {
+            delimiter = -1;
+        }
+
+        if (delimiter < 0 || delimiter > 0xff) {
+            throw new IllegalArgumentException("invalid delimiter (must be a hex byte)");
+        }
+    }
+
+    @Override
+    protected int getRequiredWidth(int index) {
+        return BITS_PER_BYTE;
+    }
+
+    @Override
+    public StreamingDecoder startStreaming(TransitionSink output) {
+        output.appendTransition(0, Z);
+        return new StreamingFrameDecoder(output);
+    }
+
+    private final class StreamingFrameDecoder implements StreamingDecoder {
+        private final TransitionSink output;
+        private long frameStart = -1;
+        private int byteCount;
+        private boolean inDelimiter;
+
+        // The end of the previous frame. This isn't written until the start
+        // of the next one is known, because if they are the same there
+        // shouldn't be a Z between them.
+        private long frameEnd = -1;
+
+        StreamingFrameDecoder(TransitionSink output) {
+            this.output = output;
+        }
+
+        @Override
+        public void inputsChanged(long timestamp, BitVector[] inputValues) {
+            if (inDelimiter) {
+                // Whatever comes after the delimiter ends it.
+                inDelimiter = false;
+                frameEnd = timestamp;
+            }
+
+            BitVector value = inputValues[0];
+            if (value.isZ()) {
+                return;
+            }
+
+            if (frameStart < 0) {
+                frameStart = timestamp;
+                byteCount = 0;
+            }
+
+            if (value.isX() || value.intValue() != delimiter) {
+                byteCount++;
+                return;
+            }
+
+            if (frameEnd >= 0 && frameEnd < frameStart) {
+                output.appendTransition(frameEnd, Z);
+            }
+
+            output.appendTransition(frameStart,
+                toBitVector(Math.min(byteCount, MAX_LENGTH), LENGTH_WIDTH));
+            frameStart = -1;
+            frameEnd = -1;
+            inDelimiter = true;
+        }
+
+        @Override
+        public void finish() {
+            // Bytes after the last delimiter are not a complete frame, so
+            // they are ignored.
+            if (frameEnd >= 0) {
+                output.appendTransition(frameEnd, Z);
+            }
+        }
+    }
+}
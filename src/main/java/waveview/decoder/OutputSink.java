@@ -0,0 +1,49 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.decoder;
+
+import waveview.wavedata.BitVector;
+import waveview.wavedata.TransitionSink;
+import waveview.wavedata.TransitionVector;
+
+///
+/// Collects the output of a streaming decoder. The width of the output isn't
+/// known until the decoder writes its first value, so this creates the
+/// builder then.
+///
+final class OutputSink implements TransitionSink {
+    private TransitionVector.Builder builder;
+
+    @Override
+    public TransitionSink appendTransition(long timestamp, BitVector value) {
+        if (builder == null) {
+            builder = TransitionVector.Builder.createBuilder(value.getWidth());
+        }
+
+        builder.appendTransition(timestamp, value);
+        return this;
+    }
+
+    /// @returns true if the decoder has written at least one value
+    boolean hasOutput() {
+        return builder != null;
+    }
+
+    TransitionVector getTransitionVector() {
+        return builder.getTransitionVector();
+    }
+}
@@ -0,0 +1,154 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package waveview.decoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import waveview.wavedata.BitVector;
+import waveview.wavedata.LazyTransitionVector;
+import waveview.wavedata.Transition;
+import waveview.wavedata.TransitionVector;
+
+///
+/// Base class for decoders whose protocol has resynchronization points:
+/// times where the decoder state is known without looking at anything
+/// before them, such as when SPI slave select is deasserted. The waveform
+/// is split at these points, the segments are decoded in parallel, and
+/// their outputs are concatenated.
+///
+public abstract class SegmentedDecoder extends Decoder {
+    // Splitting has some overhead, so don't bother for small inputs.
+    static final int MIN_TRANSITIONS_PER_SEGMENT = 65536;
+
+    // Use more segments than threads, because they won't all take the same
+    // amount of time.
+    private static final int SEGMENTS_PER_THREAD = 4;
+
+    @Override
+    public final TransitionVector decode() {
+        long[] resyncPoints = findResyncPoints();
+        List<TransitionVector> segmentOutputs = new ArrayList<>();
+        if (resyncPoints.length == 0) {
+            segmentOutputs.add(decodeSegment(0, Long.MAX_VALUE));
+        } else {
+            List<Callable<TransitionVector>> tasks = new ArrayList<>();
+            for (int i = 0; i <= resyncPoints.length; i++) {
+                long start = i == 0 ? 0 : resyncPoints[i - 1];
+                long end = i == resyncPoints.length ? Long.MAX_VALUE : resyncPoints[i];
+                tasks.add(() -> decodeSegment(start, end));
+            }
+
+            try {
+                for (Future<TransitionVector> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                    segmentOutputs.add(future.get());
+                }
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("decode interrupted", exc);
+            } catch (ExecutionException exc) {
+                if (exc.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) exc.getCause();
+                }
+
+                throw new IllegalStateException(exc.getCause());
+            }
+        }
+
+        TransitionVector.Builder outputBuilder =
+            TransitionVector.Builder.createBuilder(getOutputWidth())
+            .appendTransition(0, getInitialValue());
+        for (TransitionVector segmentOutput : segmentOutputs) {
+            Iterator<Transition> iterator = segmentOutput.iteratorAt(0);
+            while (iterator.hasNext()) {
+                Transition transition = iterator.next();
+                outputBuilder.appendTransition(transition.getTimestamp(), transition);
+            }
+        }
+
+        return outputBuilder.getTransitionVector();
+    }
+
+    private TransitionVector decodeSegment(long start, long end) {
+        TransitionVector.Builder segmentBuilder =
+            TransitionVector.Builder.createBuilder(getOutputWidth());
+        decodeSegment(start, end, segmentBuilder);
+        return segmentBuilder.getTransitionVector();
+    }
+
+    /// Choose where to split the waveform. This spaces the splits evenly
+    /// by the number of transitions in the split input, then moves each
+    /// one forward to the next resynchronization point.
+    /// @returns Increasing list of timestamps, all greater than zero
+    private long[] findResyncPoints() {
+        TransitionVector splitInput = getSplitInput();
+        int transitionCount = splitInput.getTransitionCount();
+        int segmentCount = Math.min(
+            ForkJoinPool.getCommonPoolParallelism() * SEGMENTS_PER_THREAD,
+            transitionCount / MIN_TRANSITIONS_PER_SEGMENT);
+        long[] resyncPoints = new long[Math.max(0, segmentCount - 1)];
+        int resyncPointCount = 0;
+        long lastResyncPoint = 0;
+        for (int i = 1; i < segmentCount; i++) {
+            long target = splitInput.getTimestamp(
+                (int) ((long) transitionCount * i / segmentCount));
+            long resyncPoint = findResyncPoint(Math.max(target, lastResyncPoint + 1));
+            if (resyncPoint < 0) {
+                break;
+            }
+
+            resyncPoints[resyncPointCount++] = resyncPoint;
+            lastResyncPoint = resyncPoint;
+        }
+
+        return Arrays.copyOf(resyncPoints, resyncPointCount);
+    }
+
+    /// @returns Input whose transitions are used to balance the size of
+    ///   the segments. This should be the busiest one, usually the clock.
+    protected abstract TransitionVector getSplitInput();
+
+    /// @returns The first resynchronization point at or after timestamp,
+    ///   or -1 if there are none.
+    protected abstract long findResyncPoint(long timestamp);
+
+    /// Decode messages that begin at or after start and before end. This
+    /// is called on several threads at once, so it can't modify any fields.
+    /// @param start Zero or a value returned by findResyncPoint
+    /// @param end A value returned by findResyncPoint, or Long.MAX_VALUE
+    /// @param outputBuilder Append decoded values here. The last transition
+    ///   must be before the first message in the next segment, and must set
+    ///   the output back to the initial value.
+    protected abstract void decodeSegment(long start, long end,
+        TransitionVector.Builder outputBuilder);
+
+    protected abstract int getOutputWidth();
+
+    @Override
+    public LazyTransitionVector decodeLazily() {
+        return new DecodedSegmentCache(this);
+    }
+
+    /// @returns Value of the output before the first message
+    protected abstract BitVector getInitialValue();
+}
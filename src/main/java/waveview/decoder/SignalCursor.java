@@ -16,24 +16,33 @@
 
 package waveview.decoder;
 
-import java.util.Iterator;
 import waveview.wavedata.BitValue;
-import waveview.wavedata.Transition;
 import waveview.wavedata.TransitionVector;
 
-/// Convenience class for decoding waveforms
+/// Convenience class for decoding waveforms. This reads bit 0 of each
+/// transition. It keeps the index of the current transition, so moving
+/// forward is cheap and doesn't allocate anything. Moving backward requires
+/// a binary search.
 public class SignalCursor {
-    // The iterator is always at the end of the current segment
     final TransitionVector transitionVector;
-    Iterator<Transition> iterator;
-    long segmentBegin;
-    long segmentEnd;
-    BitValue currentValue;
-    BitValue nextValue;
+    private final int transitionCount;
+
+    // The cursor is in the segment from this transition to the next one.
+    // Times before the first transition are treated as if they were in
+    // the first segment.
+    private int index;
 
     public SignalCursor(TransitionVector transitionVector) {
+        this(transitionVector, 0);
+    }
+
+    /// @param timestamp Initial position of the cursor. This is only an
+    ///   optimization for callers that start in the middle of the waveform:
+    ///   the cursor can still move anywhere.
+    public SignalCursor(TransitionVector transitionVector, long timestamp) {
         this.transitionVector = transitionVector;
-        jumpToTime(0);
+        transitionCount = transitionVector.getTransitionCount();
+        index = transitionVector.findIndex(timestamp, 0);
     }
 
     /// Return the next timestamp where the signal transitions to a
@@ -48,12 +57,21 @@ public class SignalCursor {
     public long nextEdge(long timestamp, BitValue expectPolarity) {
         assert timestamp >= 0;
 
-        long opposite = nextLevel(timestamp, expectPolarity.invert());
+        int opposite = findLevel(timestamp, expectPolarity.invert());
         if (opposite < 0) {
             return -1;
         }
 
-        return nextLevel(opposite, expectPolarity);
+        // The signal is at the opposite level for this whole segment, so
+        // the edge is at the start of a later one.
+        int edge = scanForLevel(opposite + 1, expectPolarity);
+        if (edge < 0) {
+            index = opposite;
+            return -1;
+        }
+
+        index = edge;
+        return transitionVector.getTimestamp(edge);
     }
 
     /// Return the next timestamp where the signal is at a given level
@@ -64,52 +82,62 @@ public class SignalCursor {
     ///    transitions.
     public long nextLevel(long timestamp, BitValue expectLevel) {
         assert timestamp >= 0;
-        if (timestamp < segmentBegin || timestamp >= segmentEnd) {
-            jumpToTime(timestamp);
+        int found = findLevel(timestamp, expectLevel);
+        if (found < 0) {
+            return -1;
         }
 
-        // Cursor is at the first transition before this timestamp
+        return Long.max(transitionVector.getTimestamp(found), timestamp);
+    }
 
-        while (currentValue != expectLevel) {
-            if (!nextSegment()) {
-                return -1;
-            }
+    /// @returns Value at timestamp, or X if the signal has no transitions.
+    public BitValue getValueAt(long timestamp) {
+        if (transitionCount == 0) {
+            return BitValue.X;
         }
 
-        return Long.max(segmentBegin, timestamp);
+        seek(timestamp);
+        return transitionVector.getBit(index, 0);
     }
 
-    public BitValue getValueAt(long timestamp) {
-        if (timestamp < segmentBegin || timestamp >= segmentEnd) {
-            jumpToTime(timestamp);
+    /// Move the cursor to the first segment at or after timestamp where the
+    /// signal is at a level.
+    /// @returns Index of that segment, or -1 if there isn't one. In that
+    ///   case, the cursor is at the segment containing timestamp.
+    private int findLevel(long timestamp, BitValue level) {
+        if (transitionCount == 0) {
+            return -1;
         }
 
-        return currentValue;
-    }
+        seek(timestamp);
+        int found = scanForLevel(index, level);
+        if (found >= 0) {
+            index = found;
+        }
 
-    private void jumpToTime(long timestamp) {
-        iterator = transitionVector.findTransition(timestamp);
-        segmentEnd = 0; // Avoid nextSegment returning -1
-        nextSegment();
-        nextSegment();
+        return found;
     }
 
-    private boolean nextSegment() {
-        if (segmentEnd == Long.MAX_VALUE) {
-            return false;
+    /// @returns Index of first transition at or after startIndex to this
+    ///   level, or -1 if there isn't one.
+    private int scanForLevel(int startIndex, BitValue level) {
+        for (int i = startIndex; i < transitionCount; i++) {
+            if (transitionVector.getBit(i, 0) == level) {
+                return i;
+            }
         }
 
-        currentValue = nextValue;
-        segmentBegin = segmentEnd;
-        if (iterator.hasNext()) {
-            Transition t = iterator.next();
-            nextValue = t.getBit(0);
-            segmentEnd = t.getTimestamp();
-        } else {
-            // Last segment
-            segmentEnd = Long.MAX_VALUE;
+        return -1;
+    }
+
+    private void seek(long timestamp) {
+        // Staying in the same segment is the common case.
+        if (transitionVector.getTimestamp(index) <= timestamp
+            && (index == transitionCount - 1
+            || transitionVector.getTimestamp(index + 1) > timestamp)) {
+            return;
         }
 
-        return true;
+        index = transitionVector.findIndex(timestamp, index);
     }
-}
\ No newline at end of file
+}
@@ -19,23 +19,22 @@ package waveview.decoder;
 import waveview.wavedata.BitValue;
 import waveview.wavedata.BitVector;
 import waveview.wavedata.NetDataModel;
+import waveview.wavedata.TransitionSink;
 import waveview.wavedata.TransitionVector;
 
 ///
 /// Serial Peripheral Interface (SPI) protocol decoder
 /// https://en.wikipedia.org/wiki/Serial_Peripheral_Interface
 ///
-public class SpiDecoder extends Decoder {
+public class SpiDecoder extends SegmentedDecoder {
     private static final BitVector Z = new BitVector("zzzzzzzz", 2);
     private static final int BITS_PER_BYTE = 8;
     private static final BitValue SS_ACTIVE = BitValue.ZERO;
+    private static final BitValue SS_INACTIVE = BitValue.ONE;
     private NetDataModel ss;
     private NetDataModel sclk;
     private NetDataModel data;
     private BitValue clockPolarity;
-    private int bitCount;
-    private final BitVector currentByte = new BitVector(BITS_PER_BYTE);
-    private long byteStartTime;
 
     @Override
     public String[] getInputNames() {
@@ -88,28 +87,44 @@ public class SpiDecoder extends Decoder {
     }
 
     @Override
-    public TransitionVector decode() {
-        TransitionVector.Builder outputBuilder =
-            TransitionVector.Builder.createBuilder(BITS_PER_BYTE)
-            .appendTransition(0, Z);
-        SignalCursor ssCursor = new SignalCursor(ss.getTransitionVector());
-        SignalCursor dataCursor = new SignalCursor(data.getTransitionVector());
-        SignalCursor clockCursor = new SignalCursor(sclk.getTransitionVector());
-        long currentTime = ssCursor.nextLevel(0, SS_ACTIVE);
-
-        while (true) {
+    protected TransitionVector getSplitInput() {
+        return sclk.getTransitionVector();
+    }
+
+    /// Deasserting SS ends a transfer, so any point where it is inactive is
+    /// a resynchronization point.
+    @Override
+    protected long findResyncPoint(long timestamp) {
+        return new SignalCursor(ss.getTransitionVector(), timestamp)
+            .nextLevel(timestamp, SS_INACTIVE);
+    }
+
+    @Override
+    protected void decodeSegment(long start, long end, TransitionVector.Builder outputBuilder) {
+        // frameCursor looks ahead for the end of the current transfer, so
+        // ssCursor doesn't need to move backward.
+        SignalCursor ssCursor = new SignalCursor(ss.getTransitionVector(), start);
+        SignalCursor frameCursor = new SignalCursor(ss.getTransitionVector(), start);
+        SignalCursor dataCursor = new SignalCursor(data.getTransitionVector(), start);
+        SignalCursor clockCursor = new SignalCursor(sclk.getTransitionVector(), start);
+        BitVector currentByte = new BitVector(BITS_PER_BYTE);
+        int bitCount = 0;
+        long byteStartTime = 0;
+        long currentTime = ssCursor.nextLevel(start, SS_ACTIVE);
+        long frameEnd = findFrameEnd(frameCursor, currentTime);
+
+        while (currentTime >= 0 && currentTime < end) {
             currentTime = clockCursor.nextEdge(currentTime, clockPolarity);
             if (currentTime < 0) {
                 break;
             }
 
-            if (ssCursor.getValueAt(currentTime) != SS_ACTIVE) {
-                // SS is deasserted, scan for when it is active again.
-                currentTime = ssCursor.nextLevel(currentTime, SS_ACTIVE);
-                if (currentTime < 0) {
-                    break;
-                }
-
+            if (currentTime >= frameEnd || ssCursor.getValueAt(currentTime) != SS_ACTIVE) {
+                // SS was deasserted, which discards any partial byte. Scan
+                // for when it is active again.
+                bitCount = 0;
+                currentTime = ssCursor.nextLevel(Math.min(currentTime, frameEnd), SS_ACTIVE);
+                frameEnd = findFrameEnd(frameCursor, currentTime);
                 continue;
             }
 
@@ -123,7 +138,100 @@ public class SpiDecoder extends Decoder {
                 bitCount = 0;
             }
         }
+    }
+
+    @Override
+    public StreamingDecoder startStreaming(TransitionSink output) {
+        output.appendTransition(0, Z);
+        return new StreamingSpiDecoder(output);
+    }
+
+    /// Same algorithm as decodeSegment, but driven by changes to the inputs
+    /// rather than scanning ahead with cursors.
+    private final class StreamingSpiDecoder implements StreamingDecoder {
+        private final TransitionSink output;
+        private final BitVector currentByte = new BitVector(BITS_PER_BYTE);
+        private int bitCount;
+        private long byteStartTime;
+        private boolean frameActive;
+
+        // The clock must go to the opposite polarity before the next
+        // transition to clockPolarity is an edge.
+        private boolean clockReady;
+
+        StreamingSpiDecoder(TransitionSink output) {
+            this.output = output;
+        }
+
+        @Override
+        public void inputsChanged(long timestamp, BitVector[] inputValues) {
+            BitValue ssValue = inputValues[0].getBit(0);
+            BitValue clockValue = inputValues[1].getBit(0);
+            if (!frameActive) {
+                if (ssValue == SS_ACTIVE) {
+                    frameActive = true;
+                    bitCount = 0;
+                    clockReady = clockValue == clockPolarity.invert();
+                }
+
+                return;
+            }
+
+            if (ssValue == SS_INACTIVE) {
+                frameActive = false;
+                return;
+            }
 
-        return outputBuilder.getTransitionVector();
+            if (clockValue == clockPolarity.invert()) {
+                clockReady = true;
+                return;
+            }
+
+            if (!clockReady || clockValue != clockPolarity) {
+                return;
+            }
+
+            clockReady = false;
+            if (ssValue != SS_ACTIVE) {
+                // Like deassertion, SS being X or Z discards a partial byte.
+                frameActive = false;
+                return;
+            }
+
+            currentByte.setBit(BITS_PER_BYTE - bitCount++ - 1, inputValues[2].getBit(0));
+            if (bitCount == 1) {
+                byteStartTime = timestamp;
+            } else if (bitCount == BITS_PER_BYTE) {
+                output.appendTransition(byteStartTime, currentByte);
+                output.appendTransition(timestamp, Z);
+                bitCount = 0;
+            }
+        }
+
+        @Override
+        public void finish() {
+            // A partial byte at the end is discarded, as with decodeSegment.
+        }
+    }
+
+    /// @param frameStart Time SS was asserted, or -1 if it never is again.
+    /// @returns Next time SS is deasserted, or Long.MAX_VALUE if it isn't
+    private static long findFrameEnd(SignalCursor frameCursor, long frameStart) {
+        if (frameStart < 0) {
+            return Long.MAX_VALUE;
+        }
+
+        long frameEnd = frameCursor.nextLevel(frameStart, SS_INACTIVE);
+        return frameEnd < 0 ? Long.MAX_VALUE : frameEnd;
+    }
+
+    @Override
+    protected int getOutputWidth() {
+        return BITS_PER_BYTE;
+    }
+
+    @Override
+    protected BitVector getInitialValue() {
+        return Z;
     }
 }
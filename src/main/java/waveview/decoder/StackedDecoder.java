@@ -0,0 +1,78 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.decoder;
+
+import waveview.wavedata.BitValue;
+import waveview.wavedata.BitVector;
+import waveview.wavedata.NetDataModel;
+import waveview.wavedata.TransitionVector;
+
+///
+/// Base class for decoders whose first input is the output of another
+/// decoder (for example, the bytes from a UART) rather than a signal. They
+/// only implement startStreaming, so a DecoderPipeline can pass values
+/// straight to them from the decoder before, without storing the
+/// intermediate net. If the input is a decoded net that is already stored,
+/// decode() pushes its values through the same code.
+///
+abstract class StackedDecoder extends Decoder {
+    private final NetDataModel[] inputs = new NetDataModel[getInputNames().length];
+
+    /// @returns Width each input must be, or 0 if it can be any width
+    protected abstract int getRequiredWidth(int index);
+
+    @Override
+    public void setInput(int index, NetDataModel data) {
+        if (index < 0 || index >= inputs.length) {
+            throw new IllegalArgumentException("invalid input index");
+        }
+
+        int requiredWidth = getRequiredWidth(index);
+        if (requiredWidth != 0 && data.getWidth() != requiredWidth) {
+            throw new IllegalArgumentException("Invalid net " + data.getFullName()
+                + ": must be " + requiredWidth + (requiredWidth == 1 ? " bit" : " bits")
+                + " wide");
+        }
+
+        inputs[index] = data;
+    }
+
+    @Override
+    public TransitionVector decode() {
+        OutputSink output = new OutputSink();
+        StreamingInputs.replay(inputs, startStreaming(output));
+        return output.getTransitionVector();
+    }
+
+    protected static BitVector toBitVector(long value, int width) {
+        BitVector vector = new BitVector(width);
+        for (int i = 0; i < width; i++) {
+            vector.setBit(i, BitValue.fromInt((int) (value >>> i) & 1));
+        }
+
+        return vector;
+    }
+
+    protected static BitVector makeZ(int width) {
+        BitVector vector = new BitVector(width);
+        for (int i = 0; i < width; i++) {
+            vector.setBit(i, BitValue.Z);
+        }
+
+        return vector;
+    }
+}
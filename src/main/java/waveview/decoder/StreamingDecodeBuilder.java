@@ -0,0 +1,259 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.decoder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import waveview.wavedata.BitVector;
+import waveview.wavedata.NetDataModel;
+import waveview.wavedata.TransitionVector;
+import waveview.wavedata.WaveformBuilder;
+
+///
+/// Sits between a loader and the WaveformBuilder it writes to, and runs
+/// streaming decoders on the transitions as they go by. When the load
+/// finishes, the decoded nets already have their values, so they don't
+/// need to be decoded again afterward. Decoded nets whose decoder can't
+/// stream, or whose inputs aren't in the waveform (including ones that are
+/// other decoded nets), are left without a transition vector. This
+/// requires the loader to append transitions in timestamp order across all
+/// nets, as VcdLoader does.
+///
+public final class StreamingDecodeBuilder implements WaveformBuilder {
+    private final WaveformBuilder wrapped;
+    private final List<NetDataModel> decodedNets;
+    private final Deque<String> scopeStack = new ArrayDeque<>();
+    private final Map<String, Integer> netIds = new HashMap<>();
+    private final List<Integer> netWidths = new ArrayList<>();
+    private final List<Stream> streams = new ArrayList<>();
+    private int timescale;
+    private boolean started;
+
+    // Indexed by net ID. Null for nets that aren't decoder inputs.
+    private StreamInput[][] inputsByNetId;
+
+    private static final class Stream {
+        final NetDataModel net;
+        final StreamingDecoder decoder;
+        final OutputSink output;
+        final BitVector[] inputValues;
+        int undefinedInputCount;
+        long pendingTimestamp = -1;
+
+        Stream(NetDataModel net, StreamingDecoder decoder, OutputSink output,
+            int inputCount) {
+            this.net = net;
+            this.decoder = decoder;
+            this.output = output;
+            inputValues = new BitVector[inputCount];
+            undefinedInputCount = inputCount;
+        }
+
+        /// Pass the values from the previous timestamp to the decoder if
+        /// this is a new timestamp.
+        void flush(long timestamp) {
+            if (pendingTimestamp >= 0 && timestamp != pendingTimestamp
+                && undefinedInputCount == 0) {
+                decoder.inputsChanged(pendingTimestamp, inputValues);
+            }
+
+            pendingTimestamp = timestamp;
+        }
+    }
+
+    private static final class StreamInput {
+        final Stream stream;
+        final int index;
+
+        StreamInput(Stream stream, int index) {
+            this.stream = stream;
+            this.index = index;
+        }
+    }
+
+    /// @param decodedNets Nets to decode. These are configured (decoder
+    ///   name, inputs, and parameters), but have no transition vector.
+    ///   Ones that are decoded will have it set when loading finishes.
+    public StreamingDecodeBuilder(WaveformBuilder wrapped, List<NetDataModel> decodedNets) {
+        this.wrapped = wrapped;
+        this.decodedNets = decodedNets;
+    }
+
+    @Override
+    public WaveformBuilder setTimescale(int order) {
+        timescale = order;
+        wrapped.setTimescale(order);
+        return this;
+    }
+
+    @Override
+    public WaveformBuilder enterScope(String name) {
+        scopeStack.addLast(name);
+        wrapped.enterScope(name);
+        return this;
+    }
+
+    @Override
+    public WaveformBuilder exitScope() {
+        scopeStack.removeLast();
+        wrapped.exitScope();
+        return this;
+    }
+
+    @Override
+    public WaveformBuilder newNet(int netId, String shortName, int width) {
+        // Must match the names WaveformDataModel builds
+        StringBuilder fullName = new StringBuilder();
+        for (String scope : scopeStack) {
+            if (fullName.length() != 0) {
+                fullName.append('.');
+            }
+
+            fullName.append(scope);
+        }
+
+        fullName.append('.').append(shortName);
+        netIds.put(fullName.toString(), netId);
+        if (netId == netWidths.size()) {
+            netWidths.add(width);
+        }
+
+        wrapped.newNet(netId, shortName, width);
+        return this;
+    }
+
+    @Override
+    public WaveformBuilder appendTransition(int netId, long timestamp, BitVector values) {
+        wrapped.appendTransition(netId, timestamp, values);
+        if (!started) {
+            startStreams();
+        }
+
+        if (netId < inputsByNetId.length && inputsByNetId[netId] != null) {
+            for (StreamInput input : inputsByNetId[netId]) {
+                Stream stream = input.stream;
+                stream.flush(timestamp);
+
+                // The loader may reuse values, so this must copy it.
+                if (stream.inputValues[input.index] == null) {
+                    stream.inputValues[input.index] = new BitVector(values);
+                    stream.undefinedInputCount--;
+                } else {
+                    stream.inputValues[input.index].assign(values);
+                }
+            }
+        }
+
+        return this;
+    }
+
+    @Override
+    public WaveformBuilder loadFinished() {
+        if (!started) {
+            startStreams();
+        }
+
+        for (Stream stream : streams) {
+            stream.flush(Long.MAX_VALUE);
+            stream.decoder.finish();
+            stream.net.setTransitionVector(stream.output.getTransitionVector());
+        }
+
+        wrapped.loadFinished();
+        return this;
+    }
+
+    /// Called once all nets have been created.
+    private void startStreams() {
+        started = true;
+        List<List<StreamInput>> inputLists = new ArrayList<>();
+        for (int i = 0; i < netWidths.size(); i++) {
+            inputLists.add(null);
+        }
+
+        for (NetDataModel net : decodedNets) {
+            Stream stream = startStream(net);
+            if (stream == null) {
+                continue;
+            }
+
+            streams.add(stream);
+            String[] inputNames = net.getDecoderInputNets();
+            for (int i = 0; i < inputNames.length; i++) {
+                int netId = netIds.get(inputNames[i]);
+                if (inputLists.get(netId) == null) {
+                    inputLists.set(netId, new ArrayList<>());
+                }
+
+                inputLists.get(netId).add(new StreamInput(stream, i));
+            }
+        }
+
+        inputsByNetId = new StreamInput[inputLists.size()][];
+        for (int i = 0; i < inputLists.size(); i++) {
+            if (inputLists.get(i) != null) {
+                inputsByNetId[i] = inputLists.get(i).toArray(new StreamInput[0]);
+            }
+        }
+    }
+
+    /// @returns null if this net can't be decoded while loading.
+    private Stream startStream(NetDataModel net) {
+        String[] inputNames = net.getDecoderInputNets();
+        try {
+            Decoder decoder = Decoder.createDecoder(net.getDecoderName());
+            if (inputNames.length != decoder.getInputNames().length) {
+                return null;
+            }
+
+            decoder.setTimescale(timescale);
+            for (int i = 0; i < inputNames.length; i++) {
+                Integer netId = netIds.get(inputNames[i]);
+                if (netId == null) {
+                    return null;
+                }
+
+                // Only the widths are known now, so the decoder gets an
+                // empty net to validate against.
+                int width = netWidths.get(netId);
+                decoder.setInput(i, new NetDataModel(inputNames[i], inputNames[i],
+                    TransitionVector.Builder.createBuilder(width).getTransitionVector()));
+            }
+
+            String[] params = net.getDecoderParams();
+            for (int i = 0; i < params.length; i++) {
+                decoder.setParam(i, params[i]);
+            }
+
+            OutputSink output = new OutputSink();
+            StreamingDecoder streamingDecoder = decoder.startStreaming(output);
+            if (streamingDecoder == null || !output.hasOutput()) {
+                return null;
+            }
+
+            return new Stream(net, streamingDecoder, output, inputNames.length);
+        } catch (IllegalArgumentException exc) {
+            // Bad configuration. The error will be reported when this is
+            // decoded the usual way.
+            return null;
+        }
+    }
+}
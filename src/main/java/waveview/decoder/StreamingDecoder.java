@@ -0,0 +1,39 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package waveview.decoder;
+
+import waveview.wavedata.BitVector;
+
+///
+/// Decoder that is pushed the values of its inputs in timestamp order while
+/// a waveform is loading, rather than reading them after it has loaded.
+/// It writes decoded values to a TransitionSink as it goes. This is created
+/// by Decoder.startStreaming.
+///
+public interface StreamingDecoder {
+    /// Called once for each timestamp where at least one input changes, in
+    /// increasing order, after all of the changes at that timestamp.
+    /// @param inputValues Current value of each input, in the same order as
+    ///   Decoder.getInputNames. The caller may modify these after this
+    ///   returns.
+    void inputsChanged(long timestamp, BitVector[] inputValues);
+
+    /// Called after the last transition. Inputs hold their last values
+    /// forever, so this writes anything that depends on that.
+    void finish();
+}
@@ -0,0 +1,76 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.decoder;
+
+import waveview.wavedata.BitVector;
+import waveview.wavedata.NetDataModel;
+import waveview.wavedata.TransitionVector;
+
+///
+/// Pushes the values of nets that have already been loaded to a
+/// StreamingDecoder, in the same order StreamingDecodeBuilder does while a
+/// waveform is loading. This lets decoders that are only written to stream
+/// decode stored nets.
+///
+final class StreamingInputs {
+    private StreamingInputs() {}
+
+    static void replay(NetDataModel[] inputs, StreamingDecoder decoder) {
+        TransitionVector[] vectors = new TransitionVector[inputs.length];
+        int[] nextIndices = new int[inputs.length];
+        BitVector[] values = new BitVector[inputs.length];
+        int undefinedCount = inputs.length;
+        for (int i = 0; i < inputs.length; i++) {
+            vectors[i] = inputs[i].getTransitionVector();
+            values[i] = new BitVector();
+        }
+
+        while (true) {
+            long timestamp = Long.MAX_VALUE;
+            for (int i = 0; i < vectors.length; i++) {
+                if (nextIndices[i] < vectors[i].getTransitionCount()) {
+                    timestamp = Math.min(timestamp, vectors[i].getTimestamp(nextIndices[i]));
+                }
+            }
+
+            if (timestamp == Long.MAX_VALUE) {
+                break;
+            }
+
+            // Apply all changes at this timestamp. If an input has several,
+            // the last one wins.
+            for (int i = 0; i < vectors.length; i++) {
+                if (nextIndices[i] < vectors[i].getTransitionCount()
+                    && vectors[i].getTimestamp(nextIndices[i]) == timestamp) {
+                    if (nextIndices[i] == 0) {
+                        undefinedCount--;
+                    }
+
+                    int index = vectors[i].findIndex(timestamp, nextIndices[i]);
+                    vectors[i].getValue(index, values[i]);
+                    nextIndices[i] = index + 1;
+                }
+            }
+
+            if (undefinedCount == 0) {
+                decoder.inputsChanged(timestamp, values);
+            }
+        }
+
+        decoder.finish();
+    }
+}
@@ -19,13 +19,14 @@ package waveview.decoder;
 import waveview.wavedata.BitValue;
 import waveview.wavedata.BitVector;
 import waveview.wavedata.NetDataModel;
+import waveview.wavedata.TransitionSink;
 import waveview.wavedata.TransitionVector;
 
 /// Asynchronous serial decoder
 /// https://en.wikipedia.org/wiki/Asynchronous_serial_communication
 /// @note This doesn't have a way of signaling an error, so it makes a best
 /// effort to decode the value.
-public class UartDecoder extends Decoder {
+public class UartDecoder extends SegmentedDecoder {
     private static final BitVector Z = new BitVector("zzzzzzzz", 2);
     private static final int BITS_PER_BYTE = 8;
     private NetDataModel data;
@@ -52,19 +53,38 @@ public class UartDecoder extends Decoder {
     }
 
     @Override
-    public TransitionVector decode() {
-        int timescale = getTimescale();
-        double timeUnitsPerSecond = Math.pow(10, -timescale);
-        double timeUnitsPerBit = timeUnitsPerSecond / baudRate;
-        TransitionVector.Builder outputBuilder =
-            TransitionVector.Builder.createBuilder(BITS_PER_BYTE)
-            .appendTransition(0, Z);
+    protected TransitionVector getSplitInput() {
+        return data.getTransitionVector();
+    }
+
+    /// If the line has been idle for longer than a frame, the next falling
+    /// edge must be a start bit. Any time just before that edge is a
+    /// resynchronization point.
+    @Override
+    protected long findResyncPoint(long timestamp) {
+        double frameTime = getTimeUnitsPerBit() * 10;
+        TransitionVector vector = data.getTransitionVector();
+        for (int i = vector.findIndex(timestamp); i < vector.getTransitionCount() - 1; i++) {
+            long idleStart = vector.getTimestamp(i);
+            long idleEnd = vector.getTimestamp(i + 1);
+            if (vector.getBit(i, 0) == BitValue.ONE && idleEnd - idleStart > frameTime
+                && idleEnd - 1 >= timestamp) {
+                return idleEnd - 1;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    protected void decodeSegment(long start, long end, TransitionVector.Builder outputBuilder) {
+        double timeUnitsPerBit = getTimeUnitsPerBit();
         BitVector value = new BitVector(8);
-        SignalCursor cursor = new SignalCursor(data.getTransitionVector());
-        long currentTime = 0;
+        SignalCursor cursor = new SignalCursor(data.getTransitionVector(), start);
+        long currentTime = start;
         while (true) {
             long byteStart = cursor.nextEdge(currentTime, BitValue.ZERO);
-            if (byteStart < 0) {
+            if (byteStart < 0 || byteStart >= end) {
                 break;
             }
 
@@ -79,7 +99,97 @@ public class UartDecoder extends Decoder {
             outputBuilder.appendTransition(byteStart + (long)(timeUnitsPerBit * 10), Z);
             currentTime = byteStart + (long)(timeUnitsPerBit * 9.5);
         }
+    }
 
-        return outputBuilder.getTransitionVector();
+    @Override
+    public StreamingDecoder startStreaming(TransitionSink output) {
+        output.appendTransition(0, Z);
+        return new StreamingUartDecoder(output);
+    }
+
+    /// Same algorithm as decodeSegment, but driven by changes to the line
+    /// rather than scanning ahead with a cursor.
+    private final class StreamingUartDecoder implements StreamingDecoder {
+        private final TransitionSink output;
+        private final double timeUnitsPerBit = getTimeUnitsPerBit();
+        private final BitVector value = new BitVector(BITS_PER_BYTE);
+        private BitValue lineValue;
+
+        // When waiting for a start bit, the line must go high at or after
+        // this time (the middle of the previous stop bit) before a falling
+        // edge counts.
+        private long resumeTime;
+        private boolean armed;
+
+        // Index of the next bit to sample, or -1 if not receiving a byte
+        private int sampleIndex = -1;
+        private long byteStart;
+
+        StreamingUartDecoder(TransitionSink output) {
+            this.output = output;
+        }
+
+        @Override
+        public void inputsChanged(long timestamp, BitVector[] inputValues) {
+            if (lineValue != null) {
+                advanceTo(timestamp);
+            }
+
+            lineValue = inputValues[0].getBit(0);
+            if (armed && lineValue == BitValue.ZERO) {
+                armed = false;
+                byteStart = timestamp;
+                sampleIndex = 0;
+            }
+
+            // Handle anything at this timestamp, which sees the new value.
+            advanceTo(timestamp + 1);
+        }
+
+        @Override
+        public void finish() {
+            if (lineValue != null) {
+                advanceTo(Long.MAX_VALUE);
+            }
+        }
+
+        /// Process everything before endTime, during which the line is
+        /// lineValue.
+        private void advanceTo(long endTime) {
+            while (sampleIndex >= 0) {
+                long sampleTime = byteStart + (long) (((double) sampleIndex + 1.5)
+                    * timeUnitsPerBit);
+                if (sampleTime >= endTime) {
+                    return;
+                }
+
+                value.setBit(sampleIndex++, lineValue);
+                if (sampleIndex == BITS_PER_BYTE) {
+                    output.appendTransition(byteStart, value);
+                    output.appendTransition(byteStart + (long)(timeUnitsPerBit * 10), Z);
+                    resumeTime = byteStart + (long)(timeUnitsPerBit * 9.5);
+                    sampleIndex = -1;
+                }
+            }
+
+            if (lineValue == BitValue.ONE && resumeTime < endTime) {
+                armed = true;
+            }
+        }
+    }
+
+    private double getTimeUnitsPerBit() {
+        double timeUnitsPerSecond = Math.pow(10, -getTimescale());
+        return timeUnitsPerSecond / baudRate;
+    }
+
+    @Override
+    protected int getOutputWidth() {
+        return BITS_PER_BYTE;
+    }
+
+    @Override
+    protected BitVector getInitialValue() {
+        return Z;
     }
 }
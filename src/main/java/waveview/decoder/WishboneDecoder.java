@@ -0,0 +1,98 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.decoder;
+
+///
+/// Wishbone classic bus cycle decoder. A transaction is all of the
+/// transfers acknowledged while CYC stays asserted, so a block read or
+/// write is one transaction. Its address is that of the first transfer.
+/// Latency is the number of cycles from the first strobe to the last
+/// acknowledge.
+///
+class WishboneDecoder extends BusDecoder {
+    private static final int CYC = 1;
+    private static final int STB = 2;
+    private static final int ACK = 3;
+    private static final int ADR = 4;
+    private static final int DAT = 5;
+
+    private EdgeSampler cyc;
+    private EdgeSampler stb;
+    private EdgeSampler ack;
+    private EdgeSampler adr;
+    private EdgeSampler dat;
+    private Transaction currentCycle;
+
+    @Override
+    public String[] getInputNames() {
+        return new String[] {"clk", "cyc", "stb", "ack", "adr", "dat"};
+    }
+
+    @Override
+    protected int getRequiredWidth(int input) {
+        return input == ADR || input == DAT ? 0 : 1;
+    }
+
+    @Override
+    protected int getAddressInput() {
+        return ADR;
+    }
+
+    @Override
+    protected int getDataInput() {
+        return DAT;
+    }
+
+    @Override
+    protected void startDecode() {
+        cyc = getSampler(CYC);
+        stb = getSampler(STB);
+        ack = getSampler(ACK);
+        adr = getSampler(ADR);
+        dat = getSampler(DAT);
+        currentCycle = null;
+    }
+
+    @Override
+    protected void clockEdge(long timestamp, long cycle) {
+        if (!cyc.isHigh(timestamp)) {
+            if (currentCycle != null && currentCycle.beatCount > 0) {
+                transactionComplete(currentCycle);
+            }
+
+            currentCycle = null;
+            return;
+        }
+
+        if (!stb.isHigh(timestamp)) {
+            return;
+        }
+
+        if (currentCycle == null) {
+            currentCycle = new Transaction();
+            currentCycle.startCycle = cycle;
+        }
+
+        if (ack.isHigh(timestamp)) {
+            if (currentCycle.beatCount == 0) {
+                currentCycle.address = adr.getBits(timestamp);
+            }
+
+            addBeat(currentCycle, timestamp, cycle, dat);
+        }
+    }
+}
@@ -26,36 +26,40 @@ final class AndExpressionNode extends BooleanExpressionNode {
         this.rightChild = rightChild;
     }
 
+    BooleanExpressionNode getLeftChild() {
+        return leftChild;
+    }
+
+    BooleanExpressionNode getRightChild() {
+        return rightChild;
+    }
+
     @Override
     boolean evaluate(long timestamp, SearchHint hint) {
         SearchHint leftHint = new SearchHint();
-        SearchHint rightHint = new SearchHint();
-        boolean leftResult = leftChild.evaluate(timestamp, leftHint);
-        boolean rightResult = rightChild.evaluate(timestamp, rightHint);
+        if (!leftChild.evaluate(timestamp, leftHint)) {
+            // Currently false. It can't become true until the left
+            // expression does, so there's no need to evaluate the right one.
+            // SearchOptimizer puts the cheapest expression on the left.
+            hint.forward = leftHint.forward;
+            hint.backward = leftHint.backward;
+            return false;
+        }
 
-        if (leftResult && rightResult) {
+        SearchHint rightHint = new SearchHint();
+        if (rightChild.evaluate(timestamp, rightHint)) {
             // Both expressions are true. Either expression changing
             // could make it false, so choose the nearest event.
             hint.forward = Math.min(leftHint.forward, rightHint.forward);
             hint.backward = Math.max(leftHint.backward, rightHint.backward);
-        } else if (leftResult) {
+            return true;
+        } else {
             // Currently false. It can only become true when right result
             // becomes true.
             hint.forward = rightHint.forward;
             hint.backward = rightHint.backward;
-        } else if (rightResult) {
-            // Currently false. It can only become true when left result
-            // becomes true.
-            hint.forward = leftHint.forward;
-            hint.backward = leftHint.backward;
-        } else {
-            // Both expressions are false. Both must change before this
-            // may become true, so choose the farthest event.
-            hint.forward = Math.max(leftHint.forward, rightHint.forward);
-            hint.backward = Math.min(leftHint.backward, rightHint.backward);
+            return false;
         }
-
-        return leftResult && rightResult;
     }
 
     @Override
@@ -0,0 +1,46 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.search;
+
+/// A subexpression that is always true or always false. These are
+/// created by SearchOptimizer when folding constant subexpressions.
+final class ConstBooleanNode extends BooleanExpressionNode {
+    static final ConstBooleanNode TRUE = new ConstBooleanNode(true);
+    static final ConstBooleanNode FALSE = new ConstBooleanNode(false);
+
+    private final boolean value;
+
+    private ConstBooleanNode(boolean value) {
+        this.value = value;
+    }
+
+    boolean getValue() {
+        return value;
+    }
+
+    @Override
+    boolean evaluate(long timestamp, SearchHint hint) {
+        hint.backward = Long.MIN_VALUE;
+        hint.forward = Long.MAX_VALUE;
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return value ? "true" : "false";
+    }
+}
@@ -26,6 +26,10 @@ final class ConstValueNode extends ValueNode {
         value = new BitVector(constValue);
     }
 
+    BitVector getValue() {
+        return value;
+    }
+
     @Override
     BitVector evaluate(long timestamp, SearchHint hint) {
         hint.backward = Long.MIN_VALUE;
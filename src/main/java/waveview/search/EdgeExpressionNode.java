@@ -0,0 +1,142 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.search;
+
+import waveview.wavedata.BitValue;
+import waveview.wavedata.TransitionVector;
+
+/// True only at the exact timestamp where a net transitions. posedge and
+/// negedge look at a single bit, changed looks at the whole value (or slice).
+/// This walks the transition indices directly rather than copying values
+/// into BitVectors. The first transition in a net is its initial value, so
+/// it is not considered an edge.
+final class EdgeExpressionNode extends BooleanExpressionNode {
+    enum Type {
+        POSEDGE,
+        NEGEDGE,
+        CHANGED
+    }
+
+    private final Type type;
+    private final NetValueNode net;
+    private final int lowIndex;
+    private final int highIndex;
+
+    /// @param net Net or slice to check. For POSEDGE and NEGEDGE, this
+    ///   must be a single bit.
+    EdgeExpressionNode(Type type, NetValueNode net) {
+        this.type = type;
+        this.net = net;
+        if (net.getLowIndex() == -1) {
+            lowIndex = 0;
+            highIndex = net.getNetDataModel().getWidth() - 1;
+        } else {
+            lowIndex = net.getLowIndex();
+            highIndex = net.getHighIndex();
+        }
+
+        assert type == Type.CHANGED || lowIndex == highIndex;
+    }
+
+    @Override
+    boolean evaluate(long timestamp, SearchHint hint) {
+        TransitionVector vector = net.getNetDataModel().getTransitionVector();
+        int index = vector.findIndex(timestamp);
+        if (timestamp < vector.getTimestamp(index)) {
+            // Before the first transition
+            hint.forward = findNextEdge(vector, index);
+            hint.backward = Long.MIN_VALUE;
+            return false;
+        }
+
+        if (vector.getTimestamp(index) == timestamp && isEdge(vector, index)) {
+            // An edge is a single point in time, so this becomes false
+            // immediately on either side.
+            hint.forward = timestamp + 1;
+            hint.backward = timestamp - 1;
+            return true;
+        }
+
+        hint.forward = findNextEdge(vector, index + 1);
+        if (vector.getTimestamp(index) == timestamp) {
+            hint.backward = findPreviousEdge(vector, index - 1);
+        } else {
+            hint.backward = findPreviousEdge(vector, index);
+        }
+
+        return false;
+    }
+
+    /// @returns Timestamp of the first edge at or after the passed
+    ///   transition index, or Long.MAX_VALUE if there are none.
+    private long findNextEdge(TransitionVector vector, int startIndex) {
+        int count = vector.getTransitionCount();
+        for (int index = startIndex; index < count; index++) {
+            if (isEdge(vector, index)) {
+                return vector.getTimestamp(index);
+            }
+        }
+
+        return Long.MAX_VALUE;
+    }
+
+    /// @returns Timestamp of the last edge at or before the passed
+    ///   transition index, or Long.MIN_VALUE if there are none.
+    private long findPreviousEdge(TransitionVector vector, int startIndex) {
+        for (int index = startIndex; index > 0; index--) {
+            if (isEdge(vector, index)) {
+                return vector.getTimestamp(index);
+            }
+        }
+
+        return Long.MIN_VALUE;
+    }
+
+    private boolean isEdge(TransitionVector vector, int index) {
+        if (index == 0) {
+            return false;
+        }
+
+        switch (type) {
+            case POSEDGE:
+                return isRisingEdge(vector, index, lowIndex);
+            case NEGEDGE:
+                return vector.getBit(index, lowIndex) == BitValue.ZERO
+                    && vector.getBit(index - 1, lowIndex) != BitValue.ZERO;
+            default:
+                for (int bit = lowIndex; bit <= highIndex; bit++) {
+                    if (vector.getBit(index, bit) != vector.getBit(index - 1, bit)) {
+                        return true;
+                    }
+                }
+
+                return false;
+        }
+    }
+
+    /// @returns true if the bit becomes 1 at this transition, from any
+    ///   other value.
+    static boolean isRisingEdge(TransitionVector vector, int index, int bit) {
+        return index > 0 && vector.getBit(index, bit) == BitValue.ONE
+            && vector.getBit(index - 1, bit) != BitValue.ONE;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + type.name().toLowerCase() + " " + net + ")";
+    }
+}
@@ -17,10 +17,58 @@
 package waveview.search;
 
 import waveview.wavedata.BitVector;
+import waveview.wavedata.TransitionVector;
+import waveview.wavedata.ValueIndex;
 
 final class EqualExpressionNode extends ComparisonExpressionNode {
+    // When comparing a whole net against a constant, the value index
+    // of the net is used to skip directly to transitions that may match.
+    // These are null otherwise.
+    private final NetValueNode indexedNet;
+    private final BitVector indexedValue;
+
     EqualExpressionNode(ValueNode left, ValueNode right) {
         super(left, right);
+        if (isIndexable(left, right)) {
+            indexedNet = (NetValueNode) left;
+            indexedValue = ((ConstValueNode) right).getValue();
+        } else if (isIndexable(right, left)) {
+            indexedNet = (NetValueNode) right;
+            indexedValue = ((ConstValueNode) left).getValue();
+        } else {
+            indexedNet = null;
+            indexedValue = null;
+        }
+    }
+
+    private static boolean isIndexable(ValueNode net, ValueNode constant) {
+        return net instanceof NetValueNode && ((NetValueNode) net).getLowIndex() == -1
+            && constant instanceof ConstValueNode;
+    }
+
+    @Override
+    boolean evaluate(long timestamp, SearchHint hint) {
+        boolean result = super.evaluate(timestamp, hint);
+        if (result || indexedNet == null) {
+            return result;
+        }
+
+        // The hint from the superclass is just the adjacent transitions.
+        // Use the index to find the nearest ones that could match.
+        TransitionVector vector = indexedNet.getNetDataModel().getTransitionVector();
+        ValueIndex valueIndex = vector.getValueIndex();
+        int index = vector.findIndex(timestamp);
+        int nextIndex = valueIndex.findNext(indexedValue, index + 1);
+        hint.forward = nextIndex == -1 ? Long.MAX_VALUE : vector.getTimestamp(nextIndex);
+        if (timestamp >= vector.getTimestamp(index)) {
+            // The region where the previous match is true ends right before
+            // the transition after it.
+            int prevIndex = valueIndex.findPrevious(indexedValue, index - 1);
+            hint.backward = prevIndex == -1 ? Long.MIN_VALUE
+                : vector.getTimestamp(prevIndex + 1) - 1;
+        }
+
+        return false;
     }
 
     @Override
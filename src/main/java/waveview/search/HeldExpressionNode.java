@@ -0,0 +1,153 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.search;
+
+import waveview.wavedata.NetDataModel;
+import waveview.wavedata.TransitionVector;
+
+/// True if the child expression has been continuously true for some
+/// length of time. That can either be a duration ("held for 10ns") or a
+/// number of rising edges of a clock ("held for 3 cycles of clk").
+final class HeldExpressionNode extends BooleanExpressionNode {
+    private final BooleanExpressionNode child;
+    private final long duration;
+    private final NetDataModel clock;
+
+    // Region where the child was last found to be continuously true, from
+    // regionStart through regionKnownTrueUntil. Scans step through a long
+    // region one child transition at a time, so without this every step
+    // would walk all the way back to the start of the region.
+    private boolean hasCachedRegion;
+    private long cachedRegionStart;
+    private long cachedRegionKnownTrueUntil;
+
+    /// @param duration Minimum time the child must be true, in timescale
+    ///   units.
+    HeldExpressionNode(BooleanExpressionNode child, long duration) {
+        this.child = child;
+        this.duration = duration;
+        this.clock = null;
+    }
+
+    /// @param cycles Number of rising edges of the clock the child must be
+    ///   true for.
+    /// @param clock Single bit net
+    HeldExpressionNode(BooleanExpressionNode child, long cycles, NetDataModel clock) {
+        assert clock.getWidth() == 1;
+
+        this.child = child;
+        this.duration = cycles;
+        this.clock = clock;
+    }
+
+    @Override
+    boolean evaluate(long timestamp, SearchHint hint) {
+        SearchHint childHint = new SearchHint();
+        if (!child.evaluate(timestamp, childHint)) {
+            // This can't become true until the child does.
+            hint.forward = childHint.forward;
+            hint.backward = childHint.backward;
+            return false;
+        }
+
+        long regionStart = getRegionStart(timestamp, childHint.backward);
+        long heldTimestamp = clock == null ? regionStart + duration : findNthEdge(regionStart);
+        if (timestamp >= heldTimestamp) {
+            // Remains true until the child becomes false.
+            hint.forward = childHint.forward;
+            hint.backward = heldTimestamp - 1;
+            return true;
+        } else {
+            // Will become true at heldTimestamp if the child stays true
+            // that long. Before the region started, the child was false.
+            hint.forward = Math.min(childHint.forward, heldTimestamp);
+            hint.backward = regionStart == 0 ? Long.MIN_VALUE : regionStart - 1;
+            return false;
+        }
+    }
+
+    /// @param timestamp Point where the child is true.
+    /// @param backward Backward hint from evaluating the child at timestamp.
+    /// @returns First timestamp of the region where the child is true
+    private long getRegionStart(long timestamp, long backward) {
+        // The child is true from backward + 1 through timestamp. If that
+        // overlaps or abuts the cached region, it is the same region.
+        long changeTimestamp = backward == Long.MIN_VALUE ? 0 : backward + 1;
+        if (hasCachedRegion && changeTimestamp >= cachedRegionStart
+                && changeTimestamp <= cachedRegionKnownTrueUntil + 1) {
+            cachedRegionKnownTrueUntil = Math.max(cachedRegionKnownTrueUntil, timestamp);
+            return cachedRegionStart;
+        }
+
+        hasCachedRegion = true;
+        cachedRegionStart = findRegionStart(backward);
+        cachedRegionKnownTrueUntil = timestamp;
+        return cachedRegionStart;
+    }
+
+    /// Walk backward to find where the child became true.
+    /// @param backward Backward hint from evaluating the child at a point
+    ///   where it is true.
+    /// @returns First timestamp of the region where the child is true
+    private long findRegionStart(long backward) {
+        long timestamp = backward;
+        while (timestamp != Long.MIN_VALUE && timestamp >= 0) {
+            SearchHint childHint = new SearchHint();
+            if (!child.evaluate(timestamp, childHint)) {
+                return timestamp + 1;
+            }
+
+            timestamp = childHint.backward;
+        }
+
+        // True since the beginning of the trace
+        return 0;
+    }
+
+    /// @returns Timestamp of the Nth rising clock edge after regionStart,
+    ///   or Long.MAX_VALUE if there aren't that many.
+    private long findNthEdge(long regionStart) {
+        if (duration == 0) {
+            return regionStart;
+        }
+
+        TransitionVector vector = clock.getTransitionVector();
+        int count = vector.getTransitionCount();
+        int index = vector.findIndex(regionStart);
+        if (vector.getTimestamp(index) < regionStart) {
+            index++;
+        }
+
+        long edgeCount = 0;
+        for (; index < count; index++) {
+            if (EdgeExpressionNode.isRisingEdge(vector, index, 0) && ++edgeCount == duration) {
+                return vector.getTimestamp(index);
+            }
+        }
+
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        if (clock == null) {
+            return "(held " + child + " " + duration + ")";
+        } else {
+            return "(held " + child + " " + duration + " cycles " + clock.getFullName() + ")";
+        }
+    }
+}
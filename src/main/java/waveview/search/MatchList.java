@@ -0,0 +1,96 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.search;
+
+import java.util.Arrays;
+
+///
+/// Ordered list of non-overlapping regions where a search expression is
+/// true. Like TransitionVector, this packs the values into arrays rather
+/// than allocating an object per match.
+///
+public final class MatchList {
+    private long[] startTimestamps = new long[16];
+    private long[] endTimestamps = new long[16];
+    private int matchCount;
+
+    /// @param start First timestamp where the expression is true
+    /// @param end Last timestamp where the expression is true, or
+    ///   Long.MAX_VALUE if it is true until the end of the waveform.
+    void append(long start, long end) {
+        assert matchCount == 0 || start > endTimestamps[matchCount - 1];
+
+        if (matchCount == startTimestamps.length) {
+            startTimestamps = Arrays.copyOf(startTimestamps, matchCount * 2);
+            endTimestamps = Arrays.copyOf(endTimestamps, matchCount * 2);
+        }
+
+        startTimestamps[matchCount] = start;
+        endTimestamps[matchCount] = end;
+        matchCount++;
+    }
+
+    public int size() {
+        return matchCount;
+    }
+
+    public long getStart(int index) {
+        return startTimestamps[index];
+    }
+
+    public long getEnd(int index) {
+        return endTimestamps[index];
+    }
+
+    /// Binary search for the next match. This is equivalent to
+    /// Search.getNextMatch.
+    /// @returns Start of the first match that begins after timestamp, or
+    ///   -1 if there is none.
+    public long findNext(long timestamp) {
+        int low = 0;
+        int high = matchCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (startTimestamps[mid] <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low < matchCount ? startTimestamps[low] : -1;
+    }
+
+    /// Binary search for the previous match. This is equivalent to
+    /// Search.getPreviousMatch.
+    /// @returns End of the last match that finishes before timestamp, or
+    ///   -1 if there is none.
+    public long findPrevious(long timestamp) {
+        int low = 0;
+        int high = matchCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (endTimestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low > 0 ? endTimestamps[low - 1] : -1;
+    }
+}
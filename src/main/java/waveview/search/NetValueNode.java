@@ -20,11 +20,23 @@ import java.util.Iterator;
 import waveview.wavedata.BitVector;
 import waveview.wavedata.NetDataModel;
 import waveview.wavedata.Transition;
+import waveview.wavedata.TransitionVector;
 
+/// The parser shares a single NetValueNode between all references to the
+/// same net (and slice) in an expression, and this remembers the last
+/// value it looked up. When a search step evaluates the expression at a
+/// timestamp, each net is only looked up once. Because of this, an
+/// expression tree must not be evaluated from multiple threads at once.
 final class NetValueNode extends ValueNode {
     private final NetDataModel netDataModel;
     private final int lowIndex;
     private final int highIndex;
+    private TransitionVector transitionVector;
+    private boolean hasCachedValue;
+    private long cachedTimestamp;
+    private BitVector cachedValue;
+    private long cachedForward;
+    private long cachedBackward;
 
     NetValueNode(NetDataModel netDataModel) {
         this.netDataModel = netDataModel;
@@ -38,9 +50,36 @@ final class NetValueNode extends ValueNode {
         this.highIndex = highIndex;
     }
 
+    NetDataModel getNetDataModel() {
+        return netDataModel;
+    }
+
+    /// @returns Lowest bit of the slice, or -1 if this is the whole net.
+    int getLowIndex() {
+        return lowIndex;
+    }
+
+    /// @returns Highest bit of the slice, or -1 if this is the whole net.
+    int getHighIndex() {
+        return highIndex;
+    }
+
     @Override
     BitVector evaluate(long timestamp, SearchHint hint) {
-        Iterator<Transition> i = netDataModel.findTransition(timestamp);
+        if (hasCachedValue && timestamp == cachedTimestamp) {
+            hint.forward = cachedForward;
+            hint.backward = cachedBackward;
+            return cachedValue;
+        }
+
+        if (transitionVector == null) {
+            // A lazily decoded net is decoded completely the first time.
+            // Looking up each step with NetDataModel.findTransition would
+            // copy a whole chunk every time.
+            transitionVector = netDataModel.getTransitionVector();
+        }
+
+        Iterator<Transition> i = transitionVector.findTransition(timestamp);
         Transition t = i.next();
         BitVector value = new BitVector(t);
         if (timestamp >= t.getTimestamp()) {
@@ -57,9 +96,15 @@ final class NetValueNode extends ValueNode {
         }
 
         if (this.lowIndex != -1) {
-            return value.slice(lowIndex, highIndex);
+            value = value.slice(lowIndex, highIndex);
         }
 
+        hasCachedValue = true;
+        cachedTimestamp = timestamp;
+        cachedValue = value;
+        cachedForward = hint.forward;
+        cachedBackward = hint.backward;
+
         return value;
     }
 
@@ -26,36 +26,40 @@ final class OrExpressionNode extends BooleanExpressionNode {
         this.rightChild = rightChild;
     }
 
+    BooleanExpressionNode getLeftChild() {
+        return leftChild;
+    }
+
+    BooleanExpressionNode getRightChild() {
+        return rightChild;
+    }
+
     @Override
     boolean evaluate(long timestamp, SearchHint hint) {
         SearchHint leftHint = new SearchHint();
-        SearchHint rightHint = new SearchHint();
-        boolean leftResult = leftChild.evaluate(timestamp, leftHint);
-        boolean rightResult = rightChild.evaluate(timestamp, rightHint);
-
-        if (leftResult && rightResult) {
-            // Both expressions are true. The only way for this to become
-            // false is if both change to false, so choose the farthest event.
-            hint.forward = Math.max(leftHint.forward, rightHint.forward);
-            hint.backward = Math.min(leftHint.backward, rightHint.backward);
-        } else if (leftResult) {
-            // Currently true. It can only become false when left result
-            // becomes false.
+        if (leftChild.evaluate(timestamp, leftHint)) {
+            // Currently true. It can't become false until the left
+            // expression does, so there's no need to evaluate the right one.
+            // SearchOptimizer puts the cheapest expression on the left.
             hint.forward = leftHint.forward;
             hint.backward = leftHint.backward;
-        } else if (rightResult) {
+            return true;
+        }
+
+        SearchHint rightHint = new SearchHint();
+        if (rightChild.evaluate(timestamp, rightHint)) {
             // Currently true. It can only become false when right result
             // becomes false.
             hint.forward = rightHint.forward;
             hint.backward = rightHint.backward;
+            return true;
         } else {
             // Both expressions are false. May become true if either
             // subexpression changes, so choose the nearest event.
             hint.forward = Math.min(leftHint.forward, rightHint.forward);
             hint.backward = Math.max(leftHint.backward, rightHint.backward);
+            return false;
         }
-
-        return leftResult || rightResult;
     }
 
     @Override
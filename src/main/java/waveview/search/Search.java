@@ -27,14 +27,34 @@ import waveview.wavedata.WaveformDataModel;
 /// for fast searching, skipping events that cannot meet the criteria.
 ///
 public final class Search {
+    // How many expression evaluations to perform between progress
+    // notifications. Checking on every step would slow down the scan.
+    private static final int PROGRESS_INTERVAL = 1024;
+
     private final BooleanExpressionNode searchExpression;
 
+    ///
+    /// Long running scans call this periodically to report how far they
+    /// have gotten. This also allows cancelling the scan.
+    ///
+    public interface ProgressListener {
+        /// @param timestamp Current position of the scan.
+        /// @returns true if the scan should continue, false if it has been
+        ///  cancelled and it should stop.
+        boolean updateProgress(long timestamp);
+    }
+
     /// Generate a search given a set of nets that matches at the given
-    /// timestamp.
+    /// timestamp. Nets that are still being decoded are skipped, since they
+    /// have no values yet and the parser would reject them.
     public static String generateFromValuesAt(NetDataModel[] nets, long timestamp) {
         StringBuilder searchExpr = new StringBuilder();
         boolean first = true;
         for (NetDataModel netDataModel : nets) {
+            if (netDataModel.isDecoding()) {
+                continue;
+            }
+
             if (first) {
                 first = false;
             } else {
@@ -54,7 +74,7 @@ public final class Search {
     public Search(WaveformDataModel waveformDataModel, String searchString)
         throws SearchFormatException {
         SearchParser parser = new SearchParser(waveformDataModel, searchString);
-        searchExpression = parser.getExpression();
+        searchExpression = SearchOptimizer.optimize(parser.getExpression());
     }
 
     /// Mainly useful for unit testing
@@ -76,7 +96,15 @@ public final class Search {
     /// timestamp of the next forward match otherwise
     ///
     public long getNextMatch(long startTimestamp) {
+        return getNextMatch(startTimestamp, null);
+    }
+
+    /// Same as getNextMatch(long), but reports progress to the listener
+    /// (which may be null).
+    /// @returns -1 if there are no matches or the listener cancelled the scan.
+    public long getNextMatch(long startTimestamp, ProgressListener listener) {
         SearchHint hint = new SearchHint();
+        int stepCount = 0;
 
         long currentTime = startTimestamp;
         boolean currentValue = searchExpression.evaluate(currentTime, hint);
@@ -89,6 +117,10 @@ public final class Search {
             }
 
             currentTime = hint.forward;
+            if (isCancelled(listener, ++stepCount, currentTime)) {
+                return -1;
+            }
+
             currentValue = searchExpression.evaluate(currentTime, hint);
         }
 
@@ -99,6 +131,10 @@ public final class Search {
             }
 
             currentTime = hint.forward;
+            if (isCancelled(listener, ++stepCount, currentTime)) {
+                return -1;
+            }
+
             currentValue = searchExpression.evaluate(currentTime, hint);
         }
 
@@ -114,7 +150,15 @@ public final class Search {
     /// timestamp of the next backward match otherwise
     ///
     public long getPreviousMatch(long startTimestamp) {
+        return getPreviousMatch(startTimestamp, null);
+    }
+
+    /// Same as getPreviousMatch(long), but reports progress to the listener
+    /// (which may be null).
+    /// @returns -1 if there are no matches or the listener cancelled the scan.
+    public long getPreviousMatch(long startTimestamp, ProgressListener listener) {
         SearchHint hint = new SearchHint();
+        int stepCount = 0;
         long currentTime = startTimestamp;
         boolean currentValue = searchExpression.evaluate(currentTime, hint);
         while (currentValue) {
@@ -123,6 +167,10 @@ public final class Search {
             }
 
             currentTime = hint.backward;
+            if (isCancelled(listener, ++stepCount, currentTime)) {
+                return -1;
+            }
+
             currentValue = searchExpression.evaluate(currentTime, hint);
         }
 
@@ -132,12 +180,65 @@ public final class Search {
             }
 
             currentTime = hint.backward;
+            if (isCancelled(listener, ++stepCount, currentTime)) {
+                return -1;
+            }
+
             currentValue = searchExpression.evaluate(currentTime, hint);
         }
 
         return currentTime;
     }
 
+    ///
+    /// Scan the entire waveform and collect every region where this
+    /// search's expression is true.
+    /// @param listener Notified periodically with the scan position. May be
+    ///   null.
+    /// @returns List of matching regions in ascending order, or null if the
+    ///   listener cancelled the scan.
+    ///
+    public MatchList getAllMatches(ProgressListener listener) {
+        MatchList matches = new MatchList();
+        SearchHint hint = new SearchHint();
+        int stepCount = 0;
+        long currentTime = 0;
+        long matchStart = -1;
+        boolean currentValue = searchExpression.evaluate(currentTime, hint);
+        while (true) {
+            if (currentValue && matchStart < 0) {
+                matchStart = currentTime;
+            } else if (!currentValue && matchStart >= 0) {
+                matches.append(matchStart, currentTime - 1);
+                matchStart = -1;
+            }
+
+            if (hint.forward == Long.MAX_VALUE) {
+                break; // End of waveform
+            }
+
+            currentTime = hint.forward;
+            if (isCancelled(listener, ++stepCount, currentTime)) {
+                return null;
+            }
+
+            currentValue = searchExpression.evaluate(currentTime, hint);
+        }
+
+        if (matchStart >= 0) {
+            // True until the end of the waveform
+            matches.append(matchStart, Long.MAX_VALUE);
+        }
+
+        return matches;
+    }
+
+    private static boolean isCancelled(ProgressListener listener, int stepCount,
+            long timestamp) {
+        return listener != null && stepCount % PROGRESS_INTERVAL == 0
+            && !listener.updateProgress(timestamp);
+    }
+
     @Override
     public String toString() {
         return searchExpression.toString();
@@ -175,7 +175,8 @@ final class SearchLexer {
                 case SCAN_IDENTIFIER:
                     if (isAlphaNum(c) || c == '_' || c == '.') {
                         currentTokenValue.append((char) c);
-                    } else if (c == '(') { // Start generate index
+                    } else if (c == '(' && !isFunctionName(currentTokenValue)) {
+                        // Start generate index
                         currentTokenValue.append((char) c);
                         state = State.SCAN_GEN_NUM;
                     } else {
@@ -243,6 +244,13 @@ final class SearchLexer {
         lexerOffset--;
     }
 
+    /// Built-in functions like posedge(clk) look like a generate index to
+    /// the scanner, so they need to be terminated before the parenthesis.
+    private static boolean isFunctionName(CharSequence value) {
+        String name = value.toString();
+        return name.equals("posedge") || name.equals("negedge") || name.equals("changed");
+    }
+
     private static boolean isAlpha(int value) {
         return (value >= 'a' && value <= 'z') || (value >= 'A' && value <= 'Z');
     }
@@ -0,0 +1,145 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+///
+/// Simplifies a parsed expression tree before searching:
+/// - Comparisons between constants are replaced with true or false.
+/// - Chains of && and || are flattened and folded if an operand is a
+///   constant, and duplicate operands are removed.
+/// - && operands are sorted so the cheapest is evaluated first. Since
+///   && short circuits, the others often don't need to be evaluated.
+///
+/// Searches generated by Search.generateFromValuesAt are long chains of &&,
+/// which benefit from this.
+///
+final class SearchOptimizer {
+    // Temporal operators evaluate their child at several timestamps.
+    private static final int TEMPORAL_COST = 10;
+
+    private SearchOptimizer() {}
+
+    static BooleanExpressionNode optimize(BooleanExpressionNode node) {
+        if (node instanceof AndExpressionNode) {
+            return optimizeChain(node, true);
+        } else if (node instanceof OrExpressionNode) {
+            return optimizeChain(node, false);
+        } else if (node instanceof ComparisonExpressionNode) {
+            ComparisonExpressionNode comparison = (ComparisonExpressionNode) node;
+            if (comparison.leftChild instanceof ConstValueNode
+                && comparison.rightChild instanceof ConstValueNode) {
+                // The timestamp doesn't matter, since the values are
+                // constant.
+                return comparison.evaluate(0, new SearchHint()) ? ConstBooleanNode.TRUE
+                    : ConstBooleanNode.FALSE;
+            }
+        }
+
+        return node;
+    }
+
+    /// @param isAnd true if this is a chain of &&, false if it is ||.
+    private static BooleanExpressionNode optimizeChain(BooleanExpressionNode node,
+        boolean isAnd) {
+        List<BooleanExpressionNode> operands = new ArrayList<>();
+        collectOperands(node, isAnd, operands);
+
+        // The value that decides the result of the whole chain by itself
+        // (false for &&, true for ||).
+        ConstBooleanNode dominant = isAnd ? ConstBooleanNode.FALSE : ConstBooleanNode.TRUE;
+
+        // Identical subexpressions have the same string representation.
+        Map<String, BooleanExpressionNode> uniqueOperands = new LinkedHashMap<>();
+        for (BooleanExpressionNode operand : operands) {
+            BooleanExpressionNode optimized = optimize(operand);
+            if (optimized instanceof ConstBooleanNode) {
+                if (optimized == dominant) {
+                    return dominant;
+                }
+
+                // Otherwise this operand has no effect.
+                continue;
+            }
+
+            uniqueOperands.putIfAbsent(optimized.toString(), optimized);
+        }
+
+        if (uniqueOperands.isEmpty()) {
+            return isAnd ? ConstBooleanNode.TRUE : ConstBooleanNode.FALSE;
+        }
+
+        // This is a stable sort, so operands with the same cost remain in
+        // the order they were written. || operands are not reordered.
+        List<BooleanExpressionNode> sorted = new ArrayList<>(uniqueOperands.values());
+        if (isAnd) {
+            sorted.sort(Comparator.comparingInt(SearchOptimizer::estimateCost));
+        }
+
+        BooleanExpressionNode result = sorted.get(0);
+        for (int i = 1; i < sorted.size(); i++) {
+            if (isAnd) {
+                result = new AndExpressionNode(result, sorted.get(i));
+            } else {
+                result = new OrExpressionNode(result, sorted.get(i));
+            }
+        }
+
+        return result;
+    }
+
+    private static void collectOperands(BooleanExpressionNode node, boolean isAnd,
+        List<BooleanExpressionNode> operands) {
+        if (isAnd && node instanceof AndExpressionNode) {
+            AndExpressionNode and = (AndExpressionNode) node;
+            collectOperands(and.getLeftChild(), isAnd, operands);
+            collectOperands(and.getRightChild(), isAnd, operands);
+        } else if (!isAnd && node instanceof OrExpressionNode) {
+            OrExpressionNode or = (OrExpressionNode) node;
+            collectOperands(or.getLeftChild(), isAnd, operands);
+            collectOperands(or.getRightChild(), isAnd, operands);
+        } else {
+            operands.add(node);
+        }
+    }
+
+    /// @returns Rough number of transition lookups required to evaluate
+    ///   this node.
+    static int estimateCost(ExpressionNode node) {
+        if (node instanceof NetValueNode || node instanceof EdgeExpressionNode) {
+            return 1;
+        } else if (node instanceof ComparisonExpressionNode) {
+            ComparisonExpressionNode comparison = (ComparisonExpressionNode) node;
+            return estimateCost(comparison.leftChild) + estimateCost(comparison.rightChild);
+        } else if (node instanceof AndExpressionNode) {
+            AndExpressionNode and = (AndExpressionNode) node;
+            return estimateCost(and.getLeftChild()) + estimateCost(and.getRightChild());
+        } else if (node instanceof OrExpressionNode) {
+            OrExpressionNode or = (OrExpressionNode) node;
+            return estimateCost(or.getLeftChild()) + estimateCost(or.getRightChild());
+        } else if (node instanceof WithinExpressionNode || node instanceof HeldExpressionNode) {
+            return TEMPORAL_COST;
+        }
+
+        return 0; // Constant
+    }
+}
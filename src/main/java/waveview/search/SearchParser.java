@@ -16,6 +16,8 @@
 
 package waveview.search;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import waveview.wavedata.BitVector;
 import waveview.wavedata.NetDataModel;
@@ -29,6 +31,10 @@ final class SearchParser {
     private final WaveformDataModel waveformDataModel;
     private final BooleanExpressionNode searchExpression;
 
+    // All references to the same net or slice share a node, so it is only
+    // looked up once per evaluation. Keyed by NetValueNode.toString().
+    private final Map<String, NetValueNode> netValueNodes = new HashMap<>();
+
     SearchParser(WaveformDataModel waveformDataModel, String searchString)
         throws SearchFormatException {
         this.waveformDataModel = waveformDataModel;
@@ -84,15 +90,136 @@ final class SearchParser {
         return left;
     }
 
+    /// Read the next token and check if it is an identifier with the
+    /// passed name. If not, push back the token and return false.
+    private boolean tryToMatchKeyword(String keyword) throws SearchFormatException {
+        Token lookahead = lexer.nextToken();
+        if (lookahead.getType() != Token.Type.IDENTIFIER
+            || !lookahead.toString().equals(keyword)) {
+            lexer.pushBackToken();
+            return false;
+        }
+
+        return true;
+    }
+
+    private void matchKeyword(String keyword) throws SearchFormatException {
+        Token token = lexer.nextToken();
+        if (token.getType() != Token.Type.IDENTIFIER || !token.toString().equals(keyword)) {
+            throw new SearchFormatException("Expected \"" + keyword + "\"", token.getStart(),
+                token.getEnd());
+        }
+    }
+
     private BooleanExpressionNode parseAnd() throws SearchFormatException {
-        BooleanExpressionNode left = parseCondition();
+        BooleanExpressionNode left = parseTemporal();
         while (tryToMatchToken(Token.Type.DOUBLE_AMPERSAND)) {
-            left = new AndExpressionNode(left, parseCondition());
+            left = new AndExpressionNode(left, parseTemporal());
         }
 
         return left;
     }
 
+    /// temporal := condition
+    ///     | condition 'within' time 'of' condition
+    ///     | condition 'held' 'for' time
+    ///     | condition 'held' 'for' LITERAL 'cycles' 'of' IDENTIFIER
+    private BooleanExpressionNode parseTemporal() throws SearchFormatException {
+        BooleanExpressionNode left = parseCondition();
+        if (tryToMatchKeyword("within")) {
+            long window = parseTime(matchToken(Token.Type.LITERAL));
+            matchKeyword("of");
+            return new AndExpressionNode(left, new WithinExpressionNode(parseCondition(), window));
+        } else if (tryToMatchKeyword("held")) {
+            matchKeyword("for");
+            Token countTok = matchToken(Token.Type.LITERAL);
+            if (tryToMatchKeyword("cycles")) {
+                matchKeyword("of");
+                Token clockTok = matchToken(Token.Type.IDENTIFIER);
+                NetDataModel clock = findNet(clockTok);
+                if (clock.getWidth() != 1) {
+                    throw new SearchFormatException("Clock must be a single bit",
+                        clockTok.getStart(), clockTok.getEnd());
+                }
+
+                return new HeldExpressionNode(left, literalToLong(countTok), clock);
+            }
+
+            return new HeldExpressionNode(left, parseTime(countTok));
+        }
+
+        return left;
+    }
+
+    /// Convert a time with an optional unit suffix (fs, ps, ns, us, ms, s)
+    /// into timescale units. If there is no suffix, the value is already
+    /// in timescale units.
+    private long parseTime(Token literalTok) throws SearchFormatException {
+        long value = literalToLong(literalTok);
+        Token unitTok = lexer.nextToken();
+        int unitExponent;
+        if (unitTok.getType() != Token.Type.IDENTIFIER) {
+            lexer.pushBackToken();
+            return value;
+        }
+
+        switch (unitTok.toString()) {
+            case "fs":
+                unitExponent = -15;
+                break;
+            case "ps":
+                unitExponent = -12;
+                break;
+            case "ns":
+                unitExponent = -9;
+                break;
+            case "us":
+                unitExponent = -6;
+                break;
+            case "ms":
+                unitExponent = -3;
+                break;
+            case "s":
+                unitExponent = 0;
+                break;
+            default:
+                lexer.pushBackToken();
+                return value;
+        }
+
+        int exponent = unitExponent - waveformDataModel.getTimescale();
+        try {
+            for (; exponent > 0; exponent--) {
+                value = Math.multiplyExact(value, 10);
+            }
+        } catch (ArithmeticException exc) {
+            throw new SearchFormatException("Time is too large", literalTok.getStart(),
+                unitTok.getEnd());
+        }
+
+        for (; exponent < 0; exponent++) {
+            if (value % 10 != 0) {
+                // Silently rounding would change the meaning of the search
+                // (for example, rounding to zero matches immediately).
+                throw new SearchFormatException("Time is not a multiple of the timescale",
+                    literalTok.getStart(), unitTok.getEnd());
+            }
+
+            value /= 10;
+        }
+
+        return value;
+    }
+
+    private static long literalToLong(Token literalTok) throws SearchFormatException {
+        try {
+            return literalTok.getLiteralValue().longValueExact();
+        } catch (ArithmeticException exc) {
+            throw new SearchFormatException("Invalid literal: " + exc.getMessage(),
+                literalTok.getStart(), literalTok.getEnd());
+        }
+    }
+
     private BooleanExpressionNode parseCondition() throws SearchFormatException {
         Token lookahead = lexer.nextToken();
         if (lookahead.getType() == Token.Type.LPAREN) {
@@ -101,9 +228,52 @@ final class SearchParser {
             return node;
         }
 
+        if (lookahead.getType() == Token.Type.IDENTIFIER) {
+            EdgeExpressionNode.Type edgeType = getEdgeType(lookahead.toString());
+            if (edgeType != null) {
+                if (tryToMatchToken(Token.Type.LPAREN)) {
+                    return parseEdge(edgeType, lookahead);
+                }
+
+                // A net that happens to have the same name as a function.
+                return parseComparison(parseNetValue(lookahead));
+            }
+        }
+
         lexer.pushBackToken();
-        ValueNode left = parseValue();
-        lookahead = lexer.nextToken();
+        return parseComparison(parseValue());
+    }
+
+    private static EdgeExpressionNode.Type getEdgeType(String name) {
+        switch (name) {
+            case "posedge":
+                return EdgeExpressionNode.Type.POSEDGE;
+            case "negedge":
+                return EdgeExpressionNode.Type.NEGEDGE;
+            case "changed":
+                return EdgeExpressionNode.Type.CHANGED;
+            default:
+                return null;
+        }
+    }
+
+    /// The function name and left parenthesis have already been read.
+    private BooleanExpressionNode parseEdge(EdgeExpressionNode.Type edgeType, Token nameTok)
+        throws SearchFormatException {
+        NetValueNode net = parseNetValue(matchToken(Token.Type.IDENTIFIER));
+        Token endTok = matchToken(Token.Type.RPAREN);
+        if (edgeType != EdgeExpressionNode.Type.CHANGED
+            && (net.getLowIndex() == -1 ? net.getNetDataModel().getWidth() != 1
+            : net.getLowIndex() != net.getHighIndex())) {
+            throw new SearchFormatException(nameTok + " requires a single bit",
+                nameTok.getStart(), endTok.getEnd());
+        }
+
+        return new EdgeExpressionNode(edgeType, net);
+    }
+
+    private BooleanExpressionNode parseComparison(ValueNode left) throws SearchFormatException {
+        Token lookahead = lexer.nextToken();
         switch (lookahead.getType()) {
             case GREATER:
                 return new GreaterThanExpressionNode(left, parseValue());
@@ -127,54 +297,76 @@ final class SearchParser {
     private ValueNode parseValue() throws SearchFormatException {
         Token lookahead = lexer.nextToken();
         if (lookahead.getType() == Token.Type.IDENTIFIER) {
-            String name = lookahead.toString();
-            NetDataModel netDataModel;
-            try {
-                netDataModel = waveformDataModel.fuzzyFindNet(name);
-            } catch (AmbiguousNetException exc) {
-                throw new SearchFormatException(
-                    "Ambiguous net \"" + name + "\"", lookahead.getStart(),
-                    lookahead.getEnd());
-            } catch (NoSuchElementException exc) {
-                throw new SearchFormatException("Unknown net \"" + name + "\"",
-                    lookahead.getStart(), lookahead.getEnd());
-            }
+            return parseNetValue(lookahead);
+        } else {
+            lexer.pushBackToken();
+            matchToken(Token.Type.LITERAL);
+            return new ConstValueNode(lookahead.getLiteralValue());
+        }
+    }
 
-            lookahead = lexer.nextToken();
-            if (lookahead.getType() == Token.Type.LBRACKET) {
-                Token highIndexTok = matchToken(Token.Type.LITERAL);
-                int highIndex = highIndexTok.getLiteralValue().intValue();
-                int lowIndex;
-
-                int width = netDataModel.getTransitionVector().getWidth();
-                lookahead = lexer.nextToken();
-                if (lookahead.getType() == Token.Type.COLON) {
-                    Token lowIndexTok = matchToken(Token.Type.LITERAL);
-                    lowIndex = lowIndexTok.getLiteralValue().intValue();
-                    if (highIndex >= width || highIndex < lowIndex) {
-                        throw new SearchFormatException("Invalid bit slice range",
-                            highIndexTok.getStart(), lowIndexTok.getEnd());
-                    }
-                } else {
-                    lexer.pushBackToken();
-                    lowIndex = highIndex;
-                    if (highIndex >= width) {
-                        throw new SearchFormatException("Invalid bit slice index",
-                            highIndexTok.getStart(), highIndexTok.getEnd());
-                    }
-                }
+    private NetDataModel findNet(Token identifierTok) throws SearchFormatException {
+        String name = identifierTok.toString();
+        NetDataModel netDataModel;
+        try {
+            netDataModel = waveformDataModel.fuzzyFindNet(name);
+        } catch (AmbiguousNetException exc) {
+            throw new SearchFormatException(
+                "Ambiguous net \"" + name + "\"", identifierTok.getStart(),
+                identifierTok.getEnd());
+        } catch (NoSuchElementException exc) {
+            throw new SearchFormatException("Unknown net \"" + name + "\"",
+                identifierTok.getStart(), identifierTok.getEnd());
+        }
 
-                matchToken(Token.Type.RBRACKET);
+        if (netDataModel.isDecoding()) {
+            throw new SearchFormatException("Net \"" + name + "\" is still being decoded",
+                identifierTok.getStart(), identifierTok.getEnd());
+        }
 
-                return new NetValueNode(netDataModel, lowIndex, highIndex);
+        return netDataModel;
+    }
+
+    /// Parse a net name with an optional bit slice.
+    /// @param identifierTok Net name, which has already been read.
+    private NetValueNode parseNetValue(Token identifierTok) throws SearchFormatException {
+        NetDataModel netDataModel = findNet(identifierTok);
+        Token lookahead = lexer.nextToken();
+        if (lookahead.getType() == Token.Type.LBRACKET) {
+            Token highIndexTok = matchToken(Token.Type.LITERAL);
+            int highIndex = highIndexTok.getLiteralValue().intValue();
+            int lowIndex;
+
+            int width = netDataModel.getWidth();
+            lookahead = lexer.nextToken();
+            if (lookahead.getType() == Token.Type.COLON) {
+                Token lowIndexTok = matchToken(Token.Type.LITERAL);
+                lowIndex = lowIndexTok.getLiteralValue().intValue();
+                if (highIndex >= width || highIndex < lowIndex) {
+                    throw new SearchFormatException("Invalid bit slice range",
+                        highIndexTok.getStart(), lowIndexTok.getEnd());
+                }
             } else {
                 lexer.pushBackToken();
-                return new NetValueNode(netDataModel);
+                lowIndex = highIndex;
+                if (highIndex >= width) {
+                    throw new SearchFormatException("Invalid bit slice index",
+                        highIndexTok.getStart(), highIndexTok.getEnd());
+                }
             }
+
+            matchToken(Token.Type.RBRACKET);
+
+            return shareNetValueNode(new NetValueNode(netDataModel, lowIndex, highIndex));
         } else {
             lexer.pushBackToken();
-            matchToken(Token.Type.LITERAL);
-            return new ConstValueNode(lookahead.getLiteralValue());
+            return shareNetValueNode(new NetValueNode(netDataModel));
         }
     }
+
+    /// @returns An existing node that references the same net or slice, or
+    ///   the passed node if there isn't one.
+    private NetValueNode shareNetValueNode(NetValueNode node) {
+        return netValueNodes.computeIfAbsent(node.toString(), key -> node);
+    }
 }
@@ -0,0 +1,78 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.search;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+///
+/// Remembers the matching regions of recent searches, so stepping through
+/// matches with the same expression is a binary search rather than a scan.
+/// Entries are keyed by the canonical form of the parsed expression
+/// (Search.toString()), so searches that are written differently but parse
+/// to the same tree share an entry. The least recently used entries are
+/// evicted when the total size exceeds the limit.
+///
+/// The cached results are only valid for the waveform they were computed
+/// against, so this must be cleared when a new waveform is loaded.
+/// This may be accessed from multiple threads.
+///
+public final class SearchResultCache {
+    // Approximate memory used by one match (a start and end timestamp)
+    private static final long BYTES_PER_MATCH = 16;
+
+    private final long maxBytes;
+    private long totalBytes;
+
+    // Access ordered, so the first entry is the least recently used.
+    private final LinkedHashMap<String, MatchList> entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    public SearchResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /// @returns Matches for this search, or null if they aren't cached.
+    public synchronized MatchList get(Search search) {
+        return entries.get(search.toString());
+    }
+
+    public synchronized void put(Search search, MatchList matches) {
+        long size = matches.size() * BYTES_PER_MATCH;
+        if (size > maxBytes) {
+            return; // Would evict everything else, not worth it
+        }
+
+        MatchList oldMatches = entries.put(search.toString(), matches);
+        if (oldMatches != null) {
+            totalBytes -= oldMatches.size() * BYTES_PER_MATCH;
+        }
+
+        totalBytes += size;
+        Iterator<Map.Entry<String, MatchList>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes) {
+            totalBytes -= it.next().getValue().size() * BYTES_PER_MATCH;
+            it.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+}
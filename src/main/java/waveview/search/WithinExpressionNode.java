@@ -0,0 +1,80 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.search;
+
+/// True if the child expression is true at any point within a window of
+/// time on either side of the timestamp (inclusive). "a within 10ns of b"
+/// is parsed as (and a (within b 10)).
+final class WithinExpressionNode extends BooleanExpressionNode {
+    private final BooleanExpressionNode child;
+    private final long window;
+
+    WithinExpressionNode(BooleanExpressionNode child, long window) {
+        this.child = child;
+        this.window = window;
+    }
+
+    @Override
+    boolean evaluate(long timestamp, SearchHint hint) {
+        long windowStart = saturatingAdd(timestamp, -window);
+        long windowEnd = saturatingAdd(timestamp, window);
+
+        // Scan the window for a point where the child is true.
+        SearchHint startHint = new SearchHint();
+        boolean result = child.evaluate(windowStart, startHint);
+        long nextTimestamp = startHint.forward;
+        while (!result && nextTimestamp <= windowEnd) {
+            SearchHint scanHint = new SearchHint();
+            result = child.evaluate(nextTimestamp, scanHint);
+            nextTimestamp = scanHint.forward;
+        }
+
+        // The value of this expression can only change when a transition
+        // of the child moves into or out of the window, which happens when
+        // one crosses either edge.
+        SearchHint endHint = new SearchHint();
+        child.evaluate(windowEnd, endHint);
+        hint.forward = Math.min(saturatingAdd(startHint.forward, window),
+            saturatingAdd(endHint.forward, -window));
+        hint.backward = Math.max(saturatingAdd(startHint.backward, window),
+            saturatingAdd(endHint.backward, -window));
+
+        return result;
+    }
+
+    /// Long.MIN_VALUE and Long.MAX_VALUE indicate there are no more
+    /// transitions, so they must stay that way.
+    private static long saturatingAdd(long timestamp, long delta) {
+        if (timestamp == Long.MAX_VALUE || timestamp == Long.MIN_VALUE) {
+            return timestamp;
+        }
+
+        long sum = timestamp + delta;
+        if (delta > 0 && sum < timestamp) {
+            return Long.MAX_VALUE;
+        } else if (delta < 0 && sum > timestamp) {
+            return Long.MIN_VALUE;
+        }
+
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return "(within " + child + " " + window + ")";
+    }
+}
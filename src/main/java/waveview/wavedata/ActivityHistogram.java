@@ -0,0 +1,110 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package waveview.wavedata;
+
+///
+/// Number of transitions in each of a fixed number of equal time intervals
+/// (buckets) over the whole waveform. This is small, so a view can draw
+/// an overview of where activity occurs in a long simulation without
+/// visiting every transition.
+///
+public final class ActivityHistogram {
+    // When a vector has fewer transitions than this times the number of
+    // buckets, it's faster to walk its timestamps than to do a binary
+    // search for each bucket boundary.
+    private static final int WALK_THRESHOLD = 16;
+
+    private final long[] counts;
+    private final long bucketDuration;
+    private long maxCount;
+
+    /// @param vectors Each should only appear once, even if it is shared by
+    ///   several nets.
+    /// @param maxTimestamp Last timestamp in the waveform
+    /// @param maxBuckets Upper limit on the number of buckets. There will
+    ///   be fewer if there are fewer timestamps than this.
+    public ActivityHistogram(Iterable<TransitionVector> vectors, long maxTimestamp,
+        int maxBuckets) {
+        bucketDuration = Math.max(1, (maxTimestamp + maxBuckets) / maxBuckets);
+        counts = new long[(int) (maxTimestamp / bucketDuration) + 1];
+        for (TransitionVector vector : vectors) {
+            addVector(vector);
+        }
+
+        for (long count : counts) {
+            maxCount = Math.max(maxCount, count);
+        }
+    }
+
+    private void addVector(TransitionVector vector) {
+        int transitionCount = vector.getTransitionCount();
+        if (transitionCount < counts.length * WALK_THRESHOLD) {
+            for (int i = 0; i < transitionCount; i++) {
+                counts[getBucket(vector.getTimestamp(i))]++;
+            }
+        } else {
+            int bucketStart = 0;
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                int bucketEnd = findFirstIndexAtOrAfter(vector, (bucket + 1) * bucketDuration);
+                counts[bucket] += bucketEnd - bucketStart;
+                bucketStart = bucketEnd;
+            }
+        }
+    }
+
+    /// @returns Index of the first transition whose timestamp is greater
+    ///   than or equal to timestamp, or the number of transitions if there
+    ///   is none.
+    private static int findFirstIndexAtOrAfter(TransitionVector vector, long timestamp) {
+        int low = 0;
+        int high = vector.getTransitionCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (vector.getTimestamp(mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    public int getBucketCount() {
+        return counts.length;
+    }
+
+    /// @returns Number of time units covered by each bucket
+    public long getBucketDuration() {
+        return bucketDuration;
+    }
+
+    public int getBucket(long timestamp) {
+        return (int) Math.min(counts.length - 1, timestamp / bucketDuration);
+    }
+
+    /// @returns Number of transitions with timestamps in this bucket
+    public long getCount(int bucket) {
+        return counts[bucket];
+    }
+
+    /// @returns Largest count of any bucket
+    public long getMaxCount() {
+        return maxCount;
+    }
+}
@@ -101,6 +101,13 @@ public class BitVector {
         }
     }
 
+    /// Set 64 bits at once, using the same encoding as the fields. Bits
+    /// above the width must be zero.
+    void setWord(int wordIndex, long valueBits, long zxBits) {
+        values[wordIndex] = valueBits;
+        zxflags[wordIndex] = zxBits;
+    }
+
     /// @returns total bits in this vector (which may contain leading zeroes)
     public int getWidth() {
         return width;
@@ -125,7 +132,7 @@ public class BitVector {
 
         int remainingBits = width % Long.SIZE;
         return (remainingBits == 0
-            || (zxflags[numWords] == (1 << remainingBits) - 1
+            || (zxflags[numWords] == (1L << remainingBits) - 1
             && values[numWords] == 0));
     }
 
@@ -146,6 +153,31 @@ public class BitVector {
         return (int)((values[0] & ~zxflags[0]) & 0xffffffff);
     }
 
+    /// @returns long representation of BitVector.
+    /// @throws ArithmeticException if this contains X or Z values, or the
+    ///   value doesn't fit in a signed 64-bit long.
+    public long longValueExact() {
+        if (values == null) {
+            return 0;
+        }
+
+        if (isX()) {
+            throw new ArithmeticException("value contains X or Z");
+        }
+
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] != 0) {
+                throw new ArithmeticException("value out of long range");
+            }
+        }
+
+        if (values[0] < 0) {
+            throw new ArithmeticException("value out of long range");
+        }
+
+        return values[0];
+    }
+
     public BitVector slice(int lowBit, int highBit) {
         if (lowBit < 0 || highBit >= width || lowBit > highBit) {
             throw new IllegalArgumentException("invalid bit slice range "
@@ -0,0 +1,38 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package waveview.wavedata;
+
+///
+/// Transitions for a net that are computed a piece at a time as they are
+/// needed, rather than all at once. This is used for decoded nets, so
+/// adding a decoder to a large waveform doesn't need to decode all of it
+/// before the visible part can be drawn. Methods may be called from
+/// several threads at once.
+///
+public interface LazyTransitionVector {
+    int getWidth();
+
+    /// @returns Vector that includes at least the transition at or before
+    ///   start, all transitions up to end, and the first one after end if
+    ///   there is one. It may have more.
+    TransitionVector getRange(long start, long end);
+
+    /// Compute all transitions. This may be slow the first time it is
+    /// called.
+    TransitionVector getAll();
+}
@@ -24,7 +24,9 @@ import java.util.Iterator;
 public final class NetDataModel {
     private final String shortName;
     private final String fullName;
-    private TransitionVector transitionVector;
+    // This is set from a background thread when a decoder finishes.
+    private volatile TransitionVector transitionVector;
+    private volatile LazyTransitionVector lazyTransitionVector;
     private final String decoderName;
     private final String[] decoderInputNets;
     private String[] decoderParameters;
@@ -70,7 +72,14 @@ public final class NetDataModel {
         return decoderParameters.clone();
     }
 
+    /// @returns The transitions, or null if this is a decoded net whose
+    ///   decoder hasn't finished yet. If the net is decoded lazily, this
+    ///   decodes all of it, which may be slow.
     public TransitionVector getTransitionVector() {
+        if (transitionVector == null && lazyTransitionVector != null) {
+            return lazyTransitionVector.getAll();
+        }
+
         return transitionVector;
     }
 
@@ -78,15 +87,51 @@ public final class NetDataModel {
         this.transitionVector = transitionVector;
     }
 
+    /// @returns Object to decode parts of this net on demand, or null if
+    ///   this net isn't decoded lazily.
+    public LazyTransitionVector getLazyTransitionVector() {
+        return lazyTransitionVector;
+    }
+
+    public void setLazyTransitionVector(LazyTransitionVector lazyTransitionVector) {
+        this.lazyTransitionVector = lazyTransitionVector;
+    }
+
+    /// @returns true if this is a decoded net that has no transitions yet,
+    ///   because its decoder is still running in the background.
+    public boolean isDecoding() {
+        return transitionVector == null && lazyTransitionVector == null;
+    }
+
+    /// @throws IllegalStateException if this net is still being decoded
     public Iterator<Transition> findTransition(long timestamp) {
+        if (transitionVector == null && lazyTransitionVector != null) {
+            return lazyTransitionVector.getRange(timestamp, timestamp).findTransition(timestamp);
+        }
+
+        checkDecoded();
         return transitionVector.findTransition(timestamp);
     }
 
+    /// @throws IllegalStateException if this net is still being decoded
     public long getMaxTimestamp() {
-        return transitionVector.getMaxTimestamp();
+        checkDecoded();
+        return getTransitionVector().getMaxTimestamp();
     }
 
+    /// @throws IllegalStateException if this net is still being decoded
     public int getWidth() {
+        if (transitionVector == null && lazyTransitionVector != null) {
+            return lazyTransitionVector.getWidth();
+        }
+
+        checkDecoded();
         return transitionVector.getWidth();
     }
+
+    private void checkDecoded() {
+        if (isDecoding()) {
+            throw new IllegalStateException("Net " + fullName + " is still being decoded");
+        }
+    }
 }
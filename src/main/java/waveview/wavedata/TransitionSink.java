@@ -0,0 +1,29 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+package waveview.wavedata;
+
+///
+/// Receives transitions for a single net in timestamp order.
+///
+public interface TransitionSink {
+    /// @param timestamp Must be greater than or equal to the timestamp of
+    ///   the previous transition.
+    /// @param value New value. This may be modified by the caller after
+    ///   this returns, so implementations must copy it if they keep it.
+    TransitionSink appendTransition(long timestamp, BitVector value);
+}
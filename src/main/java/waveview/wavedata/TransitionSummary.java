@@ -0,0 +1,114 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.wavedata;
+
+import java.util.BitSet;
+
+///
+/// When zoomed out, many transitions fall into the same pixel column. The
+/// painters draw each such column once, using the values of the first and
+/// last transitions in it (which can be looked up directly by index in the
+/// TransitionVector) and whether any transition in the column is a
+/// conflict (has X or Z bits but isn't entirely Z, so is drawn in the
+/// conflict color). Checking the latter transition by transition would
+/// take time proportional to the number of transitions, so this keeps a
+/// pyramid of flags: each level summarizes pairs of entries in the level
+/// below it, and a range query only looks at O(log n) entries.
+///
+public final class TransitionSummary {
+    // levels[0] has one flag per transition. levels[n] has one flag per
+    // 2^n transitions, which is set if any of them is a conflict.
+    private final BitSet[] levels;
+
+    TransitionSummary(TransitionVector vector) {
+        int transitionCount = vector.getTransitionCount();
+        int width = vector.getWidth();
+        BitSet base = new BitSet(transitionCount);
+        for (int index = 0; index < transitionCount; index++) {
+            boolean hasXorZ = false;
+            boolean allZ = true;
+            for (int bit = 0; bit < width; bit++) {
+                BitValue value = vector.getBit(index, bit);
+                if (value == BitValue.X || value == BitValue.Z) {
+                    hasXorZ = true;
+                }
+
+                if (value != BitValue.Z) {
+                    allZ = false;
+                }
+            }
+
+            if (hasXorZ && !allZ) {
+                base.set(index);
+            }
+        }
+
+        int levelCount = 1;
+        for (int size = transitionCount; size > 1; size = (size + 1) / 2) {
+            levelCount++;
+        }
+
+        levels = new BitSet[levelCount];
+        levels[0] = base;
+        for (int level = 1; level < levelCount; level++) {
+            BitSet below = levels[level - 1];
+            BitSet current = new BitSet();
+            for (int index = below.nextSetBit(0); index >= 0;
+                index = below.nextSetBit(index + 1)) {
+                current.set(index / 2);
+            }
+
+            levels[level] = current;
+        }
+    }
+
+    /// @param firstIndex Index of first transition to check
+    /// @param lastIndex Index of last transition to check (inclusive)
+    /// @returns true if any transition in the range has a conflict value.
+    public boolean hasConflict(int firstIndex, int lastIndex) {
+        int first = firstIndex;
+        int last = lastIndex;
+        for (BitSet level : levels) {
+            if (first > last) {
+                break;
+            }
+
+            // Check entries at the ends of the range that aren't fully
+            // covered by an entry in the next level up.
+            if ((first & 1) != 0) {
+                if (level.get(first)) {
+                    return true;
+                }
+
+                first++;
+            }
+
+            if ((last & 1) == 0) {
+                if (level.get(last)) {
+                    return true;
+                }
+
+                last--;
+            }
+
+            first /= 2;
+            last = (last - 1) / 2;
+        }
+
+        return false;
+    }
+}
@@ -16,6 +16,10 @@
 
 package waveview.wavedata;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
@@ -33,6 +37,15 @@ import java.util.NoSuchElementException;
 /// transition.
 ///
 public final class TransitionVector {
+    /// Flags returned by getValueFlags and getColumns.
+    /// The value has X or Z bits, but is not entirely Z.
+    public static final byte VALUE_X = 1;
+    /// All bits of the value are Z.
+    public static final byte VALUE_Z = 2;
+    /// Several transitions fall in the column, and at least one of them
+    /// has the VALUE_X state.
+    public static final byte COLUMN_CONFLICT = 4;
+
     private final int width; // Number of bits for this net
     private long[] timestamps;
 
@@ -43,6 +56,8 @@ public final class TransitionVector {
     // entry. There is no padding between adjacent transitions.
     private long[] packedValues;
     private int transitionCount;
+    private ValueIndex valueIndex;
+    private TransitionSummary summary;
 
     private TransitionVector(int width) {
         assert width > 0;
@@ -53,6 +68,13 @@ public final class TransitionVector {
     /// transition, returns the transition before it. If this is before the
     /// first transition, returns the first transition.
     public Iterator<Transition> findTransition(long timestamp) {
+        return new TransitionVectorIterator(findIndex(timestamp));
+    }
+
+    /// @returns Index of the transition at this timestamp. If there isn't a
+    /// transition at this timestamp, returns the index of the transition
+    /// before it. If this is before the first transition, returns 0.
+    public int findIndex(long timestamp) {
         // Binary search
         int low = 0; // Lowest possible index
         int high = transitionCount - 1; // Highest possible index
@@ -65,7 +87,7 @@ public final class TransitionVector {
             } else if (timestamp > midKey) {
                 low = mid + 1;
             } else {
-                return new TransitionVectorIterator(mid);
+                return mid;
             }
         }
 
@@ -73,7 +95,262 @@ public final class TransitionVector {
         // at if it existed. We want to return the element before the
         // timestamp. If low == 0, this is before the first element:
         // return 0.
-        return new TransitionVectorIterator(low == 0 ? 0 : low - 1);
+        return low == 0 ? 0 : low - 1;
+    }
+
+    /// Same as findIndex(timestamp), except that if there are several
+    /// transitions at the timestamp, this returns the last one. It's faster
+    /// when the result is at or shortly after startIndex, because it gallops
+    /// forward from there (checking exponentially increasing distances)
+    /// before doing a binary search. Scanning forward through a waveform one
+    /// step at a time is O(1) per step rather than O(log n).
+    /// @param startIndex Transition index to search from, usually the
+    ///   result of the previous call.
+    public int findIndex(long timestamp, int startIndex) {
+        if (transitionCount == 0) {
+            return 0;
+        }
+
+        if (startIndex >= transitionCount || timestamps[startIndex] > timestamp) {
+            // Moving backward: no better than starting from scratch.
+            startIndex = findIndex(timestamp);
+        }
+
+        // timestamps[low] <= timestamp (unless this is before the first
+        // transition) and timestamps[high] > timestamp, where high ==
+        // transitionCount is past the end.
+        int low = startIndex;
+        int step = 1;
+        while (step < transitionCount - low && timestamps[low + step] <= timestamp) {
+            low += step;
+            step *= 2;
+        }
+
+        int high = Math.min(low + step, transitionCount);
+        while (high - low > 1) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] <= timestamp) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    public int getTransitionCount() {
+        return transitionCount;
+    }
+
+    /// @param index Transition index, from 0 to getTransitionCount() - 1
+    public long getTimestamp(int index) {
+        assert index < transitionCount;
+        return timestamps[index];
+    }
+
+    /// Read a single bit of a transition directly out of the packed array,
+    /// without copying the whole value into a Transition.
+    /// @param index Transition index, from 0 to getTransitionCount() - 1
+    /// @param bitIndex bit number, where 0 is least significant
+    public BitValue getBit(int index, int bitIndex) {
+        assert index < transitionCount;
+        assert bitIndex < width;
+
+        int encodedBitIndex = (index * width + width - bitIndex - 1) * 2;
+        long word = packedValues[encodedBitIndex / 64];
+        return BitValue.fromOrdinal((int) ((word >> (encodedBitIndex % 64)) & 3));
+    }
+
+    /// Read up to 64 bits of a transition's value at once, directly out of
+    /// the packed array. For wide nets, this is much faster than reading a
+    /// bit at a time.
+    /// @param index Transition index, from 0 to getTransitionCount() - 1
+    /// @param lowBit Least significant bit to read
+    /// @param bitCount Number of bits to read, from 1 to 64
+    /// @returns Bits, with lowBit in bit 0. X and Z bits read as 0.
+    public long getBits(int index, int lowBit, int bitCount) {
+        return readPlane(index, lowBit, bitCount, 0) & ~readPlane(index, lowBit, bitCount, 1);
+    }
+
+    /// Same parameters as getBits
+    /// @returns Mask of the bits that are X or Z
+    public long getUndefinedBits(int index, int lowBit, int bitCount) {
+        return readPlane(index, lowBit, bitCount, 1);
+    }
+
+    /// Copy the value of a transition, 64 bits at a time.
+    /// @param value Receives the value. It is resized to the width of this
+    ///   vector if needed.
+    public void getValue(int index, BitVector value) {
+        if (value.getWidth() != width) {
+            value.setWidth(width);
+        }
+
+        for (int lowBit = 0; lowBit < width; lowBit += 64) {
+            int bitCount = Math.min(64, width - lowBit);
+            long lowPlane = readPlane(index, lowBit, bitCount, 0);
+            long highPlane = readPlane(index, lowBit, bitCount, 1);
+
+            // X is 10 and Z is 11, but BitVector stores X with a value bit
+            // of 1 and Z with 0.
+            value.setWord(lowBit / 64, lowPlane ^ highPlane, highPlane);
+        }
+    }
+
+    /// Each bit of a value is packed as two bits. This extracts the lower
+    /// (plane 0, set for 1 and Z) or upper (plane 1, set for X and Z) one of
+    /// each for a range of bits.
+    private long readPlane(int index, int lowBit, int bitCount, int plane) {
+        assert index < transitionCount;
+        assert bitCount > 0 && bitCount <= 64 && lowBit + bitCount <= width;
+
+        // Bits are packed most significant first.
+        int pairIndex = index * width + width - lowBit - bitCount;
+        long result = 0;
+        int remaining = bitCount;
+        while (remaining > 0) {
+            int pairCount = Math.min(remaining, 32);
+            long pairs = readPacked(pairIndex * 2, pairCount * 2);
+            long planeBits = compactEvenBits(pairs >>> plane);
+
+            // Bit 0 is now the most significant bit of this chunk.
+            result = (result << pairCount) | (Long.reverse(planeBits) >>> (64 - pairCount));
+            pairIndex += pairCount;
+            remaining -= pairCount;
+        }
+
+        return result;
+    }
+
+    private long readPacked(int bitOffset, int bitCount) {
+        int wordIndex = bitOffset / 64;
+        int shiftAmount = bitOffset % 64;
+        long bits = packedValues[wordIndex] >>> shiftAmount;
+        if (shiftAmount + bitCount > 64) {
+            bits |= packedValues[wordIndex + 1] << (64 - shiftAmount);
+        }
+
+        return bitCount == 64 ? bits : bits & ((1L << bitCount) - 1);
+    }
+
+    /// @returns Bits 0, 2, 4... of value moved to bits 0, 1, 2...
+    private static long compactEvenBits(long value) {
+        value &= 0x5555555555555555L;
+        value = (value | (value >>> 1)) & 0x3333333333333333L;
+        value = (value | (value >>> 2)) & 0x0f0f0f0f0f0f0f0fL;
+        value = (value | (value >>> 4)) & 0x00ff00ff00ff00ffL;
+        value = (value | (value >>> 8)) & 0x0000ffff0000ffffL;
+        return (value | (value >>> 16)) & 0x00000000ffffffffL;
+    }
+
+    /// @returns Combination of VALUE_X and VALUE_Z
+    public byte getValueFlags(int index) {
+        assert index < transitionCount;
+
+        boolean hasXorZ = false;
+        boolean allZ = true;
+        for (int bit = 0; bit < width; bit++) {
+            BitValue value = getBit(index, bit);
+            if (value == BitValue.X || value == BitValue.Z) {
+                hasXorZ = true;
+            }
+
+            if (value != BitValue.Z) {
+                allZ = false;
+            }
+        }
+
+        if (allZ) {
+            return VALUE_Z;
+        }
+
+        return hasXorZ ? VALUE_X : 0;
+    }
+
+    /// Summarize the transitions in a range of pixel columns, for
+    /// painters and other code that draws one thing per column. The column
+    /// of a timestamp is (int) (timestamp * horizontalScale). When zoomed
+    /// out, many transitions may fall into the same column. This finds the
+    /// last one in each column with a binary search rather than visiting
+    /// all of them, so the time this takes is proportional to the number
+    /// of columns. It doesn't allocate memory.
+    /// @param firstColumn Column of the first entry in the output arrays
+    /// @param columnCount Number of columns to fill in. The output arrays
+    ///   must have at least this many entries.
+    /// @param horizontalScale Pixels per time unit
+    /// @param valueIndices Set to the index of the transition whose value is
+    ///   in effect at the end of each column, or -1 if the column is before
+    ///   the first transition.
+    /// @param transitionCounts Set to the number of transitions in each
+    ///   column. The value in effect at the start of the column has index
+    ///   valueIndices[i] - transitionCounts[i].
+    /// @param flags Set to the getValueFlags for the value in effect at the
+    ///   end of each column, plus COLUMN_CONFLICT.
+    public void getColumns(int firstColumn, int columnCount, double horizontalScale,
+        int[] valueIndices, int[] transitionCounts, byte[] flags) {
+        // Find the first transition at or after the first column
+        int index = findIndex((long) (firstColumn / horizontalScale));
+
+        // Rounding in the division may land past the first transition in
+        // the column.
+        while (index > 0 && toColumn(index - 1, horizontalScale) >= firstColumn) {
+            index--;
+        }
+
+        while (index < transitionCount && toColumn(index, horizontalScale) < firstColumn) {
+            index = findLastInColumn(index, horizontalScale) + 1;
+        }
+
+        int valueIndex = index - 1;
+        byte valueFlags = valueIndex >= 0 ? getValueFlags(valueIndex) : 0;
+        for (int i = 0; i < columnCount; i++) {
+            int count = 0;
+            boolean conflict = false;
+            if (index < transitionCount && toColumn(index, horizontalScale) == firstColumn + i) {
+                int lastIndex = findLastInColumn(index, horizontalScale);
+                count = lastIndex - index + 1;
+                conflict = count > 1 && getSummary().hasConflict(index, lastIndex);
+                valueIndex = lastIndex;
+                valueFlags = getValueFlags(lastIndex);
+                index = lastIndex + 1;
+            }
+
+            valueIndices[i] = valueIndex;
+            transitionCounts[i] = count;
+            flags[i] = (byte) (valueFlags | (conflict ? COLUMN_CONFLICT : 0));
+        }
+    }
+
+    private int toColumn(int index, double horizontalScale) {
+        return (int) (timestamps[index] * horizontalScale);
+    }
+
+    /// @returns Index of the last transition in the same column as index,
+    ///   which is index if it is the only one.
+    private int findLastInColumn(int index, double horizontalScale) {
+        int column = toColumn(index, horizontalScale);
+        if (index + 1 >= transitionCount || toColumn(index + 1, horizontalScale) != column) {
+            return index; // Common case when zoomed in
+        }
+
+        long nextColumnTimestamp = (long) Math.ceil((column + 1) / horizontalScale);
+        int lastIndex = Math.max(index + 1, findIndex(nextColumnTimestamp - 1));
+
+        // Rounding in the division may put nextColumnTimestamp one past the
+        // actual start of the next column.
+        while (lastIndex > index && toColumn(lastIndex, horizontalScale) > column) {
+            lastIndex--;
+        }
+
+        // findIndex may return any of several transitions with the same
+        // timestamp.
+        while (lastIndex + 1 < transitionCount
+            && toColumn(lastIndex + 1, horizontalScale) == column) {
+            lastIndex++;
+        }
+
+        return lastIndex;
     }
 
     public long getMaxTimestamp() {
@@ -88,6 +365,98 @@ public final class TransitionVector {
         return width;
     }
 
+    /// The index is built the first time this is called, which takes time
+    /// proportional to the number of transitions, and is then cached.
+    /// This may be called from a background thread.
+    public synchronized ValueIndex getValueIndex() {
+        if (valueIndex == null) {
+            valueIndex = new ValueIndex(this);
+        }
+
+        return valueIndex;
+    }
+
+    /// This is built the first time it is called, like getValueIndex.
+    public synchronized TransitionSummary getSummary() {
+        if (summary == null) {
+            summary = new TransitionSummary(this);
+        }
+
+        return summary;
+    }
+
+    /// @returns Iterator starting at the transition with this index.
+    public Iterator<Transition> iteratorAt(int index) {
+        return new TransitionVectorIterator(index);
+    }
+
+    /// Write the transitions in a compact binary form, which read() can
+    /// load without encoding the values again.
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(transitionCount);
+        for (int i = 0; i < transitionCount; i++) {
+            out.writeLong(timestamps[i]);
+        }
+
+        int packedWordCount = getPackedWordCount(width, transitionCount);
+        for (int i = 0; i < packedWordCount; i++) {
+            out.writeLong(packedValues[i]);
+        }
+    }
+
+    /// Read a vector that was saved with write()
+    public static TransitionVector read(DataInput in) throws IOException {
+        int width = in.readInt();
+        int transitionCount = in.readInt();
+        checkHeader(width, transitionCount);
+        TransitionVector vector = new TransitionVector(width);
+        if (transitionCount > 0) {
+            vector.timestamps = new long[transitionCount];
+            for (int i = 0; i < transitionCount; i++) {
+                vector.timestamps[i] = in.readLong();
+            }
+
+            vector.packedValues = new long[getPackedWordCount(width, transitionCount)];
+            for (int i = 0; i < vector.packedValues.length; i++) {
+                vector.packedValues[i] = in.readLong();
+            }
+
+            vector.transitionCount = transitionCount;
+        }
+
+        return vector;
+    }
+
+    /// Skip over a vector that was saved with write(), without reading it.
+    public static void skip(DataInput in) throws IOException {
+        int width = in.readInt();
+        int transitionCount = in.readInt();
+        checkHeader(width, transitionCount);
+        long remaining = (transitionCount
+            + (long) getPackedWordCount(width, transitionCount)) * Long.BYTES;
+        while (remaining > 0) {
+            int skipped = in.skipBytes((int) Math.min(remaining, Integer.MAX_VALUE));
+            if (skipped == 0) {
+                throw new EOFException();
+            }
+
+            remaining -= skipped;
+        }
+    }
+
+    private static void checkHeader(int width, int transitionCount) throws IOException {
+        if (width <= 0 || transitionCount < 0
+            || (long) width * transitionCount * 2 / 64 >= Integer.MAX_VALUE) {
+            throw new IOException("invalid transition vector header");
+        }
+    }
+
+    /// @returns Number of words of packedValues that are used
+    private static int getPackedWordCount(int width, int transitionCount) {
+        return (int) (((long) width * transitionCount * 2 + 63) / 64);
+    }
+
     private final class TransitionVectorIterator implements Iterator<Transition> {
         private int transitionIndex;
 
@@ -145,7 +514,7 @@ public final class TransitionVector {
         }
     }
 
-    public static final class Builder {
+    public static final class Builder implements TransitionSink {
         private final TransitionVector vector;
         private int allocatedTransitions;
 
@@ -163,6 +532,7 @@ public final class TransitionVector {
 
         // The timestamp must be after the last transition that was appended
         // (transitions must be appended in order)
+        @Override
         public Builder appendTransition(long timestamp, BitVector value) {
             if (vector.transitionCount == 0) {
                 allocatedTransitions = 128;
@@ -206,6 +576,10 @@ public final class TransitionVector {
             }
 
             vector.transitionCount++;
+
+            // These are stale now, they will be rebuilt on next use.
+            vector.valueIndex = null;
+            vector.summary = null;
             return this;
         }
     }
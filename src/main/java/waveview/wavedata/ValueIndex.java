@@ -0,0 +1,177 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package waveview.wavedata;
+
+import java.util.Arrays;
+
+///
+/// Maps values of a net to the transition indices where the net takes
+/// that value, so an equality search can jump directly to candidate
+/// transitions instead of visiting every one. This stores a hash of each
+/// value rather than the value itself, so lookups may return transitions
+/// that don't actually match (which the caller must check), but will never
+/// skip one that does.
+///
+/// Comparisons treat X and Z as matching anything (see BitVector.compare),
+/// so transitions with those bits are kept in a separate list and are
+/// always candidates.
+///
+public final class ValueIndex {
+    private final int width;
+
+    // Each entry is (hash << 32) | transitionIndex. Sorting these groups
+    // all transitions with the same hash together in ascending index order.
+    private final long[] hashedIndices;
+
+    // Transitions that have X or Z bits, in ascending order.
+    private final int[] wildcardIndices;
+
+    ValueIndex(TransitionVector vector) {
+        width = vector.getWidth();
+        int transitionCount = vector.getTransitionCount();
+        long[] hashed = new long[transitionCount];
+        int[] wildcards = new int[16];
+        int hashedCount = 0;
+        int wildcardCount = 0;
+        for (int index = 0; index < transitionCount; index++) {
+            int hash = 0;
+            boolean isWildcard = false;
+            for (int bit = width - 1; bit >= 0; bit--) {
+                BitValue value = vector.getBit(index, bit);
+                if (value == BitValue.X || value == BitValue.Z) {
+                    isWildcard = true;
+                    break;
+                }
+
+                hash = hash * 31 + value.toInt();
+            }
+
+            if (isWildcard) {
+                if (wildcardCount == wildcards.length) {
+                    wildcards = Arrays.copyOf(wildcards, wildcardCount * 2);
+                }
+
+                wildcards[wildcardCount++] = index;
+            } else {
+                hashed[hashedCount++] = ((long) hash << 32) | index;
+            }
+        }
+
+        hashedIndices = Arrays.copyOf(hashed, hashedCount);
+        Arrays.sort(hashedIndices);
+        wildcardIndices = Arrays.copyOf(wildcards, wildcardCount);
+    }
+
+    /// @returns Smallest transition index >= fromIndex where the net may be
+    ///   equal to value, or -1 if there are none.
+    public int findNext(BitVector value, int fromIndex) {
+        if (!isIndexable(value)) {
+            return fromIndex;
+        }
+
+        int next = -1;
+        if (!hasBitsAboveWidth(value)) {
+            long hash = hashValue(value);
+            int pos = Arrays.binarySearch(hashedIndices, (hash << 32) | fromIndex);
+            if (pos < 0) {
+                pos = -pos - 1;
+            }
+
+            if (pos < hashedIndices.length && (hashedIndices[pos] >> 32) == hash) {
+                next = (int) hashedIndices[pos];
+            }
+        }
+
+        int pos = Arrays.binarySearch(wildcardIndices, fromIndex);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+
+        if (pos < wildcardIndices.length && (next == -1 || wildcardIndices[pos] < next)) {
+            next = wildcardIndices[pos];
+        }
+
+        return next;
+    }
+
+    /// @returns Largest transition index <= fromIndex where the net may be
+    ///   equal to value, or -1 if there are none.
+    public int findPrevious(BitVector value, int fromIndex) {
+        if (fromIndex < 0 || !isIndexable(value)) {
+            return fromIndex;
+        }
+
+        int previous = -1;
+        if (!hasBitsAboveWidth(value)) {
+            long hash = hashValue(value);
+            int pos = Arrays.binarySearch(hashedIndices, (hash << 32) | fromIndex);
+            if (pos < 0) {
+                pos = -pos - 2;
+            }
+
+            if (pos >= 0 && (hashedIndices[pos] >> 32) == hash) {
+                previous = (int) hashedIndices[pos];
+            }
+        }
+
+        int pos = Arrays.binarySearch(wildcardIndices, fromIndex);
+        if (pos < 0) {
+            pos = -pos - 2;
+        }
+
+        if (pos >= 0 && wildcardIndices[pos] > previous) {
+            previous = wildcardIndices[pos];
+        }
+
+        return previous;
+    }
+
+    /// A value with X or Z bits matches many different values, which
+    /// the index can't look up.
+    private boolean isIndexable(BitVector value) {
+        for (int bit = Math.min(width, value.getWidth()) - 1; bit >= 0; bit--) {
+            BitValue bitValue = value.getBit(bit);
+            if (bitValue == BitValue.X || bitValue == BitValue.Z) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /// If the value has ones above the width of the net, it can never be
+    /// equal to the net unless the net has wildcard bits.
+    private boolean hasBitsAboveWidth(BitVector value) {
+        for (int bit = value.getWidth() - 1; bit >= width; bit--) {
+            if (value.getBit(bit) == BitValue.ONE) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Must match the hash computed in the constructor.
+    private long hashValue(BitVector value) {
+        int hash = 0;
+        for (int bit = width - 1; bit >= 0; bit--) {
+            hash = hash * 31 + (bit < value.getWidth() ? value.getBit(bit).toInt() : 0);
+        }
+
+        return hash;
+    }
+}
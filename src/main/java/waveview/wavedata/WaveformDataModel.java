@@ -18,18 +18,23 @@ package waveview.wavedata;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 ///
 /// Contains information about nets and transitions. View state is contained
 /// in WaveformPresentationModel.
 ///
 public final class WaveformDataModel implements Iterable<NetDataModel> {
+    private static final int ACTIVITY_HISTOGRAM_BUCKETS = 2048;
+
     private long maxTimestamp;
     private Map<String, NetDataModel> fullNameToNetMap = new HashMap<>();
     private List<NetDataModel> nets = new ArrayList<>();
@@ -37,6 +42,7 @@ public final class WaveformDataModel implements Iterable<NetDataModel> {
     private NetTreeNode netTree;
     private int timescale;
     private int decodeIndex;
+    private ActivityHistogram activityHistogram;
 
     public static class AmbiguousNetException extends Exception {
         public AmbiguousNetException(String what) {
@@ -57,6 +63,7 @@ public final class WaveformDataModel implements Iterable<NetDataModel> {
         netTree = from.netTree;
         timescale = from.timescale;
         decodedNets = from.decodedNets;
+        activityHistogram = from.activityHistogram;
     }
 
     public WaveformBuilder startBuilding() {
@@ -75,6 +82,25 @@ public final class WaveformDataModel implements Iterable<NetDataModel> {
         return maxTimestamp;
     }
 
+    /// Combined number of transitions on all nets over time, not including
+    /// decoded nets. This is built the first time it is called, which takes
+    /// a while for large waveforms, and is then cached. It may be called
+    /// from a background thread.
+    public synchronized ActivityHistogram getActivityHistogram() {
+        if (activityHistogram == null) {
+            // Aliased nets share a transition vector. Only count it once.
+            Set<TransitionVector> vectors = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (NetDataModel net : nets) {
+                vectors.add(net.getTransitionVector());
+            }
+
+            activityHistogram =
+                new ActivityHistogram(vectors, maxTimestamp, ACTIVITY_HISTOGRAM_BUCKETS);
+        }
+
+        return activityHistogram;
+    }
+
     /// @returns 10^timescale = seconds per sample.
     /// For example, if this is -3, each sample is 1 millisecond.
     public int getTimescale() {
@@ -116,11 +142,13 @@ public final class WaveformDataModel implements Iterable<NetDataModel> {
             }
         }
 
+        // Decoded nets are never aliases. Don't compare their transition
+        // vectors, because that would decode all of a lazily decoded net.
         for (NetDataModel netDataModel : decodedNets) {
             if (isPartialNetNameMatch(netDataModel.getFullName(), name)) {
                 if (match == null) {
                     match = netDataModel;
-                } else if (match.getTransitionVector() != netDataModel.getTransitionVector()) {
+                } else if (match != netDataModel) {
                     throw new AmbiguousNetException("Ambiguous net \"" + name + "\"");
                 }
             }
@@ -182,6 +210,10 @@ public final class WaveformDataModel implements Iterable<NetDataModel> {
         decodedNets.add(model);
     }
 
+    public List<NetDataModel> getDecodedNets() {
+        return Collections.unmodifiableList(decodedNets);
+    }
+
     private class ConcreteWaveformBuilder implements WaveformBuilder {
         private final Deque<String> scopeStack = new ArrayDeque<>();
         private final NetTreeNode.Builder treeBuilder = new NetTreeNode.Builder();
@@ -218,6 +250,7 @@ public final class WaveformDataModel implements Iterable<NetDataModel> {
             }
 
             netTree = treeBuilder.getRoot();
+            activityHistogram = null;
 
             return this;
         }
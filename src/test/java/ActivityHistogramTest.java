@@ -0,0 +1,120 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import waveview.wavedata.ActivityHistogram;
+import waveview.wavedata.BitVector;
+import waveview.wavedata.TransitionVector;
+import waveview.wavedata.WaveformDataModel;
+
+public class ActivityHistogramTest {
+    @Test
+    public void countTransitions() {
+        TransitionVector vec = TransitionVector.Builder.createBuilder(1)
+                                   .appendTransition(0, new BitVector("0", 2))
+                                   .appendTransition(5, new BitVector("1", 2))
+                                   .appendTransition(9, new BitVector("0", 2))
+                                   .appendTransition(25, new BitVector("1", 2))
+                                   .getTransitionVector();
+
+        ActivityHistogram histogram = new ActivityHistogram(Arrays.asList(vec), 39, 4);
+        assertEquals(4, histogram.getBucketCount());
+        assertEquals(10, histogram.getBucketDuration());
+        assertEquals(3, histogram.getCount(0));
+        assertEquals(0, histogram.getCount(1));
+        assertEquals(1, histogram.getCount(2));
+        assertEquals(0, histogram.getCount(3));
+        assertEquals(3, histogram.getMaxCount());
+    }
+
+    @Test
+    public void fewerTimestampsThanBuckets() {
+        TransitionVector vec = TransitionVector.Builder.createBuilder(1)
+                                   .appendTransition(0, new BitVector("0", 2))
+                                   .appendTransition(3, new BitVector("1", 2))
+                                   .getTransitionVector();
+
+        ActivityHistogram histogram = new ActivityHistogram(Arrays.asList(vec), 3, 100);
+        assertEquals(4, histogram.getBucketCount());
+        assertEquals(1, histogram.getBucketDuration());
+        assertEquals(1, histogram.getCount(0));
+        assertEquals(1, histogram.getCount(3));
+    }
+
+    @Test
+    public void bucketClamped() {
+        TransitionVector vec = TransitionVector.Builder.createBuilder(1)
+                                   .appendTransition(0, new BitVector("0", 2))
+                                   .getTransitionVector();
+
+        ActivityHistogram histogram = new ActivityHistogram(Arrays.asList(vec), 99, 10);
+        assertEquals(0, histogram.getBucket(-5));
+        assertEquals(9, histogram.getBucket(1000));
+    }
+
+    // Vectors with many transitions per bucket use a binary search for
+    // each bucket boundary instead of visiting every transition. Both
+    // should produce the same counts.
+    @Test
+    public void denseVector() {
+        Random random = new Random(17);
+        TransitionVector.Builder denseBuilder = TransitionVector.Builder.createBuilder(1);
+        long timestamp = 0;
+        for (int i = 0; i < 5000; i++) {
+            denseBuilder.appendTransition(timestamp, new BitVector(Integer.toString(i & 1), 2));
+            timestamp += random.nextInt(3) + 1;
+        }
+
+        TransitionVector dense = denseBuilder.getTransitionVector();
+        ActivityHistogram histogram = new ActivityHistogram(Arrays.asList(dense),
+            timestamp, 8);
+        long[] expected = new long[histogram.getBucketCount()];
+        for (int i = 0; i < dense.getTransitionCount(); i++) {
+            expected[histogram.getBucket(dense.getTimestamp(i))]++;
+        }
+
+        long total = 0;
+        for (int bucket = 0; bucket < expected.length; bucket++) {
+            assertEquals(expected[bucket], histogram.getCount(bucket));
+            total += histogram.getCount(bucket);
+        }
+
+        assertEquals(5000, total);
+    }
+
+    @Test
+    public void aliasedNetCountedOnce() {
+        WaveformDataModel model = new WaveformDataModel();
+        model.startBuilding()
+            .setTimescale(-9)
+            .enterScope("mod1")
+            .newNet(0, "net1", 1)
+            .newNet(0, "net2", 1) // aliases net1
+            .exitScope()
+            .appendTransition(0, 0, new BitVector("0", 2))
+            .appendTransition(0, 17, new BitVector("1", 2))
+            .loadFinished();
+
+        ActivityHistogram histogram = model.getActivityHistogram();
+        assertEquals(1, histogram.getCount(histogram.getBucket(17)));
+        assertEquals(1, histogram.getMaxCount());
+    }
+}
@@ -111,6 +111,11 @@ public class BitVectorTest {
         assertTrue(bv.isZ());
         assertTrue(bv.isX());
 
+        // The partial word has 32 bits
+        bv = new BitVector("zzzzzzzz", 16);
+        assertTrue(bv.isZ());
+        assertTrue(bv.isX());
+
         // This is larger than 64 bits (68), and has a partial word
         // at the beginning.
         bv = new BitVector("zzzzzzzzzzzzzzzzz", 16);
@@ -0,0 +1,229 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.Iterator;
+import org.junit.Test;
+import waveview.decoder.Decoder;
+import waveview.wavedata.BitVector;
+import waveview.wavedata.NetDataModel;
+import waveview.wavedata.Transition;
+import waveview.wavedata.TransitionVector;
+
+public class BusDecoderTest {
+    private static final BitVector ZERO = new BitVector("0", 2);
+    private static final BitVector ONE = new BitVector("1", 2);
+
+    // Builds a capture of a synchronous bus one clock cycle at a time. The
+    // clock period is 10. Like registered outputs in a simulation, the
+    // values for each cycle change at the rising edge that starts it (so
+    // they are sampled at the edge that ends it).
+    private static final class BusCapture {
+        private final TransitionVector.Builder clock =
+            TransitionVector.Builder.createBuilder(1).appendTransition(0, ZERO);
+        private final TransitionVector.Builder[] signals;
+        private long timestamp = 10;
+
+        BusCapture(int... widths) {
+            signals = new TransitionVector.Builder[widths.length];
+            for (int i = 0; i < widths.length; i++) {
+                signals[i] = TransitionVector.Builder.createBuilder(widths[i])
+                    .appendTransition(0, ZERO);
+            }
+        }
+
+        BusCapture cycle(long... values) {
+            clock.appendTransition(timestamp, ONE);
+            clock.appendTransition(timestamp + 5, ZERO);
+            for (int i = 0; i < signals.length; i++) {
+                signals[i].appendTransition(timestamp,
+                    new BitVector(Long.toBinaryString(values[i]), 2));
+            }
+
+            timestamp += 10;
+            return this;
+        }
+
+        TransitionVector decode(String decoderName, String field) {
+            Decoder decoder = Decoder.createDecoder(decoderName);
+            decoder.setParam(0, field);
+            decoder.setInput(0, new NetDataModel("clk", "clk", clock.getTransitionVector()));
+            for (int i = 0; i < signals.length; i++) {
+                decoder.setInput(i + 1, new NetDataModel("in", "in",
+                    signals[i].getTransitionVector()));
+            }
+
+            return decoder.decode();
+        }
+    }
+
+    // Each expected value is "timestamp:hex value"
+    private static void assertTransitions(TransitionVector vector, String... expected) {
+        assertEquals(expected.length, vector.getTransitionCount());
+        Iterator<Transition> iterator = vector.findTransition(0);
+        for (String expectedTransition : expected) {
+            String[] parts = expectedTransition.split(":");
+            Transition transition = iterator.next();
+            assertEquals(Long.parseLong(parts[0]), transition.getTimestamp());
+            if (parts[1].equals("Z")) {
+                assertEquals(true, transition.isZ());
+            } else {
+                assertEquals(Long.parseLong(parts[1], 16), Long.parseLong(
+                    transition.toString(16), 16));
+            }
+        }
+
+        assertFalse(iterator.hasNext());
+    }
+
+    // Two read bursts. The second address is accepted during the first
+    // burst, and its data immediately follows the first burst's.
+    private static BusCapture makeAxiReads() {
+        // avalid, aready, addr, valid, ready, last, data
+        return new BusCapture(1, 1, 32, 1, 1, 1, 32)
+            .cycle(1, 1, 0x1000, 0, 0, 0, 0) // Address accepted at 20
+            .cycle(0, 0, 0, 0, 0, 0, 0)
+            .cycle(0, 0, 0, 1, 1, 0, 0xa) // Beat at 40
+            .cycle(1, 1, 0x2000, 1, 0, 0, 0xb) // Address accepted at 50, data stalled
+            .cycle(0, 0, 0, 1, 1, 1, 0xb) // Last beat at 60
+            .cycle(0, 0, 0, 1, 1, 1, 0xc) // Single beat burst at 70
+            .cycle(0, 0, 0, 0, 0, 0, 0)
+            .cycle(0, 0, 0, 0, 0, 0, 0);
+    }
+
+    @Test
+    public void axiAddress() {
+        assertTransitions(makeAxiReads().decode("AXI", "address"),
+            "0:Z", "40:1000", "70:2000", "80:Z");
+    }
+
+    @Test
+    public void axiData() {
+        assertTransitions(makeAxiReads().decode("AXI", "data"),
+            "0:Z", "40:a", "60:b", "70:c", "80:Z");
+    }
+
+    @Test
+    public void axiLength() {
+        assertTransitions(makeAxiReads().decode("AXI", "length"),
+            "0:Z", "40:2", "70:1", "80:Z");
+    }
+
+    // Cycles from the address handshake to the last beat
+    @Test
+    public void axiLatency() {
+        assertTransitions(makeAxiReads().decode("AXI", "latency"),
+            "0:Z", "40:4", "70:2", "80:Z");
+    }
+
+    // Write data can be transferred before its address.
+    @Test
+    public void axiDataBeforeAddress() {
+        BusCapture capture = new BusCapture(1, 1, 32, 1, 1, 1, 32)
+            .cycle(0, 0, 0, 1, 1, 1, 5) // Beat at 20
+            .cycle(0, 0, 0, 0, 0, 0, 0)
+            .cycle(1, 1, 0x3000, 0, 0, 0, 0) // Address accepted at 40
+            .cycle(0, 0, 0, 0, 0, 0, 0);
+        assertTransitions(capture.decode("AXI", "address"), "0:Z", "20:3000", "30:Z");
+        assertTransitions(capture.decode("AXI", "latency"), "0:Z", "20:0", "30:Z");
+    }
+
+    // A two beat burst with a wait state in the second data phase.
+    private static BusCapture makeAhbBurst() {
+        // htrans, haddr, hready, hdata
+        return new BusCapture(2, 32, 1, 32)
+            .cycle(2, 0x100, 1, 0) // NONSEQ accepted at 20
+            .cycle(3, 0x104, 1, 0xa) // First beat and SEQ at 30
+            .cycle(0, 0, 0, 0) // Wait state at 40
+            .cycle(0, 0, 1, 0xb) // Second beat at 50
+            .cycle(0, 0, 1, 0)
+            .cycle(0, 0, 1, 0);
+    }
+
+    @Test
+    public void ahbAddress() {
+        assertTransitions(makeAhbBurst().decode("AHB", "address"), "0:Z", "30:100", "60:Z");
+    }
+
+    @Test
+    public void ahbData() {
+        assertTransitions(makeAhbBurst().decode("AHB", "data"),
+            "0:Z", "30:a", "50:b", "60:Z");
+    }
+
+    @Test
+    public void ahbLatency() {
+        assertTransitions(makeAhbBurst().decode("AHB", "latency"), "0:Z", "30:3", "60:Z");
+    }
+
+    // A block read of two words, with one wait state before the first.
+    private static BusCapture makeWishboneBlock() {
+        // cyc, stb, ack, adr, dat
+        return new BusCapture(1, 1, 1, 16, 16)
+            .cycle(1, 1, 0, 0x10, 0) // Strobe at 20
+            .cycle(1, 1, 1, 0x10, 0x55) // Ack at 30
+            .cycle(1, 1, 1, 0x12, 0x66) // Ack at 40
+            .cycle(0, 0, 0, 0, 0) // Cycle ends at 50
+            .cycle(0, 0, 0, 0, 0);
+    }
+
+    @Test
+    public void wishboneAddress() {
+        assertTransitions(makeWishboneBlock().decode("Wishbone", "address"),
+            "0:Z", "30:10", "50:Z");
+    }
+
+    @Test
+    public void wishboneData() {
+        assertTransitions(makeWishboneBlock().decode("Wishbone", "data"),
+            "0:Z", "30:55", "40:66", "50:Z");
+    }
+
+    @Test
+    public void wishboneLengthAndLatency() {
+        assertTransitions(makeWishboneBlock().decode("Wishbone", "length"),
+            "0:Z", "30:2", "50:Z");
+        assertTransitions(makeWishboneBlock().decode("Wishbone", "latency"),
+            "0:Z", "30:2", "50:Z");
+    }
+
+    @Test
+    public void invalidField() {
+        Decoder decoder = Decoder.createDecoder("AXI");
+        try {
+            decoder.setParam(0, "foo");
+            fail("Did not throw exception");
+        } catch (IllegalArgumentException exc) {
+            assertEquals("invalid field (must be address, data, length, or latency)",
+                exc.getMessage());
+        }
+    }
+
+    @Test
+    public void invalidNetWidth() {
+        Decoder decoder = Decoder.createDecoder("AHB");
+        try {
+            decoder.setInput(1, new NetDataModel("htrans", "mod.htrans",
+                TransitionVector.Builder.createBuilder(3).getTransitionVector()));
+            fail("Did not throw exception");
+        } catch (IllegalArgumentException exc) {
+            assertEquals("Invalid net mod.htrans: must be 2 bits wide", exc.getMessage());
+        }
+    }
+}
@@ -0,0 +1,281 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import waveview.DecodedNetCache;
+import waveview.wavedata.BitVector;
+import waveview.wavedata.LazyTransitionVector;
+import waveview.wavedata.NetDataModel;
+import waveview.wavedata.Transition;
+import waveview.wavedata.TransitionVector;
+import waveview.wavedata.WaveformDataModel;
+
+public class DecodedNetCacheTest {
+    @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static WaveformDataModel makeDataModel(String net1Value) {
+        WaveformDataModel dataModel = new WaveformDataModel();
+        dataModel.startBuilding()
+            .enterScope("mod1")
+            .newNet(0, "net1", 4)
+            .newNet(1, "net2", 1)
+            .exitScope()
+            .appendTransition(0, 0, new BitVector(net1Value, 2))
+            .appendTransition(1, 0, new BitVector("1", 2))
+            .appendTransition(1, 10, new BitVector("0", 2))
+            .loadFinished();
+        return dataModel;
+    }
+
+    private static TransitionVector makeDecodedValues() {
+        return TransitionVector.Builder.createBuilder(8)
+            .appendTransition(0, new BitVector("z", 2))
+            .appendTransition(5, new BitVector("10100101", 2))
+            .appendTransition(17, new BitVector("1x0z", 2))
+            .getTransitionVector();
+    }
+
+    private static NetDataModel makeDecodedNet(String name, String input, String param,
+        TransitionVector values) {
+        return new NetDataModel(name, "decoded." + name, "UART",
+            new String[] {input}, new String[] {param}, values);
+    }
+
+    private static void assertSameValues(TransitionVector expected, TransitionVector actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getTransitionCount(), actual.getTransitionCount());
+        Iterator<Transition> expectedIterator = expected.findTransition(0);
+        Iterator<Transition> actualIterator = actual.findTransition(0);
+        while (expectedIterator.hasNext()) {
+            Transition expectedTransition = expectedIterator.next();
+            Transition actualTransition = actualIterator.next();
+            assertEquals(expectedTransition.getTimestamp(), actualTransition.getTimestamp());
+            assertEquals(expectedTransition.toString(2), actualTransition.toString(2));
+        }
+    }
+
+    private File writeCache(WaveformDataModel dataModel) throws IOException {
+        File file = tempFolder.newFile("test.decodecache");
+        new DecodedNetCache(file, dataModel).write();
+        return file;
+    }
+
+    @Test
+    public void restore() throws IOException {
+        WaveformDataModel dataModel = makeDataModel("0110");
+        TransitionVector values = makeDecodedValues();
+        dataModel.addDecodedNet(makeDecodedNet("a", "mod1.net1", "9600", values));
+        File file = writeCache(dataModel);
+
+        // Simulate reopening the waveform and settings file
+        WaveformDataModel newDataModel = makeDataModel("0110");
+        NetDataModel restored = makeDecodedNet("a", "mod1.net1", "9600", null);
+        newDataModel.addDecodedNet(restored);
+        new DecodedNetCache(file, newDataModel).restore(Arrays.asList(restored));
+        assertFalse(restored.isDecoding());
+        assertSameValues(values, restored.getTransitionVector());
+    }
+
+    // The net is skipped if anything the decoded values depend on is
+    // different.
+    @Test
+    public void configurationChanged() throws IOException {
+        WaveformDataModel dataModel = makeDataModel("0110");
+        dataModel.addDecodedNet(makeDecodedNet("a", "mod1.net1", "9600", makeDecodedValues()));
+        File file = writeCache(dataModel);
+
+        // The input net has different values (the simulation was rerun)
+        WaveformDataModel newDataModel = makeDataModel("0111");
+        NetDataModel restored = makeDecodedNet("a", "mod1.net1", "9600", null);
+        newDataModel.addDecodedNet(restored);
+        new DecodedNetCache(file, newDataModel).restore(Arrays.asList(restored));
+        assertTrue(restored.isDecoding());
+
+        // Different parameter
+        newDataModel = makeDataModel("0110");
+        restored = makeDecodedNet("a", "mod1.net1", "115200", null);
+        newDataModel.addDecodedNet(restored);
+        new DecodedNetCache(file, newDataModel).restore(Arrays.asList(restored));
+        assertTrue(restored.isDecoding());
+
+        // Different input net
+        restored = makeDecodedNet("a", "mod1.net2", "9600", null);
+        newDataModel.addDecodedNet(restored);
+        new DecodedNetCache(file, newDataModel).restore(Arrays.asList(restored));
+        assertTrue(restored.isDecoding());
+
+        // Input net no longer exists
+        restored = makeDecodedNet("a", "mod1.net3", "9600", null);
+        newDataModel.addDecodedNet(restored);
+        new DecodedNetCache(file, newDataModel).restore(Arrays.asList(restored));
+        assertTrue(restored.isDecoding());
+    }
+
+    // A decoder whose input is another decoded net can be restored before
+    // the first one has values.
+    @Test
+    public void chainedDecoders() throws IOException {
+        WaveformDataModel dataModel = makeDataModel("0110");
+        TransitionVector values1 = makeDecodedValues();
+        TransitionVector values2 = TransitionVector.Builder.createBuilder(1)
+            .appendTransition(0, new BitVector("1", 2))
+            .getTransitionVector();
+        dataModel.addDecodedNet(makeDecodedNet("a", "mod1.net1", "9600", values1));
+        dataModel.addDecodedNet(makeDecodedNet("b", "decoded.a", "1", values2));
+        File file = writeCache(dataModel);
+
+        WaveformDataModel newDataModel = makeDataModel("0110");
+        NetDataModel restored1 = makeDecodedNet("a", "mod1.net1", "9600", null);
+        NetDataModel restored2 = makeDecodedNet("b", "decoded.a", "1", null);
+        newDataModel.addDecodedNet(restored1);
+        newDataModel.addDecodedNet(restored2);
+        new DecodedNetCache(file, newDataModel).restore(Arrays.asList(restored2));
+        assertTrue(restored1.isDecoding());
+        assertSameValues(values2, restored2.getTransitionVector());
+    }
+
+    // Nets that are still decoding or are decoded lazily aren't saved. If
+    // there is nothing to save, the file is removed.
+    @Test
+    public void skipIncomplete() throws IOException {
+        WaveformDataModel dataModel = makeDataModel("0110");
+        dataModel.addDecodedNet(makeDecodedNet("a", "mod1.net1", "9600", null));
+        NetDataModel lazyNet = makeDecodedNet("b", "mod1.net1", "9600", null);
+        lazyNet.setLazyTransitionVector(new LazyTransitionVector() {
+            @Override
+            public int getWidth() {
+                return 8;
+            }
+
+            @Override
+            public TransitionVector getRange(long start, long end) {
+                return makeDecodedValues();
+            }
+
+            @Override
+            public TransitionVector getAll() {
+                return makeDecodedValues();
+            }
+        });
+        dataModel.addDecodedNet(lazyNet);
+        File file = writeCache(dataModel);
+        assertFalse(file.exists());
+
+        // Restoring from a missing file does nothing
+        NetDataModel restored = makeDecodedNet("a", "mod1.net1", "9600", null);
+        new DecodedNetCache(file, dataModel).restore(Arrays.asList(restored));
+        assertTrue(restored.isDecoding());
+    }
+
+    // Several nets with the same configuration share values
+    @Test
+    public void duplicateNets() throws IOException {
+        WaveformDataModel dataModel = makeDataModel("0110");
+        TransitionVector values = makeDecodedValues();
+        dataModel.addDecodedNet(makeDecodedNet("a", "mod1.net1", "9600", values));
+        dataModel.addDecodedNet(makeDecodedNet("a", "mod1.net1", "9600", values));
+        File file = writeCache(dataModel);
+
+        NetDataModel restored1 = makeDecodedNet("a", "mod1.net1", "9600", null);
+        NetDataModel restored2 = makeDecodedNet("a", "mod1.net1", "9600", null);
+        new DecodedNetCache(file, dataModel).restore(Arrays.asList(restored1, restored2));
+        assertSameValues(values, restored1.getTransitionVector());
+        assertSame(restored1.getTransitionVector(), restored2.getTransitionVector());
+    }
+
+    // A file from a different version is ignored.
+    @Test
+    public void wrongVersion() throws IOException {
+        File file = tempFolder.newFile("test.decodecache");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(0x57564443);
+            out.writeInt(1000);
+        }
+
+        WaveformDataModel dataModel = makeDataModel("0110");
+        NetDataModel restored = makeDecodedNet("a", "mod1.net1", "9600", null);
+        new DecodedNetCache(file, dataModel).restore(Arrays.asList(restored));
+        assertTrue(restored.isDecoding());
+    }
+
+    // The configuration is captured when the background write starts, so
+    // nets added after that aren't saved.
+    @Test
+    public void background() throws IOException {
+        WaveformDataModel dataModel = makeDataModel("0110");
+        TransitionVector values = makeDecodedValues();
+        dataModel.addDecodedNet(makeDecodedNet("a", "mod1.net1", "9600", values));
+        File file = tempFolder.newFile("test.decodecache");
+        CompletableFuture<Void> write = new DecodedNetCache(file, dataModel).writeInBackground();
+        dataModel.addDecodedNet(makeDecodedNet("b", "mod1.net2", "9600", values));
+        write.join();
+
+        WaveformDataModel newDataModel = makeDataModel("0110");
+        NetDataModel restored1 = makeDecodedNet("a", "mod1.net1", "9600", null);
+        NetDataModel restored2 = makeDecodedNet("b", "mod1.net2", "9600", null);
+        new DecodedNetCache(file, newDataModel)
+            .restoreInBackground(Arrays.asList(restored1, restored2)).join();
+        assertSameValues(values, restored1.getTransitionVector());
+        assertTrue(restored2.isDecoding());
+    }
+
+    @Test
+    public void backgroundReadError() throws IOException {
+        File file = tempFolder.newFile("test.decodecache");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(0x57564443);
+            out.writeInt(1);
+            out.writeInt(1); // Truncated after the entry count
+        }
+
+        WaveformDataModel dataModel = makeDataModel("0110");
+        NetDataModel restored = makeDecodedNet("a", "mod1.net1", "9600", null);
+        try {
+            new DecodedNetCache(file, dataModel).restoreInBackground(Arrays.asList(restored))
+                .join();
+            fail("Did not throw exception");
+        } catch (CompletionException exc) {
+            assertTrue(exc.getCause() instanceof UncheckedIOException);
+        }
+
+        assertTrue(restored.isDecoding());
+    }
+
+    @Test
+    public void cacheFileName() {
+        assertEquals(new File("/foo/bar/.waveform.vcd.decodecache"),
+            DecodedNetCache.cacheFileName(new File("/foo/bar/waveform.vcd")));
+        assertEquals(new File(".waveform.vcd.decodecache"),
+            DecodedNetCache.cacheFileName(new File("waveform.vcd")));
+    }
+}
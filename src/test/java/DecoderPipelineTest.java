@@ -0,0 +1,349 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import waveview.decoder.Decoder;
+import waveview.wavedata.BitVector;
+import waveview.wavedata.NetDataModel;
+import waveview.wavedata.Transition;
+import waveview.wavedata.TransitionVector;
+
+public class DecoderPipelineTest {
+    private static final BitVector ZERO = new BitVector("0", 2);
+    private static final BitVector ONE = new BitVector("1", 2);
+    private static final BitVector Z = new BitVector("zzzzzzzz", 2);
+
+    private static BitVector byteValue(int value) {
+        return new BitVector(Integer.toString(value, 16), 16);
+    }
+
+    private static NetDataModel makeNet(String name, TransitionVector vector) {
+        return new NetDataModel(name, name, vector);
+    }
+
+    // Each expected value is "timestamp:hex value"
+    private static void assertTransitions(TransitionVector vector, String... expected) {
+        Iterator<Transition> iterator = vector.findTransition(0);
+        for (String expectedTransition : expected) {
+            Transition transition = iterator.next();
+            assertEquals(expectedTransition, transition.getTimestamp() + ":"
+                + transition.toString(16));
+        }
+
+        assertFalse(iterator.hasNext());
+    }
+
+    private static void assertSameTransitions(TransitionVector expected,
+        TransitionVector actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getTransitionCount(), actual.getTransitionCount());
+        Iterator<Transition> expectedIterator = expected.findTransition(0);
+        Iterator<Transition> actualIterator = actual.findTransition(0);
+        while (expectedIterator.hasNext()) {
+            Transition expectedTransition = expectedIterator.next();
+            Transition actualTransition = actualIterator.next();
+            assertEquals(expectedTransition.getTimestamp(), actualTransition.getTimestamp());
+            assertEquals(expectedTransition.toString(16), actualTransition.toString(16));
+        }
+    }
+
+    // Frames are "ab\n", "c\n", and "\n". The second delimiter is
+    // immediately followed by the next frame, so there is no Z between them.
+    // The last byte isn't part of a complete frame.
+    @Test
+    public void frame() {
+        TransitionVector bytes = TransitionVector.Builder.createBuilder(8)
+            .appendTransition(0, Z)
+            .appendTransition(10, byteValue('a'))
+            .appendTransition(20, Z)
+            .appendTransition(30, byteValue('b'))
+            .appendTransition(40, Z)
+            .appendTransition(50, byteValue('\n'))
+            .appendTransition(60, Z)
+            .appendTransition(70, byteValue('c'))
+            .appendTransition(80, byteValue('\n'))
+            .appendTransition(90, byteValue('\n'))
+            .appendTransition(100, Z)
+            .appendTransition(110, byteValue('d'))
+            .getTransitionVector();
+
+        Decoder decoder = Decoder.createDecoder("Frame");
+        decoder.setParam(0, "0a");
+        decoder.setInput(0, makeNet("bytes", bytes));
+        assertTransitions(decoder.decode(),
+            "0:ZZZZ", "10:0002", "60:ZZZZ", "70:0001", "90:0000", "100:ZZZZ");
+    }
+
+    @Test
+    public void frameInvalidDelimiter() {
+        Decoder decoder = Decoder.createDecoder("Frame");
+        for (String delimiter : new String[] {"100", "foo", "-1"}) {
+            try {
+                decoder.setParam(0, delimiter);
+                fail("Did not throw exception");
+            } catch (IllegalArgumentException exc) {
+                assertEquals("invalid delimiter (must be a hex byte)", exc.getMessage());
+            }
+        }
+    }
+
+    // A read (with an address and data), followed by a write enable (which
+    // has neither).
+    private static void setFlashInputs(Decoder decoder) {
+        TransitionVector bytes = TransitionVector.Builder.createBuilder(8)
+            .appendTransition(0, Z)
+            .appendTransition(10, byteValue(0x03))
+            .appendTransition(20, Z)
+            .appendTransition(30, byteValue(0x12))
+            .appendTransition(40, Z)
+            .appendTransition(50, byteValue(0x34))
+            .appendTransition(60, Z)
+            .appendTransition(70, byteValue(0x56))
+            .appendTransition(80, Z)
+            .appendTransition(85, byteValue(0xff))
+            .appendTransition(90, Z)
+            .appendTransition(110, byteValue(0x06))
+            .appendTransition(120, Z)
+            .getTransitionVector();
+        TransitionVector ss = TransitionVector.Builder.createBuilder(1)
+            .appendTransition(0, ONE)
+            .appendTransition(5, ZERO)
+            .appendTransition(95, ONE)
+            .appendTransition(100, ZERO)
+            .appendTransition(125, ONE)
+            .getTransitionVector();
+        decoder.setInput(0, makeNet("bytes", bytes));
+        decoder.setInput(1, makeNet("ss", ss));
+    }
+
+    @Test
+    public void flashCommand() {
+        Decoder decoder = Decoder.createDecoder("Flash Command");
+        decoder.setParam(0, "command");
+        setFlashInputs(decoder);
+        assertTransitions(decoder.decode(), "0:ZZ", "10:03", "95:ZZ", "110:06", "125:ZZ");
+    }
+
+    @Test
+    public void flashAddress() {
+        Decoder decoder = Decoder.createDecoder("Flash Command");
+        decoder.setParam(0, "address");
+        setFlashInputs(decoder);
+        assertTransitions(decoder.decode(), "0:ZZZZZZ", "10:123456", "95:ZZZZZZ");
+    }
+
+    @Test
+    public void flashInvalidField() {
+        try {
+            Decoder.createDecoder("Flash Command").setParam(0, "foo");
+            fail("Did not throw exception");
+        } catch (IllegalArgumentException exc) {
+            assertEquals("invalid field (must be command or address)", exc.getMessage());
+        }
+    }
+
+    @Test
+    public void flashInvalidInputWidth() {
+        Decoder decoder = Decoder.createDecoder("Flash Command");
+        try {
+            decoder.setInput(0, makeNet("mod.bytes",
+                TransitionVector.Builder.createBuilder(7).getTransitionVector()));
+            fail("Did not throw exception");
+        } catch (IllegalArgumentException exc) {
+            assertEquals("Invalid net mod.bytes: must be 8 bits wide", exc.getMessage());
+        }
+    }
+
+    // The pipeline has the inputs of the first stage and the parameters of
+    // all of them.
+    @Test
+    public void pipelineNames() {
+        Decoder decoder = Decoder.createDecoder("SPI > Flash Command");
+        assertArrayEquals(new String[] {"ss", "sclk", "data"}, decoder.getInputNames());
+        assertArrayEquals(new String[] {"SPI mode (0-3)", "Field (command or address)"},
+            decoder.getParamNames());
+        decoder = Decoder.createDecoder("UART > Frame");
+        assertArrayEquals(new String[] {"data"}, decoder.getInputNames());
+        assertArrayEquals(new String[] {"Baud rate", "Delimiter byte (hex)"},
+            decoder.getParamNames());
+        try {
+            decoder.setParam(1, "xyz");
+            fail("Did not throw exception");
+        } catch (IllegalArgumentException exc) {
+            assertEquals("invalid delimiter (must be a hex byte)", exc.getMessage());
+        }
+    }
+
+    // Random UART capture at 115200 baud with a nanosecond timescale. Bytes
+    // are sometimes back to back.
+    private static TransitionVector makeUartCapture(Random random, List<Integer> frameLengths) {
+        final long bitTime = 8681;
+        TransitionVector.Builder builder = TransitionVector.Builder.createBuilder(1)
+            .appendTransition(0, ONE);
+        long time = 100000;
+        int frameLength = 0;
+        for (int byteIndex = 0; byteIndex < 300; byteIndex++) {
+            int value = random.nextInt(4) == 0 ? '\n' : 'a' + random.nextInt(26);
+            if (value == '\n') {
+                frameLengths.add(frameLength);
+                frameLength = 0;
+            } else {
+                frameLength++;
+            }
+
+            // Start bit, data bits (lsb first), stop bit
+            int frame = (value << 1) | 0x200;
+            for (int bit = 0; bit < 10; bit++) {
+                builder.appendTransition(time, ((frame >> bit) & 1) != 0 ? ONE : ZERO);
+                time += bitTime;
+            }
+
+            if (random.nextBoolean()) {
+                time += random.nextInt(100000);
+            }
+        }
+
+        return builder.getTransitionVector();
+    }
+
+    // Streaming the stages gives the same result as decoding the UART to
+    // a net and decoding frames from that.
+    @Test
+    public void uartFrames() {
+        List<Integer> frameLengths = new ArrayList<>();
+        NetDataModel data = makeNet("data", makeUartCapture(new Random(1234), frameLengths));
+
+        Decoder pipeline = Decoder.createDecoder("UART > Frame");
+        pipeline.setTimescale(-9);
+        pipeline.setParam(0, "115200");
+        pipeline.setParam(1, "a");
+        pipeline.setInput(0, data);
+        TransitionVector pipelineResult = pipeline.decode();
+
+        Decoder uart = Decoder.createDecoder("UART");
+        uart.setTimescale(-9);
+        uart.setParam(0, "115200");
+        uart.setInput(0, data);
+        Decoder frame = Decoder.createDecoder("Frame");
+        frame.setParam(0, "a");
+        frame.setInput(0, makeNet("bytes", uart.decode()));
+        assertSameTransitions(frame.decode(), pipelineResult);
+
+        List<Integer> decodedLengths = new ArrayList<>();
+        Iterator<Transition> iterator = pipelineResult.findTransition(0);
+        while (iterator.hasNext()) {
+            Transition transition = iterator.next();
+            if (!transition.isZ()) {
+                decodedLengths.add(transition.intValue());
+            }
+        }
+
+        assertEquals(frameLengths, decodedLengths);
+    }
+
+    // Random SPI capture in mode 0, with read, program, write enable, and
+    // read ID commands. Data changes on the falling edge of the clock and is
+    // sampled on the rising edge.
+    private static TransitionVector[] makeSpiCapture(Random random, List<Integer> opcodes) {
+        final int[] commands = {0x03, 0x02, 0x06, 0x9f};
+        TransitionVector.Builder ss = TransitionVector.Builder.createBuilder(1)
+            .appendTransition(0, ONE);
+        TransitionVector.Builder sclk = TransitionVector.Builder.createBuilder(1)
+            .appendTransition(0, ZERO);
+        TransitionVector.Builder data = TransitionVector.Builder.createBuilder(1)
+            .appendTransition(0, ZERO);
+        long time = 100;
+        for (int commandIndex = 0; commandIndex < 100; commandIndex++) {
+            int opcode = commands[random.nextInt(commands.length)];
+            opcodes.add(opcode);
+            List<Integer> bytes = new ArrayList<>();
+            bytes.add(opcode);
+            int extraBytes = (opcode == 0x03 || opcode == 0x02 ? 3 : 0) + random.nextInt(4);
+            for (int i = 0; i < extraBytes; i++) {
+                bytes.add(random.nextInt(256));
+            }
+
+            ss.appendTransition(time, ZERO);
+            time += 10;
+            for (int value : bytes) {
+                for (int bit = 7; bit >= 0; bit--) {
+                    data.appendTransition(time, ((value >> bit) & 1) != 0 ? ONE : ZERO);
+                    sclk.appendTransition(time + 5, ONE);
+                    sclk.appendTransition(time + 10, ZERO);
+                    time += 10;
+                }
+            }
+
+            ss.appendTransition(time + 5, ONE);
+            time += 20 + random.nextInt(50);
+        }
+
+        return new TransitionVector[] {ss.getTransitionVector(), sclk.getTransitionVector(),
+            data.getTransitionVector()};
+    }
+
+    @Test
+    public void spiFlash() {
+        List<Integer> opcodes = new ArrayList<>();
+        TransitionVector[] capture = makeSpiCapture(new Random(5678), opcodes);
+        NetDataModel ss = makeNet("ss", capture[0]);
+
+        Decoder spi = Decoder.createDecoder("SPI");
+        spi.setParam(0, "0");
+        for (int i = 0; i < capture.length; i++) {
+            spi.setInput(i, makeNet("in", capture[i]));
+        }
+
+        NetDataModel spiBytes = makeNet("bytes", spi.decode());
+        for (String field : new String[] {"command", "address"}) {
+            Decoder pipeline = Decoder.createDecoder("SPI > Flash Command");
+            pipeline.setParam(0, "0");
+            pipeline.setParam(1, field);
+            for (int i = 0; i < capture.length; i++) {
+                pipeline.setInput(i, makeNet("in", capture[i]));
+            }
+
+            Decoder flash = Decoder.createDecoder("Flash Command");
+            flash.setParam(0, field);
+            flash.setInput(0, spiBytes);
+            flash.setInput(1, ss);
+            TransitionVector pipelineResult = pipeline.decode();
+            assertSameTransitions(flash.decode(), pipelineResult);
+
+            if (field.equals("command")) {
+                List<Integer> decodedOpcodes = new ArrayList<>();
+                Iterator<Transition> iterator = pipelineResult.findTransition(0);
+                while (iterator.hasNext()) {
+                    Transition transition = iterator.next();
+                    if (!transition.isZ()) {
+                        decodedOpcodes.add(transition.intValue());
+                    }
+                }
+
+                assertEquals(opcodes, decodedOpcodes);
+            }
+        }
+    }
+}
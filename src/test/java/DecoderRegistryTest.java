@@ -0,0 +1,129 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import waveview.decoder.Decoder;
+import waveview.decoder.DecoderProvider;
+import waveview.decoder.SpiDecoder;
+import waveview.wavedata.NetDataModel;
+import waveview.wavedata.TransitionVector;
+
+// The providers in this file are listed in
+// src/test/resources/META-INF/services/waveview.decoder.DecoderProvider
+public class DecoderRegistryTest {
+    public static class PluginDecoder extends Decoder {
+        @Override
+        public String[] getInputNames() {
+            return new String[] {"in"};
+        }
+
+        @Override
+        public void setInput(int index, NetDataModel data) {}
+
+        @Override
+        public TransitionVector decode() {
+            return null;
+        }
+
+        @Override
+        public String[] getParamNames() {
+            return new String[0];
+        }
+
+        @Override
+        public void setParam(int param, String value) {}
+    }
+
+    public static class PluginProvider implements DecoderProvider {
+        @Override
+        public String getName() {
+            return "Plugin";
+        }
+
+        @Override
+        public Decoder createDecoder() {
+            return new PluginDecoder();
+        }
+    }
+
+    // Tries to replace a built in decoder, which isn't allowed.
+    public static class DuplicateProvider implements DecoderProvider {
+        @Override
+        public String getName() {
+            return "SPI";
+        }
+
+        @Override
+        public Decoder createDecoder() {
+            return new PluginDecoder();
+        }
+    }
+
+    // Throws from its own code while it is being registered.
+    public static class BrokenProvider implements DecoderProvider {
+        @Override
+        public String getName() {
+            throw new IllegalStateException("broken plugin");
+        }
+
+        @Override
+        public Decoder createDecoder() {
+            return new PluginDecoder();
+        }
+    }
+
+    @Test
+    public void getDecoderList() {
+        assertArrayEquals(new String[] {"AHB", "AXI", "Flash Command", "Frame", "I2C", "Plugin",
+            "SPI", "SPI > Flash Command", "UART", "UART > Frame", "Wishbone"},
+            Decoder.getDecoderList());
+    }
+
+    @Test
+    public void createPlugin() {
+        assertTrue(Decoder.isDecoderInstalled("Plugin"));
+        assertTrue(Decoder.createDecoder("Plugin") instanceof PluginDecoder);
+    }
+
+    // The other decoders still load
+    @Test
+    public void brokenPluginSkipped() {
+        assertTrue(Decoder.isDecoderInstalled("SPI"));
+        assertTrue(Decoder.isDecoderInstalled("Plugin"));
+    }
+
+    @Test
+    public void duplicateIgnored() {
+        assertTrue(Decoder.createDecoder("SPI") instanceof SpiDecoder);
+    }
+
+    @Test
+    public void unknownDecoder() {
+        assertFalse(Decoder.isDecoderInstalled("Foo"));
+        try {
+            Decoder.createDecoder("Foo");
+            fail("Did not throw exception");
+        } catch (IllegalArgumentException exc) {
+            assertEquals("unknown decoder name Foo", exc.getMessage());
+        }
+    }
+}
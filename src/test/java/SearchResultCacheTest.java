@@ -0,0 +1,102 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import waveview.search.MatchList;
+import waveview.search.Search;
+import waveview.search.SearchFormatException;
+import waveview.search.SearchResultCache;
+import waveview.wavedata.BitVector;
+import waveview.wavedata.WaveformBuilder;
+import waveview.wavedata.WaveformDataModel;
+
+public class SearchResultCacheTest {
+    // Each net toggles every 10 time units
+    private WaveformDataModel makeModel() {
+        WaveformDataModel waveformDataModel = new WaveformDataModel();
+        WaveformBuilder builder = waveformDataModel.startBuilding()
+            .setTimescale(-9)
+            .enterScope("m")
+            .newNet(0, "a", 1)
+            .newNet(1, "b", 1)
+            .newNet(2, "c", 1)
+            .exitScope();
+        for (int i = 0; i < 100; i++) {
+            for (int net = 0; net < 3; net++) {
+                builder.appendTransition(net, i * 10, new BitVector(i % 2 == 0 ? "0" : "1", 2));
+            }
+        }
+
+        builder.loadFinished();
+        return waveformDataModel;
+    }
+
+    @Test
+    public void normalizedKey() throws SearchFormatException {
+        WaveformDataModel model = makeModel();
+        SearchResultCache cache = new SearchResultCache(1024 * 1024);
+        Search search = new Search(model, "m.a == 1");
+        MatchList matches = search.getAllMatches(null);
+        cache.put(search, matches);
+
+        // Whitespace and parentheses differ, but the parsed expression is
+        // the same.
+        assertSame(matches, cache.get(new Search(model, "(m.a==1)")));
+        assertNull(cache.get(new Search(model, "m.b == 1")));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws SearchFormatException {
+        WaveformDataModel model = makeModel();
+
+        // Each of these has 50 matches, 800 bytes.
+        Search searchA = new Search(model, "m.a");
+        Search searchB = new Search(model, "m.b");
+        Search searchC = new Search(model, "m.c");
+        SearchResultCache cache = new SearchResultCache(2000);
+        cache.put(searchA, searchA.getAllMatches(null));
+        cache.put(searchB, searchB.getAllMatches(null));
+        assertEquals(50, cache.get(searchA).size());
+
+        // B is now the least recently used
+        cache.put(searchC, searchC.getAllMatches(null));
+        assertNotNull(cache.get(searchA));
+        assertNull(cache.get(searchB));
+        assertNotNull(cache.get(searchC));
+    }
+
+    @Test
+    public void tooLarge() throws SearchFormatException {
+        Search search = new Search(makeModel(), "m.a");
+        SearchResultCache cache = new SearchResultCache(100);
+        cache.put(search, search.getAllMatches(null));
+        assertNull(cache.get(search));
+    }
+
+    @Test
+    public void clear() throws SearchFormatException {
+        Search search = new Search(makeModel(), "m.a");
+        SearchResultCache cache = new SearchResultCache(1024 * 1024);
+        cache.put(search, search.getAllMatches(null));
+        cache.clear();
+        assertNull(cache.get(search));
+    }
+}
@@ -20,11 +20,14 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import org.junit.Test;
+import waveview.search.MatchList;
 import waveview.search.Search;
 import waveview.search.SearchFormatException;
 import waveview.wavedata.BitValue;
 import waveview.wavedata.BitVector;
+import waveview.wavedata.LazyTransitionVector;
 import waveview.wavedata.NetDataModel;
+import waveview.wavedata.TransitionVector;
 import waveview.wavedata.WaveformBuilder;
 import waveview.wavedata.WaveformDataModel;
 
@@ -941,7 +944,8 @@ public class SearchTest {
         assertEquals("(eq m.a m.b)", new Search(waveformDataModel, "m.a == m.b").toString());
         assertEquals("(eq 00000111 m.b)", new Search(waveformDataModel, "7 == m.b").toString());
         assertEquals("(eq m.a 00000101)", new Search(waveformDataModel, "m.a == 5").toString());
-        assertEquals("(eq 00001000 00000101)", new Search(waveformDataModel, "8 == 5").toString());
+        // Comparing two constants is folded by the optimizer
+        assertEquals("false", new Search(waveformDataModel, "8 == 5").toString());
 
         // Use all comparison operators.
         assertEquals(
@@ -1049,6 +1053,65 @@ public class SearchTest {
         String searchString = Search.generateFromValuesAt(nets, 1);
 
         assertEquals("mod1.a == 'h1 && mod1.b == 'h4", searchString);
+
+        // Nets that are still being decoded are skipped
+        NetDataModel decoding = new NetDataModel("dec", "mod1.dec", "SPI",
+            new String[] {"mod1.a"}, new String[0], null);
+        final NetDataModel[] withDecoding = {decoding, waveformDataModel.getNetDataModel(1)};
+        assertEquals("mod1.b == 'h4", Search.generateFromValuesAt(withDecoding, 1));
+    }
+
+    // Searching a lazily decoded net decodes it once, rather than
+    // requesting a range for every step.
+    @Test
+    public void lazyNet() throws SearchFormatException {
+        WaveformDataModel waveformDataModel = new WaveformDataModel();
+        waveformDataModel.startBuilding()
+            .setTimescale(-9)
+            .enterScope("mod1")
+            .newNet(0, "a", 1)
+            .exitScope()
+            .appendTransition(0, 0, new BitVector("0", 2))
+            .loadFinished();
+
+        TransitionVector.Builder builder = TransitionVector.Builder.createBuilder(8);
+        for (int i = 0; i < 10; i++) {
+            builder.appendTransition(i * 10, new BitVector(Integer.toString(i), 10));
+        }
+
+        TransitionVector values = builder.getTransitionVector();
+        int[] getAllCount = new int[1];
+        NetDataModel lazyNet = new NetDataModel("dec", "mod1.dec", "UART",
+            new String[] {"mod1.a"}, new String[0], null);
+        lazyNet.setLazyTransitionVector(new LazyTransitionVector() {
+            @Override
+            public int getWidth() {
+                return 8;
+            }
+
+            @Override
+            public TransitionVector getRange(long start, long end) {
+                throw new AssertionError("getRange called");
+            }
+
+            @Override
+            public TransitionVector getAll() {
+                getAllCount[0]++;
+                return values;
+            }
+        });
+        waveformDataModel.addDecodedNet(lazyNet);
+
+        Search search = new Search(waveformDataModel, "mod1.dec > 'h3 && mod1.dec != 'h7");
+        assertEquals(40, search.getNextMatch(0));
+        assertEquals(69, search.getPreviousMatch(95));
+        MatchList matches = search.getAllMatches(null);
+        assertEquals(2, matches.size());
+        assertEquals(40, matches.getStart(0));
+        assertEquals(69, matches.getEnd(0));
+        assertEquals(80, matches.getStart(1));
+        assertEquals(Long.MAX_VALUE, matches.getEnd(1));
+        assertEquals(1, getAllCount[0]);
     }
 
     @Test
@@ -1219,5 +1282,470 @@ public class SearchTest {
         }
     }
 
+    @Test
+    public void allMatches() throws SearchFormatException {
+        // clk is high 10-14, 20-
+        Search search = new Search(makeSingleBitModel(), "mod1.clk");
+        MatchList matches = search.getAllMatches(null);
+        assertEquals(2, matches.size());
+        assertEquals(10, matches.getStart(0));
+        assertEquals(14, matches.getEnd(0));
+        assertEquals(20, matches.getStart(1));
+        assertEquals(Long.MAX_VALUE, matches.getEnd(1));
+    }
+
+    @Test
+    public void allMatchesNone() throws SearchFormatException {
+        Search search = new Search(makeSingleBitModel(), "mod1.clk > 1");
+        assertEquals(0, search.getAllMatches(null).size());
+    }
+
+    WaveformDataModel makeLongClockModel() {
+        WaveformDataModel waveformDataModel = new WaveformDataModel();
+        WaveformBuilder builder = waveformDataModel.startBuilding()
+            .setTimescale(-9)
+            .enterScope("mod1")
+            .newNet(0, "clk", 1)
+            .exitScope();
+        for (int i = 0; i < 10000; i++) {
+            builder.appendTransition(0, i * 10, new BitVector("0", 2));
+            builder.appendTransition(0, i * 10 + 5, new BitVector("1", 2));
+        }
+
+        builder.loadFinished();
+        return waveformDataModel;
+    }
+
+    @Test
+    public void searchProgress() throws SearchFormatException {
+        Search search = new Search(makeLongClockModel(), "mod1.clk");
+        long[] lastTimestamp = {-1};
+        MatchList matches = search.getAllMatches(timestamp -> {
+            assertTrue(timestamp > lastTimestamp[0]);
+            lastTimestamp[0] = timestamp;
+            return true;
+        });
+
+        assertTrue(lastTimestamp[0] > 0);
+        assertEquals(10000, matches.size());
+        assertEquals(99995, matches.getStart(9999));
+        assertEquals(Long.MAX_VALUE, matches.getEnd(9999));
+    }
+
+    @Test
+    public void searchCancelled() throws SearchFormatException {
+        // Search for something that doesn't exist so it scans to the end
+        Search search = new Search(makeLongClockModel(), "mod1.clk > 1");
+        assertEquals(-1, search.getNextMatch(0, timestamp -> false));
+        assertEquals(-1, search.getPreviousMatch(100000, timestamp -> false));
+        assertEquals(null, search.getAllMatches(timestamp -> false));
+    }
+
+    @Test
+    public void posedge() throws SearchFormatException {
+        // clk rises at 10 and 20. The first transition at 5 isn't an edge.
+        Search search = new Search(makeSingleBitModel(), "posedge(mod1.clk)");
+        assertEquals(10, search.getNextMatch(0));
+        assertEquals(20, search.getNextMatch(10));
+        assertEquals(-1, search.getNextMatch(20));
+        assertEquals(20, search.getPreviousMatch(25));
+        assertEquals(10, search.getPreviousMatch(20));
+        assertEquals(-1, search.getPreviousMatch(10));
+
+        MatchList matches = search.getAllMatches(null);
+        assertEquals(2, matches.size());
+        assertEquals(10, matches.getStart(0));
+        assertEquals(10, matches.getEnd(0));
+        assertEquals(20, matches.getStart(1));
+        assertEquals(20, matches.getEnd(1));
+    }
+
+    @Test
+    public void negedge() throws SearchFormatException {
+        Search search = new Search(makeSingleBitModel(), "negedge(mod1.clk)");
+        assertEquals(15, search.getNextMatch(0));
+        assertEquals(-1, search.getNextMatch(15));
+        assertEquals(15, search.getPreviousMatch(30));
+    }
+
+    @Test
+    public void changed() throws SearchFormatException {
+        WaveformDataModel waveformDataModel = new WaveformDataModel();
+        waveformDataModel.startBuilding()
+            .setTimescale(-9)
+            .enterScope("m")
+            .newNet(0, "a", 4)
+            .exitScope()
+            .appendTransition(0, 0, new BitVector("0000", 2))
+            .appendTransition(0, 10, new BitVector("0001", 2))
+            .appendTransition(0, 20, new BitVector("0001", 2))
+            .appendTransition(0, 30, new BitVector("0011", 2))
+            .loadFinished();
+
+        // The transition at 20 doesn't change the value.
+        Search search = new Search(waveformDataModel, "changed(m.a)");
+        assertEquals(10, search.getNextMatch(0));
+        assertEquals(30, search.getNextMatch(10));
+        assertEquals(10, search.getPreviousMatch(30));
+
+        search = new Search(waveformDataModel, "changed(m.a[1])");
+        assertEquals(30, search.getNextMatch(0));
+    }
+
+    @Test
+    public void posedgeMultiBit() {
+        WaveformDataModel waveformDataModel = new WaveformDataModel();
+        waveformDataModel.startBuilding()
+            .setTimescale(-9)
+            .enterScope("m")
+            .newNet(0, "a", 4)
+            .exitScope()
+            .loadFinished();
+
+        try {
+            new Search(waveformDataModel, "posedge(m.a)");
+            fail("Did not throw exception");
+        } catch (SearchFormatException exc) {
+            // Expected
+            assertEquals("posedge requires a single bit", exc.getMessage());
+            assertEquals(0, exc.getStartOffset());
+            assertEquals(11, exc.getEndOffset());
+        }
+    }
+
+    @Test
+    public void temporalToString() throws SearchFormatException {
+        WaveformDataModel waveformDataModel = new WaveformDataModel();
+        waveformDataModel.startBuilding()
+            .setTimescale(-12)
+            .enterScope("m")
+            .newNet(0, "a", 1)
+            .newNet(1, "b", 1)
+            .newNet(2, "clk", 1)
+            .newNet(3, "e", 4)
+            .exitScope();
+
+        assertEquals("(posedge m.clk)",
+            new Search(waveformDataModel, "posedge(m.clk)").toString());
+        assertEquals("(negedge m.e[2:2])",
+            new Search(waveformDataModel, "negedge(m.e[2])").toString());
+        assertEquals("(and (changed m.e) (ne m.a 0))",
+            new Search(waveformDataModel, "changed(m.e) && m.a").toString());
+        assertEquals("(and (ne m.a 0) (within (ne m.b 0) 10))",
+            new Search(waveformDataModel, "m.a within 10 of m.b").toString());
+        assertEquals("(and (ne m.a 0) (within (ne m.b 0) 3000))",
+            new Search(waveformDataModel, "m.a within 3ns of m.b").toString());
+        assertEquals("(held (ne m.a 0) 2)",
+            new Search(waveformDataModel, "m.a held for 2").toString());
+        assertEquals("(held (ne m.a 0) 4 cycles m.clk)",
+            new Search(waveformDataModel, "m.a held for 4 cycles of m.clk").toString());
+
+        // Temporal operators bind more tightly than &&
+        assertEquals("(and (ne m.a 0) (held (ne m.b 0) 7))",
+            new Search(waveformDataModel, "m.a && m.b held for 7").toString());
+    }
+
+    WaveformDataModel makePulseModel() {
+        WaveformDataModel waveformDataModel = new WaveformDataModel();
+        waveformDataModel.startBuilding()
+            .setTimescale(-9)
+            .enterScope("m")
+            .newNet(0, "a", 1)
+            .newNet(1, "b", 1)
+            .exitScope()
+            .appendTransition(0, 0, new BitVector("0", 2))
+            .appendTransition(0, 100, new BitVector("1", 2))
+            .appendTransition(0, 150, new BitVector("0", 2))
+            .appendTransition(1, 0, new BitVector("0", 2))
+            .appendTransition(1, 155, new BitVector("1", 2))
+            .appendTransition(1, 160, new BitVector("0", 2))
+            .loadFinished();
+
+        return waveformDataModel;
+    }
+
+    @Test
+    public void within() throws SearchFormatException {
+        // a is high 100-149, b is high 155-159
+        Search search = new Search(makePulseModel(), "m.a within 10ns of m.b");
+        assertEquals(145, search.getNextMatch(0));
+        assertEquals(149, search.getPreviousMatch(200));
+
+        MatchList matches = search.getAllMatches(null);
+        assertEquals(1, matches.size());
+        assertEquals(145, matches.getStart(0));
+        assertEquals(149, matches.getEnd(0));
+
+        search = new Search(makePulseModel(), "m.a within 5 of m.b");
+        assertEquals(-1, search.getNextMatch(0));
+    }
+
+    @Test
+    public void invalidTime() throws SearchFormatException {
+        // Smaller than the timescale
+        try {
+            new Search(makePulseModel(), "m.a within 10ps of m.b");
+            fail("Did not throw exception");
+        } catch (SearchFormatException exc) {
+            assertEquals("Time is not a multiple of the timescale", exc.getMessage());
+            assertEquals(11, exc.getStartOffset());
+            assertEquals(14, exc.getEndOffset());
+        }
+
+        try {
+            new Search(makePulseModel(), "m.a held for 1500ps");
+            fail("Did not throw exception");
+        } catch (SearchFormatException exc) {
+            assertEquals("Time is not a multiple of the timescale", exc.getMessage());
+        }
+
+        // Would have been truncated to 32 bits
+        assertEquals("(held (ne m.a 0) 4294967296)",
+            new Search(makePulseModel(), "m.a held for 'h100000000").toString());
+        assertEquals("(held (ne m.a 0) 5000000000)",
+            new Search(makePulseModel(), "m.a held for 5s").toString());
+
+        try {
+            new Search(makePulseModel(), "m.a held for 'h10000000000000000");
+            fail("Did not throw exception");
+        } catch (SearchFormatException exc) {
+            assertEquals("Invalid literal: value out of long range", exc.getMessage());
+        }
+
+        try {
+            new Search(makePulseModel(), "m.a held for 'h7fffffffffffffff ms");
+            fail("Did not throw exception");
+        } catch (SearchFormatException exc) {
+            assertEquals("Time is too large", exc.getMessage());
+        }
+
+        try {
+            new Search(makePulseModel(), "m.a held for 'hx cycles of m.b");
+            fail("Did not throw exception");
+        } catch (SearchFormatException exc) {
+            assertEquals("Invalid literal: value contains X or Z", exc.getMessage());
+        }
+    }
+
+    @Test
+    public void heldForTime() throws SearchFormatException {
+        Search search = new Search(makePulseModel(), "m.a held for 20");
+        assertEquals(120, search.getNextMatch(0));
+        assertEquals(149, search.getPreviousMatch(200));
+
+        MatchList matches = search.getAllMatches(null);
+        assertEquals(1, matches.size());
+        assertEquals(120, matches.getStart(0));
+        assertEquals(149, matches.getEnd(0));
+
+        search = new Search(makePulseModel(), "m.a held for 60ns");
+        assertEquals(-1, search.getNextMatch(0));
+    }
+
+    // The child changes many times in each region where it is true.
+    @Test
+    public void heldLongRegion() throws SearchFormatException {
+        WaveformDataModel waveformDataModel = new WaveformDataModel();
+        WaveformBuilder builder = waveformDataModel.startBuilding()
+            .setTimescale(-9)
+            .enterScope("m")
+            .newNet(0, "a", 1)
+            .newNet(1, "b", 1)
+            .exitScope();
+        builder.appendTransition(0, 0, new BitVector("0", 2))
+            .appendTransition(0, 100, new BitVector("1", 2))
+            .appendTransition(0, 500, new BitVector("0", 2))
+            .appendTransition(0, 600, new BitVector("1", 2))
+            .appendTransition(0, 650, new BitVector("0", 2));
+        for (int i = 0; i < 100; i++) {
+            builder.appendTransition(1, i * 10, new BitVector(i % 2 == 0 ? "0" : "1", 2));
+        }
+
+        builder.loadFinished();
+
+        Search search = new Search(waveformDataModel, "(m.a && (m.b || m.a)) held for 300");
+        MatchList matches = search.getAllMatches(null);
+        assertEquals(1, matches.size());
+        assertEquals(400, matches.getStart(0));
+        assertEquals(499, matches.getEnd(0));
+        assertEquals(400, search.getNextMatch(0));
+        assertEquals(-1, search.getNextMatch(500));
+        assertEquals(499, search.getPreviousMatch(900));
+
+        search = new Search(waveformDataModel, "(m.a && (m.b || m.a)) held for 30");
+        matches = search.getAllMatches(null);
+        assertEquals(2, matches.size());
+        assertEquals(130, matches.getStart(0));
+        assertEquals(499, matches.getEnd(0));
+        assertEquals(630, matches.getStart(1));
+        assertEquals(649, matches.getEnd(1));
+        assertEquals(649, search.getPreviousMatch(900));
+        assertEquals(499, search.getPreviousMatch(630));
+    }
+
+    @Test
+    public void heldForCycles() throws SearchFormatException {
+        WaveformDataModel waveformDataModel = new WaveformDataModel();
+        WaveformBuilder builder = waveformDataModel.startBuilding()
+            .setTimescale(-9)
+            .enterScope("m")
+            .newNet(0, "clk", 1)
+            .newNet(1, "a", 1)
+            .exitScope();
+        for (int i = 0; i < 10; i++) {
+            builder.appendTransition(0, i * 10, new BitVector("0", 2));
+            builder.appendTransition(0, i * 10 + 5, new BitVector("1", 2));
+        }
+
+        builder.appendTransition(1, 0, new BitVector("0", 2))
+            .appendTransition(1, 32, new BitVector("1", 2))
+            .appendTransition(1, 80, new BitVector("0", 2))
+            .loadFinished();
+
+        // Rising edges while a is high are at 35, 45, and 55.
+        Search search = new Search(waveformDataModel, "m.a held for 3 cycles of m.clk");
+        MatchList matches = search.getAllMatches(null);
+        assertEquals(1, matches.size());
+        assertEquals(55, matches.getStart(0));
+        assertEquals(79, matches.getEnd(0));
+
+        search = new Search(waveformDataModel, "posedge(m.clk) && m.a");
+        assertEquals(5, search.getAllMatches(null).size());
+        assertEquals(35, search.getNextMatch(0));
+        assertEquals(75, search.getPreviousMatch(100));
+    }
+
+    @Test
+    public void indexedEquality() throws SearchFormatException {
+        WaveformDataModel waveformDataModel = new WaveformDataModel();
+        WaveformBuilder builder = waveformDataModel.startBuilding()
+            .setTimescale(-9)
+            .enterScope("m")
+            .newNet(0, "addr", 64)
+            .exitScope();
+        for (int i = 0; i < 10000; i++) {
+            builder.appendTransition(0, i * 10, new BitVector(Integer.toString(i % 1000), 10));
+        }
+
+        builder.loadFinished();
+
+        Search search = new Search(waveformDataModel, "m.addr == 'd123");
+        assertEquals(1230, search.getNextMatch(0));
+        assertEquals(11230, search.getNextMatch(1230));
+        assertEquals(81239, search.getPreviousMatch(91230));
+
+        MatchList matches = search.getAllMatches(null);
+        assertEquals(10, matches.size());
+        assertEquals(91230, matches.getStart(9));
+        assertEquals(91239, matches.getEnd(9));
+
+        // Constant on the left side
+        search = new Search(waveformDataModel, "'d999 == m.addr");
+        assertEquals(9990, search.getNextMatch(0));
+        assertEquals(-1, search.getNextMatch(99990));
+    }
+
+    @Test
+    public void indexedEqualityWildcard() throws SearchFormatException {
+        WaveformDataModel waveformDataModel = new WaveformDataModel();
+        waveformDataModel.startBuilding()
+            .setTimescale(-9)
+            .enterScope("m")
+            .newNet(0, "a", 8)
+            .exitScope()
+            .appendTransition(0, 0, new BitVector("00000000", 2))
+            .appendTransition(0, 10, new BitVector("000000x1", 2))
+            .appendTransition(0, 20, new BitVector("00000000", 2))
+            .appendTransition(0, 30, new BitVector("00000011", 2))
+            .loadFinished();
+
+        Search search = new Search(waveformDataModel, "m.a == 3");
+        assertEquals(10, search.getNextMatch(0));
+        assertEquals(30, search.getNextMatch(10));
+    }
+
+    // Binary search through the cached matches should give the same
+    // results as scanning.
+    @Test
+    public void matchListFind() throws SearchFormatException {
+        Search search = new Search(makeFourBitModel(), "m.a && m.c");
+        MatchList matches = search.getAllMatches(null);
+        for (long timestamp = 0; timestamp < 20; timestamp++) {
+            assertEquals(search.getNextMatch(timestamp), matches.findNext(timestamp));
+            assertEquals(search.getPreviousMatch(timestamp), matches.findPrevious(timestamp));
+        }
+    }
+
+    @Test
+    public void optimizeToString() throws SearchFormatException {
+        WaveformDataModel waveformDataModel = new WaveformDataModel();
+        waveformDataModel.startBuilding()
+            .setTimescale(-9)
+            .enterScope("m")
+            .newNet(0, "a", 1)
+            .newNet(1, "b", 1)
+            .newNet(2, "c", 1)
+            .exitScope();
+
+        // Constant folding
+        assertEquals("true", new Search(waveformDataModel, "3 == 3").toString());
+        assertEquals("(ne m.a 0)", new Search(waveformDataModel, "m.a && 1 == 1").toString());
+        assertEquals("false", new Search(waveformDataModel, "m.a && 1 == 2").toString());
+        assertEquals("true", new Search(waveformDataModel, "m.a || 2 == 2").toString());
+        assertEquals("(ne m.a 0)", new Search(waveformDataModel, "1 == 2 || m.a").toString());
+        assertEquals("(or (ne m.a 0) (ne m.b 0))",
+            new Search(waveformDataModel, "m.a || (1 == 1 && 2 == 3) || m.b").toString());
+
+        // Duplicates removed
+        assertEquals("(and (ne m.a 0) (ne m.b 0))",
+            new Search(waveformDataModel, "m.a && m.b && m.a").toString());
+
+        // Expensive expressions moved to the end
+        assertEquals("(and (and (ne m.a 0) (ne m.c 0)) (within (ne m.b 0) 5))",
+            new Search(waveformDataModel, "m.a within 5 of m.b && m.c").toString());
+        assertEquals("(and (ne m.c 0) (eq m.a m.b))",
+            new Search(waveformDataModel, "m.a == m.b && m.c").toString());
+    }
+
+    // Short circuiting and sharing nodes shouldn't change the results
+    @Test
+    public void optimizedSearch() throws SearchFormatException {
+        WaveformDataModel waveformDataModel = makeFourBitModel();
+        for (String expr : new String[] {"m.a && m.b", "m.a || m.b", "m.a == m.b && m.c",
+                 "m.d && m.a != m.d", "m.a && m.b || m.c && m.a"}) {
+            Search search = new Search(waveformDataModel, expr);
+            for (long timestamp = 0; timestamp < 16; timestamp++) {
+                int a = (int) (timestamp >> 3) & 1;
+                int b = (int) (timestamp >> 2) & 1;
+                int c = (int) (timestamp >> 1) & 1;
+                int d = (int) timestamp & 1;
+                boolean expected;
+                switch (expr) {
+                    case "m.a && m.b":
+                        expected = a == 1 && b == 1;
+                        break;
+                    case "m.a || m.b":
+                        expected = a == 1 || b == 1;
+                        break;
+                    case "m.a == m.b && m.c":
+                        expected = a == b && c == 1;
+                        break;
+                    case "m.d && m.a != m.d":
+                        expected = d == 1 && a != d;
+                        break;
+                    default:
+                        expected = a == 1 && b == 1 || c == 1 && a == 1;
+                        break;
+                }
+
+                assertEquals(expr + " @" + timestamp, expected, search.matches(timestamp));
+            }
 
+            MatchList matches = search.getAllMatches(null);
+            for (long timestamp = 0; timestamp < 16; timestamp++) {
+                assertEquals(matches.findNext(timestamp), search.getNextMatch(timestamp));
+                assertEquals(matches.findPrevious(timestamp), search.getPreviousMatch(timestamp));
+            }
+        }
+    }
 }
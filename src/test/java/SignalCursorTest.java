@@ -176,4 +176,46 @@ public class SignalCursorTest {
         assertEquals(BitValue.ZERO, cursor.getValueAt(17));
         assertEquals(BitValue.ONE, cursor.getValueAt(7));
     }
+
+    // Long forward jumps gallop rather than stepping through each
+    // transition. Check that lands on the right segment.
+    @Test
+    public void jumpForward() {
+        TransitionVector.Builder builder = TransitionVector.Builder.createBuilder(1);
+        for (int i = 0; i < 10000; i++) {
+            builder.appendTransition(i * 10, new BitVector(Integer.toString(i & 1), 2));
+        }
+
+        SignalCursor cursor = new SignalCursor(builder.getTransitionVector());
+        for (long timestamp = 0; timestamp < 100000; timestamp += 1237) {
+            assertEquals((timestamp / 10) % 2 == 0 ? BitValue.ZERO : BitValue.ONE,
+                cursor.getValueAt(timestamp));
+        }
+
+        assertEquals(99990, cursor.nextEdge(99985, BitValue.ONE));
+        assertEquals(-1, cursor.nextEdge(99990, BitValue.ONE));
+        assertEquals(BitValue.ONE, cursor.getValueAt(200000));
+        assertEquals(30, cursor.nextEdge(12, BitValue.ONE));
+    }
+
+    @Test
+    public void beforeFirstTransition() {
+        TransitionVector val = TransitionVector.Builder.createBuilder(1)
+            .appendTransition(10, new BitVector("0", 2))
+            .appendTransition(20, new BitVector("1", 2))
+            .getTransitionVector();
+        SignalCursor cursor = new SignalCursor(val);
+        assertEquals(BitValue.ZERO, cursor.getValueAt(5));
+        assertEquals(10, cursor.nextLevel(5, BitValue.ZERO));
+        assertEquals(20, cursor.nextEdge(5, BitValue.ONE));
+    }
+
+    @Test
+    public void empty() {
+        SignalCursor cursor = new SignalCursor(
+            TransitionVector.Builder.createBuilder(1).getTransitionVector());
+        assertEquals(BitValue.X, cursor.getValueAt(5));
+        assertEquals(-1, cursor.nextLevel(5, BitValue.ZERO));
+        assertEquals(-1, cursor.nextEdge(5, BitValue.ONE));
+    }
 }
@@ -25,8 +25,11 @@ import waveview.wavedata.BitVector;
 import waveview.wavedata.NetDataModel;
 import waveview.wavedata.Transition;
 import waveview.wavedata.TransitionVector;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -313,4 +316,95 @@ public class SpiDecoderTest {
         assertEquals(20, t.getTimestamp());
         assertEquals("DA", t.toString(16));
     }
+
+    // Deasserting SS in the middle of a byte discards the bits that were
+    // already received.
+    @Test
+    public void partialByteDiscarded() {
+        TransitionVector ss = TransitionVector.Builder.createBuilder(1)
+            .appendTransition(0, ZERO)
+            .appendTransition(45, ONE)    // Deassert after 4 bits
+            .appendTransition(95, ZERO)    // Reassert
+            .getTransitionVector();
+
+        Decoder decoder = Decoder.createDecoder("SPI");
+        decoder.setParam(0, "0");
+        decoder.setInput(0, new NetDataModel("ss", "ss", ss));
+        decoder.setInput(1, new NetDataModel("sclk", "sclk", sclk));
+        decoder.setInput(2, new NetDataModel("data", "data", data));
+        TransitionVector results = decoder.decode();
+
+        Iterator<Transition> dataIterator = results.findTransition(0);
+        Transition t = dataIterator.next();
+        assertEquals(0, t.getTimestamp());
+        assertEquals("ZZ", t.toString(16));
+
+        t = dataIterator.next();
+        assertEquals(100, t.getTimestamp());
+        assertEquals("A3", t.toString(16));
+
+        t = dataIterator.next();
+        assertEquals(170, t.getTimestamp());
+        assertEquals("ZZ", t.toString(16));
+
+        assertFalse(dataIterator.hasNext());
+    }
+
+    // This is long enough that the decoder splits it at SS deassertions and
+    // decodes the pieces in parallel. Make sure no bytes are lost or
+    // duplicated at the seams.
+    @Test
+    public void decodeSegments() {
+        Random random = new Random(1234);
+        TransitionVector.Builder ssBuilder = TransitionVector.Builder.createBuilder(1)
+            .appendTransition(0, ONE);
+        TransitionVector.Builder sclkBuilder = TransitionVector.Builder.createBuilder(1)
+            .appendTransition(0, ZERO);
+        TransitionVector.Builder dataBuilder = TransitionVector.Builder.createBuilder(1)
+            .appendTransition(0, ZERO);
+        List<Integer> expectedValues = new ArrayList<>();
+        List<Long> expectedTimestamps = new ArrayList<>();
+        long time = 10;
+        for (int frame = 0; frame < 5000; frame++) {
+            ssBuilder.appendTransition(time, ZERO);
+            int byteCount = random.nextInt(8) + 1;
+            for (int byteIndex = 0; byteIndex < byteCount; byteIndex++) {
+                int value = random.nextInt(256);
+                expectedValues.add(value);
+                for (int bit = 7; bit >= 0; bit--) {
+                    time += 5;
+                    dataBuilder.appendTransition(time, ((value >> bit) & 1) != 0 ? ONE : ZERO);
+                    time += 5;
+                    sclkBuilder.appendTransition(time, ONE);
+                    if (bit == 7) {
+                        expectedTimestamps.add(time);
+                    }
+
+                    time += 5;
+                    sclkBuilder.appendTransition(time, ZERO);
+                }
+            }
+
+            time += 5;
+            ssBuilder.appendTransition(time, ONE);
+            time += random.nextInt(100) + 10;
+        }
+
+        Decoder decoder = Decoder.createDecoder("SPI");
+        decoder.setParam(0, "0");
+        decoder.setInput(0, new NetDataModel("ss", "ss", ssBuilder.getTransitionVector()));
+        decoder.setInput(1, new NetDataModel("sclk", "sclk", sclkBuilder.getTransitionVector()));
+        decoder.setInput(2, new NetDataModel("data", "data", dataBuilder.getTransitionVector()));
+        TransitionVector results = decoder.decode();
+
+        assertEquals(expectedValues.size() * 2 + 1, results.getTransitionCount());
+        Iterator<Transition> dataIterator = results.findTransition(0);
+        assertEquals("ZZ", dataIterator.next().toString(16));
+        for (int i = 0; i < expectedValues.size(); i++) {
+            Transition t = dataIterator.next();
+            assertEquals((long) expectedTimestamps.get(i), t.getTimestamp());
+            assertEquals((int) expectedValues.get(i), Integer.parseInt(t.toString(16), 16));
+            assertEquals("ZZ", dataIterator.next().toString(16));
+        }
+    }
 }
@@ -0,0 +1,150 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import waveview.decoder.Decoder;
+import waveview.decoder.StreamingDecodeBuilder;
+import waveview.wavedata.BitVector;
+import waveview.wavedata.NetDataModel;
+import waveview.wavedata.Transition;
+import waveview.wavedata.TransitionVector;
+import waveview.wavedata.WaveformBuilder;
+import waveview.wavedata.WaveformDataModel;
+
+public class StreamingDecodeBuilderTest {
+    private final WaveformDataModel model = new WaveformDataModel();
+
+    private static NetDataModel makeDecodedNet(String decoderName, String[] inputs,
+        String[] params) {
+        return new NetDataModel(decoderName, decoderName, decoderName, inputs, params, null);
+    }
+
+    // Load random values, including some X, for 1 bit nets mod.<netNames>.
+    // At each timestamp, net i changes with a probability of
+    // 1 / changeOneIn[i]. Timestamps are multiples of timeUnit. Like
+    // VcdLoader, this reuses the same BitVector for every transition.
+    private void loadRandom(List<NetDataModel> decodedNets, String[] netNames,
+        int[] changeOneIn, Random random, long timeUnit, int timestampCount) {
+        WaveformBuilder builder = new StreamingDecodeBuilder(model.startBuilding(),
+            decodedNets);
+        builder.setTimescale(-9).enterScope("mod");
+        for (int i = 0; i < netNames.length; i++) {
+            builder.newNet(i, netNames[i], 1);
+        }
+
+        builder.exitScope();
+        BitVector value = new BitVector(1);
+        long timestamp = 0;
+        for (int i = 0; i < timestampCount; i++) {
+            for (int netId = 0; netId < netNames.length; netId++) {
+                if (i == 0 || random.nextInt(changeOneIn[netId]) == 0) {
+                    int choice = random.nextInt(20);
+                    value.parseString(choice == 0 ? "x" : Integer.toString(choice & 1), 2);
+                    builder.appendTransition(netId, timestamp, value);
+                }
+            }
+
+            timestamp += timeUnit * (random.nextInt(4) + 1);
+        }
+
+        builder.loadFinished();
+    }
+
+    // The values decoded while loading should be the same as decoding
+    // the nets after they have loaded.
+    private void checkDecode(NetDataModel decodedNet) {
+        Decoder decoder = Decoder.createDecoder(decodedNet.getDecoderName());
+        decoder.setTimescale(model.getTimescale());
+        String[] inputs = decodedNet.getDecoderInputNets();
+        for (int i = 0; i < inputs.length; i++) {
+            decoder.setInput(i, model.findNet(inputs[i]));
+        }
+
+        String[] params = decodedNet.getDecoderParams();
+        for (int i = 0; i < params.length; i++) {
+            decoder.setParam(i, params[i]);
+        }
+
+        TransitionVector expected = decoder.decode();
+        TransitionVector streamed = decodedNet.getTransitionVector();
+        assertTrue(expected.getTransitionCount() > 100);
+        assertEquals(expected.getTransitionCount(), streamed.getTransitionCount());
+        Iterator<Transition> expectedIterator = expected.findTransition(0);
+        Iterator<Transition> streamedIterator = streamed.findTransition(0);
+        while (expectedIterator.hasNext()) {
+            Transition expectedTransition = expectedIterator.next();
+            Transition streamedTransition = streamedIterator.next();
+            assertEquals(expectedTransition.getTimestamp(), streamedTransition.getTimestamp());
+            assertEquals(0, expectedTransition.compare(streamedTransition));
+        }
+    }
+
+    @Test
+    public void streamSpi() {
+        NetDataModel mode0 = makeDecodedNet("SPI",
+            new String[] {"mod.ss", "mod.sclk", "mod.mosi"}, new String[] {"0"});
+        NetDataModel mode1 = makeDecodedNet("SPI",
+            new String[] {"mod.ss", "mod.sclk", "mod.miso"}, new String[] {"1"});
+        String[] nets = {"ss", "sclk", "mosi", "miso"};
+
+        // SS changes rarely, otherwise there would be few complete bytes.
+        loadRandom(Arrays.asList(mode0, mode1), nets, new int[] {100, 2, 2, 2},
+            new Random(1357), 1, 200000);
+        checkDecode(mode0);
+        checkDecode(mode1);
+    }
+
+    @Test
+    public void streamUart() {
+        // 1 MBaud is 1000 time units per bit. The line only changes at bit
+        // boundaries, as it would from a real transmitter.
+        NetDataModel uart = makeDecodedNet("UART", new String[] {"mod.rx"},
+            new String[] {"1000000"});
+        loadRandom(Arrays.asList(uart), new String[] {"rx"}, new int[] {2},
+            new Random(2468), 1000, 100000);
+        checkDecode(uart);
+    }
+
+    @Test
+    public void notStreamable() {
+        NetDataModel i2c = makeDecodedNet("I2C", new String[] {"mod.a", "mod.b"},
+            new String[0]);
+        NetDataModel missingInput = makeDecodedNet("UART", new String[] {"mod.c"},
+            new String[] {"115200"});
+        NetDataModel badParam = makeDecodedNet("SPI",
+            new String[] {"mod.a", "mod.b", "mod.a"}, new String[] {"4"});
+        NetDataModel uart = makeDecodedNet("UART", new String[] {"mod.a"},
+            new String[] {"1000000"});
+        loadRandom(Arrays.asList(i2c, missingInput, badParam, uart), new String[] {"a", "b"},
+            new int[] {1, 1}, new Random(97531), 1000, 1000);
+
+        assertTrue(i2c.isDecoding());
+        assertTrue(missingInput.isDecoding());
+        assertTrue(badParam.isDecoding());
+        assertFalse(uart.isDecoding());
+
+        // The waveform itself loads normally
+        assertEquals(1000, model.findNet("mod.a").getTransitionVector().getTransitionCount());
+    }
+}
@@ -20,6 +20,11 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Random;
@@ -27,7 +32,9 @@ import org.junit.Test;
 import waveview.wavedata.BitValue;
 import waveview.wavedata.BitVector;
 import waveview.wavedata.Transition;
+import waveview.wavedata.TransitionSummary;
 import waveview.wavedata.TransitionVector;
+import waveview.wavedata.ValueIndex;
 
 public class TransitionVectorTest {
     private BitVector makeBitVectorFromInt(int width, int value) {
@@ -295,4 +302,366 @@ public class TransitionVectorTest {
             iter.next();
         }
     }
+
+    @Test
+    public void indexAccessors() {
+        TransitionVector vec = TransitionVector.Builder.createBuilder(4)
+                                   .appendTransition(100, new BitVector("0001", 2))
+                                   .appendTransition(110, new BitVector("1x0z", 2))
+                                   .getTransitionVector();
+
+        assertEquals(2, vec.getTransitionCount());
+        assertEquals(0, vec.findIndex(99));
+        assertEquals(0, vec.findIndex(105));
+        assertEquals(1, vec.findIndex(110));
+        assertEquals(1, vec.findIndex(200));
+        assertEquals(110, vec.getTimestamp(1));
+        assertEquals(BitValue.ONE, vec.getBit(0, 0));
+        assertEquals(BitValue.ZERO, vec.getBit(0, 3));
+        assertEquals(BitValue.Z, vec.getBit(1, 0));
+        assertEquals(BitValue.ZERO, vec.getBit(1, 1));
+        assertEquals(BitValue.X, vec.getBit(1, 2));
+        assertEquals(BitValue.ONE, vec.getBit(1, 3));
+    }
+
+    // findIndex with a starting index should give the same results as
+    // without one, regardless of where it starts.
+    @Test
+    public void findIndexFrom() {
+        TransitionVector.Builder builder = TransitionVector.Builder.createBuilder(1);
+        for (int i = 0; i < 1000; i++) {
+            builder.appendTransition(i * 10 + 5, makeBitVectorFromInt(1, i & 1));
+        }
+
+        TransitionVector vec = builder.getTransitionVector();
+        int[] startIndices = {0, 1, 17, 500, 998, 999};
+        for (long timestamp = 0; timestamp < 10020; timestamp += 3) {
+            for (int startIndex : startIndices) {
+                assertEquals(vec.findIndex(timestamp), vec.findIndex(timestamp, startIndex));
+            }
+        }
+    }
+
+    // When there are several transitions at a timestamp, this returns the
+    // last one, which has the value at that time.
+    @Test
+    public void findIndexFromDuplicates() {
+        TransitionVector vec = TransitionVector.Builder.createBuilder(1)
+            .appendTransition(10, new BitVector("0", 2))
+            .appendTransition(20, new BitVector("1", 2))
+            .appendTransition(20, new BitVector("0", 2))
+            .appendTransition(20, new BitVector("1", 2))
+            .appendTransition(30, new BitVector("0", 2))
+            .getTransitionVector();
+        assertEquals(3, vec.findIndex(20, 0));
+        assertEquals(3, vec.findIndex(25, 4));
+        assertEquals(0, vec.findIndex(5, 4));
+    }
+
+    // Compare reading values a word at a time to reading them a bit at a
+    // time, for widths that do and don't line up with the packed words.
+    @Test
+    public void getBitsAndValue() {
+        Random random = new Random(4321);
+        String digits = "01xz";
+        for (int width : new int[] {1, 5, 32, 63, 64, 65, 100, 130}) {
+            TransitionVector.Builder builder = TransitionVector.Builder.createBuilder(width);
+            for (int i = 0; i < 100; i++) {
+                StringBuilder valueString = new StringBuilder();
+                for (int bit = 0; bit < width; bit++) {
+                    valueString.append(digits.charAt(random.nextInt(i % 2 == 0 ? 2 : 4)));
+                }
+
+                builder.appendTransition(i, new BitVector(valueString.toString(), 2));
+            }
+
+            TransitionVector vec = builder.getTransitionVector();
+            Iterator<Transition> iterator = vec.findTransition(0);
+            BitVector value = new BitVector();
+            for (int i = 0; i < 100; i++) {
+                Transition expected = iterator.next();
+                vec.getValue(i, value);
+                assertEquals(expected.toString(2), value.toString(2));
+
+                int lowBit = random.nextInt(width);
+                int bitCount = 1 + random.nextInt(Math.min(64, width - lowBit));
+                long expectedBits = 0;
+                long expectedUndefined = 0;
+                for (int bit = 0; bit < bitCount; bit++) {
+                    BitValue bitValue = expected.getBit(lowBit + bit);
+                    if (bitValue == BitValue.ONE) {
+                        expectedBits |= 1L << bit;
+                    } else if (bitValue == BitValue.X || bitValue == BitValue.Z) {
+                        expectedUndefined |= 1L << bit;
+                    }
+                }
+
+                assertEquals(expectedBits, vec.getBits(i, lowBit, bitCount));
+                assertEquals(expectedUndefined, vec.getUndefinedBits(i, lowBit, bitCount));
+            }
+        }
+    }
+
+    @Test
+    public void valueIndex() {
+        TransitionVector.Builder builder = TransitionVector.Builder.createBuilder(16);
+        for (int i = 0; i < 1000; i++) {
+            builder.appendTransition(i * 10, makeBitVectorFromInt(16, i % 7));
+        }
+
+        TransitionVector vec = builder.getTransitionVector();
+        ValueIndex index = vec.getValueIndex();
+        BitVector three = makeBitVectorFromInt(16, 3);
+        assertEquals(3, index.findNext(three, 0));
+        assertEquals(3, index.findNext(three, 3));
+        assertEquals(10, index.findNext(three, 4));
+        assertEquals(-1, index.findNext(three, 998));
+        assertEquals(997, index.findPrevious(three, 999));
+        assertEquals(-1, index.findPrevious(three, 2));
+
+        // Narrower constant is zero extended
+        assertEquals(3, index.findNext(new BitVector("11", 2), 0));
+
+        // No transitions have this value
+        assertEquals(-1, index.findNext(makeBitVectorFromInt(16, 9), 0));
+
+        // Has ones above the width of the net
+        assertEquals(-1, index.findNext(new BitVector("10000000000000011", 2), 0));
+
+        // Index is rebuilt after appending
+        builder.appendTransition(10000, makeBitVectorFromInt(16, 9));
+        assertEquals(1000, vec.getValueIndex().findNext(makeBitVectorFromInt(16, 9), 0));
+    }
+
+    @Test
+    public void valueIndexWildcards() {
+        TransitionVector vec = TransitionVector.Builder.createBuilder(4)
+                                   .appendTransition(0, new BitVector("0001", 2))
+                                   .appendTransition(10, new BitVector("00x1", 2))
+                                   .appendTransition(20, new BitVector("0101", 2))
+                                   .appendTransition(30, new BitVector("0011", 2))
+                                   .getTransitionVector();
+        ValueIndex index = vec.getValueIndex();
+
+        // Values with X can match anything
+        assertEquals(1, index.findNext(new BitVector("0011", 2), 0));
+        assertEquals(3, index.findNext(new BitVector("0011", 2), 2));
+        assertEquals(1, index.findPrevious(new BitVector("0101", 2), 1));
+
+        // Searching for X could match anything
+        assertEquals(2, index.findNext(new BitVector("x111", 2), 2));
+    }
+
+    // Compare range queries against checking each transition.
+    @Test
+    public void summaryConflicts() {
+        final int NUM_TRANSITIONS = 200;
+        TransitionVector.Builder builder = TransitionVector.Builder.createBuilder(2);
+        boolean[] isConflict = new boolean[NUM_TRANSITIONS];
+        Random random = new Random(1);
+        for (int i = 0; i < NUM_TRANSITIONS; i++) {
+            int choice = random.nextInt(20);
+            String value;
+            if (choice == 0) {
+                value = "1x";
+                isConflict[i] = true;
+            } else if (choice == 1) {
+                value = "zz"; // All Z is not a conflict
+            } else {
+                value = "01";
+            }
+
+            builder.appendTransition(i, new BitVector(value, 2));
+        }
+
+        TransitionSummary summary = builder.getTransitionVector().getSummary();
+        for (int first = 0; first < NUM_TRANSITIONS; first++) {
+            boolean expected = false;
+            for (int last = first; last < NUM_TRANSITIONS; last++) {
+                expected |= isConflict[last];
+                assertEquals(expected, summary.hasConflict(first, last));
+            }
+        }
+    }
+
+    @Test
+    public void valueFlags() {
+        TransitionVector vec = TransitionVector.Builder.createBuilder(2)
+                                   .appendTransition(0, new BitVector("01", 2))
+                                   .appendTransition(10, new BitVector("1x", 2))
+                                   .appendTransition(20, new BitVector("zz", 2))
+                                   .appendTransition(30, new BitVector("1z", 2))
+                                   .getTransitionVector();
+        assertEquals(0, vec.getValueFlags(0));
+        assertEquals(TransitionVector.VALUE_X, vec.getValueFlags(1));
+        assertEquals(TransitionVector.VALUE_Z, vec.getValueFlags(2));
+        assertEquals(TransitionVector.VALUE_X, vec.getValueFlags(3));
+    }
+
+    @Test
+    public void columns() {
+        TransitionVector vec = TransitionVector.Builder.createBuilder(2)
+                                   .appendTransition(10, new BitVector("01", 2))
+                                   .appendTransition(20, new BitVector("10", 2))
+                                   .appendTransition(21, new BitVector("1x", 2))
+                                   .appendTransition(22, new BitVector("zz", 2))
+                                   .appendTransition(45, new BitVector("11", 2))
+                                   .appendTransition(45, new BitVector("1x", 2))
+                                   .getTransitionVector();
+        int[] valueIndices = new int[6];
+        int[] transitionCounts = new int[6];
+        byte[] flags = new byte[6];
+
+        // 10 time units per column. Columns 0-5 cover timestamps 0-59.
+        vec.getColumns(0, 6, 0.1, valueIndices, transitionCounts, flags);
+        assertEquals(-1, valueIndices[0]);
+        assertEquals(0, transitionCounts[0]);
+        assertEquals(0, flags[0]);
+
+        assertEquals(0, valueIndices[1]);
+        assertEquals(1, transitionCounts[1]);
+        assertEquals(0, flags[1]);
+
+        // Several transitions collapsed, one is a conflict
+        assertEquals(3, valueIndices[2]);
+        assertEquals(3, transitionCounts[2]);
+        assertEquals(TransitionVector.VALUE_Z | TransitionVector.COLUMN_CONFLICT, flags[2]);
+
+        // No transitions, value carries over from previous column
+        assertEquals(3, valueIndices[3]);
+        assertEquals(0, transitionCounts[3]);
+        assertEquals(TransitionVector.VALUE_Z, flags[3]);
+
+        // Two transitions with the same timestamp
+        assertEquals(5, valueIndices[4]);
+        assertEquals(2, transitionCounts[4]);
+        assertEquals(TransitionVector.VALUE_X | TransitionVector.COLUMN_CONFLICT, flags[4]);
+
+        assertEquals(5, valueIndices[5]);
+        assertEquals(0, transitionCounts[5]);
+
+        // Start in the middle. The value at the left edge is the value in
+        // effect before the column.
+        vec.getColumns(3, 2, 0.1, valueIndices, transitionCounts, flags);
+        assertEquals(3, valueIndices[0]);
+        assertEquals(0, transitionCounts[0]);
+        assertEquals(5, valueIndices[1]);
+        assertEquals(2, transitionCounts[1]);
+    }
+
+    // Compare against checking each transition individually
+    private static void checkColumns(TransitionVector vec, int firstColumn, int columnCount,
+        double scale) {
+        int[] valueIndices = new int[columnCount];
+        int[] transitionCounts = new int[columnCount];
+        byte[] flags = new byte[columnCount];
+        vec.getColumns(firstColumn, columnCount, scale, valueIndices, transitionCounts, flags);
+        for (int column = 0; column < columnCount; column++) {
+            int expectedCount = 0;
+            int expectedIndex = -1;
+            for (int i = 0; i < vec.getTransitionCount(); i++) {
+                int transitionColumn = (int) (vec.getTimestamp(i) * scale);
+                if (transitionColumn <= column + firstColumn) {
+                    expectedIndex = i;
+                }
+
+                if (transitionColumn == column + firstColumn) {
+                    expectedCount++;
+                }
+            }
+
+            assertEquals(expectedIndex, valueIndices[column]);
+            assertEquals(expectedCount, transitionCounts[column]);
+        }
+    }
+
+    @Test
+    public void columnsRandom() {
+        final int NUM_TRANSITIONS = 1000;
+        TransitionVector.Builder builder = TransitionVector.Builder.createBuilder(1);
+        Random random = new Random(1);
+        long timestamp = 0;
+        for (int i = 0; i < NUM_TRANSITIONS; i++) {
+            timestamp += random.nextInt(5);
+            builder.appendTransition(timestamp, new BitVector(random.nextBoolean() ? "1" : "0", 2));
+        }
+
+        TransitionVector vec = builder.getTransitionVector();
+        checkColumns(vec, 100, 300, 0.37);
+
+        // Scales that aren't exactly representable, so the column
+        // boundaries are subject to rounding.
+        for (int i = 0; i < 200; i++) {
+            double scale = (random.nextInt(100) + 1) / 1000.0 * (1 - 1e-16 * random.nextInt(4));
+            checkColumns(vec, random.nextInt(20), 60, scale);
+        }
+    }
+
+    // Dividing the column boundary by the scale rounds up to the timestamp
+    // of a transition in the next column.
+    @Test
+    public void columnsRounding() {
+        TransitionVector vec = TransitionVector.Builder.createBuilder(1)
+                                   .appendTransition(172, new BitVector("1", 2))
+                                   .appendTransition(179, new BitVector("0", 2))
+                                   .appendTransition(200, new BitVector("1", 2))
+                                   .getTransitionVector();
+        checkColumns(vec, 0, 8, 0.024999999999999998);
+        checkColumns(vec, 5, 3, 0.024999999999999998);
+    }
+
+    @Test
+    public void writeAndRead() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        TransitionVector vec1 = TransitionVector.Builder.createBuilder(3)
+            .appendTransition(100, new BitVector("01z", 2))
+            .appendTransition(110, new BitVector("x10", 2))
+            .getTransitionVector();
+        TransitionVector vec2 = TransitionVector.Builder.createBuilder(70)
+            .appendTransition(5, new BitVector("3fffffffffffffffff", 16))
+            .getTransitionVector();
+        TransitionVector empty = TransitionVector.Builder.createBuilder(1).getTransitionVector();
+        vec1.write(out);
+        vec2.write(out);
+        empty.write(out);
+        vec1.write(out);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        TransitionVector read1 = TransitionVector.read(in);
+        TransitionVector.skip(in);
+        TransitionVector readEmpty = TransitionVector.read(in);
+        TransitionVector readAgain = TransitionVector.read(in);
+        assertEquals(-1, in.read());
+
+        assertEquals(0, readEmpty.getTransitionCount());
+        assertEquals(1, readEmpty.getWidth());
+        for (TransitionVector vec : new TransitionVector[] {read1, readAgain}) {
+            assertEquals(3, vec.getWidth());
+            assertEquals(2, vec.getTransitionCount());
+            Iterator<Transition> i = vec.findTransition(0);
+            Transition t = i.next();
+            assertEquals(100, t.getTimestamp());
+            assertEquals("01z", t.toString(2));
+            t = i.next();
+            assertEquals(110, t.getTimestamp());
+            assertEquals("x10", t.toString(2));
+            assertFalse(i.hasNext());
+        }
+    }
+
+    @Test
+    public void readInvalid() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // Width
+        out.writeInt(1); // Transition count
+        try {
+            TransitionVector.read(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+            fail("Did not throw exception");
+        } catch (IOException exc) {
+            assertEquals("invalid transition vector header", exc.getMessage());
+        }
+    }
 }
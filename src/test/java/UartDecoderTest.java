@@ -17,13 +17,18 @@
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import org.junit.Test;
 import waveview.decoder.Decoder;
 import waveview.wavedata.BitVector;
+import waveview.wavedata.LazyTransitionVector;
 import waveview.wavedata.NetDataModel;
 import waveview.wavedata.Transition;
 import waveview.wavedata.TransitionVector;
@@ -103,4 +108,118 @@ public class UartDecoderTest {
         String[] expect = {"Baud rate"};
         assertArrayEquals(expect, decoder.getParamNames());
     }
+
+    // Generate a random UART capture at 115200 baud, with a nanosecond
+    // timescale. Bytes are sometimes sent back to back, which can't be
+    // split, and sometimes separated by idle periods.
+    private TransitionVector makeCapture(Random random, int byteCount,
+        List<Integer> expectedValues, List<Long> expectedTimestamps) {
+        final long bitTime = 8681;
+        TransitionVector.Builder dataBuilder = TransitionVector.Builder.createBuilder(1)
+            .appendTransition(0, ONE);
+        long time = 100000;
+        boolean lastBit = true;
+        for (int byteIndex = 0; byteIndex < byteCount; byteIndex++) {
+            int value = random.nextInt(256);
+            expectedValues.add(value);
+            expectedTimestamps.add(time);
+
+            // Start bit, data bits (lsb first), stop bit
+            int frame = (value << 1) | 0x200;
+            for (int bit = 0; bit < 10; bit++) {
+                boolean bitValue = ((frame >> bit) & 1) != 0;
+                if (bitValue != lastBit) {
+                    dataBuilder.appendTransition(time, bitValue ? ONE : ZERO);
+                    lastBit = bitValue;
+                }
+
+                time += bitTime;
+            }
+
+            if (random.nextBoolean()) {
+                time += random.nextInt(200000);
+            }
+        }
+
+        return dataBuilder.getTransitionVector();
+    }
+
+    private Decoder createDecoder(TransitionVector data) {
+        Decoder decoder = Decoder.createDecoder("UART");
+        decoder.setTimescale(-9);
+        decoder.setParam(0, "115200");
+        decoder.setInput(0, new NetDataModel("data", "data", data));
+        return decoder;
+    }
+
+    // This is long enough that the decoder splits it at idle periods and
+    // decodes the pieces in parallel. Make sure no bytes are lost or
+    // duplicated at the seams.
+    @Test
+    public void decodeSegments() {
+        List<Integer> expectedValues = new ArrayList<>();
+        List<Long> expectedTimestamps = new ArrayList<>();
+        TransitionVector data = makeCapture(new Random(5678), 40000, expectedValues,
+            expectedTimestamps);
+        TransitionVector results = createDecoder(data).decode();
+
+        assertEquals(expectedValues.size() * 2 + 1, results.getTransitionCount());
+        Iterator<Transition> dataIterator = results.findTransition(0);
+        assertEquals("ZZ", dataIterator.next().toString(16));
+        for (int i = 0; i < expectedValues.size(); i++) {
+            Transition t = dataIterator.next();
+            assertEquals((long) expectedTimestamps.get(i), t.getTimestamp());
+            assertEquals((int) expectedValues.get(i), Integer.parseInt(t.toString(16), 16));
+            assertEquals("ZZ", dataIterator.next().toString(16));
+        }
+    }
+
+    // Decoding part of the waveform should give the same transitions in
+    // that range as decoding all of it.
+    @Test
+    public void decodeLazily() {
+        Random random = new Random(91011);
+        TransitionVector data = makeCapture(random, 40000, new ArrayList<>(),
+            new ArrayList<>());
+        TransitionVector expected = createDecoder(data).decode();
+        LazyTransitionVector lazy = createDecoder(data).decodeLazily();
+        assertEquals(8, lazy.getWidth());
+
+        for (int i = 0; i < 50; i++) {
+            long start = (long) (random.nextDouble() * data.getMaxTimestamp());
+            long end = start + random.nextInt(10000000);
+            TransitionVector range = lazy.getRange(start, end);
+
+            Iterator<Transition> expectedIterator = expected.findTransition(start);
+            Iterator<Transition> rangeIterator = range.findTransition(start);
+            Transition expectedTransition = expectedIterator.next();
+            Transition rangeTransition = rangeIterator.next();
+            assertEquals(0, expectedTransition.compare(rangeTransition));
+            while (expectedIterator.hasNext()) {
+                expectedTransition = expectedIterator.next();
+                rangeTransition = rangeIterator.next();
+                assertEquals(expectedTransition.getTimestamp(), rangeTransition.getTimestamp());
+                assertEquals(0, expectedTransition.compare(rangeTransition));
+                if (expectedTransition.getTimestamp() > end) {
+                    break;
+                }
+            }
+        }
+
+        assertEquals(expected.getTransitionCount(), lazy.getAll().getTransitionCount());
+    }
+
+    // A range inside one chunk returns the same vector each time, rather
+    // than a new copy.
+    @Test
+    public void lazyRangeReused() {
+        Random random = new Random(1213);
+        TransitionVector data = makeCapture(random, 40000, new ArrayList<>(),
+            new ArrayList<>());
+        LazyTransitionVector lazy = createDecoder(data).decodeLazily();
+        long start = data.getMaxTimestamp() / 2;
+        TransitionVector range = lazy.getRange(start, start + 1000);
+        assertSame(range, lazy.getRange(start, start + 1000));
+        assertSame(range, lazy.getRange(start + 500, start + 1500));
+    }
 }
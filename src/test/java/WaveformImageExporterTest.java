@@ -0,0 +1,170 @@
+//
+// Copyright 2019 Jeff Bush
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import org.junit.Test;
+import waveview.BinaryValueFormatter;
+import waveview.HexadecimalValueFormatter;
+import waveview.WaveformImageExporter;
+import waveview.wavedata.BitVector;
+import waveview.wavedata.WaveformDataModel;
+
+public class WaveformImageExporterTest {
+    private static final int ROW_HEIGHT = 26;
+    private static final int TOP_LINE = 3;
+    private static final int BOTTOM_LINE = 23;
+    private static final int MIDDLE = 13;
+
+    private final WaveformDataModel model = new WaveformDataModel();
+
+    private void buildModel() {
+        model.startBuilding()
+            .setTimescale(-9)
+            .enterScope("mod")
+            .newNet(0, "clk", 1)
+            .newNet(1, "data", 8)
+            .exitScope()
+            .appendTransition(0, 0, new BitVector("0", 2))
+            .appendTransition(0, 10, new BitVector("1", 2))
+            .appendTransition(0, 20, new BitVector("0", 2))
+            .appendTransition(1, 0, new BitVector("00010010", 2))
+            .appendTransition(1, 50, new BitVector("00110100", 2))
+            .appendTransition(0, 100, new BitVector("1", 2))
+            .loadFinished();
+    }
+
+    private BufferedImage export(WaveformImageExporter exporter) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.writePng(out);
+        return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void exportPng() throws IOException {
+        buildModel();
+        WaveformImageExporter exporter = new WaveformImageExporter(model);
+        exporter.addNet(model.findNet("mod.clk"), new BinaryValueFormatter());
+        exporter.addNet(model.findNet("mod.data"), new HexadecimalValueFormatter());
+        exporter.setWidth(100);
+        exporter.setTimeRange(0, 100);
+
+        BufferedImage image = export(exporter);
+        assertEquals(ROW_HEIGHT * 2, image.getHeight());
+        int nameWidth = image.getWidth() - 100;
+
+        // Single bit net: low from 0-10, high from 10-20
+        int background = image.getRGB(nameWidth + 5, MIDDLE);
+        assertNotEquals(background, image.getRGB(nameWidth + 5, BOTTOM_LINE));
+        assertEquals(background, image.getRGB(nameWidth + 5, TOP_LINE));
+        assertNotEquals(background, image.getRGB(nameWidth + 15, TOP_LINE));
+        assertEquals(background, image.getRGB(nameWidth + 15, BOTTOM_LINE));
+
+        // Multi bit net has lines on both top and bottom
+        assertNotEquals(background, image.getRGB(nameWidth + 25, ROW_HEIGHT + TOP_LINE));
+        assertNotEquals(background, image.getRGB(nameWidth + 25, ROW_HEIGHT + BOTTOM_LINE));
+    }
+
+    @Test
+    public void exportTimeRange() throws IOException {
+        buildModel();
+        WaveformImageExporter exporter = new WaveformImageExporter(model);
+        exporter.addNet(model.findNet("mod.clk"), new BinaryValueFormatter());
+        exporter.setWidth(200);
+        exporter.setTimeRange(10, 20);
+
+        // Clock is high for the entire range, at 20 pixels per time unit
+        BufferedImage image = export(exporter);
+        assertEquals(ROW_HEIGHT, image.getHeight());
+        int nameWidth = image.getWidth() - 200;
+        int background = image.getRGB(nameWidth + 100, MIDDLE);
+        assertNotEquals(background, image.getRGB(nameWidth + 100, TOP_LINE));
+        assertEquals(background, image.getRGB(nameWidth + 100, BOTTOM_LINE));
+    }
+
+    // The image is split into strips 2048 pixels wide. This one has
+    // several. Limiting the memory renders each band several times, a few
+    // rows at a time, which must give the same image.
+    @Test
+    public void exportWide() throws IOException {
+        buildModel();
+        WaveformImageExporter exporter = new WaveformImageExporter(model);
+        exporter.addNet(model.findNet("mod.clk"), new BinaryValueFormatter());
+        exporter.addNet(model.findNet("mod.data"), new HexadecimalValueFormatter());
+        exporter.setWidth(5000);
+        exporter.setTimeRange(0, 100);
+
+        // 50 pixels per time unit. The clock is high from 500-999 and low
+        // from 1000 on, across the boundary between the first two strips.
+        BufferedImage image = export(exporter);
+        assertEquals(ROW_HEIGHT * 2, image.getHeight());
+        int nameWidth = image.getWidth() - 5000;
+        int background = image.getRGB(nameWidth + 250, MIDDLE);
+        assertNotEquals(background, image.getRGB(nameWidth + 750, TOP_LINE));
+        for (int x : new int[] {2040, 2047, 2048, 2060}) {
+            assertEquals(background, image.getRGB(x, TOP_LINE));
+            assertNotEquals(background, image.getRGB(x, BOTTOM_LINE));
+        }
+
+        // Multi bit net in the third strip
+        assertNotEquals(background, image.getRGB(nameWidth + 4500, ROW_HEIGHT + TOP_LINE));
+        assertNotEquals(background, image.getRGB(nameWidth + 4500, ROW_HEIGHT + BOTTOM_LINE));
+
+        // Groups of 5 rows, then one row at a time
+        int rowBytes = image.getWidth() * 3;
+        for (long maxBufferedBytes : new long[] {rowBytes * 10L, 1}) {
+            exporter.setMaxBufferedBytes(maxBufferedBytes);
+            BufferedImage limitedImage = export(exporter);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    assertEquals(image.getRGB(x, y), limitedImage.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void invalidTimeRange() {
+        buildModel();
+        WaveformImageExporter exporter = new WaveformImageExporter(model);
+        try {
+            exporter.setTimeRange(20, 10);
+            fail("didn't throw exception");
+        } catch (IllegalArgumentException exc) {
+            assertEquals("invalid time range", exc.getMessage());
+        }
+    }
+
+    @Test
+    public void noNets() throws IOException {
+        buildModel();
+        WaveformImageExporter exporter = new WaveformImageExporter(model);
+        try {
+            exporter.writePng(new ByteArrayOutputStream());
+            fail("didn't throw exception");
+        } catch (IllegalStateException exc) {
+            assertEquals("no nets to export", exc.getMessage());
+        }
+    }
+}
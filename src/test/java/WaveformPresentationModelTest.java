@@ -252,6 +252,26 @@ public class WaveformPresentationModelTest {
         assertSame(model.getValueFormatter(1), dvf);
     }
 
+    @Test
+    public void netDataChanged() {
+        NetDataModel net1 = new NetDataModel(
+            "net1", "net1", TransitionVector.Builder.createBuilder(1).getTransitionVector());
+        NetDataModel decoded = new NetDataModel("decoded", "decoded.decoded", "UART",
+            new String[] {"net1"}, new String[0], null);
+        model.addNet(decoded);
+        model.addNet(net1);
+        model.addNet(decoded);
+        clearInvocations(listener);
+
+        decoded.setTransitionVector(
+            TransitionVector.Builder.createBuilder(8).getTransitionVector());
+        model.netDataChanged(decoded);
+
+        verify(listener).formatChanged(0);
+        verify(listener).formatChanged(2);
+        verifyNoMoreInteractions(listener);
+    }
+
     // Ensure the minor tick interval is initialized when
     // WaveformPresentationModel is created.
     @Test
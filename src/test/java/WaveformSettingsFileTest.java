@@ -23,6 +23,7 @@ import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -241,6 +242,60 @@ public class WaveformSettingsFileTest {
         assertSame(newDecodedModel, dataModel.findNet("full.name"));
     }
 
+    // If the decoder for a net isn't installed, for example because it came
+    // from a plugin that was removed, the net is skipped.
+    @Test
+    public void decoderNotInstalled() throws IOException {
+        WaveformDataModel dataModel = new WaveformDataModel();
+        WaveformPresentationModel sourcePresentationModel = new WaveformPresentationModel();
+        dataModel.startBuilding()
+            .enterScope("mod1")
+            .newNet(0, "net1", 1)
+            .exitScope()
+            .loadFinished();
+
+        sourcePresentationModel.addNet(new NetDataModel("short", "full.name", "Missing",
+            new String[] {"mod1.net1"}, new String[0], null));
+        sourcePresentationModel.addNet(dataModel.findNet("mod1.net1"));
+        File file = tempFolder.newFile("test1.settings");
+        new WaveformSettingsFile(file, dataModel, sourcePresentationModel).write();
+
+        WaveformPresentationModel destPresentationModel = new WaveformPresentationModel();
+        new WaveformSettingsFile(file, dataModel, destPresentationModel).read();
+        assertEquals(1, destPresentationModel.getVisibleNetCount());
+        assertSame(dataModel.findNet("mod1.net1"), destPresentationModel.getVisibleNet(0));
+        assertTrue(WaveformSettingsFile.readDecodedNets(file).isEmpty());
+    }
+
+    @Test
+    public void readDecodedNets() throws IOException {
+        WaveformDataModel dataModel = new WaveformDataModel();
+        WaveformPresentationModel presentationModel = new WaveformPresentationModel();
+        dataModel.startBuilding()
+            .enterScope("mod1")
+            .newNet(0, "net1", 1)
+            .exitScope()
+            .loadFinished();
+
+        String[] inputs = {"mod1.net1"};
+        String[] params = {"9600"};
+        presentationModel.addNet(dataModel.findNet("mod1.net1"));
+        presentationModel.addNet(new NetDataModel("short", "full.name", "UART",
+            inputs, params, null));
+        File file = tempFolder.newFile("test1.settings");
+        new WaveformSettingsFile(file, dataModel, presentationModel).write();
+
+        // Only the decoded net is returned, and it is read without a data model.
+        List<NetDataModel> decodedNets = WaveformSettingsFile.readDecodedNets(file);
+        assertEquals(1, decodedNets.size());
+        NetDataModel decoded = decodedNets.get(0);
+        assertEquals("full.name", decoded.getFullName());
+        assertEquals("UART", decoded.getDecoderName());
+        assertArrayEquals(inputs, decoded.getDecoderInputNets());
+        assertArrayEquals(params, decoded.getDecoderParams());
+        assertTrue(decoded.isDecoding());
+    }
+
     // When the data model changes on disk between the time the settings file
     // was saved and when it was reloaded, ensure the loader falls back
     // gracefully. Specifically if a visible net is no longer in the data model